@@ -0,0 +1,565 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.json.rendering;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.portlet.WindowState;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import org.apereo.portal.IUserPreferencesManager;
+import org.apereo.portal.events.IPortletExecutionEventFactory;
+import org.apereo.portal.layout.IUserLayoutManager;
+import org.apereo.portal.portlet.om.IPortletDefinition;
+import org.apereo.portal.portlet.om.IPortletDefinitionParameter;
+import org.apereo.portal.portlet.om.IPortletDescriptorKey;
+import org.apereo.portal.portlet.om.IPortletWindow;
+import org.apereo.portal.portlet.om.IPortletWindowId;
+import org.apereo.portal.portlet.registry.IPortletWindowRegistry;
+import org.apereo.portal.security.IPerson;
+import org.apereo.portal.url.IPortalRequestInfo;
+import org.apereo.portal.url.IPortalUrlBuilder;
+import org.apereo.portal.url.IPortalUrlProvider;
+import org.apereo.portal.url.IPortletUrlBuilder;
+import org.apereo.portal.url.IUrlSyntaxProvider;
+import org.apereo.portal.url.UrlType;
+import org.apereo.portal.user.IUserInstance;
+import org.apereo.portal.user.IUserInstanceManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Renders the JSON representation of the user's layout directly from the {@link
+ * IUserLayoutManager#getUserLayoutReader()} and the state of the user's portlet windows into a
+ * streaming Jackson generator, without running the structure and theme transformations of the
+ * {@link JsonLayoutRenderingPipeline}.
+ *
+ * <p>Every response carries a strong <code>ETag</code> computed from the layout cache key, the
+ * user's locales, the window state and portlet mode of each portlet window in the layout and the
+ * state of the portlet definitions of those windows. A request whose <code>If-None-Match</code>
+ * header matches the current tag is answered with <code>
+ * 304 Not Modified</code> before any of the layout is read.
+ *
+ * <p>The document keeps the top-level shape of the <code>JsonLayoutV4-3</code> theme output but not
+ * all of its fields: folder and channel attributes are copied as they are in the layout, regions
+ * come from the folder types rather than the structure transformation and portlets link to their
+ * maximized URL. It is therefore only used when enabled explicitly.
+ *
+ * @since 5.3
+ */
+public class JsonLayoutRenderer {
+    public static final String CHARACTER_SET = "UTF-8";
+
+    /** Changes to the format of the rendered document must change this value */
+    private static final String FORMAT_VERSION = "4.3-streaming-1";
+
+    private static final String FOLDER = "folder";
+    private static final String CHANNEL = "channel";
+    private static final String PARAMETER = "parameter";
+    private static final QName PARAMETER_NAME_ATTR_NAME = new QName("name");
+    private static final QName PARAMETER_VALUE_ATTR_NAME = new QName("value");
+    private static final String REGULAR_TYPE = "regular";
+    private static final String FAVORITES_TYPE = "favorites";
+    private static final String FAVORITE_COLLECTION_TYPE = "favorite_collection";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private IUserInstanceManager userInstanceManager;
+    private IPortletWindowRegistry portletWindowRegistry;
+    private IPortalUrlProvider portalUrlProvider;
+    private IUrlSyntaxProvider urlSyntaxProvider;
+    private IPortletExecutionEventFactory portalEventFactory;
+
+    @Autowired
+    public void setUserInstanceManager(IUserInstanceManager userInstanceManager) {
+        this.userInstanceManager = userInstanceManager;
+    }
+
+    @Autowired
+    public void setPortletWindowRegistry(IPortletWindowRegistry portletWindowRegistry) {
+        this.portletWindowRegistry = portletWindowRegistry;
+    }
+
+    @Autowired
+    public void setPortalUrlProvider(IPortalUrlProvider portalUrlProvider) {
+        this.portalUrlProvider = portalUrlProvider;
+    }
+
+    @Autowired
+    public void setUrlSyntaxProvider(IUrlSyntaxProvider urlSyntaxProvider) {
+        this.urlSyntaxProvider = urlSyntaxProvider;
+    }
+
+    @Autowired
+    public void setPortalEventFactory(IPortletExecutionEventFactory portalEventFactory) {
+        this.portalEventFactory = portalEventFactory;
+    }
+
+    /**
+     * Write the JSON layout of the current user to the response, or a <code>304 Not Modified
+     * </code> if the client already has the current representation.
+     */
+    public void renderLayout(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        final long startTime = System.nanoTime();
+
+        final IUserInstance userInstance = this.userInstanceManager.getUserInstance(req);
+        final IUserPreferencesManager preferencesManager = userInstance.getPreferencesManager();
+        final IUserLayoutManager userLayoutManager = preferencesManager.getUserLayoutManager();
+
+        final Map<String, IPortletWindow> portletWindows = this.getLayoutPortletWindows(req);
+        final String etag = this.getETag(userInstance, userLayoutManager, portletWindows);
+
+        // Clients must revalidate every time, the ETag makes that cheap
+        res.setHeader("Cache-Control", "private, no-cache, max-age=0, must-revalidate");
+        res.setHeader("ETag", etag);
+
+        if (isNotModified(req.getHeader("If-None-Match"), etag)) {
+            res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        final LayoutElement root = this.readLayout(userLayoutManager);
+
+        res.setContentType("application/json; charset=" + CHARACTER_SET);
+        final JsonGenerator generator =
+                JSON_FACTORY.createGenerator(res.getOutputStream(), JsonEncoding.UTF8);
+        try {
+            this.writeLayout(req, generator, userInstance, root, portletWindows);
+        } finally {
+            generator.close();
+        }
+
+        final long executionTime = System.nanoTime() - startTime;
+
+        final IPortalRequestInfo portalRequestInfo =
+                this.urlSyntaxProvider.getPortalRequestInfo(req);
+        this.portalEventFactory.publishPortalRenderEvent(
+                req, this, req.getPathInfo(), executionTime, portalRequestInfo);
+    }
+
+    /** @return The user's layout portlet windows keyed by layout node id */
+    protected Map<String, IPortletWindow> getLayoutPortletWindows(HttpServletRequest req) {
+        final Map<String, IPortletWindow> portletWindows = new TreeMap<String, IPortletWindow>();
+        for (final IPortletWindow portletWindow :
+                this.portletWindowRegistry.getAllLayoutPortletWindows(req)) {
+            if (portletWindow != null) {
+                portletWindows.put(
+                        portletWindow.getPortletEntity().getLayoutNodeId(), portletWindow);
+            }
+        }
+        return portletWindows;
+    }
+
+    /**
+     * Compute the strong entity tag for the layout representation. Only state that is cheap to read
+     * is included: the layout cache key changes with every change to the layout, and the portlet
+     * window state and the portlet definitions of the windows are held in memory.
+     */
+    protected String getETag(
+            IUserInstance userInstance,
+            IUserLayoutManager userLayoutManager,
+            Map<String, IPortletWindow> portletWindows) {
+        final IPerson person = userInstance.getPerson();
+
+        final StringBuilder state = new StringBuilder(256 + portletWindows.size() * 48);
+        state.append(FORMAT_VERSION)
+                .append('|')
+                .append(person.getUserName())
+                .append('|')
+                .append(person.isGuest())
+                .append('|')
+                .append(userLayoutManager.getCacheKey())
+                .append('|')
+                .append(getLocale(userInstance));
+
+        for (final Map.Entry<String, IPortletWindow> portletWindowEntry :
+                portletWindows.entrySet()) {
+            final IPortletWindow portletWindow = portletWindowEntry.getValue();
+            state.append('|')
+                    .append(portletWindowEntry.getKey())
+                    .append('=')
+                    .append(portletWindow.getPortletWindowId().getStringId())
+                    .append(',')
+                    .append(portletWindow.getWindowState())
+                    .append(',')
+                    .append(portletWindow.getPortletMode());
+            appendDefinitionState(state, portletWindow.getPortletEntity().getPortletDefinition());
+        }
+
+        final byte[] bytes = state.toString().getBytes(StandardCharsets.UTF_8);
+        return '"' + DigestUtils.md5DigestAsHex(bytes) + '"';
+    }
+
+    /**
+     * Append the state of the portlet definition that ends up in the rendered document, so a change
+     * to a published portlet changes the tag of every layout that contains it.
+     */
+    private static void appendDefinitionState(
+            StringBuilder state, IPortletDefinition portletDefinition) {
+        if (portletDefinition == null) {
+            return;
+        }
+
+        state.append(',')
+                .append(portletDefinition.getFName())
+                .append(',')
+                .append(portletDefinition.getTitle())
+                .append(',')
+                .append(portletDefinition.getLifecycleState())
+                .append(',')
+                .append(portletDefinition.getAlternativeMaximizedLink())
+                .append(',')
+                .append(portletDefinition.getTarget());
+
+        final IPortletDescriptorKey descriptorKey = portletDefinition.getPortletDescriptorKey();
+        if (descriptorKey != null) {
+            state.append(',')
+                    .append(descriptorKey.getWebAppName())
+                    .append(',')
+                    .append(descriptorKey.getPortletName());
+        }
+
+        final Map<String, IPortletDefinitionParameter> parameters =
+                portletDefinition.getParametersAsUnmodifiableMap();
+        if (parameters != null) {
+            for (final IPortletDefinitionParameter parameter :
+                    new TreeMap<String, IPortletDefinitionParameter>(parameters).values()) {
+                state.append(',')
+                        .append(parameter.getName())
+                        .append('=')
+                        .append(parameter.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return true if the <code>If-None-Match</code> header value includes the specified entity
+     *     tag. Weak comparison is used, as required by RFC 7232 for <code>If-None-Match</code>.
+     */
+    static boolean isNotModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if ("*".equals(candidate)) {
+                return true;
+            }
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (etag.equals(candidate)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /** Read the folder and channel elements of the user's layout */
+    protected LayoutElement readLayout(IUserLayoutManager userLayoutManager) {
+        final XMLEventReader layoutReader = userLayoutManager.getUserLayoutReader();
+        try {
+            final List<LayoutElement> stack = new ArrayList<LayoutElement>();
+            stack.add(new LayoutElement(null));
+            LayoutElement root = null;
+
+            while (layoutReader.hasNext()) {
+                final XMLEvent event = layoutReader.nextEvent();
+                if (event.isStartElement()) {
+                    final StartElement startElement = event.asStartElement();
+                    final String name = startElement.getName().getLocalPart();
+                    final LayoutElement parent = stack.get(stack.size() - 1);
+                    if (PARAMETER.equals(name) && parent.isChannel()) {
+                        final Attribute nameAttribute =
+                                startElement.getAttributeByName(PARAMETER_NAME_ATTR_NAME);
+                        final Attribute valueAttribute =
+                                startElement.getAttributeByName(PARAMETER_VALUE_ATTR_NAME);
+                        if (nameAttribute != null) {
+                            parent.parameters.put(
+                                    nameAttribute.getValue(),
+                                    valueAttribute != null ? valueAttribute.getValue() : "");
+                        }
+                    }
+
+                    final LayoutElement element = new LayoutElement(name);
+                    for (final Iterator<Attribute> attributes = startElement.getAttributes();
+                            attributes.hasNext(); ) {
+                        final Attribute attribute = attributes.next();
+                        element.attributes.put(
+                                attribute.getName().getLocalPart(), attribute.getValue());
+                    }
+                    if (element.isFolder() || element.isChannel()) {
+                        parent.children.add(element);
+                    }
+                    // The outermost folder is the layout root
+                    if (root == null && element.isFolder()) {
+                        root = element;
+                    }
+                    stack.add(element);
+                } else if (event.isEndElement()) {
+                    stack.remove(stack.size() - 1);
+                }
+            }
+
+            return root != null ? root : new LayoutElement(FOLDER);
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Failed to read the user layout", e);
+        } finally {
+            try {
+                layoutReader.close();
+            } catch (XMLStreamException e) {
+                this.logger.debug("Failed to close user layout reader", e);
+            }
+        }
+    }
+
+    protected void writeLayout(
+            HttpServletRequest req,
+            JsonGenerator generator,
+            IUserInstance userInstance,
+            LayoutElement root,
+            Map<String, IPortletWindow> portletWindows)
+            throws IOException {
+        final IPerson person = userInstance.getPerson();
+
+        final List<LayoutElement> tabs = new ArrayList<LayoutElement>();
+        final List<LayoutElement> regions = new ArrayList<LayoutElement>();
+        final List<LayoutElement> favorites = new ArrayList<LayoutElement>();
+        for (final LayoutElement child : root.children) {
+            if (!child.isFolder()) {
+                continue;
+            }
+            final String type = child.getType();
+            if (REGULAR_TYPE.equals(type)) {
+                if (!"true".equals(child.attributes.get("hidden"))) {
+                    tabs.add(child);
+                }
+            } else if (FAVORITES_TYPE.equals(type) || FAVORITE_COLLECTION_TYPE.equals(type)) {
+                favorites.add(child);
+            } else {
+                regions.add(child);
+            }
+        }
+
+        generator.writeStartObject();
+        generator.writeStringField("user", person.getUserName());
+        generator.writeStringField("authenticated", Boolean.toString(!person.isGuest()));
+        generator.writeStringField("locale", getLocale(userInstance));
+
+        generator.writeObjectFieldStart("layout");
+
+        generator.writeObjectFieldStart("globals");
+        generator.writeStringField("userLayoutRoot", root.attributes.get("ID"));
+        generator.writeStringField("hasFavorites", Boolean.toString(!favorites.isEmpty()));
+        generator.writeEndObject();
+
+        generator.writeArrayFieldStart("regions");
+        for (final LayoutElement region : regions) {
+            generator.writeStartObject();
+            generator.writeStringField("name", region.getType());
+            generator.writeArrayFieldStart("content");
+            this.writePortlets(req, generator, region, portletWindows);
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+
+        generator.writeObjectFieldStart("navigation");
+        generator.writeArrayFieldStart("tabs");
+        for (final LayoutElement tab : tabs) {
+            this.writeFolder(req, generator, tab, portletWindows);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+
+        generator.writeArrayFieldStart("favorites");
+        for (final LayoutElement favorite : favorites) {
+            this.writeFolder(req, generator, favorite, portletWindows);
+        }
+        generator.writeEndArray();
+
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    /** Write a folder and, in document order, the folders and portlets it contains */
+    protected void writeFolder(
+            HttpServletRequest req,
+            JsonGenerator generator,
+            LayoutElement folder,
+            Map<String, IPortletWindow> portletWindows)
+            throws IOException {
+        generator.writeStartObject();
+        for (final Map.Entry<String, String> attribute : folder.attributes.entrySet()) {
+            generator.writeStringField(attribute.getKey(), attribute.getValue());
+        }
+        generator.writeArrayFieldStart("content");
+        for (final LayoutElement child : folder.children) {
+            if (child.isFolder()) {
+                this.writeFolder(req, generator, child, portletWindows);
+            } else {
+                this.writePortlet(req, generator, child, portletWindows);
+            }
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    /** Write every portlet in the folder's subtree as a flat list */
+    protected void writePortlets(
+            HttpServletRequest req,
+            JsonGenerator generator,
+            LayoutElement folder,
+            Map<String, IPortletWindow> portletWindows)
+            throws IOException {
+        for (final LayoutElement child : folder.children) {
+            if (child.isFolder()) {
+                this.writePortlets(req, generator, child, portletWindows);
+            } else {
+                this.writePortlet(req, generator, child, portletWindows);
+            }
+        }
+    }
+
+    protected void writePortlet(
+            HttpServletRequest req,
+            JsonGenerator generator,
+            LayoutElement channel,
+            Map<String, IPortletWindow> portletWindows)
+            throws IOException {
+        final String nodeId = channel.attributes.get("ID");
+
+        generator.writeStartObject();
+        generator.writeStringField("nodeId", nodeId);
+        for (final Map.Entry<String, String> attribute : channel.attributes.entrySet()) {
+            generator.writeStringField(attribute.getKey(), attribute.getValue());
+        }
+
+        final IPortletWindow portletWindow = portletWindows.get(nodeId);
+        if (portletWindow != null) {
+            generator.writeStringField("windowState", portletWindow.getWindowState().toString());
+            generator.writeStringField("portletMode", portletWindow.getPortletMode().toString());
+
+            final IPortletDefinition portletDefinition =
+                    portletWindow.getPortletEntity().getPortletDefinition();
+            generator.writeStringField(
+                    "lifecycleState", portletDefinition.getLifecycleState().toString());
+            final IPortletDescriptorKey descriptorKey = portletDefinition.getPortletDescriptorKey();
+            generator.writeStringField("portletName", descriptorKey.getPortletName());
+            if (descriptorKey.isFrameworkPortlet()) {
+                generator.writeStringField("frameworkPortlet", "true");
+            } else {
+                generator.writeStringField("webAppName", descriptorKey.getWebAppName());
+            }
+
+            final String url = this.getMaximizedUrl(req, nodeId, portletWindow);
+            if (url != null) {
+                generator.writeStringField("url", url);
+            }
+        }
+
+        generator.writeObjectFieldStart("parameters");
+        for (final Map.Entry<String, String> parameter : channel.parameters.entrySet()) {
+            generator.writeStringField(parameter.getKey(), parameter.getValue());
+        }
+        generator.writeEndObject();
+
+        generator.writeEndObject();
+    }
+
+    /** @return The URL to the maximized portlet, null if it could not be built */
+    protected String getMaximizedUrl(
+            HttpServletRequest req, String nodeId, IPortletWindow portletWindow) {
+        final String alternativeMaximizedLink =
+                portletWindow
+                        .getPortletEntity()
+                        .getPortletDefinition()
+                        .getAlternativeMaximizedLink();
+        if (alternativeMaximizedLink != null) {
+            return alternativeMaximizedLink;
+        }
+
+        try {
+            final IPortalUrlBuilder portalUrlBuilder =
+                    this.portalUrlProvider.getPortalUrlBuilderByLayoutNode(
+                            req, nodeId, UrlType.RENDER);
+            final IPortletWindowId targetPortletWindowId =
+                    portalUrlBuilder.getTargetPortletWindowId();
+            if (targetPortletWindowId != null) {
+                final IPortletUrlBuilder portletUrlBuilder =
+                        portalUrlBuilder.getPortletUrlBuilder(targetPortletWindowId);
+                portletUrlBuilder.setWindowState(WindowState.MAXIMIZED);
+            }
+            return portalUrlBuilder.getUrlString();
+        } catch (RuntimeException e) {
+            this.logger.warn("Failed to build the maximized URL for layout node {}", nodeId, e);
+            return null;
+        }
+    }
+
+    private static String getLocale(IUserInstance userInstance) {
+        final List<Locale> locales = userInstance.getLocaleManager().getLocales();
+        if (locales == null || locales.isEmpty()) {
+            return "";
+        }
+        return locales.get(0).toString();
+    }
+
+    /** Minimal model of a folder or channel element of the user's layout */
+    protected static final class LayoutElement {
+        private final String name;
+        private final Map<String, String> attributes = new LinkedHashMap<String, String>();
+        private final Map<String, String> parameters = new LinkedHashMap<String, String>();
+        private final List<LayoutElement> children = new ArrayList<LayoutElement>();
+
+        LayoutElement(String name) {
+            this.name = name;
+        }
+
+        boolean isFolder() {
+            return FOLDER.equals(this.name);
+        }
+
+        boolean isChannel() {
+            return CHANNEL.equals(this.name);
+        }
+
+        String getType() {
+            return this.attributes.get("type");
+        }
+    }
+}
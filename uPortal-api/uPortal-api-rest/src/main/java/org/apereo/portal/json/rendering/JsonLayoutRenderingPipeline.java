@@ -14,7 +14,9 @@
  */
 package org.apereo.portal.json.rendering;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -30,10 +32,18 @@ import org.apereo.portal.rendering.PipelineEventReader;
 import org.apereo.portal.rendering.RenderingPipelineConfigurationException;
 import org.apereo.portal.url.IPortalRequestInfo;
 import org.apereo.portal.url.IUrlSyntaxProvider;
+import org.apereo.portal.utils.cache.CacheKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.util.DigestUtils;
 
+/**
+ * Renders the JSON layout through the JSON rendering pipeline. Every response carries a strong
+ * <code>ETag</code> computed from the cache key of the pipeline, a request whose <code>
+ * If-None-Match</code> header matches the current tag is answered with <code>304 Not Modified
+ * </code> without running the pipeline.
+ */
 public class JsonLayoutRenderingPipeline implements IPortalRenderingPipeline {
     public static final String CHARACTER_SET = "UTF-8";
 
@@ -69,6 +79,15 @@ public class JsonLayoutRenderingPipeline implements IPortalRenderingPipeline {
         res.setHeader("Cache-Control", "no-cache, max-age=0, must-revalidate");
         res.setDateHeader("Expires", 0);
 
+        final String etag = this.getETag(req, res);
+        if (etag != null) {
+            res.setHeader("ETag", etag);
+            if (JsonLayoutRenderer.isNotModified(req.getHeader("If-None-Match"), etag)) {
+                res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+
         final long startTime = System.nanoTime();
 
         final PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader =
@@ -108,4 +127,31 @@ public class JsonLayoutRenderingPipeline implements IPortalRenderingPipeline {
         this.portalEventFactory.publishPortalRenderEvent(
                 req, this, req.getPathInfo(), executionTime, portalRequestInfo);
     }
+
+    /**
+     * The caching component at the root of the pipeline serves the same document for equal cache
+     * keys, so the serialized form of the key identifies the rendered document.
+     *
+     * @return The strong entity tag for the rendered document, null if the cache key of the
+     *     pipeline can't be serialized
+     */
+    protected String getETag(HttpServletRequest req, HttpServletResponse res) {
+        final CacheKey cacheKey = this.pipeline.getCacheKey(req, res);
+        if (cacheKey == null) {
+            return null;
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try {
+            final ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(cacheKey);
+            out.close();
+        } catch (IOException e) {
+            logger.debug(
+                    "Rendering {} without an ETag, cache key can't be serialized", cacheKey, e);
+            return null;
+        }
+
+        return '"' + DigestUtils.md5DigestAsHex(bytes.toByteArray()) + '"';
+    }
 }
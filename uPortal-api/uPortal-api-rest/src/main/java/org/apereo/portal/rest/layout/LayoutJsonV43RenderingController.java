@@ -18,6 +18,7 @@ import java.io.IOException;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.apereo.portal.json.rendering.JsonLayoutRenderer;
 import org.apereo.portal.layout.IStylesheetUserPreferencesService;
 import org.apereo.portal.portlet.registry.IPortletWindowRegistry;
 import org.apereo.portal.rendering.IPortalRenderingPipeline;
@@ -25,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -47,6 +49,8 @@ public class LayoutJsonV43RenderingController {
 
     private IPortalRenderingPipeline portalRenderingPipeline;
     private IPortletWindowRegistry portletWindowRegistry;
+    private JsonLayoutRenderer jsonLayoutRenderer;
+    private boolean streamingRendererEnabled = false;
 
     @Autowired
     @Qualifier("json")
@@ -59,9 +63,31 @@ public class LayoutJsonV43RenderingController {
         this.portletWindowRegistry = portletWindowRegistry;
     }
 
+    @Autowired
+    public void setJsonLayoutRenderer(JsonLayoutRenderer jsonLayoutRenderer) {
+        this.jsonLayoutRenderer = jsonLayoutRenderer;
+    }
+
+    /**
+     * If true the layout is rendered by the {@link JsonLayoutRenderer}, which does not produce
+     * every field of the theme transformation. If false (the default) the layout is rendered by the
+     * structure and theme transformations of the JSON rendering pipeline. Both support conditional
+     * requests.
+     */
+    @Value("${org.apereo.portal.rest.layout.json.streamingRenderer.enabled:false}")
+    public void setStreamingRendererEnabled(boolean streamingRendererEnabled) {
+        this.streamingRendererEnabled = streamingRendererEnabled;
+    }
+
     @RequestMapping(value = "/v4-3/dlm/layout.json", method = RequestMethod.GET)
     public void renderRequest(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
+        if (this.streamingRendererEnabled) {
+            this.portletWindowRegistry.disablePersistentWindowStates(request);
+            this.jsonLayoutRenderer.renderLayout(request, response);
+            return;
+        }
+
         this.setStructureStylesheetNameForJavascriptDrivenContentRendering(request);
         this.setThemeStylesheetVersionForJavascriptDrivenContentRendering(request);
         this.portletWindowRegistry.disablePersistentWindowStates(request);
@@ -0,0 +1,292 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.json.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Locale;
+import javax.portlet.PortletMode;
+import javax.portlet.WindowState;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import org.apereo.portal.IUserPreferencesManager;
+import org.apereo.portal.events.IPortletExecutionEventFactory;
+import org.apereo.portal.i18n.LocaleManager;
+import org.apereo.portal.layout.IUserLayoutManager;
+import org.apereo.portal.portlet.om.IPortletDefinition;
+import org.apereo.portal.portlet.om.IPortletDefinitionParameter;
+import org.apereo.portal.portlet.om.IPortletDescriptorKey;
+import org.apereo.portal.portlet.om.IPortletEntity;
+import org.apereo.portal.portlet.om.IPortletWindow;
+import org.apereo.portal.portlet.om.IPortletWindowId;
+import org.apereo.portal.portlet.om.PortletLifecycleState;
+import org.apereo.portal.portlet.registry.IPortletWindowRegistry;
+import org.apereo.portal.security.IPerson;
+import org.apereo.portal.url.IPortalRequestInfo;
+import org.apereo.portal.url.IPortalUrlBuilder;
+import org.apereo.portal.url.IPortalUrlProvider;
+import org.apereo.portal.url.IUrlSyntaxProvider;
+import org.apereo.portal.url.UrlType;
+import org.apereo.portal.user.IUserInstance;
+import org.apereo.portal.user.IUserInstanceManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class JsonLayoutRendererTest {
+    private static final String LAYOUT =
+            "<layout>"
+                    + "<folder ID=\"root\" type=\"root\" hidden=\"false\">"
+                    + "<folder ID=\"s1\" type=\"header\" hidden=\"false\">"
+                    + "<channel ID=\"n1\" fname=\"login\" title=\"Login\"/>"
+                    + "</folder>"
+                    + "<folder ID=\"s2\" type=\"regular\" name=\"Welcome\" hidden=\"false\">"
+                    + "<folder ID=\"s3\" type=\"regular\" name=\"Column\" hidden=\"false\">"
+                    + "<channel ID=\"n2\" fname=\"news\" title=\"News\">"
+                    + "<parameter name=\"iconUrl\" value=\"/news.png\"/>"
+                    + "</channel>"
+                    + "</folder>"
+                    + "</folder>"
+                    + "<folder ID=\"s4\" type=\"regular\" name=\"Hidden\" hidden=\"true\"/>"
+                    + "</folder>"
+                    + "</layout>";
+
+    private final XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
+
+    private JsonLayoutRenderer renderer;
+    private IUserLayoutManager userLayoutManager;
+    private IPortletWindow newsWindow;
+    private IPortletExecutionEventFactory portalEventFactory;
+
+    @Before
+    public void setup() {
+        final IPerson person = mock(IPerson.class);
+        when(person.getUserName()).thenReturn("student");
+
+        final LocaleManager localeManager = mock(LocaleManager.class);
+        when(localeManager.getLocales()).thenReturn(Collections.singletonList(Locale.US));
+
+        userLayoutManager = mock(IUserLayoutManager.class);
+        when(userLayoutManager.getCacheKey()).thenReturn("layout-1");
+        when(userLayoutManager.getUserLayoutReader())
+                .thenAnswer(
+                        new Answer<XMLEventReader>() {
+                            @Override
+                            public XMLEventReader answer(InvocationOnMock invocation)
+                                    throws Throwable {
+                                return xmlInputFactory.createXMLEventReader(
+                                        new StringReader(LAYOUT));
+                            }
+                        });
+
+        final IUserPreferencesManager preferencesManager = mock(IUserPreferencesManager.class);
+        when(preferencesManager.getUserLayoutManager()).thenReturn(userLayoutManager);
+
+        final IUserInstance userInstance = mock(IUserInstance.class);
+        when(userInstance.getPerson()).thenReturn(person);
+        when(userInstance.getPreferencesManager()).thenReturn(preferencesManager);
+        when(userInstance.getLocaleManager()).thenReturn(localeManager);
+
+        final IUserInstanceManager userInstanceManager = mock(IUserInstanceManager.class);
+        when(userInstanceManager.getUserInstance(any(MockHttpServletRequest.class)))
+                .thenReturn(userInstance);
+
+        newsWindow = createPortletWindow("n2", "w2");
+        final IPortletWindowRegistry portletWindowRegistry = mock(IPortletWindowRegistry.class);
+        when(portletWindowRegistry.getAllLayoutPortletWindows(any(MockHttpServletRequest.class)))
+                .thenReturn(Collections.singleton(newsWindow));
+
+        final IPortalUrlBuilder portalUrlBuilder = mock(IPortalUrlBuilder.class);
+        when(portalUrlBuilder.getUrlString()).thenReturn("/uPortal/p/news.n2/max/render.uP");
+        final IPortalUrlProvider portalUrlProvider = mock(IPortalUrlProvider.class);
+        when(portalUrlProvider.getPortalUrlBuilderByLayoutNode(
+                        any(MockHttpServletRequest.class), anyString(), any(UrlType.class)))
+                .thenReturn(portalUrlBuilder);
+
+        portalEventFactory = mock(IPortletExecutionEventFactory.class);
+
+        renderer = new JsonLayoutRenderer();
+        renderer.setUserInstanceManager(userInstanceManager);
+        renderer.setPortletWindowRegistry(portletWindowRegistry);
+        renderer.setPortalUrlProvider(portalUrlProvider);
+        renderer.setUrlSyntaxProvider(mock(IUrlSyntaxProvider.class));
+        renderer.setPortalEventFactory(portalEventFactory);
+    }
+
+    private static IPortletWindow createPortletWindow(String layoutNodeId, String windowId) {
+        final IPortletDescriptorKey descriptorKey = mock(IPortletDescriptorKey.class);
+        when(descriptorKey.getPortletName()).thenReturn("NewsReader");
+        when(descriptorKey.getWebAppName()).thenReturn("/NewsReaderPortlet");
+
+        final IPortletDefinition portletDefinition = mock(IPortletDefinition.class);
+        when(portletDefinition.getLifecycleState()).thenReturn(PortletLifecycleState.PUBLISHED);
+        when(portletDefinition.getPortletDescriptorKey()).thenReturn(descriptorKey);
+
+        final IPortletEntity portletEntity = mock(IPortletEntity.class);
+        when(portletEntity.getLayoutNodeId()).thenReturn(layoutNodeId);
+        when(portletEntity.getPortletDefinition()).thenReturn(portletDefinition);
+
+        final IPortletWindowId portletWindowId = mock(IPortletWindowId.class);
+        when(portletWindowId.getStringId()).thenReturn(windowId);
+
+        final IPortletWindow portletWindow = mock(IPortletWindow.class);
+        when(portletWindow.getPortletWindowId()).thenReturn(portletWindowId);
+        when(portletWindow.getPortletEntity()).thenReturn(portletEntity);
+        when(portletWindow.getWindowState()).thenReturn(WindowState.NORMAL);
+        when(portletWindow.getPortletMode()).thenReturn(PortletMode.VIEW);
+        return portletWindow;
+    }
+
+    @Test
+    public void testRenderLayout() throws Exception {
+        final MockHttpServletRequest req = new MockHttpServletRequest();
+        req.setPathInfo("/v4-3/dlm/layout.json");
+        final MockHttpServletResponse res = new MockHttpServletResponse();
+        renderer.renderLayout(req, res);
+
+        assertEquals(HttpServletResponse.SC_OK, res.getStatus());
+        assertNotNull(res.getHeader("ETag"));
+
+        final JsonNode json = new ObjectMapper().readTree(res.getContentAsByteArray());
+        assertEquals("student", json.get("user").asText());
+        assertEquals("en_US", json.get("locale").asText());
+
+        final JsonNode layout = json.get("layout");
+        assertEquals("root", layout.get("globals").get("userLayoutRoot").asText());
+
+        final JsonNode regions = layout.get("regions");
+        assertEquals(1, regions.size());
+        assertEquals("header", regions.get(0).get("name").asText());
+        assertEquals("n1", regions.get(0).get("content").get(0).get("nodeId").asText());
+
+        final JsonNode tabs = layout.get("navigation").get("tabs");
+        assertEquals("Hidden tabs are not rendered", 1, tabs.size());
+        assertEquals("Welcome", tabs.get(0).get("name").asText());
+
+        final JsonNode portlet = tabs.get(0).get("content").get(0).get("content").get(0);
+        assertEquals("n2", portlet.get("nodeId").asText());
+        assertEquals("news", portlet.get("fname").asText());
+        assertEquals("normal", portlet.get("windowState").asText());
+        assertEquals("PUBLISHED", portlet.get("lifecycleState").asText());
+        assertEquals("/uPortal/p/news.n2/max/render.uP", portlet.get("url").asText());
+        assertEquals("/news.png", portlet.get("parameters").get("iconUrl").asText());
+
+        verify(portalEventFactory)
+                .publishPortalRenderEvent(
+                        eq(req),
+                        eq(renderer),
+                        eq("/v4-3/dlm/layout.json"),
+                        anyLong(),
+                        Matchers.<IPortalRequestInfo>any());
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        final MockHttpServletResponse first = new MockHttpServletResponse();
+        renderer.renderLayout(new MockHttpServletRequest(), first);
+        final String etag = first.getHeader("ETag");
+
+        final MockHttpServletRequest poll = new MockHttpServletRequest();
+        poll.addHeader("If-None-Match", etag);
+        final MockHttpServletResponse second = new MockHttpServletResponse();
+        renderer.renderLayout(poll, second);
+
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, second.getStatus());
+        assertEquals(etag, second.getHeader("ETag"));
+        assertEquals(0, second.getContentAsByteArray().length);
+        verify(userLayoutManager, times(1)).getUserLayoutReader();
+    }
+
+    @Test
+    public void testETagChanges() throws Exception {
+        final MockHttpServletResponse first = new MockHttpServletResponse();
+        renderer.renderLayout(new MockHttpServletRequest(), first);
+        final String etag = first.getHeader("ETag");
+
+        when(newsWindow.getWindowState()).thenReturn(WindowState.MAXIMIZED);
+        final MockHttpServletResponse windowStateChanged = new MockHttpServletResponse();
+        renderer.renderLayout(new MockHttpServletRequest(), windowStateChanged);
+        assertNotEquals(etag, windowStateChanged.getHeader("ETag"));
+
+        when(newsWindow.getWindowState()).thenReturn(WindowState.NORMAL);
+        when(userLayoutManager.getCacheKey()).thenReturn("layout-2");
+        final MockHttpServletRequest poll = new MockHttpServletRequest();
+        poll.addHeader("If-None-Match", etag);
+        final MockHttpServletResponse layoutChanged = new MockHttpServletResponse();
+        renderer.renderLayout(poll, layoutChanged);
+        assertEquals(HttpServletResponse.SC_OK, layoutChanged.getStatus());
+        assertNotEquals(etag, layoutChanged.getHeader("ETag"));
+    }
+
+    @Test
+    public void testETagChangesWithPortletDefinition() throws Exception {
+        final MockHttpServletResponse first = new MockHttpServletResponse();
+        renderer.renderLayout(new MockHttpServletRequest(), first);
+        final String etag = first.getHeader("ETag");
+
+        final IPortletDefinition portletDefinition =
+                newsWindow.getPortletEntity().getPortletDefinition();
+        when(portletDefinition.getTitle()).thenReturn("Campus News");
+        final MockHttpServletResponse titleChanged = new MockHttpServletResponse();
+        renderer.renderLayout(new MockHttpServletRequest(), titleChanged);
+        assertNotEquals(etag, titleChanged.getHeader("ETag"));
+
+        final IPortletDefinitionParameter parameter = mock(IPortletDefinitionParameter.class);
+        when(parameter.getName()).thenReturn("iconUrl");
+        when(parameter.getValue()).thenReturn("/campus-news.png");
+        when(portletDefinition.getParametersAsUnmodifiableMap())
+                .thenReturn(Collections.singletonMap("iconUrl", parameter));
+        final MockHttpServletResponse parameterChanged = new MockHttpServletResponse();
+        renderer.renderLayout(new MockHttpServletRequest(), parameterChanged);
+        assertNotEquals(titleChanged.getHeader("ETag"), parameterChanged.getHeader("ETag"));
+
+        when(portletDefinition.getLifecycleState()).thenReturn(PortletLifecycleState.MAINTENANCE);
+        final MockHttpServletRequest poll = new MockHttpServletRequest();
+        poll.addHeader("If-None-Match", parameterChanged.getHeader("ETag"));
+        final MockHttpServletResponse lifecycleChanged = new MockHttpServletResponse();
+        renderer.renderLayout(poll, lifecycleChanged);
+        assertEquals(HttpServletResponse.SC_OK, lifecycleChanged.getStatus());
+    }
+
+    @Test
+    public void testIsNotModified() {
+        assertFalse(JsonLayoutRenderer.isNotModified(null, "\"a\""));
+        assertFalse(JsonLayoutRenderer.isNotModified("\"b\"", "\"a\""));
+        assertTrue(JsonLayoutRenderer.isNotModified("\"b\", \"a\"", "\"a\""));
+        assertTrue(JsonLayoutRenderer.isNotModified("W/\"a\"", "\"a\""));
+        assertTrue(JsonLayoutRenderer.isNotModified("*", "\"a\""));
+    }
+}
@@ -14,15 +14,31 @@
  */
 package org.apereo.portal.json.rendering;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apereo.portal.character.stream.CharacterEventBufferReader;
+import org.apereo.portal.character.stream.CharacterEventReader;
+import org.apereo.portal.character.stream.events.CharacterDataEventImpl;
+import org.apereo.portal.character.stream.events.CharacterEvent;
 import org.apereo.portal.events.IPortletExecutionEventFactory;
 import org.apereo.portal.rendering.CharacterPipelineComponent;
+import org.apereo.portal.rendering.PipelineEventReaderImpl;
 import org.apereo.portal.url.IUrlSyntaxProvider;
+import org.apereo.portal.utils.cache.CacheKey;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
@@ -56,4 +72,58 @@ public class JsonLayoutRenderingPipelineTest {
         jsonLayoutRenderingPipeline.renderState(req, res);
         verify(urlSyntaxProvider).getPortalRequestInfo(req);
     }
+
+    @Test
+    public void testRenderStateNotModified() throws ServletException, IOException {
+        pipeline = mock(CharacterPipelineComponent.class);
+        jsonLayoutRenderingPipeline.setPipeline(pipeline);
+        when(pipeline.getCacheKey(req, res)).thenReturn(CacheKey.build("layout", "1"));
+        final String etag = jsonLayoutRenderingPipeline.getETag(req, res);
+        assertNotNull(etag);
+
+        req.addHeader("If-None-Match", etag);
+        jsonLayoutRenderingPipeline.renderState(req, res);
+
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, res.getStatus());
+        assertEquals(etag, res.getHeader("ETag"));
+        assertEquals("", res.getContentAsString());
+        verify(pipeline, never())
+                .getEventReader(any(HttpServletRequest.class), any(HttpServletResponse.class));
+    }
+
+    @Test
+    public void testRenderStateModified() throws ServletException, IOException {
+        pipeline = mock(CharacterPipelineComponent.class);
+        jsonLayoutRenderingPipeline.setPipeline(pipeline);
+        when(pipeline.getCacheKey(req, res)).thenReturn(CacheKey.build("layout", "1"));
+        final String oldEtag = jsonLayoutRenderingPipeline.getETag(req, res);
+        when(pipeline.getCacheKey(req, res)).thenReturn(CacheKey.build("layout", "2"));
+        when(pipeline.getEventReader(req, res))
+                .thenReturn(
+                        new PipelineEventReaderImpl<CharacterEventReader, CharacterEvent>(
+                                new CharacterEventBufferReader(
+                                        Collections.<CharacterEvent>singletonList(
+                                                        CharacterDataEventImpl.create("{}"))
+                                                .listIterator())));
+
+        req.addHeader("If-None-Match", oldEtag);
+        jsonLayoutRenderingPipeline.renderState(req, res);
+
+        assertEquals(HttpServletResponse.SC_OK, res.getStatus());
+        assertNotEquals(oldEtag, res.getHeader("ETag"));
+        assertEquals("{}", res.getContentAsString());
+    }
+
+    @Test
+    public void testNoETagForUnserializableCacheKey() {
+        pipeline = mock(CharacterPipelineComponent.class);
+        jsonLayoutRenderingPipeline.setPipeline(pipeline);
+        when(pipeline.getCacheKey(req, res))
+                .thenReturn(
+                        CacheKey.build(
+                                "layout",
+                                new ArrayList<Object>(Collections.singleton(new Object()))));
+
+        assertNull(jsonLayoutRenderingPipeline.getETag(req, res));
+    }
 }
@@ -18,6 +18,7 @@ import java.io.IOException;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.apereo.portal.json.rendering.JsonLayoutRenderer;
 import org.apereo.portal.layout.IStylesheetUserPreferencesService;
 import org.apereo.portal.portlet.registry.IPortletWindowRegistry;
 import org.apereo.portal.rendering.IPortalRenderingPipeline;
@@ -36,6 +37,7 @@ public class LayoutJsonV43RenderingControllerTest {
     @Mock private IPortalRenderingPipeline portalRenderingPipeline;
     @Mock private IPortletWindowRegistry portletWindowRegistry;
     @Mock private IStylesheetUserPreferencesService stylesheetUserPrefService;
+    @Mock private JsonLayoutRenderer jsonLayoutRenderer;
 
     @Before
     public void setup() {
@@ -45,8 +47,18 @@ public class LayoutJsonV43RenderingControllerTest {
 
     @Test
     public void testRenderRequest() throws IOException, ServletException {
+        controller.setStreamingRendererEnabled(false);
         controller.renderRequest(req, res);
         Mockito.verify(portletWindowRegistry).disablePersistentWindowStates(req);
         Mockito.verify(portalRenderingPipeline).renderState(req, res);
     }
+
+    @Test
+    public void testRenderRequestStreaming() throws IOException, ServletException {
+        controller.setStreamingRendererEnabled(true);
+        controller.renderRequest(req, res);
+        Mockito.verify(portletWindowRegistry).disablePersistentWindowStates(req);
+        Mockito.verify(jsonLayoutRenderer).renderLayout(req, res);
+        Mockito.verifyZeroInteractions(portalRenderingPipeline, stylesheetUserPrefService);
+    }
 }
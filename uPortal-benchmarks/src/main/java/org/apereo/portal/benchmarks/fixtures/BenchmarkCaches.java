@@ -0,0 +1,52 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.benchmarks.fixtures;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+
+/**
+ * Ehcache caches for the components under benchmark, held in a private {@link CacheManager} so the
+ * benchmarks do not depend on the portal's ehcache.xml.
+ */
+public class BenchmarkCaches {
+    private final CacheManager cacheManager;
+
+    public BenchmarkCaches(String name) {
+        final Configuration configuration = new Configuration();
+        configuration.setName(name + System.nanoTime());
+        configuration.setUpdateCheck(false);
+        configuration.setDefaultCacheConfiguration(new CacheConfiguration());
+        this.cacheManager = new CacheManager(configuration);
+    }
+
+    /** @return A new memory only cache, large enough that nothing is evicted while benchmarking */
+    public Cache createCache(String name) {
+        final Cache cache =
+                new Cache(
+                        new CacheConfiguration(name, 100000)
+                                .eternal(true)
+                                .overflowToDisk(false)
+                                .statistics(false));
+        this.cacheManager.addCache(cache);
+        return cache;
+    }
+
+    public void shutdown() {
+        this.cacheManager.shutdown();
+    }
+}
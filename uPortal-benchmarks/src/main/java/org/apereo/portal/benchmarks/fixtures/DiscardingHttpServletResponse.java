@@ -0,0 +1,56 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.benchmarks.fixtures;
+
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import javax.servlet.ServletOutputStream;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * A response that throws away its content. Like a servlet container it hands out the same output
+ * stream and writer every time, so only the work of producing the content is measured and not the
+ * buffering of it.
+ */
+public class DiscardingHttpServletResponse extends MockHttpServletResponse {
+    private final ServletOutputStream outputStream =
+            new ServletOutputStream() {
+                @Override
+                public void write(int b) {}
+
+                @Override
+                public void write(byte[] b, int off, int len) {}
+            };
+
+    private PrintWriter writer;
+    private String writerEncoding;
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws UnsupportedEncodingException {
+        final String characterEncoding = this.getCharacterEncoding();
+        if (this.writer == null || !characterEncoding.equals(this.writerEncoding)) {
+            this.writer =
+                    new PrintWriter(new OutputStreamWriter(this.outputStream, characterEncoding));
+            this.writerEncoding = characterEncoding;
+        }
+        return this.writer;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.benchmarks.fixtures;
+
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * A private in-memory HSQL database. Each instance gets its own database so benchmarks running in
+ * the same JVM never see each other's data; call {@link #shutdown()} to release it.
+ */
+public class HsqlDatabase {
+    private final DriverManagerDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceTransactionManager transactionManager;
+
+    public HsqlDatabase(String name) {
+        this.dataSource =
+                new DriverManagerDataSource(
+                        "jdbc:hsqldb:mem:" + name + System.nanoTime(), "sa", "");
+        this.dataSource.setDriverClassName("org.hsqldb.jdbc.JDBCDriver");
+        this.jdbcTemplate = new JdbcTemplate(this.dataSource);
+        this.transactionManager = new DataSourceTransactionManager(this.dataSource);
+    }
+
+    /** Run the DDL or DML statements, in order */
+    public HsqlDatabase execute(String... statements) {
+        for (final String statement : statements) {
+            this.jdbcTemplate.execute(statement);
+        }
+        return this;
+    }
+
+    public DataSource getDataSource() {
+        return this.dataSource;
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return this.jdbcTemplate;
+    }
+
+    public PlatformTransactionManager getTransactionManager() {
+        return this.transactionManager;
+    }
+
+    /** Drop the database */
+    public void shutdown() {
+        this.jdbcTemplate.execute("SHUTDOWN");
+    }
+}
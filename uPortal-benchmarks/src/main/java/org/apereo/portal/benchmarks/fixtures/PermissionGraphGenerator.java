@@ -0,0 +1,409 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.benchmarks.fixtures;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.apereo.portal.permission.IPermissionActivity;
+import org.apereo.portal.permission.IPermissionOwner;
+import org.apereo.portal.permission.dao.IPermissionOwnerDao;
+import org.apereo.portal.permission.target.IPermissionTarget;
+import org.apereo.portal.permission.target.IPermissionTarget.TargetType;
+import org.apereo.portal.permission.target.IPermissionTargetProvider;
+import org.apereo.portal.permission.target.IPermissionTargetProviderRegistry;
+import org.apereo.portal.permission.target.PermissionTargetImpl;
+import org.apereo.portal.permission.target.PermissionTargetProviderRegistryImpl;
+import org.apereo.portal.security.IAuthorizationPrincipal;
+import org.apereo.portal.security.IPermission;
+import org.apereo.portal.security.IPerson;
+import org.apereo.portal.security.provider.PermissionImpl;
+
+/**
+ * Generates a groups tree with permissions attached the way a campus portal typically has them: a
+ * root group, several levels of groups where each group may have more than one parent, and a user
+ * who is a member of some of the deepest groups. Groups at every level GRANT the benchmarked
+ * activity on some of the portlet targets and a few of the deepest groups DENY it.
+ *
+ * <p>Nobody holds the ALL_PERMISSIONS super-user permission, so a permission check has to walk the
+ * whole tree above the user before it can answer.
+ *
+ * <p>Generation is deterministic for a given seed so results stay comparable across runs.
+ */
+public class PermissionGraphGenerator {
+    public static final String OWNER = "UP_PORTLET_SUBSCRIBE";
+    public static final String ACTIVITY = "SUBSCRIBE";
+    public static final String TARGET_PROVIDER = "portletTargetProvider";
+
+    private static final int TARGETS_PER_GRANT = 5;
+
+    private final SyntheticAuthorizationService authorizationService =
+            new SyntheticAuthorizationService();
+    private final PermissionOwnerDao permissionOwnerDao = new PermissionOwnerDao();
+    private final PermissionTargetProvider targetProvider = new PermissionTargetProvider();
+    private final PermissionTargetProviderRegistryImpl targetProviderRegistry =
+            new PermissionTargetProviderRegistryImpl();
+    private final List<IPermissionTarget> targets = new ArrayList<>();
+    private final IAuthorizationPrincipal principal;
+    private int groupCount;
+
+    /**
+     * @param depth Number of group levels below the root group
+     * @param groupsPerLevel Number of groups on each level
+     * @param memberships Number of the deepest groups the user is a member of
+     * @param targetCount Number of portlet targets
+     * @param grantRatio Fraction of the groups that hold GRANTs
+     * @param seed Random seed
+     */
+    public PermissionGraphGenerator(
+            int depth,
+            int groupsPerLevel,
+            int memberships,
+            int targetCount,
+            double grantRatio,
+            long seed) {
+        final Random random = new Random(seed);
+
+        final Map<String, IPermissionTarget> providerTargets = new HashMap<>();
+        for (int i = 0; i < targetCount; i++) {
+            final IPermissionTarget target =
+                    new PermissionTargetImpl("PORTLET_ID_" + i, "Portlet " + i, TargetType.PORTLET);
+            this.targets.add(target);
+            providerTargets.put(target.getKey(), target);
+        }
+        for (final String collectiveKey :
+                new String[] {IPermission.ALL_TARGET, IPermission.ALL_PORTLETS_TARGET}) {
+            providerTargets.put(
+                    collectiveKey,
+                    new PermissionTargetImpl(collectiveKey, collectiveKey, TargetType.OTHER));
+        }
+        this.targetProvider.targets.putAll(providerTargets);
+        this.targetProviderRegistry.setProviders(
+                Collections.<String, IPermissionTargetProvider>singletonMap(
+                        TARGET_PROVIDER, this.targetProvider));
+
+        this.permissionOwnerDao.addActivity(
+                IPermission.PORTAL_SYSTEM, IPermission.ALL_PERMISSIONS_ACTIVITY);
+        this.permissionOwnerDao.addActivity(OWNER, ACTIVITY);
+
+        // Build the groups tree top down, every group below the root gets one or two parents
+        List<SyntheticGroupMember> parentLevel =
+                Collections.singletonList(this.newGroup(random, grantRatio, false));
+        for (int level = 0; level < depth; level++) {
+            final boolean deepest = level == depth - 1;
+            final List<SyntheticGroupMember> currentLevel = new ArrayList<>(groupsPerLevel);
+            for (int i = 0; i < groupsPerLevel; i++) {
+                final SyntheticGroupMember group = this.newGroup(random, grantRatio, deepest);
+                final int parents = Math.min(parentLevel.size(), 1 + random.nextInt(2));
+                for (int p = 0; p < parents; p++) {
+                    parentLevel.get(random.nextInt(parentLevel.size())).addChild(group);
+                }
+                currentLevel.add(group);
+            }
+            parentLevel = currentLevel;
+        }
+
+        final SyntheticGroupMember person = SyntheticGroupMember.newPerson("benchmark-user");
+        this.authorizationService.addMember(person);
+        for (int i = 0; i < memberships; i++) {
+            parentLevel.get(random.nextInt(parentLevel.size())).addChild(person);
+        }
+        this.principal = this.authorizationService.newPrincipal(person.getKey(), IPerson.class);
+    }
+
+    private SyntheticGroupMember newGroup(Random random, double grantRatio, boolean deepest) {
+        final SyntheticGroupMember group =
+                SyntheticGroupMember.newGroup("local." + this.groupCount++);
+        this.authorizationService.addMember(group);
+
+        final String principalString =
+                this.authorizationService.getPrincipalString(group.getType(), group.getKey());
+        if (random.nextDouble() < grantRatio) {
+            this.addPermissions(random, principalString, IPermission.PERMISSION_TYPE_GRANT);
+        }
+        if (deepest && random.nextDouble() < grantRatio / 4) {
+            this.addPermissions(random, principalString, IPermission.PERMISSION_TYPE_DENY);
+        }
+        return group;
+    }
+
+    private void addPermissions(Random random, String principalString, String type) {
+        final IPermission[] permissions = new IPermission[TARGETS_PER_GRANT];
+        for (int i = 0; i < permissions.length; i++) {
+            final PermissionImpl permission = new PermissionImpl(OWNER);
+            permission.setPrincipal(principalString);
+            permission.setActivity(ACTIVITY);
+            permission.setTarget(this.targets.get(random.nextInt(this.targets.size())).getKey());
+            permission.setType(type);
+            permissions[i] = permission;
+        }
+        this.authorizationService.addPermissions(permissions);
+    }
+
+    public SyntheticAuthorizationService getAuthorizationService() {
+        return this.authorizationService;
+    }
+
+    /** @return The principal of the user at the bottom of the groups tree */
+    public IAuthorizationPrincipal getPrincipal() {
+        return this.principal;
+    }
+
+    public IPermissionOwnerDao getPermissionOwnerDao() {
+        return this.permissionOwnerDao;
+    }
+
+    public IPermissionTargetProviderRegistry getTargetProviderRegistry() {
+        return this.targetProviderRegistry;
+    }
+
+    public IPermissionOwner getOwner() {
+        return this.permissionOwnerDao.getPermissionOwner(OWNER);
+    }
+
+    public IPermissionActivity getActivity() {
+        return this.permissionOwnerDao.getPermissionActivity(OWNER, ACTIVITY);
+    }
+
+    /** @return The portlet targets, excluding the collective targets */
+    public List<IPermissionTarget> getTargets() {
+        return Collections.unmodifiableList(this.targets);
+    }
+
+    /** @return The number of groups in the tree */
+    public int getGroupCount() {
+        return this.groupCount;
+    }
+
+    private static final class PermissionTargetProvider implements IPermissionTargetProvider {
+        private final Map<String, IPermissionTarget> targets = new HashMap<>();
+
+        @Override
+        public IPermissionTarget getTarget(String key) {
+            return this.targets.get(key);
+        }
+
+        @Override
+        public Collection<IPermissionTarget> searchTargets(String term) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class PermissionOwnerDao implements IPermissionOwnerDao {
+        private final Map<String, PermissionOwner> owners = new HashMap<>();
+
+        void addActivity(String ownerFname, String activityFname) {
+            PermissionOwner owner = this.owners.get(ownerFname);
+            if (owner == null) {
+                owner = new PermissionOwner((long) this.owners.size(), ownerFname);
+                this.owners.put(ownerFname, owner);
+            }
+            owner.activities.add(
+                    new PermissionActivity(
+                            (long) owner.activities.size(), activityFname, TARGET_PROVIDER));
+        }
+
+        @Override
+        public IPermissionOwner getPermissionOwner(String fname) {
+            return this.owners.get(fname);
+        }
+
+        @Override
+        public IPermissionActivity getPermissionActivity(String ownerFname, String activityFname) {
+            final PermissionOwner owner = this.owners.get(ownerFname);
+            if (owner == null) {
+                return null;
+            }
+            for (final IPermissionActivity activity : owner.activities) {
+                if (activity.getFname().equals(activityFname)) {
+                    return activity;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public IPermissionOwner getPermissionOwner(long id) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public IPermissionOwner getOrCreatePermissionOwner(String name, String fname) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<IPermissionOwner> getAllPermissionOwners() {
+            return new ArrayList<IPermissionOwner>(this.owners.values());
+        }
+
+        @Override
+        public IPermissionOwner saveOwner(IPermissionOwner owner) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public IPermissionActivity getPermissionActivity(long id) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public IPermissionActivity getPermissionActivity(long ownerId, String activityFname) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public IPermissionActivity getOrCreatePermissionActivity(
+                IPermissionOwner owner, String name, String fname, String targetProviderKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public IPermissionActivity savePermissionActivity(IPermissionActivity activity) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class PermissionOwner implements IPermissionOwner {
+        private final Long id;
+        private final Set<IPermissionActivity> activities = new LinkedHashSet<>();
+        private String fname;
+        private String name;
+        private String description;
+
+        PermissionOwner(Long id, String fname) {
+            this.id = id;
+            this.fname = fname;
+            this.name = fname;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+
+        @Override
+        public String getFname() {
+            return this.fname;
+        }
+
+        @Override
+        public void setFname(String fname) {
+            this.fname = fname;
+        }
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getDescription() {
+            return this.description;
+        }
+
+        @Override
+        public void setDescription(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public Set<IPermissionActivity> getActivities() {
+            return this.activities;
+        }
+
+        @Override
+        public void setActivities(Set<IPermissionActivity> activities) {
+            this.activities.clear();
+            this.activities.addAll(activities);
+        }
+    }
+
+    private static final class PermissionActivity implements IPermissionActivity {
+        private final Long id;
+        private String fname;
+        private String name;
+        private String description;
+        private String targetProviderKey;
+
+        PermissionActivity(Long id, String fname, String targetProviderKey) {
+            this.id = id;
+            this.fname = fname;
+            this.name = fname;
+            this.targetProviderKey = targetProviderKey;
+        }
+
+        @Override
+        public Long getId() {
+            return this.id;
+        }
+
+        @Override
+        public String getFname() {
+            return this.fname;
+        }
+
+        @Override
+        public void setFname(String fname) {
+            this.fname = fname;
+        }
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getDescription() {
+            return this.description;
+        }
+
+        @Override
+        public void setDescription(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String getTargetProviderKey() {
+            return this.targetProviderKey;
+        }
+
+        @Override
+        public void setTargetProviderKey(String targetProviderKey) {
+            this.targetProviderKey = targetProviderKey;
+        }
+
+        @Override
+        public int compareTo(IPermissionActivity other) {
+            return this.fname.compareTo(other.getFname());
+        }
+    }
+}
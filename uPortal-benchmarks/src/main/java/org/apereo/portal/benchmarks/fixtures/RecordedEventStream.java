@@ -0,0 +1,78 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.benchmarks.fixtures;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+import org.apereo.portal.xml.stream.XMLEventBufferReader;
+
+/**
+ * StAX events recorded once from an XML document and replayed from memory, so benchmarks measure
+ * the component consuming the events rather than the XML parser producing them.
+ */
+public final class RecordedEventStream {
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newFactory();
+
+    private final List<XMLEvent> events;
+
+    private RecordedEventStream(List<XMLEvent> events) {
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    /** Parse the XML document and record all of its events */
+    public static RecordedEventStream record(String xml) {
+        final List<XMLEvent> events = new ArrayList<>();
+        try {
+            final XMLEventReader eventReader =
+                    INPUT_FACTORY.createXMLEventReader(new StringReader(xml));
+            try {
+                while (eventReader.hasNext()) {
+                    events.add(eventReader.nextEvent());
+                }
+            } finally {
+                eventReader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("Failed to record events of: " + xml, e);
+        }
+        return new RecordedEventStream(events);
+    }
+
+    /** @return A new reader over the recorded events */
+    public XMLEventReader replay() {
+        return new XMLEventBufferReader(this.events.listIterator());
+    }
+
+    /** @return The recorded events */
+    public List<XMLEvent> getEvents() {
+        return this.events;
+    }
+
+    /** @return The number of recorded events */
+    public int size() {
+        return this.events.size();
+    }
+
+    @Override
+    public String toString() {
+        return "RecordedEventStream [events=" + this.events.size() + "]";
+    }
+}
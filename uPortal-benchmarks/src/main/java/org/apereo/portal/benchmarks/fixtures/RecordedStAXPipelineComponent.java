@@ -0,0 +1,49 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.benchmarks.fixtures;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.events.XMLEvent;
+import org.apereo.portal.rendering.PipelineEventReader;
+import org.apereo.portal.rendering.PipelineEventReaderImpl;
+import org.apereo.portal.rendering.StAXPipelineComponent;
+import org.apereo.portal.utils.cache.CacheKey;
+
+/**
+ * Start of a benchmark rendering pipeline, replays a {@link RecordedEventStream} in place of the
+ * user's layout for every request.
+ */
+public class RecordedStAXPipelineComponent implements StAXPipelineComponent {
+    private final RecordedEventStream eventStream;
+    private final CacheKey cacheKey;
+
+    public RecordedStAXPipelineComponent(String name, RecordedEventStream eventStream) {
+        this.eventStream = eventStream;
+        this.cacheKey = CacheKey.build(RecordedStAXPipelineComponent.class.getName(), name);
+    }
+
+    @Override
+    public CacheKey getCacheKey(HttpServletRequest request, HttpServletResponse response) {
+        return this.cacheKey;
+    }
+
+    @Override
+    public PipelineEventReader<XMLEventReader, XMLEvent> getEventReader(
+            HttpServletRequest request, HttpServletResponse response) {
+        return new PipelineEventReaderImpl<XMLEventReader, XMLEvent>(this.eventStream.replay());
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.benchmarks.fixtures;
+
+import java.util.Collection;
+import java.util.regex.MatchResult;
+import javax.servlet.http.HttpServletRequest;
+import org.apereo.portal.character.stream.BasePlaceholderEventSource;
+import org.apereo.portal.character.stream.events.CharacterDataEventImpl;
+import org.apereo.portal.character.stream.events.CharacterEvent;
+
+/**
+ * Chunks the portlet placeholders the synthetic theme writes, <code>{up-portlet-title(ID)}</code>
+ * and <code>{up-portlet-content(ID)}</code>, into a character event per placeholder. The portal's
+ * own placeholder event sources need a portlet window registry, which the benchmarks do without.
+ */
+public class SubscribeIdPlaceholderEventSource extends BasePlaceholderEventSource {
+    /** Pattern matching the title placeholder, group 1 is the subscribe id */
+    public static final String TITLE_PATTERN = "\\{up-portlet-title\\(([^\\)]+)\\)\\}";
+    /** Pattern matching the content placeholder, group 1 is the subscribe id */
+    public static final String CONTENT_PATTERN = "\\{up-portlet-content\\(([^\\)]+)\\)\\}";
+
+    private final String type;
+
+    public SubscribeIdPlaceholderEventSource(String type) {
+        this.type = type;
+    }
+
+    @Override
+    public void generateCharacterEvents(
+            HttpServletRequest servletRequest,
+            MatchResult matchResult,
+            Collection<CharacterEvent> eventBuffer) {
+        eventBuffer.add(
+                CharacterDataEventImpl.create("[" + this.type + ":" + matchResult.group(1) + "]"));
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.benchmarks.fixtures;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apereo.portal.AuthorizationException;
+import org.apereo.portal.groups.IGroupMember;
+import org.apereo.portal.portlet.om.IPortletDefinition;
+import org.apereo.portal.portlet.om.PortletLifecycleState;
+import org.apereo.portal.security.IAuthorizationPrincipal;
+import org.apereo.portal.security.IAuthorizationService;
+import org.apereo.portal.security.IPermission;
+import org.apereo.portal.security.IPermissionManager;
+import org.apereo.portal.security.IPermissionPolicy;
+import org.apereo.portal.security.IUpdatingPermissionManager;
+import org.apereo.portal.security.provider.AuthorizationPrincipalImpl;
+
+/**
+ * The parts of {@link IAuthorizationService} a {@link IPermissionPolicy} uses to walk the groups
+ * tree, backed by the in-memory {@link PermissionGraphGenerator} graph. Like {@code
+ * AuthorizationImpl} the permissions of a principal are held as one set and filtered per lookup.
+ * The methods that decide permissions themselves are left to the policy under benchmark and are not
+ * supported.
+ */
+public class SyntheticAuthorizationService implements IAuthorizationService {
+    private static final IPermission[] NO_PERMISSIONS = new IPermission[0];
+
+    private final Map<String, SyntheticGroupMember> members = new HashMap<>();
+    private final Map<String, List<IPermission>> permissions = new HashMap<>();
+
+    /** Register a group or person of the graph */
+    void addMember(SyntheticGroupMember member) {
+        this.members.put(this.getPrincipalString(member.getType(), member.getKey()), member);
+    }
+
+    @Override
+    public void addPermissions(IPermission[] newPermissions) {
+        for (final IPermission permission : newPermissions) {
+            List<IPermission> principalPermissions =
+                    this.permissions.get(permission.getPrincipal());
+            if (principalPermissions == null) {
+                principalPermissions = new ArrayList<>();
+                this.permissions.put(permission.getPrincipal(), principalPermissions);
+            }
+            principalPermissions.add(permission);
+        }
+    }
+
+    @Override
+    public IGroupMember getGroupMember(IAuthorizationPrincipal principal) {
+        return this.members.get(principal.getPrincipalString());
+    }
+
+    @Override
+    public IPermission[] getPermissionsForPrincipal(
+            IAuthorizationPrincipal principal, String owner, String activity, String target) {
+        final List<IPermission> principalPermissions =
+                this.permissions.get(principal.getPrincipalString());
+        if (principalPermissions == null) {
+            return NO_PERMISSIONS;
+        }
+
+        final List<IPermission> rslt = new ArrayList<>();
+        for (final IPermission permission : principalPermissions) {
+            if ((owner == null || owner.equals(permission.getOwner()))
+                    && (activity == null || activity.equals(permission.getActivity()))
+                    && (target == null || target.equals(permission.getTarget()))) {
+                rslt.add(permission);
+            }
+        }
+        return rslt.toArray(new IPermission[rslt.size()]);
+    }
+
+    @Override
+    public IAuthorizationPrincipal newPrincipal(String key, Class type) {
+        return new AuthorizationPrincipalImpl(key, type, this);
+    }
+
+    @Override
+    public IAuthorizationPrincipal newPrincipal(IGroupMember groupMember) {
+        return this.newPrincipal(groupMember.getKey(), groupMember.getType());
+    }
+
+    @Override
+    public String getPrincipalString(IAuthorizationPrincipal principal) {
+        return this.getPrincipalString(principal.getType(), principal.getKey());
+    }
+
+    String getPrincipalString(Class type, String key) {
+        return type.getSimpleName() + "." + key;
+    }
+
+    @Override
+    public boolean canPrincipalConfigure(
+            IAuthorizationPrincipal principal, String channelPublishId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean canPrincipalManage(IAuthorizationPrincipal principal, String channelPublishId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean canPrincipalManage(
+            IAuthorizationPrincipal principal, PortletLifecycleState state, String categoryId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean canPrincipalRender(IAuthorizationPrincipal principal, String channelPublishId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean canPrincipalBrowse(
+            IAuthorizationPrincipal principal, String portletDefinitionId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean canPrincipalBrowse(
+            IAuthorizationPrincipal principal, IPortletDefinition portlet) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<IPortletDefinition> getBrowsablePortlets(
+            IAuthorizationPrincipal principal, Collection<IPortletDefinition> portlets) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<IPortletDefinition> getSubscribablePortlets(
+            IAuthorizationPrincipal principal, Collection<IPortletDefinition> portlets) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean canPrincipalSubscribe(
+            IAuthorizationPrincipal principal, String channelPublishId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean doesPrincipalHavePermission(
+            IAuthorizationPrincipal principal, String owner, String activity, String target) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<String> getPermittedTargets(
+            IAuthorizationPrincipal principal,
+            String owner,
+            String activity,
+            Collection<String> targets) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IPermission[] getAllPermissionsForPrincipal(
+            IAuthorizationPrincipal principal, String owner, String activity, String target) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IPermission[] getPermissionsForOwner(String owner, String activity, String target) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IPermission newPermission(String owner, IAuthorizationPrincipal principal) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IPermissionManager newPermissionManager(String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IUpdatingPermissionManager newUpdatingPermissionManager(String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removePermissions(IPermission[] permissions) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void updatePermissions(IPermission[] permissions) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IAuthorizationPrincipal getPrincipal(IPermission permission)
+            throws AuthorizationException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean doesPrincipalHavePermission(
+            IAuthorizationPrincipal principal,
+            String owner,
+            String activity,
+            String target,
+            IPermissionPolicy policy) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.benchmarks.fixtures;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javax.naming.Name;
+import org.apereo.portal.EntityIdentifier;
+import org.apereo.portal.IBasicEntity;
+import org.apereo.portal.groups.IEntityGroup;
+import org.apereo.portal.groups.IGroupMember;
+import org.apereo.portal.groups.IIndividualGroupService;
+import org.apereo.portal.security.IPerson;
+
+/**
+ * In-memory group or person for the synthetic permission graph. Memberships are fixed when the
+ * graph is generated; the operations that would update a group store are not supported.
+ */
+public class SyntheticGroupMember implements IEntityGroup {
+    private final String key;
+    private final boolean group;
+    private final Set<IEntityGroup> parentGroups = new LinkedHashSet<>();
+    private final Set<IGroupMember> children = new LinkedHashSet<>();
+
+    private SyntheticGroupMember(String key, boolean group) {
+        this.key = key;
+        this.group = group;
+    }
+
+    public static SyntheticGroupMember newGroup(String key) {
+        return new SyntheticGroupMember(key, true);
+    }
+
+    public static SyntheticGroupMember newPerson(String key) {
+        return new SyntheticGroupMember(key, false);
+    }
+
+    @Override
+    public Set<IEntityGroup> getAncestorGroups() {
+        final Set<IEntityGroup> ancestors = new LinkedHashSet<>();
+        final Deque<IEntityGroup> pending = new ArrayDeque<>(this.parentGroups);
+        while (!pending.isEmpty()) {
+            final IEntityGroup ancestor = pending.pop();
+            if (ancestors.add(ancestor)) {
+                pending.addAll(ancestor.getParentGroups());
+            }
+        }
+        return ancestors;
+    }
+
+    @Override
+    public Set<IEntityGroup> getParentGroups() {
+        return Collections.unmodifiableSet(this.parentGroups);
+    }
+
+    @Override
+    public String getKey() {
+        return this.key;
+    }
+
+    @Override
+    public Class<? extends IBasicEntity> getLeafType() {
+        return IPerson.class;
+    }
+
+    @Override
+    public Class getType() {
+        return this.group ? IEntityGroup.class : IPerson.class;
+    }
+
+    @Override
+    public EntityIdentifier getUnderlyingEntityIdentifier() {
+        return new EntityIdentifier(this.key, this.group ? IEntityGroup.class : IPerson.class);
+    }
+
+    @Override
+    public EntityIdentifier getEntityIdentifier() {
+        return this.getUnderlyingEntityIdentifier();
+    }
+
+    @Override
+    public boolean isDeepMemberOf(IEntityGroup group) {
+        return this.getAncestorGroups().contains(group);
+    }
+
+    @Override
+    public boolean isGroup() {
+        return this.group;
+    }
+
+    @Override
+    public boolean isMemberOf(IEntityGroup group) {
+        return this.parentGroups.contains(group);
+    }
+
+    @Override
+    public IEntityGroup asGroup() {
+        return this.group ? this : null;
+    }
+
+    @Override
+    public boolean hasMembers() {
+        return !this.children.isEmpty();
+    }
+
+    @Override
+    public boolean contains(IGroupMember gm) {
+        return this.children.contains(gm);
+    }
+
+    @Override
+    public boolean deepContains(IGroupMember gm) {
+        return gm.isDeepMemberOf(this);
+    }
+
+    @Override
+    public Set<IGroupMember> getChildren() {
+        return Collections.unmodifiableSet(this.children);
+    }
+
+    @Override
+    public Set<IGroupMember> getDescendants() {
+        final Set<IGroupMember> descendants = new LinkedHashSet<>();
+        final Deque<IGroupMember> pending = new ArrayDeque<>(this.children);
+        while (!pending.isEmpty()) {
+            final IGroupMember descendant = pending.pop();
+            if (descendants.add(descendant) && descendant.isGroup()) {
+                pending.addAll(descendant.asGroup().getChildren());
+            }
+        }
+        return descendants;
+    }
+
+    /** Add a member while the graph is generated */
+    @Override
+    public void addChild(IGroupMember gm) {
+        if (!this.group) {
+            throw new UnsupportedOperationException(this.key + " is not a group");
+        }
+        final SyntheticGroupMember member = (SyntheticGroupMember) gm;
+        this.children.add(member);
+        member.parentGroups.add(this);
+    }
+
+    @Override
+    public void delete() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getCreatorID() {
+        return null;
+    }
+
+    @Override
+    public String getDescription() {
+        return null;
+    }
+
+    @Override
+    public String getLocalKey() {
+        return this.key;
+    }
+
+    @Override
+    public String getName() {
+        return this.key;
+    }
+
+    @Override
+    public Name getServiceName() {
+        return null;
+    }
+
+    @Override
+    public boolean isEditable() {
+        return false;
+    }
+
+    @Override
+    public void removeChild(IGroupMember gm) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setCreatorID(String userID) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setDescription(String name) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setName(String name) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void update() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void updateMembers() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setLocalGroupService(IIndividualGroupService groupService) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toString() {
+        return "SyntheticGroupMember [key=" + this.key + ", group=" + this.group + "]";
+    }
+}
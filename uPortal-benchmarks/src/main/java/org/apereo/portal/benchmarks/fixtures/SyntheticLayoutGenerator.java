@@ -0,0 +1,160 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.benchmarks.fixtures;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a DLM style user layout with a configurable number of tabs, columns and portlets. The
+ * layout is produced as the XML the theme transformation consumes along with the folder ids,
+ * portlet subscribe ids and request paths a user of that layout would generate.
+ *
+ * <p>Generation is deterministic for a given seed so results stay comparable across runs.
+ */
+public class SyntheticLayoutGenerator {
+    private static final String[] REQUEST_TYPES = {"render", "action", "resource"};
+    private static final String[] URL_STATES = {"normal", "max", "exclusive", "detached"};
+
+    private final int tabs;
+    private final int columnsPerTab;
+    private final int portletsPerColumn;
+    private final long seed;
+
+    private final List<String> tabIds = new ArrayList<>();
+    private final List<String> portletSubscribeIds = new ArrayList<>();
+    private final List<String> portletFnames = new ArrayList<>();
+    private final String layoutXml;
+
+    public SyntheticLayoutGenerator(int tabs, int columnsPerTab, int portletsPerColumn, long seed) {
+        this.tabs = tabs;
+        this.columnsPerTab = columnsPerTab;
+        this.portletsPerColumn = portletsPerColumn;
+        this.seed = seed;
+        this.layoutXml = this.generate();
+    }
+
+    /** @return The layout XML, a {@code layout} root containing tab and column folders */
+    public String getLayoutXml() {
+        return this.layoutXml;
+    }
+
+    /** @return The folder ids of the tabs in the layout */
+    public List<String> getTabIds() {
+        return Collections.unmodifiableList(this.tabIds);
+    }
+
+    /** @return The subscribe ids of every portlet in the layout, in document order */
+    public List<String> getPortletSubscribeIds() {
+        return Collections.unmodifiableList(this.portletSubscribeIds);
+    }
+
+    /** @return The fnames of every portlet in the layout, in document order */
+    public List<String> getPortletFnames() {
+        return Collections.unmodifiableList(this.portletFnames);
+    }
+
+    /**
+     * Generate request paths, relative to the portal context, as a user of this layout would
+     * request them: tab renders, maximized and exclusive portlets and portlet actions.
+     *
+     * @param count The number of paths to generate
+     */
+    public List<String> generateUrlPaths(int count) {
+        final Random random = new Random(this.seed);
+        final List<String> paths = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final String tabId = this.tabIds.get(random.nextInt(this.tabIds.size()));
+            final int portletIndex = random.nextInt(this.portletSubscribeIds.size());
+            final String portlet =
+                    this.portletFnames.get(portletIndex)
+                            + "."
+                            + this.portletSubscribeIds.get(portletIndex);
+            final String urlState = URL_STATES[random.nextInt(URL_STATES.length)];
+            final String requestType = REQUEST_TYPES[random.nextInt(REQUEST_TYPES.length)];
+
+            switch (i % 4) {
+                case 0:
+                    paths.add("/f/" + tabId + "/normal/render.uP");
+                    break;
+                case 1:
+                    paths.add("/f/" + tabId + "/p/" + portlet + "/max/render.uP");
+                    break;
+                case 2:
+                    paths.add("/p/" + portlet + "/" + urlState + "/" + requestType + ".uP");
+                    break;
+                default:
+                    paths.add("/f/" + tabId + "/p/" + portlet + "/" + requestType + ".uP");
+                    break;
+            }
+        }
+        return paths;
+    }
+
+    private String generate() {
+        final Random random = new Random(this.seed);
+        final StringBuilder xml = new StringBuilder();
+        int structId = 1;
+
+        xml.append("<layout><folder ID=\"u1l1s").append(structId++);
+        xml.append("\" type=\"root\" name=\"Root folder\" hidden=\"false\">");
+        for (int tab = 0; tab < this.tabs; tab++) {
+            final String tabId = "u1l1s" + structId++;
+            this.tabIds.add(tabId);
+            xml.append("<folder ID=\"").append(tabId).append("\" type=\"regular\" name=\"Tab ");
+            xml.append(tab + 1).append("\" hidden=\"false\">");
+
+            for (int column = 0; column < this.columnsPerTab; column++) {
+                xml.append("<folder ID=\"u1l1s").append(structId++);
+                xml.append("\" type=\"regular\" name=\"Column\" hidden=\"false\" width=\"");
+                xml.append(100 / this.columnsPerTab).append("%\">");
+
+                for (int portlet = 0; portlet < this.portletsPerColumn; portlet++) {
+                    final String subscribeId = "u1l1n" + structId++;
+                    final String fname = "portlet-" + random.nextInt(1000);
+                    this.portletSubscribeIds.add(subscribeId);
+                    this.portletFnames.add(fname);
+
+                    xml.append("<channel ID=\"").append(subscribeId);
+                    xml.append("\" fname=\"").append(fname);
+                    xml.append("\" title=\"Portlet ").append(subscribeId);
+                    xml.append("\" description=\"Synthetic portlet\" hidden=\"false\">");
+                    xml.append("<parameter name=\"showChrome\" value=\"true\"/>");
+                    xml.append("</channel>");
+                }
+                xml.append("</folder>");
+            }
+            xml.append("</folder>");
+        }
+        xml.append("</folder></layout>");
+
+        return xml.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "SyntheticLayoutGenerator [tabs="
+                + this.tabs
+                + ", columnsPerTab="
+                + this.columnsPerTab
+                + ", portletsPerColumn="
+                + this.portletsPerColumn
+                + ", seed="
+                + this.seed
+                + "]";
+    }
+}
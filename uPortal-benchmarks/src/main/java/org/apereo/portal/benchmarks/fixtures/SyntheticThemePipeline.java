@@ -0,0 +1,151 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.benchmarks.fixtures;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import org.apereo.portal.character.stream.CharacterEventSource;
+import org.apereo.portal.rendering.StAXSerializingComponent;
+import org.apereo.portal.rendering.xslt.XSLTComponent;
+import org.apereo.portal.xml.XmlUtilitiesImpl;
+import org.jasig.resourceserver.aggr.om.Included;
+import org.jasig.resourceserver.aggr.om.Resources;
+import org.jasig.resourceserver.utils.aggr.ResourcesElementsProvider;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.w3c.dom.NodeList;
+
+/**
+ * The theme end of the rendering pipeline, assembled from the portal's own components: a {@link
+ * SyntheticLayoutGenerator} layout replayed from a {@link RecordedEventStream}, transformed by an
+ * {@link XSLTComponent} and serialized and chunked by a {@link StAXSerializingComponent}. Caching
+ * components can be layered on top with {@link #getResourcesElementsProvider()}, which reports
+ * resource aggregation as enabled so the caches are used.
+ */
+public class SyntheticThemePipeline {
+    /** The theme stylesheet, writes the portlet placeholders the serializer chunks */
+    public static final String THEME_STYLESHEET =
+            "org/apereo/portal/benchmarks/synthetic-theme.xsl";
+
+    private final SyntheticLayoutGenerator layoutGenerator;
+    private final RecordedEventStream layoutEvents;
+    private final RecordedStAXPipelineComponent layoutComponent;
+    private final XSLTComponent themeComponent;
+    private final StAXSerializingComponent serializingComponent;
+
+    public SyntheticThemePipeline(SyntheticLayoutGenerator layoutGenerator) {
+        this.layoutGenerator = layoutGenerator;
+        this.layoutEvents = RecordedEventStream.record(layoutGenerator.getLayoutXml());
+        this.layoutComponent =
+                new RecordedStAXPipelineComponent(layoutGenerator.toString(), this.layoutEvents);
+
+        this.themeComponent = new XSLTComponent();
+        this.themeComponent.setBeanName("themeTransformComponent");
+        this.themeComponent.setResourceLoader(new DefaultResourceLoader());
+        this.themeComponent.setTransformerSource(
+                new TemplatesTransformerSource(new ClassPathResource(THEME_STYLESHEET)));
+        this.themeComponent.setWrappedComponent(this.layoutComponent);
+
+        final Map<String, CharacterEventSource> chunkingPatterns = new LinkedHashMap<>();
+        chunkingPatterns.put(
+                SubscribeIdPlaceholderEventSource.TITLE_PATTERN,
+                new SubscribeIdPlaceholderEventSource("title"));
+        chunkingPatterns.put(
+                SubscribeIdPlaceholderEventSource.CONTENT_PATTERN,
+                new SubscribeIdPlaceholderEventSource("content"));
+
+        this.serializingComponent = new StAXSerializingComponent();
+        this.serializingComponent.setXmlUtilities(new XmlUtilitiesImpl());
+        this.serializingComponent.setChunkingElements(
+                new LinkedHashMap<String, CharacterEventSource>());
+        this.serializingComponent.setChunkingPatterns(chunkingPatterns);
+        this.serializingComponent.setWrappedComponent(this.themeComponent);
+    }
+
+    public SyntheticLayoutGenerator getLayoutGenerator() {
+        return this.layoutGenerator;
+    }
+
+    /** @return The recorded events of the layout */
+    public RecordedEventStream getLayoutEvents() {
+        return this.layoutEvents;
+    }
+
+    /** @return The component replaying the layout */
+    public RecordedStAXPipelineComponent getLayoutComponent() {
+        return this.layoutComponent;
+    }
+
+    /** @return The component transforming the layout with the theme stylesheet */
+    public XSLTComponent getThemeComponent() {
+        return this.themeComponent;
+    }
+
+    /** @return The component serializing and chunking the theme output */
+    public StAXSerializingComponent getSerializingComponent() {
+        return this.serializingComponent;
+    }
+
+    /** @return A provider which reports resource aggregation as enabled */
+    public static ResourcesElementsProvider getResourcesElementsProvider() {
+        return new AggregatingResourcesElementsProvider();
+    }
+
+    private static final class AggregatingResourcesElementsProvider
+            implements ResourcesElementsProvider {
+
+        @Override
+        public Included getDefaultIncludedType() {
+            return Included.AGGREGATED;
+        }
+
+        @Override
+        public Included getIncludedType(HttpServletRequest request) {
+            return Included.AGGREGATED;
+        }
+
+        @Override
+        public void setDefaultIncludedType(Included includedType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String resolveResourceUrl(HttpServletRequest request, String url) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getResourcesParameter(
+                HttpServletRequest request, String skinXml, String name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public NodeList getResourcesXmlFragment(HttpServletRequest request, String skinXml) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getResourcesHtmlFragment(HttpServletRequest request, String skinXml) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Resources getResources(HttpServletRequest request, String skinXml) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
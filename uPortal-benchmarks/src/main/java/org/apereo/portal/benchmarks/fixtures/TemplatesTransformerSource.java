@@ -0,0 +1,66 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.benchmarks.fixtures;
+
+import java.io.IOException;
+import java.io.InputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import org.apereo.portal.rendering.xslt.TransformerSource;
+import org.apereo.portal.utils.cache.CacheKey;
+import org.springframework.core.io.Resource;
+
+/**
+ * {@link TransformerSource} for a single stylesheet, compiled once. Stands in for the theme and
+ * structure transformer sources which pick the stylesheet from the user's profile.
+ */
+public class TemplatesTransformerSource implements TransformerSource {
+    private final Templates templates;
+    private final CacheKey cacheKey;
+
+    public TemplatesTransformerSource(Resource stylesheet) {
+        try (InputStream stylesheetStream = stylesheet.getInputStream()) {
+            this.templates =
+                    TransformerFactory.newInstance()
+                            .newTemplates(
+                                    new StreamSource(
+                                            stylesheetStream, stylesheet.getURI().toString()));
+        } catch (IOException | TransformerConfigurationException e) {
+            throw new IllegalArgumentException("Failed to compile " + stylesheet, e);
+        }
+        this.cacheKey =
+                CacheKey.build(
+                        TemplatesTransformerSource.class.getName(), stylesheet.getDescription());
+    }
+
+    @Override
+    public Transformer getTransformer(HttpServletRequest request, HttpServletResponse response) {
+        try {
+            return this.templates.newTransformer();
+        } catch (TransformerConfigurationException e) {
+            throw new RuntimeException("Failed to create Transformer", e);
+        }
+    }
+
+    @Override
+    public CacheKey getCacheKey(HttpServletRequest request, HttpServletResponse response) {
+        return this.cacheKey;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.layout.dlm;
+
+import java.util.concurrent.TimeUnit;
+import org.apereo.portal.benchmarks.fixtures.HsqlDatabase;
+import org.apereo.portal.security.provider.PersonImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Handing out layout struct ids while a user edits their layout, against an in-memory database. A
+ * block size of 1 reserves every id in the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+public class StructIdAllocationBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int structIdBlockSize;
+
+    private HsqlDatabase database;
+    private RDBMDistributedLayoutStore layoutStore;
+    private PersonImpl person;
+
+    @Setup
+    public void setUp() {
+        this.database =
+                new HsqlDatabase("StructIdAllocationBenchmark")
+                        .execute(
+                                "CREATE TABLE UP_USER (USER_ID INTEGER, NEXT_STRUCT_ID INTEGER)",
+                                "INSERT INTO UP_USER VALUES (1, 0)");
+
+        this.layoutStore = new RDBMDistributedLayoutStore();
+        this.layoutStore.setPlatformTransactionManager(this.database.getTransactionManager());
+        this.layoutStore.setDataSource(this.database.getDataSource());
+        this.layoutStore.setStructIdBlockSize(this.structIdBlockSize);
+
+        this.person = new PersonImpl();
+        this.person.setID(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.database.shutdown();
+    }
+
+    @Benchmark
+    public String generateNewFolderId() {
+        return this.layoutStore.generateNewFolderId(this.person);
+    }
+}
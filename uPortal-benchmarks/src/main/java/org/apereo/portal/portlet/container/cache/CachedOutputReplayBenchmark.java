@@ -0,0 +1,121 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.container.cache;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apereo.portal.benchmarks.fixtures.DiscardingHttpServletResponse;
+import org.apereo.portal.portlet.rendering.RenderPortletOutputHandler;
+import org.apereo.portal.portlet.rendering.ResourcePortletOutputHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replaying cached portlet output on a cache hit, as {@code PortletRendererImpl} does for render
+ * and resource requests. Each pair compares replaying {@link CachedPortletData} against writing the
+ * cached characters the way every hit did before: copied through the render buffer, or encoded by
+ * the response writer. Run with {@code -prof gc} to see the allocation per hit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CachedOutputReplayBenchmark {
+    private static final String CHARACTER_ENCODING = "UTF-8";
+
+    /** Number of characters of cached portlet output */
+    @Param({"4096", "65536"})
+    public int outputSize;
+
+    private String output;
+    private CachedPortletData<Long> renderData;
+    private CachedPortletResourceData<Long> resourceData;
+    private CachedPortletResourceData<Long> characterResourceData;
+    private DiscardingHttpServletResponse response;
+
+    @Setup
+    public void setUp() throws IOException {
+        final StringBuilder markup = new StringBuilder(this.outputSize + 64);
+        for (int row = 0; markup.length() < this.outputSize; row++) {
+            markup.append("<tr><td class=\"name\">Entry ").append(row);
+            markup.append("</td><td>Résumé, café &amp; naïveté</td></tr>\n");
+        }
+        this.output = markup.substring(0, this.outputSize);
+
+        this.renderData =
+                new CachedPortletData<Long>(1L, this.output, null, "text/html", false, null, 300);
+
+        // Cached the way a resource request caches its output
+        final CachingPortletResourceOutputHandler cachingHandler =
+                new CachingPortletResourceOutputHandler(
+                        new ResourcePortletOutputHandler(new DiscardingHttpServletResponse()),
+                        Integer.MAX_VALUE);
+        cachingHandler.setCharacterEncoding(CHARACTER_ENCODING);
+        final PrintWriter writer = cachingHandler.getPrintWriter();
+        writer.write(this.output);
+        writer.flush();
+        this.resourceData = cachingHandler.getCachedPortletResourceData(1L, new CacheControlImpl());
+
+        final Map<String, List<Serializable>> headers = Collections.emptyMap();
+        this.characterResourceData =
+                new CachedPortletResourceData<Long>(
+                        this.renderData, headers, null, CHARACTER_ENCODING, null, null);
+
+        this.response = new DiscardingHttpServletResponse();
+    }
+
+    @Benchmark
+    public String replayRender() throws IOException {
+        final RenderPortletOutputHandler handler =
+                new RenderPortletOutputHandler(CHARACTER_ENCODING);
+        this.renderData.replay(handler);
+        return handler.getOutput();
+    }
+
+    @Benchmark
+    public String copyRender() {
+        final RenderPortletOutputHandler handler =
+                new RenderPortletOutputHandler(CHARACTER_ENCODING);
+        handler.getPrintWriter().write(this.output);
+        return handler.getOutput();
+    }
+
+    @Benchmark
+    public void replayResource() throws IOException {
+        this.resourceData.replay(new ResourcePortletOutputHandler(this.response));
+    }
+
+    @Benchmark
+    public void encodeResource() throws IOException {
+        this.characterResourceData.replay(new ResourcePortletOutputHandler(this.response));
+        this.response.getWriter().flush();
+    }
+}
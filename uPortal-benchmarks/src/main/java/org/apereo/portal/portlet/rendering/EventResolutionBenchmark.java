@@ -0,0 +1,176 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.xml.namespace.QName;
+import org.apereo.portal.portlet.om.AbstractObjectId;
+import org.apereo.portal.portlet.om.IPortletDefinitionId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolving the portlets that process a published event, as {@link
+ * PortletEventCoordinatationService} does for every event. Compares the {@link
+ * PortletEventRoutingIndex} against scanning the supported processing events each portlet
+ * descriptor declares.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EventResolutionBenchmark {
+    private static final String[] NAMESPACES = {
+        "https://source.jasig.org/schemas/uportal/search",
+        "https://source.jasig.org/schemas/uportal/events",
+        "urn:example:news",
+        "urn:example:calendar"
+    };
+
+    /** Number of portlet definitions in the registry */
+    @Param({"100", "1000"})
+    public int portlets;
+
+    private PortletEventRoutingIndex routingIndex;
+    private List<DeclaredEvents> declaredEvents;
+    private QName[] publishedEvents;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        this.routingIndex = new PortletEventRoutingIndex();
+        this.declaredEvents = new ArrayList<>(this.portlets);
+
+        for (int i = 0; i < this.portlets; i++) {
+            final IPortletDefinitionId portletDefinitionId = new PortletDefinitionId(i);
+            final DeclaredEvents declared = new DeclaredEvents(portletDefinitionId);
+            this.declaredEvents.add(declared);
+            this.routingIndex.addIndexed(portletDefinitionId);
+
+            // Most portlets process no events, a few process several
+            final int supportedEvents = random.nextInt(10) < 7 ? 0 : 1 + random.nextInt(4);
+            for (int e = 0; e < supportedEvents; e++) {
+                final String namespace = NAMESPACES[random.nextInt(NAMESPACES.length)];
+                final String localPart =
+                        random.nextInt(10) == 0
+                                ? "topic"
+                                        + random.nextInt(5)
+                                        + "."
+                                        + PortletEventRoutingIndex.WILDCARD
+                                : "event" + random.nextInt(50);
+                final QName supportedEvent = new QName(namespace, localPart);
+                declared.supportedEvents.add(supportedEvent);
+                this.routingIndex.addRoute(supportedEvent, portletDefinitionId);
+            }
+        }
+
+        this.publishedEvents = new QName[256];
+        for (int i = 0; i < this.publishedEvents.length; i++) {
+            final String namespace = NAMESPACES[random.nextInt(NAMESPACES.length)];
+            final String localPart =
+                    random.nextBoolean()
+                            ? "event" + random.nextInt(60)
+                            : "topic" + random.nextInt(5) + ".item" + random.nextInt(5);
+            this.publishedEvents[i] = new QName(namespace, localPart);
+        }
+    }
+
+    private QName nextEvent() {
+        final QName eventName = this.publishedEvents[this.next];
+        this.next = (this.next + 1) % this.publishedEvents.length;
+        return eventName;
+    }
+
+    @Benchmark
+    public Set<IPortletDefinitionId> routingIndex() {
+        return this.routingIndex.getTargets(this.nextEvent());
+    }
+
+    @Benchmark
+    public Set<IPortletDefinitionId> scanDescriptors() {
+        final QName eventName = this.nextEvent();
+        final Set<IPortletDefinitionId> targets = new LinkedHashSet<>();
+        for (final DeclaredEvents declared : this.declaredEvents) {
+            if (declared.supports(eventName)) {
+                targets.add(declared.portletDefinitionId);
+            }
+        }
+        return targets;
+    }
+
+    /** The supported processing events of a portlet descriptor */
+    private static final class DeclaredEvents {
+        private final IPortletDefinitionId portletDefinitionId;
+        private final List<QName> supportedEvents = new ArrayList<>();
+
+        DeclaredEvents(IPortletDefinitionId portletDefinitionId) {
+            this.portletDefinitionId = portletDefinitionId;
+        }
+
+        boolean supports(QName eventName) {
+            for (final QName supportedEvent : this.supportedEvents) {
+                final String localPart = supportedEvent.getLocalPart();
+                if (localPart.endsWith(PortletEventRoutingIndex.WILDCARD)) {
+                    final String prefix =
+                            localPart.substring(
+                                    0,
+                                    localPart.length()
+                                            - PortletEventRoutingIndex.WILDCARD.length());
+                    if (supportedEvent.getNamespaceURI().equals(eventName.getNamespaceURI())
+                            && eventName.getLocalPart().startsWith(prefix)) {
+                        return true;
+                    }
+                } else if (supportedEvent.equals(eventName)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class PortletDefinitionId extends AbstractObjectId
+            implements IPortletDefinitionId {
+        private static final long serialVersionUID = 1L;
+
+        private final long id;
+
+        PortletDefinitionId(long id) {
+            super(String.valueOf(id));
+            this.id = id;
+        }
+
+        @Override
+        public long getLongId() {
+            return this.id;
+        }
+    }
+}
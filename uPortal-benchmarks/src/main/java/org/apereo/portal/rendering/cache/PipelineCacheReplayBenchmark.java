@@ -0,0 +1,117 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering.cache;
+
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import org.apereo.portal.benchmarks.fixtures.BenchmarkCaches;
+import org.apereo.portal.benchmarks.fixtures.SyntheticLayoutGenerator;
+import org.apereo.portal.benchmarks.fixtures.SyntheticThemePipeline;
+import org.apereo.portal.character.stream.CharacterEventReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Replaying cached pipeline output, which is what renders most pages: the StAX events cached after
+ * the theme transformation and the character events cached after serialization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PipelineCacheReplayBenchmark {
+
+    /** Number of portlets in each column of the layout */
+    @Param({"2", "10"})
+    public int portletsPerColumn;
+
+    private BenchmarkCaches caches;
+    private CachingStAXPipelineComponent staxCachingComponent;
+    private CachingCharacterPipelineComponent characterCachingComponent;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setUp() {
+        final SyntheticThemePipeline pipeline =
+                new SyntheticThemePipeline(
+                        new SyntheticLayoutGenerator(8, 3, this.portletsPerColumn, 42));
+        this.caches = new BenchmarkCaches("PipelineCacheReplayBenchmark");
+
+        this.staxCachingComponent = new CachingStAXPipelineComponent();
+        this.staxCachingComponent.setBeanName("themeTransformCachingComponent");
+        this.staxCachingComponent.setCache(this.caches.createCache("themeTransformCache"));
+        this.staxCachingComponent.setResourcesElementsProvider(
+                SyntheticThemePipeline.getResourcesElementsProvider());
+        this.staxCachingComponent.setWrappedComponent(pipeline.getThemeComponent());
+
+        this.characterCachingComponent = new CachingCharacterPipelineComponent();
+        this.characterCachingComponent.setBeanName("staxSerializingCachingComponent");
+        this.characterCachingComponent.setCache(this.caches.createCache("serializingCache"));
+        this.characterCachingComponent.setResourcesElementsProvider(
+                SyntheticThemePipeline.getResourcesElementsProvider());
+        this.characterCachingComponent.setWrappedComponent(pipeline.getSerializingComponent());
+
+        this.request = new MockHttpServletRequest();
+        this.response = new MockHttpServletResponse();
+
+        // Fill the caches, the benchmarks only measure replay
+        this.staxCachingComponent.getEventReader(this.request, this.response);
+        this.characterCachingComponent.getEventReader(this.request, this.response);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.caches.shutdown();
+    }
+
+    @Benchmark
+    public void replayStAXEvents(Blackhole blackhole) throws XMLStreamException {
+        final XMLEventReader eventReader =
+                this.staxCachingComponent
+                        .getEventReader(this.request, this.response)
+                        .getEventReader();
+        while (eventReader.hasNext()) {
+            blackhole.consume(eventReader.nextEvent());
+        }
+    }
+
+    @Benchmark
+    public void replayCharacterEvents(Blackhole blackhole) {
+        final CharacterEventReader eventReader =
+                this.characterCachingComponent
+                        .getEventReader(this.request, this.response)
+                        .getEventReader();
+        while (eventReader.hasNext()) {
+            blackhole.consume(eventReader.next());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering.xslt;
+
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import org.apereo.portal.benchmarks.fixtures.SyntheticLayoutGenerator;
+import org.apereo.portal.benchmarks.fixtures.SyntheticThemePipeline;
+import org.apereo.portal.character.stream.CharacterEventReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Rendering a page when nothing is cached: the theme transformation of a recorded layout by the
+ * {@link XSLTComponent}, on its own and followed by serializing and chunking the result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ThemeTransformationBenchmark {
+
+    /** Number of portlets in each column of the layout */
+    @Param({"2", "10"})
+    public int portletsPerColumn;
+
+    private SyntheticThemePipeline pipeline;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setUp() {
+        this.pipeline =
+                new SyntheticThemePipeline(
+                        new SyntheticLayoutGenerator(8, 3, this.portletsPerColumn, 42));
+        this.request = new MockHttpServletRequest();
+        this.response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public void transform(Blackhole blackhole) throws XMLStreamException {
+        final XMLEventReader eventReader =
+                this.pipeline
+                        .getThemeComponent()
+                        .getEventReader(this.request, this.response)
+                        .getEventReader();
+        while (eventReader.hasNext()) {
+            blackhole.consume(eventReader.nextEvent());
+        }
+    }
+
+    @Benchmark
+    public void transformAndSerialize(Blackhole blackhole) {
+        final CharacterEventReader eventReader =
+                this.pipeline
+                        .getSerializingComponent()
+                        .getEventReader(this.request, this.response)
+                        .getEventReader();
+        while (eventReader.hasNext()) {
+            blackhole.consume(eventReader.next());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.security.provider;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import net.sf.ehcache.Cache;
+import org.apereo.portal.benchmarks.fixtures.BenchmarkCaches;
+import org.apereo.portal.benchmarks.fixtures.PermissionGraphGenerator;
+import org.apereo.portal.permission.IPermissionActivity;
+import org.apereo.portal.permission.IPermissionOwner;
+import org.apereo.portal.permission.target.IPermissionTarget;
+import org.apereo.portal.security.IAuthorizationPrincipal;
+import org.apereo.portal.security.IAuthorizationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Deciding which of a collection of portlets a user may subscribe to with the {@link
+ * AnyUnblockedGrantPermissionPolicy}, the way the portlet browse and subscribe checks do, over a
+ * generated groups tree. Compares checking each target on its own against the bulk evaluation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PermissionCheckBenchmark {
+
+    /** Number of group levels above the user */
+    @Param({"3", "6"})
+    public int depth;
+
+    /** Whether the policy's cache of previous answers is emptied before every invocation */
+    @Param({"true", "false"})
+    public boolean coldCache;
+
+    private BenchmarkCaches caches;
+    private Cache hasUnblockedGrantCache;
+    private AnyUnblockedGrantPermissionPolicy policy;
+    private IAuthorizationService authorizationService;
+    private IAuthorizationPrincipal principal;
+    private IPermissionOwner owner;
+    private IPermissionActivity activity;
+    private List<IPermissionTarget> targets;
+
+    @Setup
+    public void setUp() {
+        final PermissionGraphGenerator graph =
+                new PermissionGraphGenerator(this.depth, 25, 4, 200, 0.3, 42);
+        this.authorizationService = graph.getAuthorizationService();
+        this.principal = graph.getPrincipal();
+        this.owner = graph.getOwner();
+        this.activity = graph.getActivity();
+        this.targets = graph.getTargets();
+
+        this.caches = new BenchmarkCaches("PermissionCheckBenchmark");
+        this.hasUnblockedGrantCache = this.caches.createCache("hasUnblockedGrantCache");
+
+        this.policy = new AnyUnblockedGrantPermissionPolicy();
+        ReflectionTestUtils.setField(
+                this.policy, "permissionOwnerDao", graph.getPermissionOwnerDao());
+        ReflectionTestUtils.setField(
+                this.policy, "targetProviderRegistry", graph.getTargetProviderRegistry());
+        ReflectionTestUtils.setField(
+                this.policy, "hasUnblockedGrantCache", this.hasUnblockedGrantCache);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        if (this.coldCache) {
+            this.hasUnblockedGrantCache.removeAll();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.caches.shutdown();
+    }
+
+    @Benchmark
+    public void checkEachTarget(Blackhole blackhole) {
+        for (final IPermissionTarget target : this.targets) {
+            blackhole.consume(
+                    this.policy.doesPrincipalHavePermission(
+                            this.authorizationService,
+                            this.principal,
+                            this.owner,
+                            this.activity,
+                            target));
+        }
+    }
+
+    @Benchmark
+    public Set<IPermissionTarget> getPermittedTargets() {
+        return this.policy.getPermittedTargets(
+                this.authorizationService, this.principal, this.owner, this.activity, this.targets);
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.url;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apereo.portal.benchmarks.fixtures.SyntheticLayoutGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of portal request paths by {@link UrlSyntaxProviderImpl}, both parsing every path and
+ * looking the parsed template up in the provider's cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UrlParsingBenchmark {
+
+    /** Number of distinct paths requested, more than fit the provider's cache for the largest */
+    @Param({"100", "5000"})
+    public int distinctPaths;
+
+    private UrlSyntaxProviderImpl urlSyntaxProvider;
+    private String[] paths;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final SyntheticLayoutGenerator layoutGenerator = new SyntheticLayoutGenerator(8, 3, 5, 42);
+        final List<String> generatedPaths = layoutGenerator.generateUrlPaths(this.distinctPaths);
+        this.paths = generatedPaths.toArray(new String[generatedPaths.size()]);
+        this.urlSyntaxProvider = new UrlSyntaxProviderImpl();
+    }
+
+    private String nextPath() {
+        final String path = this.paths[this.next];
+        this.next = (this.next + 1) % this.paths.length;
+        return path;
+    }
+
+    @Benchmark
+    public UrlPathTemplate parse() {
+        return UrlPathTemplate.parse(this.nextPath());
+    }
+
+    @Benchmark
+    public UrlPathTemplate cachedTemplate() {
+        return this.urlSyntaxProvider.getUrlPathTemplate(this.nextPath());
+    }
+}
@@ -0,0 +1,70 @@
+<?xml version="1.0" encoding="utf-8"?>
+<!--
+
+    Licensed to Apereo under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Apereo licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License.  You may obtain a
+    copy of the License at the following location:
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+
+-->
+<!--
+ | Theme stylesheet for the benchmarks. Renders the tab navigation and the columns of the first
+ | tab of a synthetic layout the way the Respondr theme does, with the portlet title and content
+ | written as placeholders for the chunking serializer.
+ +-->
+<xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+  <xsl:output method="xml" indent="no" media-type="text/html" omit-xml-declaration="yes"/>
+
+  <xsl:template match="/">
+    <html>
+      <head><title>uPortal</title></head>
+      <body>
+        <ul class="nav">
+          <xsl:apply-templates select="layout/folder/folder" mode="tab"/>
+        </ul>
+        <div class="layout">
+          <xsl:apply-templates select="layout/folder/folder[1]/folder" mode="column"/>
+        </div>
+      </body>
+    </html>
+  </xsl:template>
+
+  <xsl:template match="folder" mode="tab">
+    <li id="portalNavigation_{@ID}">
+      <xsl:if test="position() = 1">
+        <xsl:attribute name="class">active</xsl:attribute>
+      </xsl:if>
+      <a href="f/{@ID}/normal/render.uP"><xsl:value-of select="@name"/></a>
+    </li>
+  </xsl:template>
+
+  <xsl:template match="folder" mode="column">
+    <div id="column_{@ID}" class="portal-page-column" style="width: {@width}">
+      <xsl:apply-templates select="channel"/>
+    </div>
+  </xsl:template>
+
+  <xsl:template match="channel">
+    <section id="portlet_{@ID}" class="up-portlet-wrapper {@fname}">
+      <h2 class="up-portlet-title">{up-portlet-title(<xsl:value-of select="@ID"/>)}</h2>
+      <div class="up-portlet-content-wrapper">{up-portlet-content(<xsl:value-of select="@ID"/>)}</div>
+      <xsl:if test="parameter[@name = 'showChrome']/@value = 'true'">
+        <div class="up-portlet-options">
+          <a href="p/{@fname}.{@ID}/max/render.uP">Maximize</a>
+        </div>
+      </xsl:if>
+    </section>
+  </xsl:template>
+</xsl:stylesheet>
@@ -14,6 +14,7 @@
  */
 package org.apereo.portal.portlet.dao;
 
+import java.util.Collection;
 import javax.servlet.http.Cookie;
 import org.apereo.portal.portlet.om.IPortalCookie;
 import org.apereo.portal.portlet.om.IPortletCookie;
@@ -52,6 +53,16 @@ public interface IPortletCookieDao {
      */
     IPortalCookie addOrUpdatePortletCookie(IPortalCookie portalCookie, Cookie cookie);
 
+    /**
+     * Apply a batch of coalesced updates in a single transaction. Updates for portal cookies that
+     * no longer exist are skipped.
+     *
+     * @param updates The updates to apply, at most one per portal cookie
+     * @return The number of portal cookies that were updated
+     * @since 5.3
+     */
+    int applyPortalCookieUpdates(Collection<PortalCookieUpdate> updates);
+
     /**
      * Intended for periodic execution, this method will delete all {@link IPortalCookie}s and
      * {@link IPortletCookie}s from persistence that have expired.
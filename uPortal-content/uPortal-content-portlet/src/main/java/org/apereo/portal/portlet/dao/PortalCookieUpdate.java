@@ -0,0 +1,77 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.servlet.http.Cookie;
+import org.apereo.portal.portlet.om.IPortalCookie;
+import org.apereo.portal.portlet.om.IPortletCookie;
+
+/**
+ * Coalesced set of changes to a single {@link IPortalCookie}, applied as a unit by {@link
+ * IPortletCookieDao#applyPortalCookieUpdates(java.util.Collection)}. Contains an optional refresh
+ * of the portal cookie expiration and the latest state of each {@link IPortletCookie} that was set,
+ * in the order the portlet cookies were first set.
+ *
+ * @since 5.3
+ */
+public final class PortalCookieUpdate {
+    private final String portalCookieValue;
+    private final int maxAge;
+    private final List<Cookie> portletCookies;
+
+    /**
+     * @param portalCookieValue The value of the portal cookie to update
+     * @param maxAge The new max age of the portal cookie in seconds, a negative value leaves the
+     *     expiration unchanged
+     * @param portletCookies Portlet cookies to add, update or (with a max age of 0) delete
+     */
+    public PortalCookieUpdate(String portalCookieValue, int maxAge, List<Cookie> portletCookies) {
+        this.portalCookieValue = portalCookieValue;
+        this.maxAge = maxAge;
+        this.portletCookies = Collections.unmodifiableList(new ArrayList<Cookie>(portletCookies));
+    }
+
+    public String getPortalCookieValue() {
+        return this.portalCookieValue;
+    }
+
+    /** @return true if the expiration of the portal cookie should be refreshed */
+    public boolean isExpirationUpdate() {
+        return this.maxAge >= 0;
+    }
+
+    /** @return The new max age of the portal cookie in seconds */
+    public int getMaxAge() {
+        return this.maxAge;
+    }
+
+    public List<Cookie> getPortletCookies() {
+        return this.portletCookies;
+    }
+
+    @Override
+    public String toString() {
+        return "PortalCookieUpdate [portalCookieValue="
+                + this.portalCookieValue
+                + ", maxAge="
+                + this.maxAge
+                + ", portletCookies="
+                + this.portletCookies.size()
+                + "]";
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events;
+
+/**
+ * Marker for {@link org.springframework.context.ApplicationListener}s of {@link PortalEvent}s that
+ * do not need to run on the thread that published the event. When the {@link
+ * PortalEventMulticaster} is enabled these listeners are handed events through the {@link
+ * PortalEventBus} instead of being called during the publishing request.
+ *
+ * <p>Listeners that read request or session state from the event, like {@link
+ * RequestScopedEventsTrackerImpl}, must not implement this interface.
+ *
+ * @since 5.3
+ */
+public interface AsynchronousPortalEventListener {}
@@ -0,0 +1,367 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * Multi-producer ring buffer that hands {@link PortalEvent}s to listeners on background threads.
+ * Publishers claim a sequence with a CAS on the shared cursor and never take a lock. Each listener
+ * gets its own consumer thread and cursor, consumers drain up to {@link #getBatchSize()} events per
+ * pass and then advance their cursor once. A slot is only reused after every consumer has moved
+ * past it, what happens when the buffer is full is decided by the {@link BackpressurePolicy}.
+ *
+ * <p>Every event carries the set of listeners it was matched to when published, consumers skip
+ * events that are not meant for them.
+ *
+ * @since 5.3
+ */
+public class PortalEventBus {
+    /** What a publisher does when the ring buffer has no free slot */
+    public enum BackpressurePolicy {
+        /** Wait for a free slot, after the block timeout run the listeners on the caller */
+        BLOCK,
+        /** Discard the event */
+        DROP,
+        /** Run the listeners on the publishing thread */
+        CALLER_RUNS;
+    }
+
+    /** Calls a listener with an event, used by both consumer threads and caller-runs delivery */
+    public interface ListenerInvoker {
+        void invoke(ApplicationListener<?> listener, PortalEvent event);
+    }
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<ApplicationListener<?>, Consumer> consumers =
+            new ConcurrentHashMap<ApplicationListener<?>, Consumer>();
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+
+    private final AtomicReferenceArray<Slot> slots;
+    private final int mask;
+    private final int batchSize;
+    private final BackpressurePolicy backpressurePolicy;
+    private final long blockTimeoutNanos;
+    private final ListenerInvoker listenerInvoker;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param capacity Number of slots in the ring buffer, rounded up to a power of two
+     * @param batchSize Maximum number of events a consumer handles before advancing its cursor
+     * @param backpressurePolicy What to do when the buffer is full
+     * @param blockTimeout Milliseconds to wait for a free slot with {@link
+     *     BackpressurePolicy#BLOCK}
+     * @param listenerInvoker Used to call the listeners
+     */
+    public PortalEventBus(
+            int capacity,
+            int batchSize,
+            BackpressurePolicy backpressurePolicy,
+            long blockTimeout,
+            ListenerInvoker listenerInvoker) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than 0: " + batchSize);
+        }
+        final int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<Slot>(Math.max(size, 1));
+        this.mask = this.slots.length() - 1;
+        this.batchSize = batchSize;
+        this.backpressurePolicy = backpressurePolicy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+        this.listenerInvoker = listenerInvoker;
+    }
+
+    public int getCapacity() {
+        return this.slots.length();
+    }
+
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    public long getPublished() {
+        return this.published.get();
+    }
+
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    public long getCallerRuns() {
+        return this.callerRuns.get();
+    }
+
+    /** @return true until {@link #shutdown(long)} is called */
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Queue the event for delivery to the listeners.
+     *
+     * @return false if the bus is shut down and nothing was done with the event
+     */
+    public boolean publish(PortalEvent event, Collection<ApplicationListener<?>> listeners) {
+        if (!this.running) {
+            return false;
+        }
+        if (listeners.isEmpty()) {
+            return true;
+        }
+
+        // Consumers must exist before the sequence is claimed so they do not start past it
+        for (final ApplicationListener<?> listener : listeners) {
+            this.getConsumer(listener);
+        }
+
+        final long sequence = this.claim();
+        if (sequence < 0) {
+            if (this.backpressurePolicy == BackpressurePolicy.DROP) {
+                this.dropped.incrementAndGet();
+                logger.debug("Event bus is full, dropping {}", event);
+            } else {
+                this.callerRuns.incrementAndGet();
+                for (final ApplicationListener<?> listener : listeners) {
+                    this.listenerInvoker.invoke(listener, event);
+                }
+            }
+            return true;
+        }
+
+        this.slots.set(
+                (int) sequence & this.mask,
+                new Slot(sequence, event, Collections.unmodifiableCollection(listeners)));
+        this.published.incrementAndGet();
+
+        // Every consumer has to move past the slot before it can be reused, not only the targets
+        for (final Consumer consumer : this.consumers.values()) {
+            consumer.signal();
+        }
+        return true;
+    }
+
+    /**
+     * Stop accepting events and wait for the consumers to drain what was already published.
+     *
+     * @param timeout Milliseconds to wait for all consumers to finish
+     */
+    public void shutdown(long timeout) {
+        this.running = false;
+
+        final long deadline = System.currentTimeMillis() + timeout;
+        for (final Consumer consumer : this.consumers.values()) {
+            consumer.signal();
+            try {
+                consumer.thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (consumer.thread.isAlive()) {
+                logger.warn(
+                        "Listener {} did not consume {} remaining events before shutdown",
+                        consumer.listener,
+                        consumer.getLag());
+            }
+        }
+    }
+
+    /** @return Events published but not yet consumed, by listener */
+    public Map<String, Long> getListenerLag() {
+        final Map<String, Long> lag = new LinkedHashMap<String, Long>();
+        for (final Consumer consumer : this.consumers.values()) {
+            lag.put(consumer.name, consumer.getLag());
+        }
+        return lag;
+    }
+
+    /** @return Events each listener was called with, by listener */
+    public Map<String, Long> getListenerProcessed() {
+        final Map<String, Long> processed = new LinkedHashMap<String, Long>();
+        for (final Consumer consumer : this.consumers.values()) {
+            processed.put(consumer.name, consumer.processed.get());
+        }
+        return processed;
+    }
+
+    /** @return The next sequence to write to or -1 if the buffer stayed full */
+    private long claim() {
+        long blockDeadline = 0;
+        while (true) {
+            final long current = this.cursor.get();
+            final long next = current + 1;
+            if (next - this.slots.length() > this.getMinimumConsumed()) {
+                if (this.backpressurePolicy != BackpressurePolicy.BLOCK || !this.running) {
+                    return -1;
+                }
+                final long now = System.nanoTime();
+                if (blockDeadline == 0) {
+                    blockDeadline = now + this.blockTimeoutNanos;
+                } else if (now - blockDeadline >= 0) {
+                    return -1;
+                }
+                LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                continue;
+            }
+            if (this.cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    private long getMinimumConsumed() {
+        long minimum = Long.MAX_VALUE;
+        for (final Consumer consumer : this.consumers.values()) {
+            minimum = Math.min(minimum, consumer.consumed.get());
+        }
+        return minimum;
+    }
+
+    private Consumer getConsumer(ApplicationListener<?> listener) {
+        Consumer consumer = this.consumers.get(listener);
+        if (consumer != null) {
+            return consumer;
+        }
+
+        synchronized (this.consumers) {
+            consumer = this.consumers.get(listener);
+            if (consumer == null) {
+                consumer = new Consumer(listener, this.cursor.get());
+                this.consumers.put(listener, consumer);
+                consumer.thread.start();
+            }
+            return consumer;
+        }
+    }
+
+    private static final class Slot {
+        private final long sequence;
+        private final PortalEvent event;
+        private final Collection<ApplicationListener<?>> listeners;
+
+        Slot(long sequence, PortalEvent event, Collection<ApplicationListener<?>> listeners) {
+            this.sequence = sequence;
+            this.event = event;
+            this.listeners = listeners;
+        }
+    }
+
+    private final class Consumer implements Runnable {
+        private final ApplicationListener<?> listener;
+        private final String name;
+        private final Thread thread;
+        private final AtomicLong consumed;
+        private final AtomicLong processed = new AtomicLong();
+        private volatile boolean waiting;
+
+        Consumer(ApplicationListener<?> listener, long consumed) {
+            this.listener = listener;
+            this.name = listener.getClass().getName() + "@" + System.identityHashCode(listener);
+            this.consumed = new AtomicLong(consumed);
+            this.thread = new Thread(this, "PortalEventBus-" + listener.getClass().getSimpleName());
+            this.thread.setDaemon(true);
+        }
+
+        long getLag() {
+            return Math.max(0, cursor.get() - this.consumed.get());
+        }
+
+        void signal() {
+            if (this.waiting) {
+                LockSupport.unpark(this.thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final int handled = this.consumeBatch();
+                if (handled > 0) {
+                    continue;
+                }
+                if (!running && this.consumed.get() >= cursor.get()) {
+                    return;
+                }
+
+                this.waiting = true;
+                try {
+                    // Re-check after announcing the wait so a concurrent publish is not missed
+                    if (!this.isAvailable(this.consumed.get() + 1) && running) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                } finally {
+                    this.waiting = false;
+                }
+            }
+        }
+
+        private boolean isAvailable(long sequence) {
+            final Slot slot = slots.get((int) sequence & mask);
+            return slot != null && slot.sequence == sequence;
+        }
+
+        private int consumeBatch() {
+            long next = this.consumed.get() + 1;
+            int handled = 0;
+            while (handled < batchSize) {
+                final Slot slot = slots.get((int) next & mask);
+                if (slot == null || slot.sequence != next) {
+                    break;
+                }
+                if (slot.listeners.contains(this.listener)) {
+                    try {
+                        listenerInvoker.invoke(this.listener, slot.event);
+                    } catch (Throwable t) {
+                        logger.error(
+                                "Listener {} failed to handle event {}",
+                                this.listener,
+                                slot.event,
+                                t);
+                    }
+                    this.processed.incrementAndGet();
+                }
+                next++;
+                handled++;
+            }
+            if (handled > 0) {
+                this.consumed.lazySet(next - 1);
+            }
+            return handled;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events;
+
+import java.util.Map;
+
+/** JMX view of the {@link PortalEventBus} used by the {@link PortalEventMulticaster}. */
+public interface PortalEventBusMXBean {
+
+    /** @return true if asynchronous listeners are called through the event bus */
+    boolean isEnabled();
+
+    /** @return The number of slots in the ring buffer */
+    int getCapacity();
+
+    /** @return The number of events queued in the ring buffer since startup */
+    long getPublished();
+
+    /** @return The number of events dropped because the ring buffer was full */
+    long getDropped();
+
+    /**
+     * @return The number of events delivered on the publishing thread because the buffer was full
+     */
+    long getCallerRuns();
+
+    /** @return Number of published events each asynchronous listener has not yet consumed */
+    Map<String, Long> getListenerLag();
+
+    /** @return Number of events each asynchronous listener has been called with */
+    Map<String, Long> getListenerProcessed();
+}
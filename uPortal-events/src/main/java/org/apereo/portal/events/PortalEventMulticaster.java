@@ -0,0 +1,197 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apereo.portal.events.PortalEventBus.BackpressurePolicy;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.SimpleApplicationEventMulticaster;
+import org.springframework.core.ResolvableType;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Application event multicaster that takes {@link PortalEvent} fan-out off the publishing thread.
+ * Listeners that implement {@link AsynchronousPortalEventListener} are handed portal events through
+ * a {@link PortalEventBus}, all other listeners and all other event types are called synchronously
+ * just like the {@link SimpleApplicationEventMulticaster} does.
+ *
+ * <p>Must be registered with the bean name <code>applicationEventMulticaster</code> for the
+ * application context to use it.
+ *
+ * @since 5.3
+ */
+@ManagedResource("uPortal:section=Framework,name=PortalEventBus")
+public class PortalEventMulticaster extends SimpleApplicationEventMulticaster
+        implements PortalEventBusMXBean, InitializingBean, DisposableBean {
+
+    private boolean enabled = true;
+    private int capacity = 8192;
+    private int batchSize = 64;
+    private BackpressurePolicy backpressurePolicy = BackpressurePolicy.CALLER_RUNS;
+    private long blockTimeout = 100;
+    private long shutdownTimeout = 5000;
+
+    private volatile PortalEventBus portalEventBus;
+
+    /** @param enabled If false all listeners are called on the publishing thread */
+    @Value("${org.apereo.portal.events.bus.enabled:true}")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** @param capacity Number of events the ring buffer can hold, rounded up to a power of two */
+    @Value("${org.apereo.portal.events.bus.capacity:8192}")
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /** @param batchSize Number of events a listener handles before advancing its cursor */
+    @Value("${org.apereo.portal.events.bus.batchSize:64}")
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /** @param backpressurePolicy What publishers do when the ring buffer is full */
+    @Value("${org.apereo.portal.events.bus.backpressurePolicy:CALLER_RUNS}")
+    public void setBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+        this.backpressurePolicy = backpressurePolicy;
+    }
+
+    /** @param blockTimeout Milliseconds a BLOCK publisher waits for space */
+    @Value("${org.apereo.portal.events.bus.blockTimeout:100}")
+    public void setBlockTimeout(long blockTimeout) {
+        this.blockTimeout = blockTimeout;
+    }
+
+    /** @param shutdownTimeout Milliseconds to wait for listeners to drain on shutdown */
+    @Value("${org.apereo.portal.events.bus.shutdownTimeout:5000}")
+    public void setShutdownTimeout(long shutdownTimeout) {
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (this.enabled) {
+            this.portalEventBus =
+                    new PortalEventBus(
+                            this.capacity,
+                            this.batchSize,
+                            this.backpressurePolicy,
+                            this.blockTimeout,
+                            new PortalEventBus.ListenerInvoker() {
+                                @Override
+                                public void invoke(
+                                        ApplicationListener<?> listener, PortalEvent event) {
+                                    invokeListener(listener, event);
+                                }
+                            });
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        final PortalEventBus portalEventBus = this.portalEventBus;
+        if (portalEventBus != null) {
+            portalEventBus.shutdown(this.shutdownTimeout);
+        }
+    }
+
+    @Override
+    public void multicastEvent(ApplicationEvent event, ResolvableType eventType) {
+        final PortalEventBus portalEventBus = this.portalEventBus;
+        if (portalEventBus == null
+                || !portalEventBus.isRunning()
+                || !(event instanceof PortalEvent)) {
+            super.multicastEvent(event, eventType);
+            return;
+        }
+
+        final ResolvableType type =
+                eventType != null ? eventType : ResolvableType.forInstance(event);
+        List<ApplicationListener<?>> asynchronousListeners = null;
+        for (final ApplicationListener<?> listener : this.getApplicationListeners(event, type)) {
+            if (listener instanceof AsynchronousPortalEventListener) {
+                if (asynchronousListeners == null) {
+                    asynchronousListeners = new ArrayList<ApplicationListener<?>>();
+                }
+                asynchronousListeners.add(listener);
+            } else {
+                this.invokeListener(listener, event);
+            }
+        }
+
+        if (asynchronousListeners != null
+                && !portalEventBus.publish((PortalEvent) event, asynchronousListeners)) {
+            // Shut down between the check and the publish, deliver on this thread instead
+            for (final ApplicationListener<?> listener : asynchronousListeners) {
+                this.invokeListener(listener, event);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.portalEventBus != null;
+    }
+
+    @Override
+    public int getCapacity() {
+        final PortalEventBus portalEventBus = this.portalEventBus;
+        return portalEventBus != null ? portalEventBus.getCapacity() : 0;
+    }
+
+    @Override
+    public long getPublished() {
+        final PortalEventBus portalEventBus = this.portalEventBus;
+        return portalEventBus != null ? portalEventBus.getPublished() : 0;
+    }
+
+    @Override
+    public long getDropped() {
+        final PortalEventBus portalEventBus = this.portalEventBus;
+        return portalEventBus != null ? portalEventBus.getDropped() : 0;
+    }
+
+    @Override
+    public long getCallerRuns() {
+        final PortalEventBus portalEventBus = this.portalEventBus;
+        return portalEventBus != null ? portalEventBus.getCallerRuns() : 0;
+    }
+
+    @Override
+    public Map<String, Long> getListenerLag() {
+        final PortalEventBus portalEventBus = this.portalEventBus;
+        if (portalEventBus == null) {
+            return Collections.emptyMap();
+        }
+        return portalEventBus.getListenerLag();
+    }
+
+    @Override
+    public Map<String, Long> getListenerProcessed() {
+        final PortalEventBus portalEventBus = this.portalEventBus;
+        if (portalEventBus == null) {
+            return Collections.emptyMap();
+        }
+        return portalEventBus.getListenerProcessed();
+    }
+}
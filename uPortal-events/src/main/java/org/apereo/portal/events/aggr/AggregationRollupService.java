@@ -0,0 +1,42 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr;
+
+import java.util.List;
+import java.util.Set;
+import org.apereo.portal.events.aggr.groups.AggregatedGroupMapping;
+import org.joda.time.DateTime;
+
+/**
+ * Serves report queries against {@link BaseAggregationDao}s from rollups of closed aggregations.
+ * The requested date range is split into calendar segments, segments whose aggregations have all
+ * been closed are loaded once and reused by later queries, the remaining segments are always loaded
+ * from the DAO. As aggregation progresses more segments become closed so the rollups grow
+ * incrementally without ever being rebuilt.
+ */
+public interface AggregationRollupService {
+    /**
+     * Same contract as {@link BaseAggregationDao#getAggregations(DateTime, DateTime, Set,
+     * AggregatedGroupMapping...)}
+     *
+     * @param aggregationDao The DAO to load aggregations from
+     */
+    <T extends BaseAggregation<K, ?>, K extends BaseAggregationKey> List<T> getAggregations(
+            BaseAggregationDao<T, K> aggregationDao,
+            DateTime start,
+            DateTime end,
+            Set<K> keys,
+            AggregatedGroupMapping... aggregatedGroupMappings);
+}
@@ -0,0 +1,351 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.apereo.portal.events.aggr.dao.IEventAggregationManagementDao;
+import org.apereo.portal.events.aggr.groups.AggregatedGroupMapping;
+import org.joda.time.DateMidnight;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+/**
+ * Rollups are segmented by calendar month for intervals of a day or less and by calendar year for
+ * longer intervals. A segment is closed once the last interval starting in it ends before both the
+ * last aggregated event and the last unclosed aggregation cleanup, after that point none of its
+ * aggregations can change.
+ */
+@Service
+public class AggregationRollupServiceImpl implements AggregationRollupService {
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private AggregationIntervalHelper intervalHelper;
+    private IEventAggregationManagementDao eventAggregationManagementDao;
+    private Ehcache rollupCache;
+
+    @Autowired
+    public void setIntervalHelper(AggregationIntervalHelper intervalHelper) {
+        this.intervalHelper = intervalHelper;
+    }
+
+    @Autowired
+    public void setEventAggregationManagementDao(
+            IEventAggregationManagementDao eventAggregationManagementDao) {
+        this.eventAggregationManagementDao = eventAggregationManagementDao;
+    }
+
+    @Autowired
+    public void setRollupCache(
+            @Qualifier("org.apereo.portal.events.aggr.AggregationRollupCache")
+                    Ehcache rollupCache) {
+        this.rollupCache = rollupCache;
+    }
+
+    @Override
+    public <T extends BaseAggregation<K, ?>, K extends BaseAggregationKey> List<T> getAggregations(
+            BaseAggregationDao<T, K> aggregationDao,
+            DateTime start,
+            DateTime end,
+            Set<K> keys,
+            AggregatedGroupMapping... aggregatedGroupMappings) {
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("Start must be before End: " + start + " - " + end);
+        }
+
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final AggregationInterval interval = keys.iterator().next().getInterval();
+        final DateTime closedBefore = this.getClosedBefore();
+
+        /*
+         * Segments are loaded oldest first, results are returned newest first like the DAO. Closed
+         * segments with a cached rollup only contribute ids, the aggregations for all of them are
+         * loaded together once every segment has been visited.
+         */
+        final List<List<T>> segments = new ArrayList<List<T>>();
+        final List<long[]> segmentIds = new ArrayList<long[]>();
+        int idCount = 0;
+        DateTime segmentStart = getSegmentStart(interval, start);
+        while (segmentStart.isBefore(end)) {
+            final DateTime segmentEnd = getSegmentEnd(interval, segmentStart);
+
+            if (closedBefore != null && isClosed(interval, segmentEnd, closedBefore)) {
+                final RollupKey rollupKey =
+                        new RollupKey(
+                                aggregationDao.getClass().getName(),
+                                segmentStart.getMillis(),
+                                ImmutableSet.copyOf(keys),
+                                ImmutableSet.copyOf(aggregatedGroupMappings));
+                final Element element = this.rollupCache.get(rollupKey);
+                if (element != null) {
+                    final long[] ids = ((Rollup) element.getObjectValue()).getIds(start, end);
+                    segments.add(null);
+                    segmentIds.add(ids);
+                    idCount += ids.length;
+                } else {
+                    final List<T> aggregations =
+                            aggregationDao.getAggregations(
+                                    segmentStart, segmentEnd, keys, aggregatedGroupMappings);
+                    this.rollupCache.put(new Element(rollupKey, new Rollup(aggregations)));
+                    logger.debug(
+                            "Rolled up {} aggregations for segment starting {} of {}",
+                            aggregations.size(),
+                            segmentStart,
+                            rollupKey);
+                    segments.add(getAggregationsInRange(aggregations, start, end));
+                    segmentIds.add(null);
+                }
+            } else {
+                final DateTime queryStart = segmentStart.isBefore(start) ? start : segmentStart;
+                final DateTime queryEnd = segmentEnd.isAfter(end) ? end : segmentEnd;
+                segments.add(
+                        aggregationDao.getAggregations(
+                                queryStart, queryEnd, keys, aggregatedGroupMappings));
+                segmentIds.add(null);
+            }
+
+            segmentStart = segmentEnd;
+        }
+
+        final Map<Long, T> aggregationsById =
+                this.getAggregationsById(aggregationDao, segmentIds, idCount);
+
+        final List<T> aggregations = new ArrayList<T>();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            final long[] ids = segmentIds.get(i);
+            if (ids == null) {
+                aggregations.addAll(segments.get(i));
+                continue;
+            }
+            for (final long id : ids) {
+                final T aggregation = aggregationsById.get(id);
+                if (aggregation != null) {
+                    aggregations.add(aggregation);
+                }
+            }
+        }
+        return aggregations;
+    }
+
+    /** Loads the aggregations of every cached segment with a single call to the DAO */
+    private <T extends BaseAggregation<K, ?>, K extends BaseAggregationKey>
+            Map<Long, T> getAggregationsById(
+                    BaseAggregationDao<T, K> aggregationDao, List<long[]> segmentIds, int idCount) {
+        if (idCount == 0) {
+            return Collections.emptyMap();
+        }
+
+        final long[] allIds = new long[idCount];
+        int idIndex = 0;
+        for (final long[] ids : segmentIds) {
+            if (ids != null) {
+                System.arraycopy(ids, 0, allIds, idIndex, ids.length);
+                idIndex += ids.length;
+            }
+        }
+
+        final Map<Long, T> aggregationsById = new HashMap<Long, T>(idCount * 4 / 3 + 1);
+        for (final T aggregation : aggregationDao.getAggregationsById(allIds)) {
+            aggregationsById.put(aggregation.getId(), aggregation);
+        }
+        return aggregationsById;
+    }
+
+    /** @return The aggregations from start (inclusive) to end (exclusive) */
+    private static <T extends BaseAggregation<?, ?>> List<T> getAggregationsInRange(
+            List<T> aggregations, DateTime start, DateTime end) {
+        final List<T> rslt = new ArrayList<T>(aggregations.size());
+        for (final T aggregation : aggregations) {
+            final DateTime dateTime = aggregation.getDateTime();
+            if (!dateTime.isBefore(start) && dateTime.isBefore(end)) {
+                rslt.add(aggregation);
+            }
+        }
+        return rslt;
+    }
+
+    /**
+     * @return The time before which all aggregation intervals are closed, null if nothing has been
+     *     aggregated and cleaned yet
+     */
+    private DateTime getClosedBefore() {
+        final IEventAggregatorStatus aggregationStatus =
+                this.eventAggregationManagementDao.getEventAggregatorStatus(
+                        IEventAggregatorStatus.ProcessingType.AGGREGATION, false);
+        final IEventAggregatorStatus cleanUnclosedStatus =
+                this.eventAggregationManagementDao.getEventAggregatorStatus(
+                        IEventAggregatorStatus.ProcessingType.CLEAN_UNCLOSED, false);
+        if (aggregationStatus == null
+                || aggregationStatus.getLastEventDate() == null
+                || cleanUnclosedStatus == null
+                || cleanUnclosedStatus.getLastEventDate() == null) {
+            return null;
+        }
+
+        final DateTime lastAggregated = aggregationStatus.getLastEventDate();
+        final DateTime lastCleaned = cleanUnclosedStatus.getLastEventDate();
+        return lastAggregated.isBefore(lastCleaned) ? lastAggregated : lastCleaned;
+    }
+
+    /**
+     * @return true if every interval that starts before the segment end ends before closedBefore
+     */
+    private boolean isClosed(
+            AggregationInterval interval, DateTime segmentEnd, DateTime closedBefore) {
+        if (segmentEnd.isAfter(closedBefore)) {
+            return false;
+        }
+
+        final AggregationIntervalInfo lastInterval =
+                this.intervalHelper.getIntervalInfo(interval, segmentEnd.minusMillis(1));
+        return lastInterval != null && !lastInterval.getEnd().isAfter(closedBefore);
+    }
+
+    static DateTime getSegmentStart(AggregationInterval interval, DateTime date) {
+        final DateMidnight day = date.toDateMidnight();
+        if (interval.compareTo(AggregationInterval.DAY) <= 0) {
+            return day.withDayOfMonth(1).toDateTime();
+        }
+        return day.withDayOfYear(1).toDateTime();
+    }
+
+    static DateTime getSegmentEnd(AggregationInterval interval, DateTime segmentStart) {
+        if (interval.compareTo(AggregationInterval.DAY) <= 0) {
+            return segmentStart.plusMonths(1);
+        }
+        return segmentStart.plusYears(1);
+    }
+
+    /**
+     * Ids and date/times of the aggregations of a closed segment, in DAO order. The aggregations
+     * themselves are loaded by id through the DAO, so the rollup cache doesn't hold a second copy
+     * of the entities.
+     */
+    private static final class Rollup implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] ids;
+        private final long[] dateTimes;
+
+        Rollup(List<? extends BaseAggregation<?, ?>> aggregations) {
+            this.ids = new long[aggregations.size()];
+            this.dateTimes = new long[aggregations.size()];
+            int i = 0;
+            for (final BaseAggregation<?, ?> aggregation : aggregations) {
+                this.ids[i] = aggregation.getId();
+                this.dateTimes[i] = aggregation.getDateTime().getMillis();
+                i++;
+            }
+        }
+
+        /** @return The ids of the aggregations from start (inclusive) to end (exclusive) */
+        long[] getIds(DateTime start, DateTime end) {
+            final long startMillis = start.getMillis();
+            final long endMillis = end.getMillis();
+            int count = 0;
+            for (final long dateTime : this.dateTimes) {
+                if (dateTime >= startMillis && dateTime < endMillis) {
+                    count++;
+                }
+            }
+            if (count == this.ids.length) {
+                return this.ids;
+            }
+
+            final long[] ids = new long[count];
+            int idIndex = 0;
+            for (int i = 0; i < this.ids.length; i++) {
+                if (this.dateTimes[i] >= startMillis && this.dateTimes[i] < endMillis) {
+                    ids[idIndex++] = this.ids[i];
+                }
+            }
+            return ids;
+        }
+    }
+
+    private static final class RollupKey implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String aggregationDao;
+        private final long segmentStart;
+        private final Set<?> keys;
+        private final Set<AggregatedGroupMapping> aggregatedGroupMappings;
+        private final int hashCode;
+
+        RollupKey(
+                String aggregationDao,
+                long segmentStart,
+                Set<?> keys,
+                Set<AggregatedGroupMapping> aggregatedGroupMappings) {
+            this.aggregationDao = aggregationDao;
+            this.segmentStart = segmentStart;
+            this.keys = keys;
+            this.aggregatedGroupMappings = aggregatedGroupMappings;
+
+            final int prime = 31;
+            int h = 1;
+            h = prime * h + aggregationDao.hashCode();
+            h = prime * h + (int) (segmentStart ^ (segmentStart >>> 32));
+            h = prime * h + keys.hashCode();
+            h = prime * h + aggregatedGroupMappings.hashCode();
+            this.hashCode = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof RollupKey)) return false;
+            final RollupKey other = (RollupKey) obj;
+            return this.segmentStart == other.segmentStart
+                    && this.hashCode == other.hashCode
+                    && this.aggregationDao.equals(other.aggregationDao)
+                    && this.keys.equals(other.keys)
+                    && this.aggregatedGroupMappings.equals(other.aggregatedGroupMappings);
+        }
+
+        @Override
+        public String toString() {
+            return "RollupKey [aggregationDao="
+                    + this.aggregationDao
+                    + ", segmentStart="
+                    + this.segmentStart
+                    + ", keys="
+                    + this.keys
+                    + ", aggregatedGroupMappings="
+                    + this.aggregatedGroupMappings
+                    + "]";
+        }
+    }
+}
@@ -22,6 +22,9 @@ import org.joda.time.DateTime;
 public interface BaseAggregation<
                 K extends BaseAggregationKey, D extends BaseGroupedAggregationDiscriminator>
         extends Serializable {
+    /** @return The unique id of the aggregation */
+    long getId();
+
     /**
      * @return The {@link DateTime} the aggregation is for, short cut for getting the same info from
      *     {@link #getDateDimension()} and {@link #getTimeDimension()}
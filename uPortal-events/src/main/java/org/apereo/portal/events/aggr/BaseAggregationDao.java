@@ -74,4 +74,12 @@ public interface BaseAggregationDao<T extends BaseAggregation<K, ?>, K extends B
 
     /** Get a specific aggregation */
     T getAggregation(K key);
+
+    /**
+     * Aggregations by {@link BaseAggregation#getId()}, in the order of the ids. Ids of aggregations
+     * that no longer exist are skipped.
+     *
+     * @since 5.3
+     */
+    List<T> getAggregationsById(long[] ids);
 }
@@ -60,6 +60,9 @@ public abstract class JpaBaseAggregationDao<
                 T extends BaseAggregationImpl<K, ?>, K extends BaseAggregationKey>
         extends BaseAggrEventsJpaDao implements BaseAggregationPrivateDao<T, K> {
 
+    /** Max ids bound to a single IN clause, Oracle rejects lists of more than 1000 */
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
     private final Class<T> aggregationEntityType;
     private HibernateCacheEvictor hibernateCacheEvictor;
 
@@ -67,6 +70,7 @@ public abstract class JpaBaseAggregationDao<
     protected CriteriaQuery<T> findAggregationByDateTimeIntervalGroupQuery;
     protected CriteriaQuery<T> findAggregationsByDateRangeQuery;
     protected CriteriaQuery<T> findUnclosedAggregationsByDateRangeQuery;
+    protected CriteriaQuery<T> findAggregationsByIdQuery;
     protected CriteriaQuery<AggregationInterval> findAggregationIntervalsQuery;
     protected CriteriaQuery<AggregatedGroupMappingImpl> findAggregatedGroupsQuery;
     protected ParameterExpression<TimeDimension> timeDimensionParameter;
@@ -74,6 +78,7 @@ public abstract class JpaBaseAggregationDao<
     protected ParameterExpression<AggregationInterval> intervalParameter;
     protected ParameterExpression<AggregatedGroupMapping> aggregatedGroupParameter;
     protected ParameterExpression<Set> aggregatedGroupsParameter;
+    protected ParameterExpression<Collection> idsParameter;
     protected ParameterExpression<LocalDate> startDate;
     protected ParameterExpression<LocalDate> endPlusOneDate;
     protected ParameterExpression<LocalDate> endDate;
@@ -139,6 +144,7 @@ public abstract class JpaBaseAggregationDao<
                 this.createParameterExpression(AggregatedGroupMapping.class, "aggregatedGroup");
         this.aggregatedGroupsParameter =
                 this.createParameterExpression(Set.class, "aggregatedGroups");
+        this.idsParameter = this.createParameterExpression(Collection.class, "ids");
         this.startDate = this.createParameterExpression(LocalDate.class, "startDate");
         this.endPlusOneDate = this.createParameterExpression(LocalDate.class, "endPlusOneDate");
         this.endDate = this.createParameterExpression(LocalDate.class, "endDate");
@@ -323,6 +329,23 @@ public abstract class JpaBaseAggregationDao<
                             }
                         });
 
+        this.findAggregationsByIdQuery =
+                this.createCriteriaQuery(
+                        new Function<CriteriaBuilder, CriteriaQuery<T>>() {
+                            @Override
+                            public CriteriaQuery<T> apply(CriteriaBuilder cb) {
+                                final CriteriaQuery<T> criteriaQuery =
+                                        cb.createQuery(aggregationEntityType);
+                                final Root<T> ba = criteriaQuery.from(aggregationEntityType);
+
+                                // The id is declared by each aggregation entity, not the base
+                                criteriaQuery.select(ba);
+                                criteriaQuery.where(ba.get("id").in(idsParameter));
+
+                                return criteriaQuery;
+                            }
+                        });
+
         this.findAggregationIntervalsQuery =
                 this.createCriteriaQuery(
                         new Function<CriteriaBuilder, CriteriaQuery<AggregationInterval>>() {
@@ -471,6 +494,34 @@ public abstract class JpaBaseAggregationDao<
         return query.load();
     }
 
+    @Override
+    @OpenEntityManager(unitName = BaseAggrEventsJpaDao.PERSISTENCE_UNIT_NAME)
+    public final List<T> getAggregationsById(long[] ids) {
+        final Map<Long, T> aggregationsById = new HashMap<Long, T>(ids.length * 4 / 3 + 1);
+        for (int start = 0; start < ids.length; start += MAX_IDS_PER_QUERY) {
+            final int end = Math.min(ids.length, start + MAX_IDS_PER_QUERY);
+            final List<Long> chunk = new ArrayList<Long>(end - start);
+            for (int i = start; i < end; i++) {
+                chunk.add(ids[i]);
+            }
+
+            final TypedQuery<T> query = this.createQuery(this.findAggregationsByIdQuery);
+            query.setParameter(this.idsParameter, chunk);
+            for (final T aggregation : query.getResultList()) {
+                aggregationsById.put(aggregation.getId(), aggregation);
+            }
+        }
+
+        final List<T> aggregations = new ArrayList<T>(aggregationsById.size());
+        for (final long id : ids) {
+            final T aggregation = aggregationsById.get(id);
+            if (aggregation != null) {
+                aggregations.add(aggregation);
+            }
+        }
+        return aggregations;
+    }
+
     @Override
     public Collection<T> getUnclosedAggregations(
             DateTime start, DateTime end, AggregationInterval interval) {
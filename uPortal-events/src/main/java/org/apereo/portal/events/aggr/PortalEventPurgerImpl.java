@@ -38,6 +38,9 @@ public class PortalEventPurgerImpl implements PortalEventPurger {
     private IClusterLockService clusterLockService;
 
     private ReadablePeriod purgeDelay = Period.days(1);
+    private int chunkSize = 10000;
+    private long chunkDelay = 100;
+    private int maxChunksPerRun = 100;
 
     @Autowired
     public void setClusterLockService(IClusterLockService clusterLockService) {
@@ -65,6 +68,33 @@ public class PortalEventPurgerImpl implements PortalEventPurger {
         this.purgeDelay = purgeDelay;
     }
 
+    /**
+     * Maximum number of raw events deleted per transaction, defaults to 10000. Each chunk deletes
+     * the oldest event ids first.
+     */
+    @Value("${org.apereo.portal.events.aggr.PortalEventPurgerImpl.chunkSize:10000}")
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Milliseconds to pause between chunks to give concurrent raw event inserts access to the
+     * table, defaults to 100.
+     */
+    @Value("${org.apereo.portal.events.aggr.PortalEventPurgerImpl.chunkDelay:100}")
+    public void setChunkDelay(long chunkDelay) {
+        this.chunkDelay = chunkDelay;
+    }
+
+    /**
+     * Maximum number of chunks deleted before the cluster lock is released, defaults to 100. The
+     * next purge picks up where the previous one stopped.
+     */
+    @Value("${org.apereo.portal.events.aggr.PortalEventPurgerImpl.maxChunksPerRun:100}")
+    public void setMaxChunksPerRun(int maxChunksPerRun) {
+        this.maxChunksPerRun = maxChunksPerRun;
+    }
+
     @Override
     @AggrEventsTransactional
     public EventProcessingResult doPurgeRawEvents() {
@@ -118,26 +148,66 @@ public class PortalEventPurgerImpl implements PortalEventPurger {
 
         final Thread currentThread = Thread.currentThread();
         final String currentName = currentThread.getName();
-        final int events;
+        int events = 0;
+        boolean purgedAll = false;
         try {
             currentThread.setName(currentName + "-" + purgeEnd);
 
-            // Purge events
+            // Purge events in chunks, each chunk is committed in its own raw events transaction
             logger.debug("Starting purge of events before {}", purgeEnd);
-            events = portalEventDao.deletePortalEventsBefore(purgeEnd);
+            for (int chunk = 1; ; chunk++) {
+                final int deleted = portalEventDao.deletePortalEventsBefore(purgeEnd, chunkSize);
+                events += deleted;
+                logger.debug(
+                        "Purged {} events before {} in chunk {}, {} events purged so far",
+                        deleted,
+                        purgeEnd,
+                        chunk,
+                        events);
+
+                if (deleted < chunkSize) {
+                    purgedAll = true;
+                    break;
+                }
+                if (chunk >= maxChunksPerRun
+                        || !this.clusterLockService.isLockOwner(PURGE_RAW_EVENTS_LOCK_NAME)
+                        || !pause()) {
+                    break;
+                }
+            }
         } finally {
             currentThread.setName(currentName);
         }
 
         // Update the status object and store it
-        purgeEnd =
-                purgeEnd.minusMillis(
-                        100); // decrement by 100ms since deletePortalEventsBefore uses lessThan and
-        // not lessThanEqualTo
+        if (purgedAll) {
+            purgeEnd =
+                    purgeEnd.minusMillis(
+                            100); // decrement by 100ms since deletePortalEventsBefore uses lessThan
+            // and not lessThanEqualTo
+        } else {
+            // Stopped part way through, the next purge resumes with the remaining events
+            purgeEnd = oldestEventDate;
+            complete = false;
+        }
         eventPurgerStatus.setLastEventDate(purgeEnd);
         eventPurgerStatus.setLastEnd(new DateTime());
         eventAggregationManagementDao.updateEventAggregatorStatus(eventPurgerStatus);
 
         return new EventProcessingResult(events, oldestEventDate, purgeEnd, complete);
     }
+
+    /** @return false if interrupted while pausing between chunks */
+    private boolean pause() {
+        if (this.chunkDelay <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(this.chunkDelay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 }
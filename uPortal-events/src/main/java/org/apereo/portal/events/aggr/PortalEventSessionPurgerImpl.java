@@ -17,7 +17,6 @@ package org.apereo.portal.events.aggr;
 import org.apereo.portal.concurrency.locking.IClusterLockService;
 import org.apereo.portal.events.aggr.dao.IEventAggregationManagementDao;
 import org.apereo.portal.events.aggr.session.EventSessionDao;
-import org.apereo.portal.jpa.BaseAggrEventsJpaDao.AggrEventsTransactional;
 import org.joda.time.DateTime;
 import org.joda.time.Period;
 import org.joda.time.ReadablePeriod;
@@ -36,6 +35,9 @@ public class PortalEventSessionPurgerImpl implements PortalEventSessionPurger {
     private IClusterLockService clusterLockService;
 
     private ReadablePeriod eventSessionDuration = Period.days(1);
+    private int chunkSize = 5000;
+    private long chunkDelay = 100;
+    private int maxChunksPerRun = 20;
 
     @Autowired
     public void setEventSessionDao(EventSessionDao eventSessionDao) {
@@ -59,8 +61,33 @@ public class PortalEventSessionPurgerImpl implements PortalEventSessionPurger {
         this.eventSessionDuration = eventSessionDuration;
     }
 
+    /** Maximum number of event sessions purged per transaction, defaults to 5000. */
+    @Value("${org.apereo.portal.events.aggr.session.PortalEventSessionPurgerImpl.chunkSize:5000}")
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /** Milliseconds to pause between chunks, defaults to 100. */
+    @Value("${org.apereo.portal.events.aggr.session.PortalEventSessionPurgerImpl.chunkDelay:100}")
+    public void setChunkDelay(long chunkDelay) {
+        this.chunkDelay = chunkDelay;
+    }
+
+    /**
+     * Maximum number of chunks purged before the cluster lock is released, defaults to 20. The
+     * remaining sessions are purged by the next scheduled purge.
+     */
+    @Value(
+            "${org.apereo.portal.events.aggr.session.PortalEventSessionPurgerImpl.maxChunksPerRun:20}")
+    public void setMaxChunksPerRun(int maxChunksPerRun) {
+        this.maxChunksPerRun = maxChunksPerRun;
+    }
+
+    /**
+     * Not transactional, each chunk is purged and committed in its own transaction by the {@link
+     * EventSessionDao}
+     */
     @Override
-    @AggrEventsTransactional
     public EventProcessingResult doPurgeEventSessions() {
         if (!this.clusterLockService.isLockOwner(PURGE_EVENT_SESSION_LOCK_NAME)) {
             throw new IllegalStateException(
@@ -78,8 +105,44 @@ public class PortalEventSessionPurgerImpl implements PortalEventSessionPurger {
 
         final DateTime lastEventDate = eventAggregatorStatus.getLastEventDate();
         final DateTime sessionPurgeDate = lastEventDate.minus(eventSessionDuration);
-        final int purgeCount = eventSessionDao.purgeEventSessionsBefore(sessionPurgeDate);
+        int purgeCount = 0;
+        boolean complete = false;
+        for (int chunk = 1; ; chunk++) {
+            final int purged =
+                    eventSessionDao.purgeEventSessionsBefore(sessionPurgeDate, chunkSize);
+            purgeCount += purged;
+            logger.debug(
+                    "Purged {} event sessions before {} in chunk {}, {} sessions purged so far",
+                    purged,
+                    sessionPurgeDate,
+                    chunk,
+                    purgeCount);
 
-        return new EventProcessingResult(purgeCount, null, sessionPurgeDate, true);
+            if (purged < chunkSize) {
+                complete = true;
+                break;
+            }
+            if (chunk >= maxChunksPerRun
+                    || !this.clusterLockService.isLockOwner(PURGE_EVENT_SESSION_LOCK_NAME)
+                    || !pause()) {
+                break;
+            }
+        }
+
+        return new EventProcessingResult(purgeCount, null, sessionPurgeDate, complete);
+    }
+
+    /** @return false if interrupted while pausing between chunks */
+    private boolean pause() {
+        if (this.chunkDelay <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(this.chunkDelay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 }
@@ -43,6 +43,8 @@ import org.apereo.portal.events.aggr.dao.DateDimensionDao;
 import org.apereo.portal.events.aggr.dao.IEventAggregationManagementDao;
 import org.apereo.portal.events.aggr.session.EventSession;
 import org.apereo.portal.events.aggr.session.EventSessionDao;
+import org.apereo.portal.events.handlers.db.EncodedPortalEvent;
+import org.apereo.portal.events.handlers.db.EncodedPortalEventFilter;
 import org.apereo.portal.events.handlers.db.IPortalEventDao;
 import org.apereo.portal.jpa.BaseAggrEventsJpaDao;
 import org.apereo.portal.jpa.BaseRawEventsJpaDao.RawEventsTransactional;
@@ -660,7 +662,8 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
         }
     }
 
-    private final class AggregateEventsHandler implements Function<PortalEvent, Boolean> {
+    private final class AggregateEventsHandler
+            implements Function<PortalEvent, Boolean>, EncodedPortalEventFilter {
         // Event Aggregation Context - used by aggregators to track state
         private final EventAggregationContext eventAggregationContext =
                 new EventAggregationContextImpl();
@@ -764,6 +767,28 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
             return true;
         }
 
+        /**
+         * Applies the {@link ApplicationEventFilter}s that can be evaluated on the encoded event
+         * header. Rejected events are counted just like events rejected in {@link
+         * #doAggregateEvent(PortalEvent)} but, as they are never aggregated, do not move the last
+         * event date or cross interval boundaries.
+         */
+        @Override
+        public boolean supports(EncodedPortalEvent event) {
+            for (final ApplicationEventFilter<PortalEvent> applicationEventFilter :
+                    applicationEventFilters) {
+                if (applicationEventFilter instanceof EncodedPortalEventFilter
+                        && !((EncodedPortalEventFilter) applicationEventFilter).supports(event)) {
+                    eventCounter.increment();
+                    logger.trace(
+                            "Skipping event {} - {} excluded by filter {}",
+                            new Object[] {eventCounter, event, applicationEventFilter});
+                    return false;
+                }
+            }
+            return true;
+        }
+
         private void initializeIntervalInfo(final DateTime eventDate) {
             final DateTime intervalDate;
             final DateTime lastEventDate = this.eventAggregatorStatus.getLastEventDate();
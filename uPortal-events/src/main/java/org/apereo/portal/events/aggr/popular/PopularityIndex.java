@@ -0,0 +1,55 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr.popular;
+
+import com.google.common.base.Predicate;
+import java.util.List;
+import org.apereo.portal.events.aggr.groups.AggregatedGroupMapping;
+
+/**
+ * In-memory rankings of popular portlets and search terms over sliding windows of closed
+ * aggregation intervals. Rankings are kept per group and window size and are updated as the event
+ * aggregation closes intervals, reads return a precomputed ranking.
+ *
+ * <p>Methods return null when a ranking is not served by the index, callers should then query the
+ * aggregation DAOs directly.
+ */
+public interface PopularityIndex {
+    /**
+     * @param days Number of closed days in the window
+     * @return Portlet fnames ranked by the number of times they were added to layouts, highest
+     *     first, or null if the window is not served by the index
+     */
+    List<RankedCount<String>> getPopularPortlets(AggregatedGroupMapping group, int days);
+
+    /**
+     * @param days Number of closed days in the window
+     * @param filter Only portlet fnames accepted by the filter are ranked
+     * @return Accepted portlet fnames ranked by the number of times they were added to layouts,
+     *     highest first, or null if the window is not served by the index
+     */
+    List<RankedCount<String>> getPopularPortlets(
+            AggregatedGroupMapping group, int days, Predicate<String> filter);
+
+    /**
+     * @param hours Number of closed hours in the window
+     * @return Search terms ranked by the number of searches, highest first, or null if the window
+     *     is not served by the index
+     */
+    List<RankedCount<String>> getPopularSearchTerms(AggregatedGroupMapping group, int hours);
+
+    /** Feed intervals closed by the event aggregation since the last call into the rankings */
+    void refresh();
+}
@@ -0,0 +1,386 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr.popular;
+
+import com.google.common.base.Predicate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apereo.portal.events.aggr.AggregationInterval;
+import org.apereo.portal.events.aggr.IEventAggregatorStatus;
+import org.apereo.portal.events.aggr.IEventAggregatorStatus.ProcessingType;
+import org.apereo.portal.events.aggr.action.SearchRequestAggregation;
+import org.apereo.portal.events.aggr.action.SearchRequestAggregationDao;
+import org.apereo.portal.events.aggr.action.SearchRequestAggregationImpl;
+import org.apereo.portal.events.aggr.dao.IEventAggregationManagementDao;
+import org.apereo.portal.events.aggr.groups.AggregatedGroupMapping;
+import org.apereo.portal.events.aggr.portletlayout.PortletLayoutAggregation;
+import org.apereo.portal.events.aggr.portletlayout.PortletLayoutAggregationDao;
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Rankings are grouped into feeds, one per ranked counter and group. A feed remembers the end of
+ * the closed intervals it has loaded, {@link #refresh()} loads only the intervals closed since then
+ * with a single query and adds them to every window of the feed. An interval is closed once the
+ * event aggregation has processed an event after its end, from then on its counts cannot change.
+ *
+ * <p>The index is fed from the aggregation tables rather than from the aggregators directly, event
+ * aggregation only runs on one server of a cluster while the rankings are read on every server.
+ */
+@Service("popularityIndex")
+public class PopularityIndexImpl implements PopularityIndex {
+    /** Largest window served for portlet rankings */
+    public static final int MAX_PORTLET_WINDOW_DAYS = 366;
+    /** Largest window served for search term rankings */
+    public static final int MAX_SEARCH_WINDOW_HOURS = 7 * 24;
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<FeedKey, Feed> feeds = new ConcurrentHashMap<FeedKey, Feed>();
+
+    private IEventAggregationManagementDao eventAggregationManagementDao;
+    private PortletLayoutAggregationDao<PortletLayoutAggregation> portletLayoutAggregationDao;
+    private SearchRequestAggregationDao<SearchRequestAggregation> searchRequestAggregationDao;
+    private boolean enabled = true;
+    private int rankingSize = 100;
+    private int maxWindowsPerFeed = 8;
+
+    private final RankingSource portletAdds =
+            new RankingSource("portletAdds", AggregationInterval.DAY) {
+                @Override
+                protected void load(
+                        DateTime start,
+                        DateTime end,
+                        AggregatedGroupMapping group,
+                        SortedMap<Long, Map<String, Integer>> buckets) {
+                    for (final PortletLayoutAggregation aggregation :
+                            portletLayoutAggregationDao.getAggregationsForAllPortlets(
+                                    start, end, this.getInterval(), group)) {
+                        count(
+                                buckets,
+                                aggregation.getDateTime(),
+                                aggregation.getPortletMapping().getFname(),
+                                aggregation.getAddCount());
+                    }
+                }
+            };
+
+    private final RankingSource searchTerms =
+            new RankingSource("searchTerms", AggregationInterval.FIVE_MINUTE) {
+                @Override
+                protected void load(
+                        DateTime start,
+                        DateTime end,
+                        AggregatedGroupMapping group,
+                        SortedMap<Long, Map<String, Integer>> buckets) {
+                    for (final SearchRequestAggregationImpl aggregation :
+                            searchRequestAggregationDao.getAggregations(
+                                    start, end, this.getInterval(), group)) {
+                        count(
+                                buckets,
+                                aggregation.getDateTime(),
+                                aggregation.getSearchTerm(),
+                                aggregation.getCount());
+                    }
+                }
+            };
+
+    @Autowired
+    public void setEventAggregationManagementDao(
+            IEventAggregationManagementDao eventAggregationManagementDao) {
+        this.eventAggregationManagementDao = eventAggregationManagementDao;
+    }
+
+    @Autowired
+    public void setPortletLayoutAggregationDao(
+            PortletLayoutAggregationDao<PortletLayoutAggregation> portletLayoutAggregationDao) {
+        this.portletLayoutAggregationDao = portletLayoutAggregationDao;
+    }
+
+    @Autowired
+    public void setSearchRequestAggregationDao(
+            SearchRequestAggregationDao<SearchRequestAggregation> searchRequestAggregationDao) {
+        this.searchRequestAggregationDao = searchRequestAggregationDao;
+    }
+
+    /** If false no rankings are served and callers query the aggregation DAOs */
+    @Value("${org.apereo.portal.events.aggr.popular.PopularityIndexImpl.enabled:true}")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** Maximum number of entries kept in each ranking */
+    @Value("${org.apereo.portal.events.aggr.popular.PopularityIndexImpl.rankingSize:100}")
+    public void setRankingSize(int rankingSize) {
+        this.rankingSize = rankingSize;
+    }
+
+    /**
+     * Maximum number of distinct window sizes maintained per counter and group, requests for
+     * further window sizes are not served by the index
+     */
+    @Value("${org.apereo.portal.events.aggr.popular.PopularityIndexImpl.maxWindowsPerFeed:8}")
+    public void setMaxWindowsPerFeed(int maxWindowsPerFeed) {
+        this.maxWindowsPerFeed = maxWindowsPerFeed;
+    }
+
+    @Override
+    public List<RankedCount<String>> getPopularPortlets(AggregatedGroupMapping group, int days) {
+        if (days < 1 || days > MAX_PORTLET_WINDOW_DAYS) {
+            return null;
+        }
+        final SlidingWindowTopN<String> ranking =
+                this.getRanking(this.portletAdds, group, Period.days(days));
+        return ranking != null ? ranking.getTopN() : null;
+    }
+
+    @Override
+    public List<RankedCount<String>> getPopularPortlets(
+            AggregatedGroupMapping group, int days, Predicate<String> filter) {
+        if (days < 1 || days > MAX_PORTLET_WINDOW_DAYS) {
+            return null;
+        }
+        final SlidingWindowTopN<String> ranking =
+                this.getRanking(this.portletAdds, group, Period.days(days));
+        return ranking != null ? ranking.getTopN(filter) : null;
+    }
+
+    @Override
+    public List<RankedCount<String>> getPopularSearchTerms(
+            AggregatedGroupMapping group, int hours) {
+        if (hours < 1 || hours > MAX_SEARCH_WINDOW_HOURS) {
+            return null;
+        }
+        final SlidingWindowTopN<String> ranking =
+                this.getRanking(this.searchTerms, group, Period.hours(hours));
+        return ranking != null ? ranking.getTopN() : null;
+    }
+
+    @Override
+    public void refresh() {
+        if (!this.enabled || this.feeds.isEmpty()) {
+            return;
+        }
+
+        final DateTime lastAggregated = this.getLastAggregatedEventDate();
+        if (lastAggregated == null) {
+            return;
+        }
+
+        for (final Feed feed : this.feeds.values()) {
+            try {
+                feed.refresh(feed.source.getClosedUntil(lastAggregated));
+            } catch (RuntimeException e) {
+                this.logger.warn("Failed to refresh popularity rankings for {}", feed, e);
+            }
+        }
+    }
+
+    private SlidingWindowTopN<String> getRanking(
+            RankingSource source, AggregatedGroupMapping group, Period window) {
+        if (!this.enabled || group == null) {
+            return null;
+        }
+
+        final FeedKey feedKey = new FeedKey(source.name, group);
+        Feed feed = this.feeds.get(feedKey);
+        if (feed == null) {
+            final DateTime lastAggregated = this.getLastAggregatedEventDate();
+            if (lastAggregated == null) {
+                // Nothing has been aggregated yet
+                return null;
+            }
+
+            final Feed newFeed = new Feed(source, group, source.getClosedUntil(lastAggregated));
+            feed = this.feeds.putIfAbsent(feedKey, newFeed);
+            if (feed == null) {
+                feed = newFeed;
+            }
+        }
+
+        return feed.getRanking(window);
+    }
+
+    private DateTime getLastAggregatedEventDate() {
+        final IEventAggregatorStatus aggregationStatus =
+                this.eventAggregationManagementDao.getEventAggregatorStatus(
+                        ProcessingType.AGGREGATION, false);
+        return aggregationStatus != null ? aggregationStatus.getLastEventDate() : null;
+    }
+
+    /** A counter that can be ranked, loads per interval counts from the aggregation DAOs */
+    private abstract static class RankingSource {
+        private final String name;
+        private final AggregationInterval interval;
+
+        RankingSource(String name, AggregationInterval interval) {
+            this.name = name;
+            this.interval = interval;
+        }
+
+        AggregationInterval getInterval() {
+            return this.interval;
+        }
+
+        /** @return The end of the last interval that is closed given the last aggregated event */
+        DateTime getClosedUntil(DateTime lastAggregated) {
+            return this.interval.determineStart(lastAggregated);
+        }
+
+        /** @return Counts of the intervals starting in [start, end) keyed by interval start */
+        SortedMap<Long, Map<String, Integer>> load(
+                DateTime start, DateTime end, AggregatedGroupMapping group) {
+            final SortedMap<Long, Map<String, Integer>> buckets =
+                    new TreeMap<Long, Map<String, Integer>>();
+            if (start.isBefore(end)) {
+                this.load(start, end, group, buckets);
+            }
+            return buckets;
+        }
+
+        protected abstract void load(
+                DateTime start,
+                DateTime end,
+                AggregatedGroupMapping group,
+                SortedMap<Long, Map<String, Integer>> buckets);
+
+        protected static void count(
+                SortedMap<Long, Map<String, Integer>> buckets,
+                DateTime intervalStart,
+                String key,
+                int count) {
+            Map<String, Integer> counts = buckets.get(intervalStart.getMillis());
+            if (counts == null) {
+                counts = new HashMap<String, Integer>();
+                buckets.put(intervalStart.getMillis(), counts);
+            }
+            final Integer previous = counts.get(key);
+            counts.put(key, previous != null ? previous + count : count);
+        }
+    }
+
+    /** The windows of one ranking source and group, all fed from the same closed intervals */
+    private final class Feed {
+        private final RankingSource source;
+        private final AggregatedGroupMapping group;
+        private final ConcurrentMap<Period, SlidingWindowTopN<String>> windows =
+                new ConcurrentHashMap<Period, SlidingWindowTopN<String>>();
+        // End of the closed intervals loaded into the windows, guarded by this
+        private DateTime loadedUntil;
+
+        Feed(RankingSource source, AggregatedGroupMapping group, DateTime loadedUntil) {
+            this.source = source;
+            this.group = group;
+            this.loadedUntil = loadedUntil;
+        }
+
+        SlidingWindowTopN<String> getRanking(Period window) {
+            SlidingWindowTopN<String> ranking = this.windows.get(window);
+            if (ranking != null) {
+                return ranking;
+            }
+
+            synchronized (this) {
+                ranking = this.windows.get(window);
+                if (ranking != null) {
+                    return ranking;
+                }
+                if (this.windows.size() >= maxWindowsPerFeed) {
+                    return null;
+                }
+
+                // Seed the new window from the same closed intervals as the existing windows
+                final DateTime windowStart = this.loadedUntil.minus(window);
+                ranking = new SlidingWindowTopN<String>(rankingSize);
+                addIntervals(ranking, this.source.load(windowStart, this.loadedUntil, this.group));
+                ranking.advance(windowStart.getMillis());
+
+                this.windows.put(window, ranking);
+                logger.debug(
+                        "Created {} window ending {} for {} with {} intervals",
+                        window,
+                        this.loadedUntil,
+                        this,
+                        ranking.getIntervalCount());
+                return ranking;
+            }
+        }
+
+        synchronized void refresh(DateTime closedUntil) {
+            if (!this.loadedUntil.isBefore(closedUntil)) {
+                return;
+            }
+
+            final SortedMap<Long, Map<String, Integer>> buckets =
+                    this.source.load(this.loadedUntil, closedUntil, this.group);
+            for (final Map.Entry<Period, SlidingWindowTopN<String>> windowEntry :
+                    this.windows.entrySet()) {
+                final SlidingWindowTopN<String> ranking = windowEntry.getValue();
+                addIntervals(ranking, buckets);
+                ranking.advance(closedUntil.minus(windowEntry.getKey()).getMillis());
+            }
+            this.loadedUntil = closedUntil;
+        }
+
+        private void addIntervals(
+                SlidingWindowTopN<String> ranking, SortedMap<Long, Map<String, Integer>> buckets) {
+            for (final Map.Entry<Long, Map<String, Integer>> bucket : buckets.entrySet()) {
+                ranking.addInterval(bucket.getKey(), bucket.getValue());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Feed [source=" + this.source.name + ", group=" + this.group + "]";
+        }
+    }
+
+    private static final class FeedKey {
+        private final String source;
+        private final AggregatedGroupMapping group;
+
+        FeedKey(String source, AggregatedGroupMapping group) {
+            this.source = source;
+            this.group = group;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.source.hashCode() + this.group.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof FeedKey)) {
+                return false;
+            }
+            final FeedKey other = (FeedKey) obj;
+            return this.source.equals(other.source) && this.group.equals(other.group);
+        }
+    }
+}
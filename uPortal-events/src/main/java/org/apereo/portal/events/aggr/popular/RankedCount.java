@@ -0,0 +1,47 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr.popular;
+
+import java.io.Serializable;
+
+/**
+ * A key and its total count within a ranking window
+ *
+ * @param <K> The type of the ranked key
+ */
+public final class RankedCount<K> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final K key;
+    private final long count;
+
+    public RankedCount(K key, long count) {
+        this.key = key;
+        this.count = count;
+    }
+
+    public K getKey() {
+        return this.key;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    @Override
+    public String toString() {
+        return "RankedCount [key=" + this.key + ", count=" + this.count + "]";
+    }
+}
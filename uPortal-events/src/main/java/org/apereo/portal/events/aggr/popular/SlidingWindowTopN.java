@@ -0,0 +1,180 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr.popular;
+
+import com.google.common.base.Predicate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Sliding window of per interval counts that maintains the keys with the highest total count in the
+ * window. Intervals are added oldest first as they close, {@link #advance(long)} then drops the
+ * intervals that slid out of the window and recomputes the ranking with a bounded min-heap.
+ *
+ * <p>Updates must be serialized by the caller, {@link #getTopN()} returns an immutable snapshot and
+ * may be called from any thread.
+ *
+ * @param <K> The type of the counted key
+ */
+public class SlidingWindowTopN<K> {
+    private static final Comparator<RankedCount<?>> ASCENDING_COUNT =
+            new Comparator<RankedCount<?>>() {
+                @Override
+                public int compare(RankedCount<?> o1, RankedCount<?> o2) {
+                    return Long.compare(o1.getCount(), o2.getCount());
+                }
+            };
+
+    private final int capacity;
+    private final Deque<Bucket<K>> buckets = new ArrayDeque<Bucket<K>>();
+    private final Map<K, long[]> totals = new HashMap<K, long[]>();
+    private volatile List<RankedCount<K>> counts = Collections.emptyList();
+    private volatile List<RankedCount<K>> topN = Collections.emptyList();
+
+    /** @param capacity The maximum number of keys in the ranking */
+    public SlidingWindowTopN(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add the counts of a closed interval to the window, the ranking is not updated until the next
+     * call to {@link #advance(long)}
+     *
+     * @param intervalStart Start of the interval in milliseconds, must be after the start of every
+     *     interval already in the window
+     */
+    public void addInterval(long intervalStart, Map<K, ? extends Number> counts) {
+        final Bucket<K> last = this.buckets.peekLast();
+        if (last != null && intervalStart <= last.start) {
+            throw new IllegalArgumentException(
+                    "Interval starting "
+                            + intervalStart
+                            + " is not after the last interval starting "
+                            + last.start);
+        }
+
+        final Map<K, Long> bucketCounts = new HashMap<K, Long>(counts.size() * 2);
+        for (final Map.Entry<K, ? extends Number> countEntry : counts.entrySet()) {
+            final long count = countEntry.getValue().longValue();
+            if (count == 0) {
+                continue;
+            }
+
+            final K key = countEntry.getKey();
+            bucketCounts.put(key, count);
+
+            long[] total = this.totals.get(key);
+            if (total == null) {
+                total = new long[1];
+                this.totals.put(key, total);
+            }
+            total[0] += count;
+        }
+
+        this.buckets.addLast(new Bucket<K>(intervalStart, bucketCounts));
+    }
+
+    /**
+     * Drop every interval that starts before the window start and recompute the ranking
+     *
+     * @param windowStart Start of the window in milliseconds
+     */
+    public void advance(long windowStart) {
+        for (Bucket<K> first = this.buckets.peekFirst();
+                first != null && first.start < windowStart;
+                first = this.buckets.peekFirst()) {
+            this.buckets.removeFirst();
+
+            for (final Map.Entry<K, Long> countEntry : first.counts.entrySet()) {
+                final K key = countEntry.getKey();
+                final long[] total = this.totals.get(key);
+                total[0] -= countEntry.getValue();
+                if (total[0] == 0) {
+                    this.totals.remove(key);
+                }
+            }
+        }
+
+        final List<RankedCount<K>> counts = new ArrayList<RankedCount<K>>(this.totals.size());
+        for (final Map.Entry<K, long[]> totalEntry : this.totals.entrySet()) {
+            counts.add(new RankedCount<K>(totalEntry.getKey(), totalEntry.getValue()[0]));
+        }
+        this.counts = Collections.unmodifiableList(counts);
+        this.topN = this.rank(counts, null);
+    }
+
+    /** @return The keys with the highest total count in the window, highest count first */
+    public List<RankedCount<K>> getTopN() {
+        return this.topN;
+    }
+
+    /**
+     * Ranks only the keys accepted by the filter, so keys the caller would discard don't take up
+     * places in the ranking. Uses the totals of the last {@link #advance(long)} and may be called
+     * from any thread.
+     *
+     * @param filter Keys to include in the ranking
+     * @return The accepted keys with the highest total count in the window, highest count first
+     */
+    public List<RankedCount<K>> getTopN(Predicate<? super K> filter) {
+        return this.rank(this.counts, filter);
+    }
+
+    /** @return The number of intervals in the window */
+    public int getIntervalCount() {
+        return this.buckets.size();
+    }
+
+    private List<RankedCount<K>> rank(List<RankedCount<K>> counts, Predicate<? super K> filter) {
+        final PriorityQueue<RankedCount<K>> heap =
+                new PriorityQueue<RankedCount<K>>(this.capacity + 1, ASCENDING_COUNT);
+        for (final RankedCount<K> count : counts) {
+            if (heap.size() >= this.capacity && count.getCount() <= heap.peek().getCount()) {
+                continue;
+            }
+            if (filter != null && !filter.apply(count.getKey())) {
+                continue;
+            }
+            if (heap.size() >= this.capacity) {
+                heap.poll();
+            }
+            heap.add(count);
+        }
+
+        final List<RankedCount<K>> ranked = new ArrayList<RankedCount<K>>(heap);
+        Collections.sort(ranked, Collections.reverseOrder(ASCENDING_COUNT));
+        return Collections.unmodifiableList(ranked);
+    }
+
+    private static final class Bucket<K> {
+        private final long start;
+        private final Map<K, Long> counts;
+
+        Bucket(long start, Map<K, Long> counts) {
+            this.start = start;
+            this.counts = counts;
+        }
+    }
+}
@@ -39,4 +39,11 @@ public interface EventSessionDao {
 
     /** Purge expired events, expired is defined by the implementation */
     int purgeEventSessionsBefore(DateTime lastAggregatedEventDate);
+
+    /**
+     * Purge at most maxSessions expired events sessions in a single transaction
+     *
+     * @return The number of sessions purged, less than maxSessions once no more sessions remain
+     */
+    int purgeEventSessionsBefore(DateTime lastAggregatedEventDate, int maxSessions);
 }
@@ -180,7 +180,7 @@ public class JpaEventSessionDao extends BaseAggrEventsJpaDao implements EventSes
         query.executeUpdate();
     }
 
-    private void purgeEventList(int batchSize, DateTime lastAggregatedEventDate) {
+    private int purgeEventList(int batchSize, DateTime lastAggregatedEventDate) {
         final TypedQuery<EventSessionImpl> query =
                 this.createQuery(this.findExpiredEventSessionsQuery);
         query.setParameter(this.dateTimeParameter, lastAggregatedEventDate);
@@ -189,6 +189,7 @@ public class JpaEventSessionDao extends BaseAggrEventsJpaDao implements EventSes
         for (final EventSessionImpl eventSession : resultList) {
             this.getEntityManager().remove(eventSession);
         }
+        return resultList.size();
     }
 
     @AggrEventsTransactional
@@ -208,6 +209,12 @@ public class JpaEventSessionDao extends BaseAggrEventsJpaDao implements EventSes
         return totalRows;
     }
 
+    @AggrEventsTransactional
+    @Override
+    public int purgeEventSessionsBefore(DateTime lastAggregatedEventDate, int maxSessions) {
+        return purgeEventList(maxSessions, lastAggregatedEventDate);
+    }
+
     /** Get groups for the event */
     protected Set<AggregatedGroupMapping> getGroupsForEvent(PortalEvent event) {
         final Set<AggregatedGroupMapping> groupMappings =
@@ -19,6 +19,8 @@ import java.util.Collection;
 import java.util.Set;
 import java.util.regex.Pattern;
 import org.apereo.portal.events.PortalEvent;
+import org.apereo.portal.events.handlers.db.EncodedPortalEvent;
+import org.apereo.portal.events.handlers.db.EncodedPortalEventFilter;
 import org.apereo.portal.security.IPerson;
 import org.apereo.portal.spring.context.ApplicationEventFilter;
 import org.slf4j.Logger;
@@ -27,7 +29,7 @@ import org.springframework.context.ApplicationEvent;
 
 /** Filters {@link PortalEvent}s based on */
 public final class UserFilteringPortalEventHandler<E extends PortalEvent>
-        implements ApplicationEventFilter<E> {
+        implements ApplicationEventFilter<E>, EncodedPortalEventFilter {
     protected final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     /** The list of supported classes. */
@@ -104,8 +106,20 @@ public final class UserFilteringPortalEventHandler<E extends PortalEvent>
             return false;
         }
 
+        return this.supportsUserName(event.getUserName());
+    }
+
+    /**
+     * Applies the user name checks to the encoded event header. The guest check requires the {@link
+     * IPerson} which is not stored with the event so it is not applied.
+     */
+    @Override
+    public boolean supports(EncodedPortalEvent event) {
+        return this.supportsUserName(event.getUserName());
+    }
+
+    private boolean supportsUserName(String userName) {
         // userName check
-        final String userName = event.getUserName();
         if (this.supportedUserNames != null && this.supportedUserNames.contains(userName)) {
             return true;
         }
@@ -0,0 +1,185 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.handlers.db;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.apereo.portal.events.PortalEvent;
+import org.joda.time.DateTime;
+
+/**
+ * Read-only view of a {@link PortalEvent} stored in the compact binary format written by {@link
+ * PortalEventBinaryCodec}. Only the fixed header (event type, event session id, user name and
+ * timestamp) is decoded when the view is created, the event body is left untouched until {@link
+ * PortalEventBinaryCodec#decode(EncodedPortalEvent, Class)} is called. This allows events to be
+ * filtered during aggregation without materializing the full event object.
+ *
+ * @since 5.3
+ */
+public final class EncodedPortalEvent {
+    private final byte[] data;
+    private final int version;
+    private final long timestamp;
+    private final String eventTypeName;
+    private final String eventSessionId;
+    private final String userName;
+    private final int bodyOffset;
+    private DateTime timestampAsDate;
+
+    private EncodedPortalEvent(
+            byte[] data,
+            int version,
+            long timestamp,
+            String eventTypeName,
+            String eventSessionId,
+            String userName,
+            int bodyOffset) {
+        this.data = data;
+        this.version = version;
+        this.timestamp = timestamp;
+        this.eventTypeName = eventTypeName;
+        this.eventSessionId = eventSessionId;
+        this.userName = userName;
+        this.bodyOffset = bodyOffset;
+    }
+
+    /**
+     * Read the header of the encoded event.
+     *
+     * @throws IllegalArgumentException if the data is not a supported encoding
+     */
+    public static EncodedPortalEvent parse(byte[] data) {
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            if (buffer.get() != PortalEventBinaryCodec.MAGIC) {
+                throw new IllegalArgumentException("Data is not an encoded PortalEvent");
+            }
+            final int version = buffer.get();
+            if (!PortalEventBinaryCodec.isSupportedVersion(version)) {
+                throw new IllegalArgumentException(
+                        "Unsupported PortalEvent encoding version: " + version);
+            }
+            final long timestamp = buffer.getLong();
+            final String eventTypeName = PortalEventBinaryCodec.expandTypeName(readString(buffer));
+            final String eventSessionId = readString(buffer);
+            final String userName = readString(buffer);
+            return new EncodedPortalEvent(
+                    data,
+                    version,
+                    timestamp,
+                    eventTypeName,
+                    eventSessionId,
+                    userName,
+                    buffer.position());
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated PortalEvent encoding", e);
+        }
+    }
+
+    /** @return The version of the encoding the event was written with */
+    public int getVersion() {
+        return this.version;
+    }
+
+    /** @return The {@link PortalEvent#getTimestamp()} of the event */
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    /** @return The timestamp of the event as a {@link DateTime} */
+    public DateTime getTimestampAsDate() {
+        DateTime d = this.timestampAsDate;
+        if (d == null) {
+            d = new DateTime(this.timestamp);
+            this.timestampAsDate = d;
+        }
+        return d;
+    }
+
+    /** @return The fully qualified class name of the event */
+    public String getEventTypeName() {
+        return this.eventTypeName;
+    }
+
+    /** @return true if the event is an instance of the specified type */
+    public boolean isEventType(Class<? extends PortalEvent> eventType) {
+        return eventType.getName().equals(this.eventTypeName);
+    }
+
+    /** @return The {@link PortalEvent#getEventSessionId()} of the event */
+    public String getEventSessionId() {
+        return this.eventSessionId;
+    }
+
+    /** @return The {@link PortalEvent#getUserName()} of the event */
+    public String getUserName() {
+        return this.userName;
+    }
+
+    /** @return A buffer positioned at the start of the encoded event body */
+    ByteBuffer getBody() {
+        final ByteBuffer buffer = ByteBuffer.wrap(this.data);
+        buffer.position(this.bodyOffset);
+        return buffer;
+    }
+
+    static String readString(ByteBuffer buffer) {
+        final int length = (int) readVarLong(buffer) - 1;
+        if (length < 0) {
+            return null;
+        }
+        final String value =
+                new String(
+                        buffer.array(),
+                        buffer.arrayOffset() + buffer.position(),
+                        length,
+                        StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 63) {
+                throw new IllegalArgumentException("Malformed variable length number");
+            }
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedPortalEvent [eventType="
+                + this.eventTypeName
+                + ", timestamp="
+                + this.timestamp
+                + ", eventSessionId="
+                + this.eventSessionId
+                + ", userName="
+                + this.userName
+                + ", version="
+                + this.version
+                + ", length="
+                + this.data.length
+                + "]";
+    }
+}
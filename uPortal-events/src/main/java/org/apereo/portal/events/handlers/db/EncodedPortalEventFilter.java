@@ -0,0 +1,29 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.handlers.db;
+
+/**
+ * Filter for {@link EncodedPortalEvent}s that can be evaluated using only the encoded event header.
+ * If the handler passed to {@link IPortalEventDao#aggregatePortalEvents(org.joda.time.DateTime,
+ * org.joda.time.DateTime, int, com.google.common.base.Function)} also implements this interface
+ * events it does not support are marked as aggregated without being decoded or passed to the
+ * handler.
+ *
+ * @since 5.3
+ */
+public interface EncodedPortalEventFilter {
+    /** @return true if the event is supported, false if not */
+    boolean supports(EncodedPortalEvent event);
+}
@@ -53,6 +53,10 @@ public interface IPortalEventDao {
      * should stop the handler should return false after processing an event. Only events processed
      * up to that point will be marked as aggregated.
      *
+     * <p>If the handler also implements {@link EncodedPortalEventFilter} events stored in the
+     * binary encoding that the filter does not support are marked as aggregated without being
+     * decoded or passed to the handler.
+     *
      * @param startTime The inclusive start time to get events for
      * @param endTime The exclusive end time to get events for
      * @param maxEvents The maximum number events to retrieve. -1 means no limit
@@ -72,6 +76,27 @@ public interface IPortalEventDao {
     /** @return The timestamp of the most recent event in the persitent store */
     DateTime getNewestPortalEventTimestamp();
 
+    /**
+     * Add the {@link PortalEventBinaryCodec} encoding to stored events that only have the JSON
+     * representation, in event id order. Examined events are updated even if they can't be encoded
+     * so they are not selected again. Once a call with an afterEventId of -1 finds no events left
+     * to encode new events are no longer stored as JSON unless configured to do so.
+     *
+     * @param afterEventId Only events with an id greater than this are encoded, -1 for all events
+     * @param maxEvents The maximum number of events to examine. -1 means no limit
+     * @return The id of the last event examined, -1 if there were no events left to encode
+     */
+    long encodePortalEvents(long afterEventId, int maxEvents);
+
     /** Delete events with timestamps from before the specified date (exclusive) */
     int deletePortalEventsBefore(DateTime endTime);
+
+    /**
+     * Delete at most maxEvents of the events with timestamps from before the specified date
+     * (exclusive), oldest event ids first. Each call deletes a bounded key range of events so that
+     * large purges can be split into short transactions.
+     *
+     * @return The number of events deleted, less than maxEvents once no more events remain
+     */
+    int deletePortalEventsBefore(DateTime endTime, int maxEvents);
 }
@@ -46,20 +46,31 @@ import org.springframework.stereotype.Repository;
  */
 @Repository
 public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalEventDao {
+    /** EVENT_BINARY value of events the migration could not encode, they are only stored as JSON */
+    private static final byte[] NOT_ENCODED = new byte[0];
 
     private ObjectMapper mapper;
+    private PortalEventBinaryCodec codec;
     private String deleteQuery;
+    private String selectPurgeableIdsQuery;
+    private String deleteChunkQuery;
     private String selectQuery;
     private String selectUnaggregatedQuery;
+    private String selectUnencodedQuery;
     private int flushPeriod = 1000;
+    private boolean storeJsonEventData = false;
+    private boolean storeEncodedEventData = true;
+    private volatile boolean eventDataEncoded = false;
     private CriteriaQuery<DateTime> findNewestPersistentPortalEventTimestampQuery;
     private CriteriaQuery<DateTime> findOldestPersistentPortalEventTimestampQuery;
     private ParameterExpression<DateTime> startTimeParameter;
     private ParameterExpression<DateTime> endTimeParameter;
+    private ParameterExpression<Long> eventIdParameter;
 
     @Autowired
     public void setMapper(ObjectMapper mapper) {
         this.mapper = mapper;
+        this.codec = new PortalEventBinaryCodec(mapper);
     }
 
     /**
@@ -72,10 +83,30 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
         this.flushPeriod = flushPeriod;
     }
 
+    /**
+     * If events should always be stored as JSON in the EVENT_DATA column, defaults to false. Events
+     * are also stored as JSON until {@link #encodePortalEvents(long, int)} finds no events left
+     * without the binary encoding and when the binary encoding fails.
+     */
+    @Value("${org.apereo.portal.events.handlers.db.JpaPortalEventStore.storeJsonEventData:false}")
+    public void setStoreJsonEventData(boolean storeJsonEventData) {
+        this.storeJsonEventData = storeJsonEventData;
+    }
+
+    /**
+     * If events should be stored in the {@link PortalEventBinaryCodec} encoding in the EVENT_BINARY
+     * column, defaults to true.
+     */
+    @Value("${org.apereo.portal.events.handlers.db.JpaPortalEventStore.storeEncodedEventData:true}")
+    public void setStoreEncodedEventData(boolean storeEncodedEventData) {
+        this.storeEncodedEventData = storeEncodedEventData;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         this.startTimeParameter = this.createParameterExpression(DateTime.class, "startTime");
         this.endTimeParameter = this.createParameterExpression(DateTime.class, "endTime");
+        this.eventIdParameter = this.createParameterExpression(Long.class, "eventId");
 
         this.selectQuery =
                 "SELECT e "
@@ -125,6 +156,23 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
                         + PersistentPortalEvent_.timestamp.getName()
                         + " ASC";
 
+        this.selectUnencodedQuery =
+                "SELECT e "
+                        + "FROM "
+                        + PersistentPortalEvent.class.getName()
+                        + " e "
+                        + "WHERE e."
+                        + PersistentPortalEvent_.id.getName()
+                        + " > :"
+                        + this.eventIdParameter.getName()
+                        + " "
+                        + "AND e."
+                        + PersistentPortalEvent_.encodedEventData.getName()
+                        + " is null "
+                        + "ORDER BY e."
+                        + PersistentPortalEvent_.id.getName()
+                        + " ASC";
+
         this.deleteQuery =
                 "DELETE FROM "
                         + PersistentPortalEvent.class.getName()
@@ -134,6 +182,36 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
                         + " < :"
                         + this.endTimeParameter.getName();
 
+        this.selectPurgeableIdsQuery =
+                "SELECT e."
+                        + PersistentPortalEvent_.id.getName()
+                        + " "
+                        + "FROM "
+                        + PersistentPortalEvent.class.getName()
+                        + " e "
+                        + "WHERE e."
+                        + PersistentPortalEvent_.timestamp.getName()
+                        + " < :"
+                        + this.endTimeParameter.getName()
+                        + " "
+                        + "ORDER BY e."
+                        + PersistentPortalEvent_.id.getName()
+                        + " ASC";
+
+        this.deleteChunkQuery =
+                "DELETE FROM "
+                        + PersistentPortalEvent.class.getName()
+                        + " e "
+                        + "WHERE e."
+                        + PersistentPortalEvent_.id.getName()
+                        + " <= :"
+                        + this.eventIdParameter.getName()
+                        + " "
+                        + "AND e."
+                        + PersistentPortalEvent_.timestamp.getName()
+                        + " < :"
+                        + this.endTimeParameter.getName();
+
         this.findNewestPersistentPortalEventTimestampQuery =
                 this.createCriteriaQuery(
                         new Function<CriteriaBuilder, CriteriaQuery<DateTime>>() {
@@ -245,17 +323,32 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
             query.setMaxResults(maxEvents);
         }
 
+        final EncodedPortalEventFilter eventFilter =
+                handler instanceof EncodedPortalEventFilter
+                        ? (EncodedPortalEventFilter) handler
+                        : null;
+
         int resultCount = 0;
         for (final ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
                 results.next(); ) {
             final PersistentPortalEvent persistentPortalEvent =
                     (PersistentPortalEvent) results.get(0);
+
+            final EncodedPortalEvent encodedPortalEvent =
+                    this.toEncodedPortalEvent(persistentPortalEvent);
+            if (eventFilter != null
+                    && encodedPortalEvent != null
+                    && !eventFilter.supports(encodedPortalEvent)) {
+                // Filtered out using only the event header, no need to decode the event
+                persistentPortalEvent.setAggregated(true);
+                session.persist(persistentPortalEvent);
+                this.flushPeriodically(session, ++resultCount);
+                continue;
+            }
+
             final PortalEvent portalEvent;
             try {
-                portalEvent =
-                        this.toPortalEvent(
-                                persistentPortalEvent.getEventData(),
-                                persistentPortalEvent.getEventType());
+                portalEvent = this.toPortalEvent(persistentPortalEvent, encodedPortalEvent);
             } catch (RuntimeException e) {
                 this.logger.warn(
                         "Failed to convert PersistentPortalEvent to PortalEvent: "
@@ -283,15 +376,7 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
                 persistentPortalEvent.setAggregated(true);
                 session.persist(persistentPortalEvent);
 
-                // periodic flush and clear of session to manage memory demands
-                if (++resultCount % this.flushPeriod == 0) {
-                    this.logger.debug(
-                            "Aggregated {} events, flush and clear {} EntityManager.",
-                            resultCount,
-                            BaseRawEventsJpaDao.PERSISTENCE_UNIT_NAME);
-                    session.flush();
-                    session.clear();
-                }
+                this.flushPeriodically(session, ++resultCount);
 
             } catch (Exception e) {
                 this.logger.warn("Failed to aggregate portal event: " + persistentPortalEvent, e);
@@ -305,6 +390,18 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
         return true;
     }
 
+    /** periodic flush and clear of session to manage memory demands */
+    private void flushPeriodically(Session session, int resultCount) {
+        if (resultCount % this.flushPeriod == 0) {
+            this.logger.debug(
+                    "Aggregated {} events, flush and clear {} EntityManager.",
+                    resultCount,
+                    BaseRawEventsJpaDao.PERSISTENCE_UNIT_NAME);
+            session.flush();
+            session.clear();
+        }
+    }
+
     @Override
     public void getPortalEvents(
             DateTime startTime, DateTime endTime, FunctionWithoutResult<PortalEvent> handler) {
@@ -331,8 +428,8 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
                     (PersistentPortalEvent) results.get(0);
             final PortalEvent portalEvent =
                     this.toPortalEvent(
-                            persistentPortalEvent.getEventData(),
-                            persistentPortalEvent.getEventType());
+                            persistentPortalEvent,
+                            this.toEncodedPortalEvent(persistentPortalEvent));
             handler.apply(portalEvent);
             persistentPortalEvent.setAggregated(true);
             session.evict(persistentPortalEvent);
@@ -347,9 +444,123 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
         return query.executeUpdate();
     }
 
+    @Override
+    @RawEventsTransactional
+    public int deletePortalEventsBefore(DateTime time, int maxEvents) {
+        // Find the key range covering the oldest maxEvents events before the cutoff, every event
+        // before the cutoff with an id in that range is one of those events
+        final TypedQuery<Long> idQuery =
+                this.getEntityManager().createQuery(this.selectPurgeableIdsQuery, Long.class);
+        idQuery.setParameter(this.endTimeParameter.getName(), time);
+        idQuery.setMaxResults(maxEvents);
+        final List<Long> eventIds = idQuery.getResultList();
+        if (eventIds.isEmpty()) {
+            return 0;
+        }
+
+        final Query query = this.getEntityManager().createQuery(this.deleteChunkQuery);
+        query.setParameter(this.eventIdParameter.getName(), eventIds.get(eventIds.size() - 1));
+        query.setParameter(this.endTimeParameter.getName(), time);
+        return query.executeUpdate();
+    }
+
+    @Override
+    @RawEventsTransactional
+    public long encodePortalEvents(long afterEventId, int maxEvents) {
+        final TypedQuery<PersistentPortalEvent> query =
+                this.getEntityManager()
+                        .createQuery(this.selectUnencodedQuery, PersistentPortalEvent.class);
+        query.setParameter(this.eventIdParameter.getName(), afterEventId);
+        if (maxEvents > 0) {
+            query.setMaxResults(maxEvents);
+        }
+
+        long lastEventId = -1;
+        for (final PersistentPortalEvent persistentPortalEvent : query.getResultList()) {
+            lastEventId = persistentPortalEvent.getId();
+            try {
+                final PortalEvent portalEvent =
+                        this.toPortalEvent(
+                                persistentPortalEvent.getEventData(),
+                                persistentPortalEvent.getEventType());
+                persistentPortalEvent.setEncodedEventData(this.codec.encode(portalEvent));
+            } catch (IOException | RuntimeException e) {
+                this.logger.warn(
+                        "Failed to encode PersistentPortalEvent, it will only be stored as JSON: "
+                                + persistentPortalEvent,
+                        e);
+                // Empty encoding marks the event as examined so it isn't selected again
+                persistentPortalEvent.setEncodedEventData(NOT_ENCODED);
+            }
+        }
+
+        if (lastEventId < 0 && afterEventId < 0) {
+            this.eventDataEncoded = true;
+        }
+
+        return lastEventId;
+    }
+
     protected PersistentPortalEvent wrapPortalEvent(PortalEvent event) {
-        final String portalEventData = this.toString(event);
-        return new PersistentPortalEvent(event, portalEventData);
+        byte[] encodedEventData = null;
+        if (this.storeEncodedEventData) {
+            try {
+                encodedEventData = this.codec.encode(event);
+            } catch (IOException e) {
+                this.logger.warn(
+                        "Failed to encode PortalEvent, it will only be stored as JSON: " + event,
+                        e);
+            }
+        }
+
+        String portalEventData = null;
+        if (this.storeJsonEventData || !this.eventDataEncoded || encodedEventData == null) {
+            portalEventData = this.toString(event);
+        }
+
+        return new PersistentPortalEvent(event, portalEventData, encodedEventData);
+    }
+
+    /**
+     * @return The header of the binary encoded event, null if the event is only stored as JSON or
+     *     the encoding can't be read
+     */
+    protected EncodedPortalEvent toEncodedPortalEvent(PersistentPortalEvent persistentPortalEvent) {
+        final byte[] encodedEventData = persistentPortalEvent.getEncodedEventData();
+        if (encodedEventData == null || encodedEventData.length == 0) {
+            return null;
+        }
+
+        try {
+            return EncodedPortalEvent.parse(encodedEventData);
+        } catch (IllegalArgumentException e) {
+            this.logger.warn(
+                    "Failed to read encoded PortalEvent, falling back to JSON: "
+                            + persistentPortalEvent,
+                    e);
+            return null;
+        }
+    }
+
+    /** Decode the event preferring the binary encoding when available */
+    protected PortalEvent toPortalEvent(
+            PersistentPortalEvent persistentPortalEvent, EncodedPortalEvent encodedPortalEvent) {
+        if (encodedPortalEvent != null) {
+            try {
+                return this.codec.decode(encodedPortalEvent, persistentPortalEvent.getEventType());
+            } catch (IOException e) {
+                if (persistentPortalEvent.getEventData() == null) {
+                    throw new RuntimeException("Failed to deserialize PortalEvent data", e);
+                }
+                this.logger.warn(
+                        "Failed to decode encoded PortalEvent, falling back to JSON: "
+                                + persistentPortalEvent,
+                        e);
+            }
+        }
+
+        return this.toPortalEvent(
+                persistentPortalEvent.getEventData(), persistentPortalEvent.getEventType());
     }
 
     protected <E extends PortalEvent> E toPortalEvent(final String eventData, Class<E> eventType) {
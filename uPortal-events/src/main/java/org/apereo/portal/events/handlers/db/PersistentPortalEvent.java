@@ -48,7 +48,6 @@ public class PersistentPortalEvent implements Serializable {
     @Id
     @GeneratedValue(generator = "UP_RAW_EVENTS_GEN")
     @Column(name = "EVENT_ID")
-    @SuppressWarnings("unused")
     private final long id;
 
     @Index(name = "IDX_UP_RAW_EVENTS_TIMESTAMP")
@@ -76,10 +75,14 @@ public class PersistentPortalEvent implements Serializable {
     @Type(type = "class")
     private final Class<PortalEvent> eventType;
 
-    @Column(name = "EVENT_DATA", nullable = false, updatable = false, length = 10000)
+    @Column(name = "EVENT_DATA", updatable = false, length = 10000)
     @Lob
     private final String eventData;
 
+    @Column(name = "EVENT_BINARY", length = 10000)
+    @Lob
+    private byte[] encodedEventData;
+
     @Index(name = "IDX_UP_RAW_EVENTS_AGGREGATED")
     @Column(name = "AGGREGATED")
     private Boolean aggregated = false;
@@ -101,9 +104,10 @@ public class PersistentPortalEvent implements Serializable {
     }
 
     @SuppressWarnings("unchecked")
-    PersistentPortalEvent(PortalEvent portalEvent, String eventData) {
+    PersistentPortalEvent(PortalEvent portalEvent, String eventData, byte[] encodedEventData) {
         this.id = -1;
         this.eventData = eventData;
+        this.encodedEventData = encodedEventData;
         this.timestamp = new DateTime(portalEvent.getTimestamp());
         this.serverId = portalEvent.getServerId();
         this.eventSessionId = portalEvent.getEventSessionId();
@@ -111,15 +115,31 @@ public class PersistentPortalEvent implements Serializable {
         this.eventType = (Class<PortalEvent>) portalEvent.getClass();
     }
 
+    long getId() {
+        return this.id;
+    }
+
     public Class<PortalEvent> getEventType() {
         return this.eventType;
     }
 
-    /** @return the eventData */
+    /** @return the eventData, null if the event was only stored in the binary encoding */
     public String getEventData() {
         return this.eventData;
     }
 
+    /**
+     * @return the event data in the {@link PortalEventBinaryCodec} encoding, null if the event has
+     *     not been encoded yet
+     */
+    public byte[] getEncodedEventData() {
+        return this.encodedEventData;
+    }
+
+    void setEncodedEventData(byte[] encodedEventData) {
+        this.encodedEventData = encodedEventData;
+    }
+
     public boolean isAggregated() {
         Boolean a = this.aggregated;
         if (a == null) {
@@ -151,6 +171,17 @@ public class PersistentPortalEvent implements Serializable {
      */
     @Override
     public String toString() {
-        return this.eventData;
+        if (this.eventData != null) {
+            return this.eventData;
+        }
+        return "PersistentPortalEvent [id="
+                + this.id
+                + ", eventType="
+                + this.eventType
+                + ", timestamp="
+                + this.timestamp
+                + ", eventSessionId="
+                + this.eventSessionId
+                + "]";
     }
 }
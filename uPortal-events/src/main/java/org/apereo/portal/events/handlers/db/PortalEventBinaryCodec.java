@@ -0,0 +1,440 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.handlers.db;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apereo.portal.events.PortalEvent;
+
+/**
+ * Compact, versioned binary encoding for {@link PortalEvent}s stored in UP_RAW_EVENTS.
+ *
+ * <p>The encoding starts with a fixed header containing the event type, timestamp, event session id
+ * and user name which can be read with {@link EncodedPortalEvent#parse(byte[])} without touching
+ * the rest of the data. The header is followed by the Jackson token stream of the event, the same
+ * tokens that would be written as JSON. Field names are written as references into a dictionary
+ * made up of the well known {@link PortalEvent} property names followed by every new name seen
+ * earlier in the same event, numbers are written as variable length integers or raw doubles and
+ * strings as length prefixed UTF-8. Top level fields whose values are already in the header are
+ * written as a reference to the header value.
+ *
+ * <p>Decoding replays the token stream into the {@link ObjectMapper} so the same Jackson
+ * configuration used for the JSON representation applies to the binary one.
+ *
+ * @since 5.3
+ */
+public class PortalEventBinaryCodec {
+    static final byte MAGIC = (byte) 0xE5;
+    private static final String EVENT_PACKAGE_PREFIX =
+            PortalEvent.class.getPackage().getName() + ".";
+
+    /** Current version of the encoding, written by {@link #encode(PortalEvent)} */
+    public static final int VERSION = 1;
+
+    /**
+     * Shared field name dictionary for version 1 of the encoding. Entries may only ever be appended
+     * to the dictionary of a new version, existing indexes must never change.
+     */
+    private static final List<String> FIELD_NAMES_V1 =
+            ImmutableList.of(
+                    "@c",
+                    "timestamp",
+                    "serverId",
+                    "eventSessionId",
+                    "userName",
+                    "fname",
+                    "executionTimeNano",
+                    "parameters",
+                    "windowState",
+                    "portletMode",
+                    "requestPathInfo",
+                    "urlState",
+                    "urlType",
+                    "targetedLayoutNodeId",
+                    "usedPortalCache",
+                    "usedBrowserCache",
+                    "resourceId",
+                    "eventName",
+                    "layoutId",
+                    "layoutOwner",
+                    "parentFolderId",
+                    "oldParentFolderId",
+                    "newParentFolderId",
+                    "newFolderId",
+                    "movedFolderId",
+                    "deletedFolderId",
+                    "deletedFolderName",
+                    "groups",
+                    "attributes",
+                    "tenant");
+
+    private static final Map<String, Integer> FIELD_INDEXES_V1;
+
+    static {
+        final ImmutableMap.Builder<String, Integer> builder = ImmutableMap.builder();
+        for (int i = 0; i < FIELD_NAMES_V1.size(); i++) {
+            builder.put(FIELD_NAMES_V1.get(i), i);
+        }
+        FIELD_INDEXES_V1 = builder.build();
+    }
+
+    private static final int TOKEN_START_OBJECT = 1;
+    private static final int TOKEN_END_OBJECT = 2;
+    private static final int TOKEN_START_ARRAY = 3;
+    private static final int TOKEN_END_ARRAY = 4;
+    private static final int TOKEN_FIELD_NAME = 5;
+    private static final int TOKEN_FIELD_NAME_REF = 6;
+    private static final int TOKEN_VALUE_STRING = 7;
+    private static final int TOKEN_VALUE_LONG = 8;
+    private static final int TOKEN_VALUE_BIG_INTEGER = 9;
+    private static final int TOKEN_VALUE_DOUBLE = 10;
+    private static final int TOKEN_VALUE_BIG_DECIMAL = 11;
+    private static final int TOKEN_VALUE_TRUE = 12;
+    private static final int TOKEN_VALUE_FALSE = 13;
+    private static final int TOKEN_VALUE_NULL = 14;
+    private static final int TOKEN_HEADER_FIELD = 15;
+
+    // Dictionary indexes of the fields whose values are also stored in the header
+    private static final int FIELD_TIMESTAMP = 1;
+    private static final int FIELD_EVENT_SESSION_ID = 3;
+    private static final int FIELD_USER_NAME = 4;
+    private static final Set<Integer> HEADER_FIELDS =
+            ImmutableSet.of(FIELD_TIMESTAMP, FIELD_EVENT_SESSION_ID, FIELD_USER_NAME);
+
+    private final ObjectMapper mapper;
+
+    public PortalEventBinaryCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    static boolean isSupportedVersion(int version) {
+        return version == VERSION;
+    }
+
+    /** Class names in the {@link PortalEvent} package are stored relative to that package */
+    static String compactTypeName(String typeName) {
+        if (typeName.startsWith(EVENT_PACKAGE_PREFIX)) {
+            return typeName.substring(EVENT_PACKAGE_PREFIX.length() - 1);
+        }
+        return typeName;
+    }
+
+    static String expandTypeName(String typeName) {
+        if (typeName != null && typeName.startsWith(".")) {
+            return EVENT_PACKAGE_PREFIX + typeName.substring(1);
+        }
+        return typeName;
+    }
+
+    /**
+     * Encode the event
+     *
+     * @throws IOException if the event could not be serialized or contains content that can't be
+     *     represented in the binary encoding
+     */
+    public byte[] encode(PortalEvent event) throws IOException {
+        final TokenBuffer tokens = new TokenBuffer(this.mapper, false);
+        this.mapper.writeValue(tokens, event);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        out.write(MAGIC);
+        out.write(VERSION);
+        writeLong(out, event.getTimestamp());
+        writeString(out, compactTypeName(event.getClass().getName()));
+        writeString(out, event.getEventSessionId());
+        writeString(out, event.getUserName());
+
+        final Map<String, Integer> eventFieldIndexes = new HashMap<String, Integer>();
+        final JsonParser parser = tokens.asParser();
+        try {
+            int depth = 0;
+            for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+                switch (token) {
+                    case START_OBJECT:
+                        depth++;
+                        out.write(TOKEN_START_OBJECT);
+                        break;
+                    case END_OBJECT:
+                        depth--;
+                        out.write(TOKEN_END_OBJECT);
+                        break;
+                    case START_ARRAY:
+                        depth++;
+                        out.write(TOKEN_START_ARRAY);
+                        break;
+                    case END_ARRAY:
+                        depth--;
+                        out.write(TOKEN_END_ARRAY);
+                        break;
+                    case FIELD_NAME:
+                        {
+                            final String name = parser.getCurrentName();
+                            Integer index = FIELD_INDEXES_V1.get(name);
+                            if (depth == 1 && index != null && HEADER_FIELDS.contains(index)) {
+                                // Values already in the header are not repeated in the body
+                                token = parser.nextToken();
+                                if (isHeaderValue(event, index, parser, token)) {
+                                    out.write(TOKEN_HEADER_FIELD);
+                                    writeVarLong(out, index);
+                                } else {
+                                    out.write(TOKEN_FIELD_NAME_REF);
+                                    writeVarLong(out, index);
+                                    writeValue(out, parser, token, event);
+                                }
+                                break;
+                            }
+
+                            if (index == null) {
+                                index = eventFieldIndexes.get(name);
+                            }
+                            if (index != null) {
+                                out.write(TOKEN_FIELD_NAME_REF);
+                                writeVarLong(out, index);
+                            } else {
+                                out.write(TOKEN_FIELD_NAME);
+                                writeString(out, name);
+                                eventFieldIndexes.put(
+                                        name, FIELD_NAMES_V1.size() + eventFieldIndexes.size());
+                            }
+                            break;
+                        }
+                    default:
+                        writeValue(out, parser, token, event);
+                }
+            }
+        } finally {
+            parser.close();
+        }
+
+        return out.toByteArray();
+    }
+
+    /** Decode the full event */
+    public <E extends PortalEvent> E decode(EncodedPortalEvent encoded, Class<E> eventType)
+            throws IOException {
+        final ByteBuffer body = encoded.getBody();
+        final TokenBuffer tokens = new TokenBuffer(this.mapper, false);
+        final List<String> eventFieldNames = new ArrayList<String>();
+        try {
+            while (body.hasRemaining()) {
+                final int token = body.get();
+                switch (token) {
+                    case TOKEN_START_OBJECT:
+                        tokens.writeStartObject();
+                        break;
+                    case TOKEN_END_OBJECT:
+                        tokens.writeEndObject();
+                        break;
+                    case TOKEN_START_ARRAY:
+                        tokens.writeStartArray();
+                        break;
+                    case TOKEN_END_ARRAY:
+                        tokens.writeEndArray();
+                        break;
+                    case TOKEN_FIELD_NAME:
+                        {
+                            final String name = EncodedPortalEvent.readString(body);
+                            eventFieldNames.add(name);
+                            tokens.writeFieldName(name);
+                            break;
+                        }
+                    case TOKEN_FIELD_NAME_REF:
+                        {
+                            final int index = (int) EncodedPortalEvent.readVarLong(body);
+                            if (index < FIELD_NAMES_V1.size()) {
+                                tokens.writeFieldName(FIELD_NAMES_V1.get(index));
+                            } else {
+                                tokens.writeFieldName(
+                                        eventFieldNames.get(index - FIELD_NAMES_V1.size()));
+                            }
+                            break;
+                        }
+                    case TOKEN_HEADER_FIELD:
+                        {
+                            final int index = (int) EncodedPortalEvent.readVarLong(body);
+                            tokens.writeFieldName(FIELD_NAMES_V1.get(index));
+                            switch (index) {
+                                case FIELD_TIMESTAMP:
+                                    tokens.writeNumber(encoded.getTimestamp());
+                                    break;
+                                case FIELD_EVENT_SESSION_ID:
+                                    tokens.writeString(encoded.getEventSessionId());
+                                    break;
+                                case FIELD_USER_NAME:
+                                    tokens.writeString(encoded.getUserName());
+                                    break;
+                                default:
+                                    throw new IOException(
+                                            "Unknown header field "
+                                                    + index
+                                                    + " while decoding "
+                                                    + encoded);
+                            }
+                            break;
+                        }
+                    case TOKEN_VALUE_STRING:
+                        tokens.writeString(EncodedPortalEvent.readString(body));
+                        break;
+                    case TOKEN_VALUE_LONG:
+                        {
+                            final long value = EncodedPortalEvent.readVarLong(body);
+                            final long decoded = (value >>> 1) ^ -(value & 1);
+                            if (decoded == (int) decoded) {
+                                tokens.writeNumber((int) decoded);
+                            } else {
+                                tokens.writeNumber(decoded);
+                            }
+                            break;
+                        }
+                    case TOKEN_VALUE_BIG_INTEGER:
+                        tokens.writeNumber(new BigInteger(EncodedPortalEvent.readString(body)));
+                        break;
+                    case TOKEN_VALUE_DOUBLE:
+                        tokens.writeNumber(Double.longBitsToDouble(body.getLong()));
+                        break;
+                    case TOKEN_VALUE_BIG_DECIMAL:
+                        tokens.writeNumber(new BigDecimal(EncodedPortalEvent.readString(body)));
+                        break;
+                    case TOKEN_VALUE_TRUE:
+                        tokens.writeBoolean(true);
+                        break;
+                    case TOKEN_VALUE_FALSE:
+                        tokens.writeBoolean(false);
+                        break;
+                    case TOKEN_VALUE_NULL:
+                        tokens.writeNull();
+                        break;
+                    default:
+                        throw new IOException(
+                                "Unknown token " + token + " while decoding " + encoded);
+                }
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated body while decoding " + encoded, e);
+        }
+
+        final JsonParser parser = tokens.asParser(this.mapper);
+        try {
+            return this.mapper.readValue(parser, eventType);
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static boolean isHeaderValue(
+            PortalEvent event, int index, JsonParser parser, JsonToken token) throws IOException {
+        switch (index) {
+            case FIELD_TIMESTAMP:
+                return token == JsonToken.VALUE_NUMBER_INT
+                        && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER
+                        && parser.getLongValue() == event.getTimestamp();
+            case FIELD_EVENT_SESSION_ID:
+                return token == JsonToken.VALUE_STRING
+                        && parser.getText().equals(event.getEventSessionId());
+            case FIELD_USER_NAME:
+                return token == JsonToken.VALUE_STRING
+                        && parser.getText().equals(event.getUserName());
+            default:
+                return false;
+        }
+    }
+
+    private static void writeValue(
+            ByteArrayOutputStream out, JsonParser parser, JsonToken token, PortalEvent event)
+            throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                out.write(TOKEN_VALUE_STRING);
+                writeString(out, parser.getText());
+                break;
+            case VALUE_NUMBER_INT:
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    out.write(TOKEN_VALUE_BIG_INTEGER);
+                    writeString(out, parser.getBigIntegerValue().toString());
+                } else {
+                    out.write(TOKEN_VALUE_LONG);
+                    final long value = parser.getLongValue();
+                    writeVarLong(out, (value << 1) ^ (value >> 63));
+                }
+                break;
+            case VALUE_NUMBER_FLOAT:
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_DECIMAL) {
+                    out.write(TOKEN_VALUE_BIG_DECIMAL);
+                    writeString(out, parser.getDecimalValue().toString());
+                } else {
+                    out.write(TOKEN_VALUE_DOUBLE);
+                    writeLong(out, Double.doubleToLongBits(parser.getDoubleValue()));
+                }
+                break;
+            case VALUE_TRUE:
+                out.write(TOKEN_VALUE_TRUE);
+                break;
+            case VALUE_FALSE:
+                out.write(TOKEN_VALUE_FALSE);
+                break;
+            case VALUE_NULL:
+                out.write(TOKEN_VALUE_NULL);
+                break;
+            default:
+                throw new IOException(
+                        "Token "
+                                + token
+                                + " of "
+                                + event.getClass().getName()
+                                + " can not be encoded");
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+}
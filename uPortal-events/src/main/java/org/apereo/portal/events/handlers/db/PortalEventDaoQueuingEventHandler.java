@@ -14,12 +14,14 @@
  */
 package org.apereo.portal.events.handlers.db;
 
+import org.apereo.portal.events.AsynchronousPortalEventListener;
 import org.apereo.portal.events.PortalEvent;
 import org.apereo.portal.events.handlers.QueueingEventHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 
 /** Hands off queued portal events for storage by the IPortalEventDao */
-public class PortalEventDaoQueuingEventHandler extends QueueingEventHandler<PortalEvent> {
+public class PortalEventDaoQueuingEventHandler extends QueueingEventHandler<PortalEvent>
+        implements AsynchronousPortalEventListener {
     private IPortalEventDao portalEventDao;
 
     /** @param portalEventDao the portalEventDao to set */
@@ -0,0 +1,121 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.handlers.db;
+
+import com.google.common.base.Function;
+import org.apereo.portal.concurrency.locking.ClusterMutex;
+import org.apereo.portal.concurrency.locking.IClusterLockService;
+import org.apereo.portal.concurrency.locking.IClusterLockService.TryLockFunctionResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Background task that adds the {@link PortalEventBinaryCodec} encoding to events stored before the
+ * binary encoding existed. Each call encodes at most one batch of events, only one server in the
+ * cluster migrates at a time. Progress is stored with the events themselves, every examined event
+ * is updated, so the migration resumes where it left off after a restart. The last event id is only
+ * kept to avoid rescanning the examined events. Once a pass from the first event finds no events
+ * without the encoding the migrator stops querying the database.
+ *
+ * @since 5.3
+ */
+@Service("portalEventEncodingMigrator")
+public class PortalEventEncodingMigrator {
+    static final String MIGRATION_LOCK_NAME =
+            PortalEventEncodingMigrator.class.getName() + ".MIGRATION_LOCK";
+
+    protected final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private IPortalEventDao portalEventDao;
+    private IClusterLockService clusterLockService;
+    private boolean enabled = true;
+    private int batchSize = 1000;
+
+    private volatile long lastEventId = -1;
+    private volatile boolean complete = false;
+
+    @Autowired
+    public void setPortalEventDao(IPortalEventDao portalEventDao) {
+        this.portalEventDao = portalEventDao;
+    }
+
+    @Autowired
+    public void setClusterLockService(IClusterLockService clusterLockService) {
+        this.clusterLockService = clusterLockService;
+    }
+
+    @Value("${org.apereo.portal.events.handlers.db.PortalEventEncodingMigrator.enabled:true}")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** Number of events to encode per call to {@link #migrate()}, defaults to 1000. */
+    @Value("${org.apereo.portal.events.handlers.db.PortalEventEncodingMigrator.batchSize:1000}")
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /** @return true if no stored events without the binary encoding remain */
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    /** Encode the next batch of events, called periodically by the scheduler */
+    public void migrate() {
+        if (!this.enabled || this.complete) {
+            return;
+        }
+
+        final TryLockFunctionResult<Long> result;
+        try {
+            result =
+                    this.clusterLockService.doInTryLock(
+                            MIGRATION_LOCK_NAME,
+                            new Function<ClusterMutex, Long>() {
+                                @Override
+                                public Long apply(ClusterMutex input) {
+                                    return portalEventDao.encodePortalEvents(
+                                            lastEventId, batchSize);
+                                }
+                            });
+        } catch (InterruptedException e) {
+            logger.warn("Interrupted while encoding raw events", e);
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        final Long lastEncodedEventId = result.getResult();
+        if (lastEncodedEventId == null) {
+            // Another server is migrating
+            return;
+        }
+
+        if (lastEncodedEventId < 0) {
+            if (this.lastEventId < 0) {
+                logger.info("All raw events have been binary encoded");
+                this.complete = true;
+            } else {
+                // Confirm nothing was left behind with a final pass from the first event
+                this.lastEventId = -1;
+            }
+        } else {
+            logger.debug("Binary encoded raw events up to event id {}", lastEncodedEventId);
+            this.lastEventId = lastEncodedEventId;
+        }
+    }
+}
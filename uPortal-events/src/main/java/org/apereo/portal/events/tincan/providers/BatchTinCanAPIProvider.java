@@ -14,14 +14,30 @@
  */
 package org.apereo.portal.events.tincan.providers;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.StringUtils;
 import org.apereo.portal.events.tincan.om.LrsStatement;
+import org.apereo.portal.events.tincan.providers.StatementSpool.SpooledStatement;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatus.Series;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.web.client.HttpClientErrorException;
 
 /**
@@ -30,9 +46,106 @@ import org.springframework.web.client.HttpClientErrorException;
  *
  * <p>IMPORTANT: If you configure a BatchTinCanAPIProvider you MUST also add a scheduler that calls
  * the sendBatch() method regularly. An example configuration is available in tincanAPIContext.xml.
+ *
+ * <p>By default statements are queued in memory. If
+ * org.apereo.portal.tincan-api.{ID}.spool-directory is set statements are instead written to a
+ * bounded {@link StatementSpool} in that directory, they survive restarts and are only removed once
+ * the LRS accepted them. When the spool is full new statements are dropped. Failed requests are
+ * retried with exponential backoff, statements the LRS rejects with a 4xx response are moved to a
+ * quarantine file in the spool directory. The spool is configured with these properties:
+ *
+ * <table>
+ *     <tr>
+ *         <th>property</th>
+ *         <th>default value</th>
+ *         <th>description</th>
+ *     </tr>
+ *     <tr>
+ *         <td>org.apereo.portal.tincan-api.{ID}.spool-directory</td>
+ *         <td>&nbsp;</td>
+ *         <td>Directory to spool statements in, statements are queued in memory if not set.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>org.apereo.portal.tincan-api.{ID}.spool-segment-size</td>
+ *         <td>4194304</td>
+ *         <td>Size in bytes of each spool segment file.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>org.apereo.portal.tincan-api.{ID}.spool-max-segments</td>
+ *         <td>16</td>
+ *         <td>Number of segments the spool may use before new statements are dropped.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>org.apereo.portal.tincan-api.{ID}.batch-size</td>
+ *         <td>100</td>
+ *         <td>Maximum number of spooled statements sent in one request.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>org.apereo.portal.tincan-api.{ID}.retry-initial-delay-ms</td>
+ *         <td>2000</td>
+ *         <td>Delay before the first retry of a failed request, doubled on each failure.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>org.apereo.portal.tincan-api.{ID}.retry-max-delay-ms</td>
+ *         <td>300000</td>
+ *         <td>Maximum delay between retries.</td>
+ *     </tr>
+ * </table>
  */
+@ManagedResource
 public class BatchTinCanAPIProvider extends DefaultTinCanAPIProvider {
+    private static final String QUARANTINE_FILE = "quarantine.json";
+
+    private enum Delivery {
+        DELIVERED,
+        REJECTED,
+        FAILED
+    }
+
     private final Queue<LrsStatement> statementQueue = new ConcurrentLinkedQueue<LrsStatement>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong droppedStatements = new AtomicLong();
+    private final AtomicLong quarantinedStatements = new AtomicLong();
+
+    private volatile StatementSpool spool;
+    private volatile boolean spoolFull = false;
+    private int batchSize = 100;
+    private long retryInitialDelay = TimeUnit.SECONDS.toMillis(2);
+    private long retryMaxDelay = TimeUnit.MINUTES.toMillis(5);
+
+    // Only used by the sendBatch() thread
+    private volatile int consecutiveFailures = 0;
+    private long nextAttemptTime = 0;
+
+    @Override
+    protected void loadConfig() {
+        super.loadConfig();
+        if (!isEnabled()) {
+            return;
+        }
+
+        final String spoolDirectory = getProviderProperty("spool-directory", String.class, null);
+        if (StringUtils.isEmpty(spoolDirectory)) {
+            return;
+        }
+
+        final int segmentSize =
+                getProviderProperty("spool-segment-size", Integer.class, 4 * 1024 * 1024);
+        final int maxSegments = getProviderProperty("spool-max-segments", Integer.class, 16);
+        batchSize = getProviderProperty("batch-size", Integer.class, batchSize);
+        retryInitialDelay =
+                getProviderProperty("retry-initial-delay-ms", Long.class, retryInitialDelay);
+        retryMaxDelay = getProviderProperty("retry-max-delay-ms", Long.class, retryMaxDelay);
+
+        try {
+            spool = new StatementSpool(new File(spoolDirectory), segmentSize, maxSegments);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error(
+                    "Failed to open statement spool in {}, statements will be queued in memory",
+                    spoolDirectory,
+                    e);
+        }
+    }
 
     @Override
     public boolean sendEvent(LrsStatement statement) {
@@ -40,8 +153,39 @@ public class BatchTinCanAPIProvider extends DefaultTinCanAPIProvider {
             return false;
         }
 
-        statementQueue.add(statement);
-        return true;
+        final StatementSpool spool = this.spool;
+        if (spool == null) {
+            statementQueue.add(statement);
+            return true;
+        }
+
+        final byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(statement);
+        } catch (JsonProcessingException e) {
+            logger.error("Failed to serialize statement: {}", statement, e);
+            return false;
+        }
+
+        try {
+            if (spool.append(payload)) {
+                spoolFull = false;
+                return true;
+            }
+        } catch (IOException e) {
+            logger.error("Failed to spool statement: {}", statement, e);
+            return false;
+        }
+
+        droppedStatements.incrementAndGet();
+        if (!spoolFull) {
+            spoolFull = true;
+            logger.warn(
+                    "Statement spool {} is full, new statements are dropped until the LRS at {} catches up",
+                    spool.getDirectory(),
+                    getLRSUrl());
+        }
+        return false;
     }
 
     /**
@@ -49,6 +193,18 @@ public class BatchTinCanAPIProvider extends DefaultTinCanAPIProvider {
      * will result in memory leaks.
      */
     public void sendBatch() {
+        final StatementSpool spool = this.spool;
+        if (spool != null) {
+            if (System.currentTimeMillis() >= nextAttemptTime) {
+                try {
+                    sendSpooledStatements(spool);
+                } catch (IOException e) {
+                    logger.error("Failed to update statement spool {}", spool.getDirectory(), e);
+                }
+            }
+            return;
+        }
+
         LrsStatement statement = null;
         List<LrsStatement> list = new ArrayList<LrsStatement>();
 
@@ -61,6 +217,170 @@ public class BatchTinCanAPIProvider extends DefaultTinCanAPIProvider {
         }
     }
 
+    @Override
+    public void destroy() {
+        final StatementSpool spool = this.spool;
+        this.spool = null;
+        if (spool != null) {
+            try {
+                spool.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close statement spool {}", spool.getDirectory(), e);
+            }
+        }
+        super.destroy();
+    }
+
+    /** @return The number of statements waiting to be sent */
+    @ManagedAttribute
+    public int getQueuedStatements() {
+        final StatementSpool spool = this.spool;
+        return spool != null ? spool.size() : statementQueue.size();
+    }
+
+    /** @return Milliseconds the oldest spooled statement has been waiting, 0 if there is none */
+    @ManagedAttribute
+    public long getOldestStatementAge() {
+        final StatementSpool spool = this.spool;
+        final long enqueuedTime = spool != null ? spool.getOldestEnqueuedTime() : 0;
+        return enqueuedTime > 0 ? System.currentTimeMillis() - enqueuedTime : 0;
+    }
+
+    /** @return The number of statements dropped because the spool was full */
+    @ManagedAttribute
+    public long getDroppedStatements() {
+        return droppedStatements.get();
+    }
+
+    /** @return The number of statements the LRS rejected that were moved to quarantine */
+    @ManagedAttribute
+    public long getQuarantinedStatements() {
+        return quarantinedStatements.get();
+    }
+
+    /** @return The number of failed attempts to send the oldest spooled statements */
+    @ManagedAttribute
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /** Send spooled statements until the spool is empty or a request fails */
+    private void sendSpooledStatements(StatementSpool spool) throws IOException {
+        spool.force();
+
+        List<SpooledStatement> records;
+        while (!(records = spool.peek(batchSize)).isEmpty()) {
+            final List<JsonNode> statements = new ArrayList<JsonNode>(records.size());
+            for (final SpooledStatement record : records) {
+                try {
+                    statements.add(objectMapper.readTree(record.getPayload()));
+                } catch (IOException e) {
+                    break;
+                }
+            }
+            if (statements.isEmpty()) {
+                quarantine(spool, records.get(0), "it could not be parsed");
+                continue;
+            }
+
+            final Delivery delivery = postStatements(statements);
+            if (delivery == Delivery.DELIVERED) {
+                spool.remove(statements.size());
+                consecutiveFailures = 0;
+            } else if (delivery == Delivery.FAILED) {
+                scheduleRetry(statements.size());
+                return;
+            } else if (statements.size() == 1) {
+                quarantine(spool, records.get(0), "it was rejected by the LRS");
+            } else {
+                // Find the rejected statements by sending the batch one statement at a time
+                for (int i = 0; i < statements.size(); i++) {
+                    final Delivery single =
+                            postStatements(Collections.singletonList(statements.get(i)));
+                    if (single == Delivery.DELIVERED) {
+                        spool.remove(1);
+                    } else if (single == Delivery.REJECTED) {
+                        quarantine(spool, records.get(i), "it was rejected by the LRS");
+                    } else {
+                        scheduleRetry(1);
+                        return;
+                    }
+                }
+                consecutiveFailures = 0;
+            }
+        }
+    }
+
+    /** Back off exponentially after a failed request */
+    private void scheduleRetry(int statementCount) {
+        final int failures = ++consecutiveFailures;
+        long delay = retryInitialDelay;
+        for (int i = 1; i < failures && delay < retryMaxDelay; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, retryMaxDelay);
+        nextAttemptTime = System.currentTimeMillis() + delay;
+
+        logger.warn(
+                "Failed to send {} spooled statements to {}, attempt {}, retrying in {}ms",
+                statementCount,
+                getLRSUrl(),
+                failures,
+                delay);
+    }
+
+    /** Move the oldest spooled statement to the quarantine file */
+    private void quarantine(StatementSpool spool, SpooledStatement record, String reason)
+            throws IOException {
+        final String statement = new String(record.getPayload(), StandardCharsets.UTF_8);
+        final File quarantineFile = new File(spool.getDirectory(), QUARANTINE_FILE);
+        Files.write(
+                quarantineFile.toPath(),
+                Collections.singletonList(statement),
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        spool.remove(1);
+        quarantinedStatements.incrementAndGet();
+
+        logger.error("Moved statement to {} because {}: {}", quarantineFile, reason, statement);
+    }
+
+    private Delivery postStatements(List<JsonNode> statements) {
+        try {
+            ResponseEntity<Object> response =
+                    sendRequest(
+                            STATEMENTS_REST_ENDPOINT,
+                            HttpMethod.POST,
+                            null,
+                            statements,
+                            Object.class);
+            if (response.getStatusCode().series() == Series.SUCCESSFUL) {
+                logger.trace(
+                        "LRS provider successfully sent {} statements to {}",
+                        statements.size(),
+                        getLRSUrl());
+                return Delivery.DELIVERED;
+            }
+            logger.error("LRS provider failed to send to {}, response: {}", getLRSUrl(), response);
+        } catch (HttpClientErrorException e) {
+            final HttpStatus status = e.getStatusCode();
+            if (status != HttpStatus.REQUEST_TIMEOUT && status != HttpStatus.TOO_MANY_REQUESTS) {
+                logger.warn(
+                        "LRS at {} rejected {} statements, Status: {}, Response: {}",
+                        getLRSUrl(),
+                        statements.size(),
+                        status,
+                        e.getResponseBodyAsString());
+                return Delivery.REJECTED;
+            }
+            logger.debug("LRS at {} asked to retry later, Status: {}", getLRSUrl(), status);
+        } catch (Exception e) {
+            logger.debug("LRS provider for URL {} failed to send statements", getLRSUrl(), e);
+        }
+        return Delivery.FAILED;
+    }
+
     /**
      * Send the list of batched LRS statements to the LRS.
      *
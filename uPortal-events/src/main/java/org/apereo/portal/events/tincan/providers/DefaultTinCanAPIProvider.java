@@ -365,6 +365,18 @@ public class DefaultTinCanAPIProvider implements ITinCanAPIProvider {
         LRSUrl = LRSUrl.replaceAll("/*$", "");
     }
 
+    /**
+     * Read a property of this provider, named org.apereo.portal.tincan-api.{ID}.{name}
+     *
+     * @param name the property name, relative to this provider
+     * @param type the type to convert the value to
+     * @param defaultValue the value to return if the property is not set
+     * @return the property value
+     */
+    protected <T> T getProviderProperty(String name, Class<T> type, T defaultValue) {
+        return propertyResolver.getProperty(format(PROPERTY_FORMAT, id, name), type, defaultValue);
+    }
+
     /**
      * Send a request to the LRS.
      *
@@ -0,0 +1,438 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.tincan.providers;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded, append-only queue of serialized statements stored in memory-mapped segment files. Each
+ * segment is a fixed size file holding a sequence of records:
+ *
+ * <pre>
+ * int  payload length
+ * int  CRC32 of the enqueued time and payload
+ * long enqueued time (ms)
+ * byte payload[length]
+ * </pre>
+ *
+ * A record's length is written last, a zero length marks the end of the data in a segment. The
+ * position of the oldest unacknowledged record is stored in a checkpoint file after every {@link
+ * #remove(int)}, segments are deleted once all of their records are acknowledged. On open the
+ * segments are scanned and the queue resumes from the checkpoint, a record with a bad checksum ends
+ * its segment.
+ *
+ * <p>When all {@code maxSegments} segments are full {@link #append(byte[])} refuses new records,
+ * the size of the spool on disk never exceeds {@code segmentSize * maxSegments} bytes.
+ */
+class StatementSpool implements Closeable {
+    static final int HEADER_SIZE = 16;
+
+    private static final String SEGMENT_FORMAT = "segment-%016d.spool";
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile("segment-(\\d{16})\\.spool");
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    protected final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    // Oldest segment first, the last segment is the one being appended to
+    private final LinkedList<Segment> segments = new LinkedList<Segment>();
+    private int readOffset = 0;
+    private int depth = 0;
+    // Never reuse the id of a segment that may be named in an old checkpoint
+    private long nextSegmentId = 0;
+
+    /**
+     * Open the spool in the directory, creating it if needed and recovering any records left by a
+     * previous instance.
+     */
+    StatementSpool(File directory, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException(
+                    "segmentSize must be larger than " + HEADER_SIZE + ": " + segmentSize);
+        }
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("maxSegments must be at least 1: " + maxSegments);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create spool directory: " + directory);
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+
+        this.recover();
+    }
+
+    File getDirectory() {
+        return this.directory;
+    }
+
+    /** @return The number of records that have not been acknowledged */
+    synchronized int size() {
+        return this.depth;
+    }
+
+    /** @return The enqueued time of the oldest record, 0 if the spool is empty */
+    synchronized long getOldestEnqueuedTime() {
+        if (this.depth == 0) {
+            return 0;
+        }
+        final Segment head = this.segments.getFirst();
+        return head.buffer.getLong(this.readOffset + 8);
+    }
+
+    /**
+     * Append a record to the spool.
+     *
+     * @return false if the spool is full or the payload does not fit in a segment
+     */
+    synchronized boolean append(byte[] payload) throws IOException {
+        final int recordSize = HEADER_SIZE + payload.length;
+        if (payload.length == 0 || recordSize > this.segmentSize) {
+            return false;
+        }
+
+        Segment tail = this.segments.peekLast();
+        if (tail == null || tail.writePosition + recordSize > this.segmentSize) {
+            // Make room by dropping segments that have been read completely, the checkpoint
+            // only has to be rewritten by remove() as recovery skips missing segments
+            while (!this.segments.isEmpty()
+                    && this.readOffset >= this.segments.getFirst().writePosition) {
+                this.deleteHead();
+            }
+            if (this.segments.size() >= this.maxSegments) {
+                return false;
+            }
+            tail = this.openSegment(this.nextSegmentId++);
+            this.segments.add(tail);
+        }
+
+        final long enqueuedTime = System.currentTimeMillis();
+        final ByteBuffer buffer = tail.buffer;
+        final int position = tail.writePosition;
+        buffer.putLong(position + 8, enqueuedTime);
+        final ByteBuffer payloadBuffer = buffer.duplicate();
+        payloadBuffer.position(position + HEADER_SIZE);
+        payloadBuffer.put(payload);
+        buffer.putInt(position + 4, checksum(enqueuedTime, payload));
+        // Length last, a record is only visible once it is complete
+        buffer.putInt(position, payload.length);
+
+        tail.writePosition += recordSize;
+        this.depth++;
+        return true;
+    }
+
+    /** @return Up to max of the oldest records, in the order they were appended */
+    synchronized List<SpooledStatement> peek(int max) {
+        final int count = Math.min(max, this.depth);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+
+        final List<SpooledStatement> records = new ArrayList<SpooledStatement>(count);
+        int offset = this.readOffset;
+        for (final Segment segment : this.segments) {
+            while (offset < segment.writePosition && records.size() < count) {
+                final ByteBuffer buffer = segment.buffer;
+                final int length = buffer.getInt(offset);
+                final long enqueuedTime = buffer.getLong(offset + 8);
+                final byte[] payload = new byte[length];
+                final ByteBuffer payloadBuffer = buffer.duplicate();
+                payloadBuffer.position(offset + HEADER_SIZE);
+                payloadBuffer.get(payload);
+                records.add(new SpooledStatement(payload, enqueuedTime));
+                offset += HEADER_SIZE + length;
+            }
+            if (records.size() >= count) {
+                break;
+            }
+            offset = 0;
+        }
+        return records;
+    }
+
+    /** Acknowledge the oldest count records, they will not be returned by {@link #peek(int)} */
+    synchronized void remove(int count) throws IOException {
+        count = Math.min(count, this.depth);
+        for (int i = 0; i < count; i++) {
+            Segment head = this.segments.getFirst();
+            if (this.readOffset >= head.writePosition) {
+                this.deleteHead();
+                head = this.segments.getFirst();
+            }
+            this.readOffset += HEADER_SIZE + head.buffer.getInt(this.readOffset);
+            this.depth--;
+        }
+
+        // Drop fully read segments, the segment being appended to is kept
+        while (this.segments.size() > 1
+                && this.readOffset >= this.segments.getFirst().writePosition) {
+            this.deleteHead();
+        }
+
+        this.writeCheckpoint();
+    }
+
+    /** Flush appended records to disk */
+    synchronized void force() {
+        for (final Segment segment : this.segments) {
+            segment.buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.force();
+        for (final Segment segment : this.segments) {
+            segment.channel.close();
+        }
+        this.segments.clear();
+    }
+
+    private void deleteHead() throws IOException {
+        final Segment head = this.segments.removeFirst();
+        head.channel.close();
+        if (!head.file.delete()) {
+            this.logger.warn("Failed to delete spool segment {}", head.file);
+        }
+        this.readOffset = 0;
+    }
+
+    private void recover() throws IOException {
+        final File[] segmentFiles =
+                this.directory.listFiles(
+                        new FileFilter() {
+                            @Override
+                            public boolean accept(File file) {
+                                return SEGMENT_PATTERN.matcher(file.getName()).matches();
+                            }
+                        });
+        if (segmentFiles == null) {
+            throw new IOException("Failed to list spool directory: " + this.directory);
+        }
+        Arrays.sort(segmentFiles);
+
+        final long[] checkpoint = this.readCheckpoint();
+        for (final File segmentFile : segmentFiles) {
+            final Matcher matcher = SEGMENT_PATTERN.matcher(segmentFile.getName());
+            matcher.matches();
+            final long id = Long.parseLong(matcher.group(1));
+            if (checkpoint != null && id < checkpoint[0]) {
+                // Fully acknowledged before the previous shutdown
+                if (!segmentFile.delete()) {
+                    this.logger.warn("Failed to delete spool segment {}", segmentFile);
+                }
+                continue;
+            }
+
+            final Segment segment = this.openSegment(id);
+            segment.writePosition = this.scan(segment);
+            this.segments.add(segment);
+            this.nextSegmentId = id + 1;
+        }
+        if (checkpoint != null) {
+            this.nextSegmentId = Math.max(this.nextSegmentId, checkpoint[0] + 1);
+        }
+
+        if (checkpoint != null
+                && !this.segments.isEmpty()
+                && this.segments.getFirst().id == checkpoint[0]) {
+            this.readOffset = (int) Math.min(checkpoint[1], this.segments.getFirst().writePosition);
+        }
+
+        // Count the unacknowledged records
+        int offset = this.readOffset;
+        for (final Segment segment : this.segments) {
+            while (offset < segment.writePosition) {
+                offset += HEADER_SIZE + segment.buffer.getInt(offset);
+                this.depth++;
+            }
+            offset = 0;
+        }
+
+        if (this.depth > 0) {
+            this.logger.info("Recovered {} spooled statements from {}", this.depth, this.directory);
+        }
+    }
+
+    /** @return The end of the valid records in the segment */
+    private int scan(Segment segment) {
+        final ByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset + HEADER_SIZE <= this.segmentSize) {
+            final int length = buffer.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || offset + HEADER_SIZE + length > this.segmentSize) {
+                this.logger.warn(
+                        "Invalid record length {} at {} in {}, ignoring the rest of the segment",
+                        length,
+                        offset,
+                        segment.file);
+                break;
+            }
+
+            final long enqueuedTime = buffer.getLong(offset + 8);
+            final byte[] payload = new byte[length];
+            final ByteBuffer payloadBuffer = buffer.duplicate();
+            payloadBuffer.position(offset + HEADER_SIZE);
+            payloadBuffer.get(payload);
+            if (buffer.getInt(offset + 4) != checksum(enqueuedTime, payload)) {
+                this.logger.warn(
+                        "Checksum mismatch at {} in {}, ignoring the rest of the segment",
+                        offset,
+                        segment.file);
+                break;
+            }
+            offset += HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        final File file = new File(this.directory, String.format(SEGMENT_FORMAT, id));
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        final FileChannel channel = randomAccessFile.getChannel();
+        try {
+            if (randomAccessFile.length() < this.segmentSize) {
+                randomAccessFile.setLength(this.segmentSize);
+            }
+            final MappedByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+            return new Segment(id, file, channel, buffer);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** @return segment id and offset of the oldest unacknowledged record, null if unknown */
+    private long[] readCheckpoint() throws IOException {
+        final File checkpointFile = new File(this.directory, CHECKPOINT_FILE);
+        if (!checkpointFile.exists()) {
+            return null;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpointFile.toPath()));
+        if (buffer.remaining() != 16) {
+            this.logger.warn("Ignoring invalid spool checkpoint {}", checkpointFile);
+            return null;
+        }
+        final long id = buffer.getLong();
+        final int offset = buffer.getInt();
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, 12);
+        if (buffer.getInt() != (int) crc.getValue()) {
+            this.logger.warn("Ignoring corrupt spool checkpoint {}", checkpointFile);
+            return null;
+        }
+        return new long[] {id, offset};
+    }
+
+    private void writeCheckpoint() throws IOException {
+        final long id = this.segments.isEmpty() ? 0 : this.segments.getFirst().id;
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putLong(id);
+        buffer.putInt(this.readOffset);
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, 12);
+        buffer.putInt((int) crc.getValue());
+
+        final File checkpointFile = new File(this.directory, CHECKPOINT_FILE);
+        final File tempFile = new File(this.directory, CHECKPOINT_FILE + ".tmp");
+        Files.write(tempFile.toPath(), buffer.array());
+        try {
+            Files.move(
+                    tempFile.toPath(),
+                    checkpointFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(
+                    tempFile.toPath(),
+                    checkpointFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static int checksum(long enqueuedTime, byte[] payload) {
+        final CRC32 crc = new CRC32();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (enqueuedTime >>> shift));
+        }
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final File file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition = 0;
+
+        Segment(long id, File file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    /** A record read from the spool */
+    static final class SpooledStatement {
+        private final byte[] payload;
+        private final long enqueuedTime;
+
+        SpooledStatement(byte[] payload, long enqueuedTime) {
+            this.payload = payload;
+            this.enqueuedTime = enqueuedTime;
+        }
+
+        byte[] getPayload() {
+            return this.payload;
+        }
+
+        long getEnqueuedTime() {
+            return this.enqueuedTime;
+        }
+    }
+}
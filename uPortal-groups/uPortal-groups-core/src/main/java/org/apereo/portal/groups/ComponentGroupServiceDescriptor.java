@@ -33,6 +33,7 @@ public class ComponentGroupServiceDescriptor extends HashMap<String, Object> {
     private static final String ENTITY_SEARCHER_FACTORY = "entity_searcher_factory";
     private static final String INTERNALLY_MANAGED = "internally_managed";
     private static final String CACHE_ENABLED = "cache_enabled";
+    private static final String CLOSURE_ENABLED = "closure_enabled";
 
     public String getEntitySearcherFactoryName() {
         return (String) get(ENTITY_SEARCHER_FACTORY);
@@ -59,6 +60,15 @@ public class ComponentGroupServiceDescriptor extends HashMap<String, Object> {
         return (result == null) ? false : result.booleanValue();
     }
 
+    /**
+     * Answers if the service maintains the closure of the memberships among its groups. Only
+     * supported by the reference (database) group store.
+     */
+    public boolean isClosureEnabled() {
+        Boolean result = (Boolean) get(CLOSURE_ENABLED);
+        return (result == null) ? false : result.booleanValue();
+    }
+
     public boolean isInternallyManaged() {
         Boolean result = (Boolean) get(INTERNALLY_MANAGED);
         return (result == null) ? false : result.booleanValue();
@@ -72,6 +82,10 @@ public class ComponentGroupServiceDescriptor extends HashMap<String, Object> {
         put(CACHE_ENABLED, caching);
     }
 
+    public void setClosureEnabled(boolean closure) {
+        put(CLOSURE_ENABLED, closure);
+    }
+
     public void setEntitySearcherFactoryName(String esfName) {
         put(ENTITY_SEARCHER_FACTORY, esfName);
     }
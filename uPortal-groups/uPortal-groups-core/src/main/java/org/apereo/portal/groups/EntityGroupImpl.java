@@ -25,6 +25,7 @@ import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Element;
 import org.apereo.portal.EntityIdentifier;
 import org.apereo.portal.IBasicEntity;
+import org.apereo.portal.services.GroupService;
 import org.apereo.portal.spring.locator.ApplicationContextLocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +58,9 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
 
     private final Cache childrenCache;
 
+    // Closure of the memberships among the groups of our service, if it maintains one
+    private RDBMGroupClosureStore closureStore;
+
     // A group and its members share an entityType.
     private Class<? extends IBasicEntity> leafEntityType;
 
@@ -127,8 +131,8 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
             throw new GroupsException(this + " and " + gm + " have different entity types.");
         }
 
-        // Circular reference check:
-        if (gm.isGroup() && gm.asGroup().deepContains(this)) {
+        // Circular reference check, against pending changes as well:
+        if (gm.isGroup() && walkDeepContains(gm.asGroup(), this)) {
             throw new GroupsException(
                     "Adding " + gm + " to " + this + " creates a circular reference.");
         }
@@ -163,7 +167,10 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
     }
 
     /**
-     * Checks recursively if <code>GroupMember</code> gm is a member of this.
+     * Checks recursively if <code>GroupMember</code> gm is a member of this. If our service
+     * maintains the closure of its group memberships a member group of the service is looked up in
+     * the closure, and any other member is checked by walking up from its parent groups until they
+     * reach groups of the service.
      *
      * @return boolean
      * @param gm org.apereo.portal.groups.IGroupMember
@@ -174,12 +181,68 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
             return true;
         }
 
+        final GroupClosure closure = getGroupClosure();
+        if (closure != null) {
+            if (gm.isGroup() && closureStore.isClosureGroup(gm.asGroup())) {
+                return closure.isAncestor(getLocalKey(), gm.asGroup().getLocalKey());
+            }
+            return closureContains(closure, gm, new HashSet<IGroupMember>());
+        }
+
+        return primDeepContains(gm, false);
+    }
+
+    /**
+     * Answers if one of the parent groups of gm, or recursively of its parent groups from other
+     * services, is this or one of our descendants in the closure.
+     */
+    private boolean closureContains(
+            GroupClosure closure, IGroupMember gm, Set<IGroupMember> visited)
+            throws GroupsException {
+        for (IEntityGroup parent : gm.getParentGroups()) {
+            // avoid stack overflow in case of circular group dependencies
+            if (!visited.add(parent)) {
+                continue;
+            }
+            if (closureStore.isClosureGroup(parent)) {
+                if (getLocalKey().equals(parent.getLocalKey())
+                        || closure.isAncestor(getLocalKey(), parent.getLocalKey())) {
+                    return true;
+                }
+            } else if (closureContains(closure, parent, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Answers if group deep contains gm by walking down the member groups, which reflects
+     * membership changes that are not yet committed.
+     */
+    private static boolean walkDeepContains(IEntityGroup group, IGroupMember gm)
+            throws GroupsException {
+        return group instanceof EntityGroupImpl
+                ? ((EntityGroupImpl) group).primDeepContains(gm, true)
+                : group.deepContains(gm);
+    }
+
+    /**
+     * Checks recursively if gm is a member of this by walking down our member groups.
+     *
+     * @param walk true to also walk down the member groups that could answer from the closure
+     */
+    private boolean primDeepContains(IGroupMember gm, boolean walk) throws GroupsException {
+        if (this.contains(gm)) {
+            return true;
+        }
+
         boolean found = false;
         Iterator<IEntityGroup> it = getMemberGroups();
         while (it.hasNext() && !found) {
             IEntityGroup group = it.next();
             if (group != null) {
-                found = group.deepContains(gm);
+                found = walk ? walkDeepContains(group, gm) : group.deepContains(gm);
             } else {
                 // Something bad has happened:  we've abruptly lost a group node to
                 // which this group node refers.  This is an ERROR condition, but we
@@ -210,13 +273,64 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
 
     /**
      * Returns an <code>Iterator</code> over the <code>Set</code> of recursively-retrieved <code>
-     * IGroupMembers</code> that are members of this <code>IEntityGroup</code>.
+     * IGroupMembers</code> that are members of this <code>IEntityGroup</code>. When our service
+     * maintains the closure of its group memberships the nested groups of the service are taken
+     * from the closure instead of being discovered level by level.
      *
      * @return Iterator
      */
     @Override
     public Set<IGroupMember> getDescendants() throws GroupsException {
-        return primGetAllMembers(new HashSet<IGroupMember>());
+        final GroupClosure closure = getGroupClosure();
+        if (closure == null) {
+            return primGetAllMembers(new HashSet<IGroupMember>());
+        }
+
+        final Set<IGroupMember> rslt = new HashSet<>();
+        addClosureMembers(this, rslt);
+        for (String key : closure.getDescendantKeys(getLocalKey())) {
+            IEntityGroup group = GroupService.findGroup(closureStore.getGroupKey(key));
+            if (group != null) {
+                rslt.add(group);
+                addClosureMembers(group, rslt);
+            } else {
+                logger.warn(
+                        "Group '{}' refers to nested group '{}' that is no longer available",
+                        getKey(),
+                        key);
+            }
+        }
+        return rslt;
+    }
+
+    /**
+     * Adds the members of group to rslt, along with the descendants of member groups that are not
+     * in the closure.
+     */
+    private void addClosureMembers(IEntityGroup group, Set<IGroupMember> rslt)
+            throws GroupsException {
+        for (IGroupMember gm : group.getChildren()) {
+            rslt.add(gm);
+            if (gm.isGroup() && !closureStore.isClosureGroup(gm.asGroup())) {
+                rslt.addAll(gm.asGroup().getDescendants());
+            }
+        }
+    }
+
+    /**
+     * Returns the closure of the memberships among the groups of our service.
+     *
+     * @return GroupClosure, or null if our service does not maintain one or it is not available
+     */
+    /* package-private */ GroupClosure getGroupClosure() {
+        return closureStore != null && closureStore.isClosureGroup(this)
+                ? closureStore.getClosure()
+                : null;
+    }
+
+    /** @return RDBMGroupClosureStore, or null */
+    /* package-private */ RDBMGroupClosureStore getClosureStore() {
+        return closureStore;
     }
     /**
      * Returns the <code>EntityIdentifier</code> cast to a <code>CompositeEntityIdentifier</code> so
@@ -444,6 +558,11 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
         childrenCache.put(new Element(cacheKey, children));
     }
 
+    /** @param newClosureStore RDBMGroupClosureStore */
+    /* package-private */ void setClosureStore(RDBMGroupClosureStore newClosureStore) {
+        closureStore = newClosureStore;
+    }
+
     /** @param newName String */
     public void primSetName(String newName) {
         name = newName;
@@ -0,0 +1,400 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable transitive closure of the group-in-group memberships of a database backed group
+ * service. Every group is assigned a dense index and its ancestors and descendants are held as
+ * {@link BitSet}s over those indexes, so answering whether one group is nested in another, however
+ * deep, is a pair of map lookups and a bit test.
+ *
+ * <p>Instances are never modified, {@link #withChildren(String, Collection, Collection)} and {@link
+ * #withoutGroup(String)} return a copy that shares the bit sets of every group the change does not
+ * affect. Groups are identified by their local keys, the <code>GROUP_ID</code> of <code>
+ * UP_GROUP</code>.
+ *
+ * @see RDBMGroupClosureStore
+ * @since 5.3
+ */
+public final class GroupClosure implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final BitSet EMPTY = new BitSet(0);
+
+    /** A closure without any groups */
+    public static final GroupClosure EMPTY_CLOSURE =
+            new GroupClosure(
+                    Collections.<String, Integer>emptyMap(),
+                    new String[0],
+                    new BitSet[0],
+                    new BitSet[0],
+                    new BitSet[0]);
+
+    private final Map<String, Integer> indexes;
+    private final String[] keys;
+    private final BitSet[] children;
+    private final BitSet[] ancestors;
+    private final BitSet[] descendants;
+
+    private GroupClosure(
+            Map<String, Integer> indexes,
+            String[] keys,
+            BitSet[] children,
+            BitSet[] ancestors,
+            BitSet[] descendants) {
+        this.indexes = indexes;
+        this.keys = keys;
+        this.children = children;
+        this.ancestors = ancestors;
+        this.descendants = descendants;
+    }
+
+    /**
+     * Compute the closure of a set of direct memberships.
+     *
+     * @param childKeysByParentKey The keys of the member groups of each group, by group key
+     */
+    public static GroupClosure fromMemberships(
+            Map<String, ? extends Collection<String>> childKeysByParentKey) {
+        final Builder builder = new Builder();
+        for (final Map.Entry<String, ? extends Collection<String>> entry :
+                childKeysByParentKey.entrySet()) {
+            for (final String childKey : entry.getValue()) {
+                builder.addPath(entry.getKey(), childKey, 1);
+            }
+        }
+
+        final GroupClosure closure = builder.build();
+        for (int i = 0; i < closure.keys.length; i++) {
+            closure.descendants[i] = closure.reach(i);
+        }
+        closure.invertDescendants();
+        return closure;
+    }
+
+    /** @return The number of groups with a place in the closure */
+    public int size() {
+        return this.keys.length;
+    }
+
+    /**
+     * @return true if the group with key <code>descendantKey</code> is a member, directly or
+     *     through any number of nested groups, of the group with key <code>ancestorKey</code>
+     */
+    public boolean isAncestor(String ancestorKey, String descendantKey) {
+        final Integer ancestor = this.indexes.get(ancestorKey);
+        final Integer descendant = this.indexes.get(descendantKey);
+        return ancestor != null && descendant != null && this.descendants[ancestor].get(descendant);
+    }
+
+    /** @return The keys of the groups the group is nested in, directly or indirectly */
+    public Set<String> getAncestorKeys(String key) {
+        return this.toKeys(this.get(this.ancestors, key));
+    }
+
+    /** @return The keys of the groups nested in the group, directly or indirectly */
+    public Set<String> getDescendantKeys(String key) {
+        return this.toKeys(this.get(this.descendants, key));
+    }
+
+    /** @return The keys of the groups that are direct members of the group */
+    public Set<String> getChildKeys(String key) {
+        return this.toKeys(this.get(this.children, key));
+    }
+
+    /**
+     * The descendants of a group with the length of the shortest membership path to each, as stored
+     * in the <code>DEPTH</code> column of the closure table.
+     *
+     * @return Path length by descendant key, 1 for direct members
+     */
+    public Map<String, Integer> getDescendantDepths(String key) {
+        final Integer index = this.indexes.get(key);
+        if (index == null) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, Integer> rslt = new LinkedHashMap<>();
+        final BitSet visited = new BitSet(this.keys.length);
+        visited.set(index);
+        BitSet level = this.children[index];
+        for (int depth = 1; !level.isEmpty(); depth++) {
+            final BitSet next = new BitSet(this.keys.length);
+            for (int i = level.nextSetBit(0); i >= 0; i = level.nextSetBit(i + 1)) {
+                if (!visited.get(i)) {
+                    visited.set(i);
+                    rslt.put(this.keys[i], depth);
+                    next.or(this.children[i]);
+                }
+            }
+            next.andNot(visited);
+            level = next;
+        }
+        return rslt;
+    }
+
+    /**
+     * Apply a change to the direct members of one group. Only the descendants of the group and of
+     * its ancestors can change, so only those are recomputed.
+     *
+     * @param parentKey Key of the group whose members changed
+     * @param addedChildKeys Keys of the groups added as members
+     * @param removedChildKeys Keys of the member groups removed
+     * @return The closure with the change applied
+     */
+    public GroupClosure withChildren(
+            String parentKey,
+            Collection<String> addedChildKeys,
+            Collection<String> removedChildKeys) {
+        final GroupClosure rslt = this.copyWith(parentKey, addedChildKeys);
+        final int parent = rslt.indexes.get(parentKey);
+
+        final BitSet parentChildren = (BitSet) rslt.children[parent].clone();
+        for (final String removedChildKey : removedChildKeys) {
+            final Integer child = rslt.indexes.get(removedChildKey);
+            if (child != null) {
+                parentChildren.clear(child);
+            }
+        }
+        for (final String addedChildKey : addedChildKeys) {
+            parentChildren.set(rslt.indexes.get(addedChildKey));
+        }
+        rslt.children[parent] = parentChildren;
+
+        final BitSet affected = (BitSet) rslt.ancestors[parent].clone();
+        affected.set(parent);
+        rslt.recompute(affected);
+        return rslt;
+    }
+
+    /**
+     * Remove a group and every membership it takes part in, as a member or as the containing group.
+     */
+    public GroupClosure withoutGroup(String key) {
+        final Integer index = this.indexes.get(key);
+        if (index == null) {
+            return this;
+        }
+
+        final GroupClosure rslt = this.copyWith(key, Collections.<String>emptySet());
+        final BitSet affected = (BitSet) rslt.ancestors[index].clone();
+        affected.set(index);
+        for (int i = affected.nextSetBit(0); i >= 0; i = affected.nextSetBit(i + 1)) {
+            if (rslt.children[i].get(index)) {
+                final BitSet parentChildren = (BitSet) rslt.children[i].clone();
+                parentChildren.clear(index);
+                rslt.children[i] = parentChildren;
+            }
+        }
+        rslt.children[index] = EMPTY;
+        rslt.recompute(affected);
+        return rslt;
+    }
+
+    private GroupClosure copyWith(String key, Collection<String> newKeys) {
+        final Map<String, Integer> newIndexes = new HashMap<>(this.indexes);
+        int size = this.keys.length;
+        if (!newIndexes.containsKey(key)) {
+            newIndexes.put(key, size++);
+        }
+        for (final String newKey : newKeys) {
+            if (!newIndexes.containsKey(newKey)) {
+                newIndexes.put(newKey, size++);
+            }
+        }
+
+        final String[] newKeyArray = Arrays.copyOf(this.keys, size);
+        for (final Map.Entry<String, Integer> entry : newIndexes.entrySet()) {
+            newKeyArray[entry.getValue()] = entry.getKey();
+        }
+        final BitSet[] newChildren = Arrays.copyOf(this.children, size);
+        final BitSet[] newAncestors = Arrays.copyOf(this.ancestors, size);
+        final BitSet[] newDescendants = Arrays.copyOf(this.descendants, size);
+        for (int i = this.keys.length; i < size; i++) {
+            newChildren[i] = EMPTY;
+            newAncestors[i] = EMPTY;
+            newDescendants[i] = EMPTY;
+        }
+
+        return new GroupClosure(
+                Collections.unmodifiableMap(newIndexes),
+                newKeyArray,
+                newChildren,
+                newAncestors,
+                newDescendants);
+    }
+
+    /**
+     * Recompute the descendants of the affected groups and flip the ancestor bit of every group
+     * that entered or left their descendants. Bit sets are replaced, never modified, since they may
+     * be shared with the closure this one was copied from.
+     */
+    private void recompute(BitSet affected) {
+        final Map<Integer, BitSet> changedAncestors = new HashMap<>();
+        for (int a = affected.nextSetBit(0); a >= 0; a = affected.nextSetBit(a + 1)) {
+            final BitSet previous = this.descendants[a];
+            final BitSet current = this.reach(a);
+            this.descendants[a] = current;
+
+            final BitSet changed = (BitSet) previous.clone();
+            changed.xor(current);
+            for (int d = changed.nextSetBit(0); d >= 0; d = changed.nextSetBit(d + 1)) {
+                BitSet ancestorsOfD = changedAncestors.get(d);
+                if (ancestorsOfD == null) {
+                    ancestorsOfD = (BitSet) this.ancestors[d].clone();
+                    changedAncestors.put(d, ancestorsOfD);
+                }
+                ancestorsOfD.flip(a);
+            }
+        }
+        for (final Map.Entry<Integer, BitSet> entry : changedAncestors.entrySet()) {
+            this.ancestors[entry.getKey()] = entry.getValue();
+        }
+    }
+
+    /** @return The groups reachable from the group by following memberships */
+    private BitSet reach(int index) {
+        final BitSet rslt = new BitSet(this.keys.length);
+        final Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(index);
+        while (!pending.isEmpty()) {
+            final BitSet memberGroups = this.children[pending.pop()];
+            for (int i = memberGroups.nextSetBit(0); i >= 0; i = memberGroups.nextSetBit(i + 1)) {
+                if (!rslt.get(i)) {
+                    rslt.set(i);
+                    pending.push(i);
+                }
+            }
+        }
+        return rslt;
+    }
+
+    private void invertDescendants() {
+        final BitSet[] inverted = new BitSet[this.keys.length];
+        for (int i = 0; i < inverted.length; i++) {
+            inverted[i] = new BitSet(this.keys.length);
+        }
+        for (int a = 0; a < this.descendants.length; a++) {
+            final BitSet d = this.descendants[a];
+            for (int i = d.nextSetBit(0); i >= 0; i = d.nextSetBit(i + 1)) {
+                inverted[i].set(a);
+            }
+        }
+        System.arraycopy(inverted, 0, this.ancestors, 0, inverted.length);
+    }
+
+    private BitSet get(BitSet[] sets, String key) {
+        final Integer index = this.indexes.get(key);
+        return index != null ? sets[index] : EMPTY;
+    }
+
+    private Set<String> toKeys(BitSet bits) {
+        if (bits.isEmpty()) {
+            return Collections.emptySet();
+        }
+        final Set<String> rslt = new HashSet<>();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            rslt.add(this.keys[i]);
+        }
+        return Collections.unmodifiableSet(rslt);
+    }
+
+    @Override
+    public String toString() {
+        return "GroupClosure [groups=" + this.keys.length + "]";
+    }
+
+    /**
+     * Collects the rows of a stored closure table. Both ancestors and descendants are taken
+     * directly from the rows, the direct memberships are the rows with a depth of 1.
+     */
+    public static final class Builder {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final Map<Integer, BitSet> children = new HashMap<>();
+        private final Map<Integer, BitSet> ancestors = new HashMap<>();
+        private final Map<Integer, BitSet> descendants = new HashMap<>();
+
+        /** Add one row of the closure table */
+        public Builder addPath(String ancestorKey, String descendantKey, int depth) {
+            final int ancestor = this.index(ancestorKey);
+            final int descendant = this.index(descendantKey);
+            set(this.descendants, ancestor, descendant);
+            set(this.ancestors, descendant, ancestor);
+            if (depth == 1) {
+                set(this.children, ancestor, descendant);
+            }
+            return this;
+        }
+
+        /** @return true if no rows have been added */
+        public boolean isEmpty() {
+            return this.indexes.isEmpty();
+        }
+
+        public GroupClosure build() {
+            final int size = this.indexes.size();
+            final String[] keys = new String[size];
+            for (final Map.Entry<String, Integer> entry : this.indexes.entrySet()) {
+                keys[entry.getValue()] = entry.getKey();
+            }
+            return new GroupClosure(
+                    Collections.unmodifiableMap(new HashMap<>(this.indexes)),
+                    keys,
+                    toArray(this.children, size),
+                    toArray(this.ancestors, size),
+                    toArray(this.descendants, size));
+        }
+
+        private int index(String key) {
+            Integer index = this.indexes.get(key);
+            if (index == null) {
+                index = this.indexes.size();
+                this.indexes.put(key, index);
+            }
+            return index;
+        }
+
+        private static void set(Map<Integer, BitSet> sets, int index, int bit) {
+            BitSet set = sets.get(index);
+            if (set == null) {
+                set = new BitSet();
+                sets.put(index, set);
+            }
+            set.set(bit);
+        }
+
+        private static BitSet[] toArray(Map<Integer, BitSet> sets, int size) {
+            final BitSet[] rslt = new BitSet[size];
+            for (int i = 0; i < size; i++) {
+                final BitSet set = sets.get(i);
+                rslt[i] = set != null ? set : EMPTY;
+            }
+            return rslt;
+        }
+    }
+}
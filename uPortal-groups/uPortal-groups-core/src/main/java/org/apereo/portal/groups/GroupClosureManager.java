@@ -0,0 +1,63 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups;
+
+import java.util.Set;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Exposes the {@link RDBMGroupClosureStore}s of the portal's group services over JMX, mainly so a
+ * closure can be rebuilt after <code>UP_GROUP_MEMBERSHIP</code> was changed outside of the group
+ * service.
+ *
+ * @since 5.3
+ */
+@ManagedResource("uPortal:section=Groups,name=GroupClosure")
+@Service("groupClosureManager")
+public class GroupClosureManager implements GroupClosureManagerMXBean {
+
+    @Override
+    public Set<String> getServiceNames() {
+        return RDBMGroupClosureStore.getServiceNames();
+    }
+
+    @Override
+    public int getGroupCount(String serviceName) {
+        final GroupClosure closure = getStore(serviceName).getClosure();
+        return closure != null ? closure.size() : -1;
+    }
+
+    @Override
+    public int rebuild(String serviceName) {
+        try {
+            return getStore(serviceName).rebuild().size();
+        } catch (GroupsException ge) {
+            throw new IllegalStateException(ge.getMessage(), ge);
+        }
+    }
+
+    private RDBMGroupClosureStore getStore(String serviceName) {
+        final RDBMGroupClosureStore store = RDBMGroupClosureStore.getStore(serviceName);
+        if (store == null) {
+            throw new IllegalArgumentException(
+                    "Group service '"
+                            + serviceName
+                            + "' does not maintain a closure, services that do: "
+                            + RDBMGroupClosureStore.getServiceNames());
+        }
+        return store;
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups;
+
+import java.util.Set;
+
+/** JMX operations on the group membership closures of database backed group services */
+public interface GroupClosureManagerMXBean {
+
+    /** @return The names of the group services that maintain a closure */
+    Set<String> getServiceNames();
+
+    /** @return The number of groups in the closure of the service, -1 if it is not available */
+    int getGroupCount(String serviceName);
+
+    /**
+     * Rebuild the closure of the service from its group memberships.
+     *
+     * @return The number of groups in the rebuilt closure
+     */
+    int rebuild(String serviceName);
+}
@@ -163,7 +163,8 @@ public abstract class GroupMemberImpl implements IGroupMember {
 
     /**
      * Returns the <code>Set</code> of groups in our member <code>Collection</code> and,
-     * recursively, in the <code>Collections</code> of our members.
+     * recursively, in the <code>Collections</code> of our members. The ancestors of a parent group
+     * whose service maintains the closure of its group memberships are taken from the closure.
      *
      * @param member org.apereo.portal.groups.IGroupMember - The current group member in the
      *     recursive execution.
@@ -176,12 +177,41 @@ public abstract class GroupMemberImpl implements IGroupMember {
             // avoid stack overflow in case of circular group dependencies
             if (!rslt.contains(group)) {
                 rslt.add(group);
-                primGetAncestorGroups(group, rslt);
+                if (!addClosureAncestorGroups(group, rslt)) {
+                    primGetAncestorGroups(group, rslt);
+                }
             }
         }
         return rslt;
     }
 
+    /**
+     * Adds the ancestors of group from the closure of its service. Groups of other services never
+     * contain groups of a service with a closure, so they are complete.
+     *
+     * @return boolean - false if there is no closure for group and its ancestors were not added
+     */
+    private boolean addClosureAncestorGroups(IEntityGroup group, Set<IEntityGroup> rslt)
+            throws GroupsException {
+        if (!(group instanceof EntityGroupImpl)) {
+            return false;
+        }
+        final EntityGroupImpl egi = (EntityGroupImpl) group;
+        final GroupClosure closure = egi.getGroupClosure();
+        if (closure == null) {
+            return false;
+        }
+
+        final RDBMGroupClosureStore closureStore = egi.getClosureStore();
+        for (String key : closure.getAncestorKeys(egi.getLocalKey())) {
+            final IEntityGroup ancestor = GroupService.findGroup(closureStore.getGroupKey(key));
+            if (ancestor != null) {
+                rslt.add(ancestor);
+            }
+        }
+        return true;
+    }
+
     @Override
     public final int hashCode() {
         final int prime = 31;
@@ -81,6 +81,8 @@ public class GroupServiceConfiguration {
                 svcDescriptor.setInternallyManaged("TRUE".equalsIgnoreCase(val));
             } else if (qName.equals("caching_enabled")) {
                 svcDescriptor.setCachingEnabled("TRUE".equalsIgnoreCase(val));
+            } else if (qName.equals("closure_enabled")) {
+                svcDescriptor.setClosureEnabled("TRUE".equalsIgnoreCase(val));
             } else {
                 svcDescriptor.setAttribute(elementName, val);
             }
@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import net.sf.ehcache.Element;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apereo.portal.EntityIdentifier;
@@ -129,8 +130,22 @@ public class RDBMEntityGroupStore implements IEntityGroupStore, IGroupConstants
     private static String deleteMemberEntitySql;
     private static String insertMemberSql;
 
+    // Closure of the group-in-group memberships, null if not maintained
+    private final RDBMGroupClosureStore closureStore;
+
     /** RDBMEntityGroupStore constructor. */
     public RDBMEntityGroupStore() {
+        this(null);
+    }
+
+    /**
+     * Creates a store that maintains the closure of the memberships among its groups along with the
+     * memberships.
+     *
+     * @param closureStore the closure of the group service's groups, or null
+     */
+    public RDBMEntityGroupStore(RDBMGroupClosureStore closureStore) {
+        this.closureStore = closureStore;
         initialize();
     }
 
@@ -970,7 +985,9 @@ public class RDBMEntityGroupStore implements IEntityGroupStore, IGroupConstants
             throw new GroupsException("Invalid group type: " + type);
         }
         try {
-            return new EntityGroupImpl(getNextKey(), type);
+            EntityGroupImpl egi = new EntityGroupImpl(getNextKey(), type);
+            egi.setClosureStore(closureStore);
+            return egi;
         } catch (Exception ex) {
             throw new GroupsException("Could not create new group", ex);
         }
@@ -984,6 +1001,7 @@ public class RDBMEntityGroupStore implements IEntityGroupStore, IGroupConstants
             String newDescription)
             throws GroupsException {
         EntityGroupImpl egi = new EntityGroupImpl(newKey, newType);
+        egi.setClosureStore(closureStore);
         egi.setCreatorID(newCreatorID);
         egi.primSetName(newName);
         egi.setDescription(newDescription);
@@ -998,6 +1016,7 @@ public class RDBMEntityGroupStore implements IEntityGroupStore, IGroupConstants
             String newDescription)
             throws GroupsException {
         LockableEntityGroupImpl group = new LockableEntityGroupImpl(newKey, newType);
+        group.setClosureStore(closureStore);
         group.setCreatorID(newCreatorID);
         group.primSetName(newName);
         group.setDescription(newDescription);
@@ -1070,6 +1089,23 @@ public class RDBMEntityGroupStore implements IEntityGroupStore, IGroupConstants
      * @param group IEntityGroup
      */
     private void primDelete(IEntityGroup group) throws SQLException {
+        if (closureStore != null) {
+            synchronized (closureStore) {
+                primDelete(group, closureStore.isAvailableForUpdate());
+            }
+        } else {
+            primDelete(group, false);
+        }
+    }
+
+    /**
+     * Delete this entity and its memberships and, if the closure is maintained, its closure rows.
+     *
+     * @param group IEntityGroup
+     * @param updateClosure true if the closure rows are to be removed
+     */
+    private void primDelete(IEntityGroup group, boolean updateClosure) throws SQLException {
+        Element updatedClosure = null;
         Connection conn = null;
         String deleteGroupSql = getDeleteGroupSql(group);
         String deleteMembershipSql = getDeleteMembersInGroupSql(group);
@@ -1080,6 +1116,10 @@ public class RDBMEntityGroupStore implements IEntityGroupStore, IGroupConstants
             setAutoCommit(conn, false);
 
             try {
+                if (updateClosure) {
+                    closureStore.lock(conn);
+                }
+
                 if (LOG.isDebugEnabled())
                     LOG.debug("RDBMEntityGroupStore.primDelete(): " + deleteMembershipSql);
 
@@ -1088,10 +1128,17 @@ public class RDBMEntityGroupStore implements IEntityGroupStore, IGroupConstants
                 if (LOG.isDebugEnabled())
                     LOG.debug("RDBMEntityGroupStore.primDelete(): " + deleteGroupSql);
                 stmnt.executeUpdate(deleteGroupSql);
+
+                if (updateClosure) {
+                    updatedClosure = closureStore.delete(group, conn);
+                }
             } finally {
                 stmnt.close();
             }
             commit(conn);
+            if (closureStore != null) {
+                closureStore.publish(updatedClosure);
+            }
 
         } catch (SQLException sqle) {
             rollback(conn);
@@ -1340,6 +1387,37 @@ public class RDBMEntityGroupStore implements IEntityGroupStore, IGroupConstants
         }
     }
 
+    /**
+     * Insert and delete group membership rows and commit. If the changes affect the closure of the
+     * memberships among our groups, the closure rows are written in the same transaction.
+     *
+     * @param egi EntityGroupImpl
+     * @param conn the database connection
+     */
+    private void commitMembers(EntityGroupImpl egi, Connection conn) throws SQLException {
+        if (closureStore == null || !closureStore.isAffectedBy(egi)) {
+            primUpdateMembers(egi, conn);
+            commit(conn);
+            return;
+        }
+
+        // Synchronized so the closures are published in the order they were committed
+        synchronized (closureStore) {
+            // Read the closure before the membership rows are locked, a rebuild reads them too
+            if (!closureStore.isAvailableForUpdate()) {
+                primUpdateMembers(egi, conn);
+                commit(conn);
+                return;
+            }
+
+            closureStore.lock(conn);
+            primUpdateMembers(egi, conn);
+            final Element closure = closureStore.updateMembers(egi, conn);
+            commit(conn);
+            closureStore.publish(closure);
+        }
+    }
+
     /**
      * @param conn Connection
      * @exception SQLException
@@ -1467,8 +1545,7 @@ public class RDBMEntityGroupStore implements IEntityGroupStore, IGroupConstants
                 } else {
                     primAdd(group, conn);
                 }
-                primUpdateMembers((EntityGroupImpl) group, conn);
-                commit(conn);
+                commitMembers((EntityGroupImpl) group, conn);
             } catch (Exception ex) {
                 rollback(conn);
                 throw new GroupsException("Problem updating " + this + ex);
@@ -1503,8 +1580,7 @@ public class RDBMEntityGroupStore implements IEntityGroupStore, IGroupConstants
                 setAutoCommit(conn, false);
 
                 try {
-                    primUpdateMembers(egi, conn);
-                    commit(conn);
+                    commitMembers(egi, conn);
                 } catch (SQLException sqle) {
                     rollback(conn);
                     throw new GroupsException("Problem updating memberships for " + egi, sqle);
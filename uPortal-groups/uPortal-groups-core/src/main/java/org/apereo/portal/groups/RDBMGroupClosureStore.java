@@ -0,0 +1,884 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import javax.naming.Name;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import org.apereo.portal.jdbc.RDBMServices;
+import org.apereo.portal.spring.locator.ApplicationContextLocator;
+import org.apereo.portal.utils.SqlTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maintains the transitive closure of the group-in-group memberships of a database backed group
+ * service in <code>UP_GROUP_CLOSURE</code>, one row per (ancestor, descendant) pair with the length
+ * of the shortest membership path between them. The rows are kept current by {@link
+ * RDBMEntityGroupStore} in the same transaction that changes <code>UP_GROUP_MEMBERSHIP</code>, and
+ * mirrored in memory as a {@link GroupClosure} that is cached, and invalidated across the cluster,
+ * in the {@value #CLOSURE_CACHE_NAME} cache.
+ *
+ * <p>Writers first update the row of the service in <code>UP_GROUP_CLOSURE_LOCK</code>, which
+ * serializes them across the cluster until they commit. Only the rows from the changed group and
+ * its ancestors to the changed member groups and their descendants are then recomputed, from <code>
+ * UP_GROUP_MEMBERSHIP</code> and <code>UP_GROUP_CLOSURE</code> as seen by the write transaction,
+ * never from the cached closure, which may be out of date on this server. The cached closure is
+ * carried forward only if it was read at the version of the lock row just before the change,
+ * otherwise it is read again.
+ *
+ * <p>Only memberships between groups of the service itself are covered. Other group stores never
+ * contain groups of a database backed service (PAGS groups, for example, only contain PAGS groups)
+ * so every ancestor of one of its groups is in the closure. Memberships of entities and of groups
+ * from other services are still resolved through the regular group caches.
+ *
+ * <p>If the closure can not be read, for example because the table has not been created yet,
+ * callers get <code>null</code> from {@link #getClosure()} and fall back to walking the groups.
+ * When the table is empty but the service has nested groups it is rebuilt from <code>
+ * UP_GROUP_MEMBERSHIP</code>, and {@link #rebuild()} does the same on demand.
+ *
+ * @since 5.3
+ */
+public class RDBMGroupClosureStore {
+    public static final String CLOSURE_CACHE_NAME =
+            "org.apereo.portal.groups.RDBMGroupClosureStore.closure";
+
+    // Constant strings for the CLOSURE table:
+    private static final String CLOSURE_TABLE = "UP_GROUP_CLOSURE";
+    private static final String CLOSURE_ANCESTOR_ID_COLUMN = "ANCESTOR_ID";
+    private static final String CLOSURE_DESCENDANT_ID_COLUMN = "DESCENDANT_ID";
+    private static final String CLOSURE_DEPTH_COLUMN = "DEPTH";
+    private static final String CLOSURE_SERVICE_COLUMN = "SERVICE_NAME";
+
+    // Constant strings for the CLOSURE LOCK table:
+    private static final String LOCK_TABLE = "UP_GROUP_CLOSURE_LOCK";
+    private static final String LOCK_SERVICE_COLUMN = "SERVICE_NAME";
+    private static final String LOCK_VERSION_COLUMN = "VERSION";
+
+    private static final String SELECT_CLOSURE_SQL =
+            "SELECT "
+                    + CLOSURE_ANCESTOR_ID_COLUMN
+                    + ", "
+                    + CLOSURE_DESCENDANT_ID_COLUMN
+                    + ", "
+                    + CLOSURE_DEPTH_COLUMN
+                    + " FROM "
+                    + CLOSURE_TABLE
+                    + " WHERE "
+                    + CLOSURE_SERVICE_COLUMN
+                    + " = ?";
+    private static final String SELECT_ANCESTORS_SQL =
+            "SELECT "
+                    + CLOSURE_ANCESTOR_ID_COLUMN
+                    + " FROM "
+                    + CLOSURE_TABLE
+                    + " WHERE "
+                    + CLOSURE_DESCENDANT_ID_COLUMN
+                    + " = ? AND "
+                    + CLOSURE_SERVICE_COLUMN
+                    + " = ?";
+    private static final String SELECT_DESCENDANTS_SQL =
+            "SELECT "
+                    + CLOSURE_DESCENDANT_ID_COLUMN
+                    + ", "
+                    + CLOSURE_DEPTH_COLUMN
+                    + " FROM "
+                    + CLOSURE_TABLE
+                    + " WHERE "
+                    + CLOSURE_ANCESTOR_ID_COLUMN
+                    + " = ? AND "
+                    + CLOSURE_SERVICE_COLUMN
+                    + " = ?";
+    private static final String INSERT_CLOSURE_SQL =
+            "INSERT INTO "
+                    + CLOSURE_TABLE
+                    + " ("
+                    + CLOSURE_ANCESTOR_ID_COLUMN
+                    + ", "
+                    + CLOSURE_DESCENDANT_ID_COLUMN
+                    + ", "
+                    + CLOSURE_DEPTH_COLUMN
+                    + ", "
+                    + CLOSURE_SERVICE_COLUMN
+                    + ") VALUES (?, ?, ?, ?)";
+    private static final String DELETE_ANCESTOR_SQL =
+            "DELETE FROM "
+                    + CLOSURE_TABLE
+                    + " WHERE "
+                    + CLOSURE_ANCESTOR_ID_COLUMN
+                    + " = ? AND "
+                    + CLOSURE_SERVICE_COLUMN
+                    + " = ?";
+    private static final String UPDATE_DEPTH_SQL =
+            "UPDATE "
+                    + CLOSURE_TABLE
+                    + " SET "
+                    + CLOSURE_DEPTH_COLUMN
+                    + " = ? WHERE "
+                    + CLOSURE_ANCESTOR_ID_COLUMN
+                    + " = ? AND "
+                    + CLOSURE_DESCENDANT_ID_COLUMN
+                    + " = ? AND "
+                    + CLOSURE_SERVICE_COLUMN
+                    + " = ?";
+    private static final String DELETE_PATH_SQL =
+            "DELETE FROM "
+                    + CLOSURE_TABLE
+                    + " WHERE "
+                    + CLOSURE_ANCESTOR_ID_COLUMN
+                    + " = ? AND "
+                    + CLOSURE_DESCENDANT_ID_COLUMN
+                    + " = ? AND "
+                    + CLOSURE_SERVICE_COLUMN
+                    + " = ?";
+    private static final String DELETE_SERVICE_SQL =
+            "DELETE FROM " + CLOSURE_TABLE + " WHERE " + CLOSURE_SERVICE_COLUMN + " = ?";
+
+    private static final String UPDATE_LOCK_SQL =
+            "UPDATE "
+                    + LOCK_TABLE
+                    + " SET "
+                    + LOCK_VERSION_COLUMN
+                    + " = "
+                    + LOCK_VERSION_COLUMN
+                    + " + 1 WHERE "
+                    + LOCK_SERVICE_COLUMN
+                    + " = ?";
+    private static final String SELECT_LOCK_VERSION_SQL =
+            "SELECT "
+                    + LOCK_VERSION_COLUMN
+                    + " FROM "
+                    + LOCK_TABLE
+                    + " WHERE "
+                    + LOCK_SERVICE_COLUMN
+                    + " = ?";
+    private static final String INSERT_LOCK_SQL =
+            "INSERT INTO "
+                    + LOCK_TABLE
+                    + " ("
+                    + LOCK_SERVICE_COLUMN
+                    + ", "
+                    + LOCK_VERSION_COLUMN
+                    + ") VALUES (?, 1)";
+
+    // Group-in-group memberships of one service
+    private static final String SELECT_MEMBER_GROUPS_SQL =
+            "SELECT GROUP_ID, MEMBER_KEY FROM UP_GROUP_MEMBERSHIP"
+                    + " WHERE MEMBER_IS_GROUP = 'T' AND MEMBER_SERVICE = ?";
+    private static final String SELECT_CHILD_GROUPS_SQL =
+            "SELECT MEMBER_KEY FROM UP_GROUP_MEMBERSHIP"
+                    + " WHERE GROUP_ID = ? AND MEMBER_IS_GROUP = 'T' AND MEMBER_SERVICE = ?";
+
+    /** How long to wait before trying to read the closure again after it could not be read */
+    private static final long RETRY_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Map<String, RDBMGroupClosureStore> STORES = new HashMap<>();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String serviceName;
+    private final String nodeSeparator;
+    private volatile Cache closureCache;
+    private volatile long unavailableUntil;
+    // Set when memberships changed while the closure could not be read
+    private volatile boolean rebuildOnLoad;
+
+    private RDBMGroupClosureStore(String serviceName) {
+        this.serviceName = serviceName;
+        String sep;
+        try {
+            sep = GroupServiceConfiguration.getConfiguration().getNodeSeparator();
+        } catch (Exception ex) {
+            sep = IGroupConstants.DEFAULT_NODE_SEPARATOR;
+        }
+        this.nodeSeparator = sep;
+    }
+
+    /**
+     * @param serviceName Name of the group service whose groups are stored in <code>UP_GROUP
+     *     </code>
+     * @return The closure store shared by every user of the service
+     */
+    public static synchronized RDBMGroupClosureStore forService(String serviceName) {
+        RDBMGroupClosureStore store = STORES.get(serviceName);
+        if (store == null) {
+            store = new RDBMGroupClosureStore(serviceName);
+            STORES.put(serviceName, store);
+        }
+        return store;
+    }
+
+    /**
+     * @return The closure store of a group service that maintains one, or null if it does not or
+     *     has not been initialized yet
+     */
+    public static synchronized RDBMGroupClosureStore getStore(String serviceName) {
+        return STORES.get(serviceName);
+    }
+
+    /** @return The names of the group services with a closure store */
+    public static synchronized Set<String> getServiceNames() {
+        return new TreeSet<>(STORES.keySet());
+    }
+
+    /** @return The name of the group service the closure covers */
+    public String getServiceName() {
+        return this.serviceName;
+    }
+
+    /** @return true if the group belongs to the service the closure covers */
+    public boolean isClosureGroup(IEntityGroup group) {
+        final Name name = group.getServiceName();
+        return name != null && this.serviceName.equals(name.toString());
+    }
+
+    /** @return The composite key, as used by <code>GroupService</code>, of a group's local key */
+    public String getGroupKey(String localKey) {
+        return this.serviceName + this.nodeSeparator + localKey;
+    }
+
+    /**
+     * @return The current closure, or null if it could not be read and nested groups must be
+     *     resolved without it
+     */
+    public GroupClosure getClosure() {
+        Element element = this.getClosureCache().get(this.serviceName);
+        if (element != null) {
+            return (GroupClosure) element.getObjectValue();
+        }
+        if (System.currentTimeMillis() < this.unavailableUntil) {
+            return null;
+        }
+
+        synchronized (this) {
+            element = this.getClosureCache().get(this.serviceName);
+            if (element != null) {
+                return (GroupClosure) element.getObjectValue();
+            }
+
+            try {
+                final Element loaded = this.load();
+                this.getClosureCache().put(loaded);
+                return (GroupClosure) loaded.getObjectValue();
+            } catch (SQLException sqle) {
+                this.unavailableUntil = System.currentTimeMillis() + RETRY_INTERVAL;
+                this.logger.warn(
+                        "Failed to read the closure of group service '{}' from {}, nested groups will be resolved without it for the next {}ms",
+                        this.serviceName,
+                        CLOSURE_TABLE,
+                        RETRY_INTERVAL,
+                        sqle);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Recompute the closure from <code>UP_GROUP_MEMBERSHIP</code> and replace the contents of
+     * <code>UP_GROUP_CLOSURE</code> with it. Used to recover from the table getting out of step
+     * with the memberships, for example after memberships were changed with SQL.
+     *
+     * @return The rebuilt closure
+     */
+    public synchronized GroupClosure rebuild() throws GroupsException {
+        return (GroupClosure) this.rebuildClosure().getObjectValue();
+    }
+
+    private synchronized Element rebuildClosure() throws GroupsException {
+        Connection conn = null;
+        try {
+            conn = RDBMServices.getConnection();
+            SqlTransaction.setAutoCommit(conn, false);
+            try {
+                this.lock(conn);
+                final long version = this.readVersion(conn);
+                final Map<String, Set<String>> memberGroups = this.readMemberGroups(conn);
+                final GroupClosure closure = GroupClosure.fromMemberships(memberGroups);
+
+                final PreparedStatement ps = conn.prepareStatement(DELETE_SERVICE_SQL);
+                try {
+                    ps.setString(1, this.serviceName);
+                    ps.executeUpdate();
+                } finally {
+                    ps.close();
+                }
+                final int rows = this.writePaths(conn, closure, memberGroups.keySet());
+                SqlTransaction.commit(conn);
+
+                this.logger.info(
+                        "Rebuilt the closure of group service '{}', {} groups and {} rows in {}",
+                        this.serviceName,
+                        closure.size(),
+                        rows,
+                        CLOSURE_TABLE);
+                this.unavailableUntil = 0;
+                this.rebuildOnLoad = false;
+                final Element rslt = new Element(this.serviceName, closure, version);
+                this.publish(rslt);
+                return rslt;
+            } catch (SQLException sqle) {
+                SqlTransaction.rollback(conn);
+                throw sqle;
+            }
+        } catch (SQLException sqle) {
+            throw new GroupsException(
+                    "Problem rebuilding the closure of " + this.serviceName, sqle);
+        } finally {
+            if (conn != null) {
+                try {
+                    SqlTransaction.setAutoCommit(conn, true);
+                } catch (SQLException sqle) {
+                    this.logger.warn("Failed to restore auto-commit", sqle);
+                } finally {
+                    RDBMServices.releaseConnection(conn);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether a membership change can be written to the closure. If it can not, the closure
+     * is rebuilt the next time it is read.
+     *
+     * @return true if the closure table can be read
+     */
+    boolean isAvailableForUpdate() {
+        if (this.getClosure() == null) {
+            this.rebuildOnLoad = true;
+            return false;
+        }
+        return true;
+    }
+
+    /** @return true if committing the group's pending member changes changes the closure */
+    boolean isAffectedBy(EntityGroupImpl group) {
+        return !this.getClosureGroupKeys(group.getAddedMembers().values()).isEmpty()
+                || !this.getClosureGroupKeys(group.getRemovedMembers().values()).isEmpty();
+    }
+
+    /**
+     * Serialize the changes to the closure across the cluster. Updates the row of the service in
+     * <code>UP_GROUP_CLOSURE_LOCK</code>, which other writers wait for until the caller's
+     * transaction ends. Called before the memberships are changed.
+     *
+     * @param conn the database connection, not in auto-commit mode
+     */
+    void lock(Connection conn) throws SQLException {
+        final PreparedStatement psUpdate = conn.prepareStatement(UPDATE_LOCK_SQL);
+        try {
+            psUpdate.setString(1, this.serviceName);
+            if (psUpdate.executeUpdate() > 0) {
+                return;
+            }
+        } finally {
+            psUpdate.close();
+        }
+
+        // First change of the service, the new row is locked just the same
+        final PreparedStatement psInsert = conn.prepareStatement(INSERT_LOCK_SQL);
+        try {
+            psInsert.setString(1, this.serviceName);
+            psInsert.executeUpdate();
+        } finally {
+            psInsert.close();
+        }
+    }
+
+    /**
+     * Write the closure rows changed by the group's member changes. The member rows must have been
+     * written in the transaction, after taking the {@link #lock(Connection)}. The transaction is
+     * maintained by the caller, which must {@link #publish(Element)} the result once it commits.
+     *
+     * <p>Only paths through the group can change, so only the rows from the group and its ancestors
+     * to the changed member groups and their descendants are recomputed.
+     *
+     * @param group The group whose members changed
+     * @param conn the database connection
+     * @return The closure after the change, or null if the cached closure was not current and must
+     *     be read again
+     */
+    Element updateMembers(EntityGroupImpl group, Connection conn) throws SQLException {
+        final String key = group.getLocalKey();
+        final Set<String> addedKeys = this.getClosureGroupKeys(group.getAddedMembers().values());
+        final Set<String> removedKeys =
+                this.getClosureGroupKeys(group.getRemovedMembers().values());
+
+        final Set<String> ancestorKeys = this.readAncestorKeys(key, conn);
+        ancestorKeys.add(key);
+        final Set<String> descendantKeys = new HashSet<>();
+        for (final String childKey : addedKeys) {
+            descendantKeys.add(childKey);
+            descendantKeys.addAll(this.readDescendantDepths(childKey, conn).keySet());
+        }
+        for (final String childKey : removedKeys) {
+            descendantKeys.add(childKey);
+            descendantKeys.addAll(this.readDescendantDepths(childKey, conn).keySet());
+        }
+        this.writeDelta(conn, ancestorKeys, descendantKeys, null);
+
+        final long version = this.readVersion(conn);
+        final GroupClosure previous = this.getCachedClosure(version - 1);
+        return previous != null
+                ? new Element(
+                        this.serviceName,
+                        previous.withChildren(key, addedKeys, removedKeys),
+                        version)
+                : null;
+    }
+
+    /**
+     * Remove the closure rows of a group that is being deleted, and recompute the rows of its
+     * ancestors to its descendants. Same contract as {@link #updateMembers(EntityGroupImpl,
+     * Connection)}.
+     */
+    Element delete(IEntityGroup group, Connection conn) throws SQLException {
+        final String key = group.getLocalKey();
+        final Set<String> ancestorKeys = this.readAncestorKeys(key, conn);
+        final Set<String> descendantKeys =
+                new HashSet<>(this.readDescendantDepths(key, conn).keySet());
+        descendantKeys.add(key);
+        this.writeDelta(conn, ancestorKeys, descendantKeys, key);
+
+        final PreparedStatement ps = conn.prepareStatement(DELETE_ANCESTOR_SQL);
+        try {
+            ps.setString(1, key);
+            ps.setString(2, this.serviceName);
+            ps.executeUpdate();
+        } finally {
+            ps.close();
+        }
+
+        final long version = this.readVersion(conn);
+        final GroupClosure previous = this.getCachedClosure(version - 1);
+        return previous != null
+                ? new Element(this.serviceName, previous.withoutGroup(key), version)
+                : null;
+    }
+
+    /**
+     * Make a closure visible once the transaction that wrote it has committed. The cached copy is
+     * removed before the new one is put so the removal, unlike the put, is replicated to the rest
+     * of the cluster.
+     *
+     * @param closure The closure returned by the change, or null to have it read again
+     */
+    void publish(Element closure) {
+        this.getClosureCache().remove(this.serviceName);
+        if (closure != null) {
+            this.getClosureCache().put(closure);
+        }
+    }
+
+    /**
+     * The cached closure is only used as the base of a change if no other change was made since it
+     * was read, the version of the lock row is incremented by every change.
+     *
+     * @return The cached closure if it was read at the version, otherwise null
+     */
+    private GroupClosure getCachedClosure(long version) {
+        final Element element = this.getClosureCache().get(this.serviceName);
+        return element != null && element.getVersion() == version
+                ? (GroupClosure) element.getObjectValue()
+                : null;
+    }
+
+    private Set<String> getClosureGroupKeys(Collection<IGroupMember> members) {
+        final Set<String> rslt = new HashSet<>();
+        for (final IGroupMember member : members) {
+            if (member.isGroup() && this.isClosureGroup(member.asGroup())) {
+                rslt.add(member.asGroup().getLocalKey());
+            }
+        }
+        return rslt;
+    }
+
+    /**
+     * @return The closure as stored in the table, with the version of the lock row read before the
+     *     rows. The rows may include changes committed after that version, never fewer.
+     */
+    private Element load() throws SQLException {
+        final GroupClosure.Builder builder = new GroupClosure.Builder();
+        boolean hasMemberGroups = false;
+        final long version;
+
+        final Connection conn = RDBMServices.getConnection();
+        try {
+            version = this.readVersion(conn);
+            final PreparedStatement ps = conn.prepareStatement(SELECT_CLOSURE_SQL);
+            try {
+                ps.setString(1, this.serviceName);
+                final ResultSet rs = ps.executeQuery();
+                try {
+                    while (rs.next()) {
+                        builder.addPath(rs.getString(1), rs.getString(2), rs.getInt(3));
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                ps.close();
+            }
+
+            if (builder.isEmpty()) {
+                hasMemberGroups = !this.readMemberGroups(conn).isEmpty();
+            }
+        } finally {
+            RDBMServices.releaseConnection(conn);
+        }
+
+        if (hasMemberGroups || this.rebuildOnLoad) {
+            this.logger.info(
+                    "{} is empty or missed membership changes of group service '{}', rebuilding it",
+                    CLOSURE_TABLE,
+                    this.serviceName);
+            try {
+                return this.rebuildClosure();
+            } catch (GroupsException ge) {
+                throw new SQLException(ge.getMessage(), ge);
+            }
+        }
+        return new Element(this.serviceName, builder.build(), version);
+    }
+
+    private Map<String, Set<String>> readMemberGroups(Connection conn) throws SQLException {
+        final Map<String, Set<String>> rslt = new HashMap<>();
+        final PreparedStatement ps = conn.prepareStatement(SELECT_MEMBER_GROUPS_SQL);
+        try {
+            ps.setString(1, this.serviceName);
+            final ResultSet rs = ps.executeQuery();
+            try {
+                while (rs.next()) {
+                    final String groupKey = rs.getString(1);
+                    Set<String> memberKeys = rslt.get(groupKey);
+                    if (memberKeys == null) {
+                        memberKeys = new HashSet<>();
+                        rslt.put(groupKey, memberKeys);
+                    }
+                    memberKeys.add(rs.getString(2));
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            ps.close();
+        }
+        return rslt;
+    }
+
+    /** @return The keys of the groups the group is nested in, as stored in the closure table */
+    private Set<String> readAncestorKeys(String key, Connection conn) throws SQLException {
+        final Set<String> rslt = new HashSet<>();
+        final PreparedStatement ps = conn.prepareStatement(SELECT_ANCESTORS_SQL);
+        try {
+            ps.setString(1, key);
+            ps.setString(2, this.serviceName);
+            final ResultSet rs = ps.executeQuery();
+            try {
+                while (rs.next()) {
+                    rslt.add(rs.getString(1));
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            ps.close();
+        }
+        return rslt;
+    }
+
+    /** @return The depths of the groups nested in the group, as stored in the closure table */
+    private Map<String, Integer> readDescendantDepths(String key, Connection conn)
+            throws SQLException {
+        final Map<String, Integer> rslt = new HashMap<>();
+        final PreparedStatement ps = conn.prepareStatement(SELECT_DESCENDANTS_SQL);
+        try {
+            ps.setString(1, key);
+            ps.setString(2, this.serviceName);
+            final ResultSet rs = ps.executeQuery();
+            try {
+                while (rs.next()) {
+                    rslt.put(rs.getString(1), rs.getInt(2));
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            ps.close();
+        }
+        return rslt;
+    }
+
+    /** @return The keys of the direct member groups of the group in the membership table */
+    private Set<String> readChildKeys(String key, Connection conn) throws SQLException {
+        final Set<String> rslt = new HashSet<>();
+        final PreparedStatement ps = conn.prepareStatement(SELECT_CHILD_GROUPS_SQL);
+        try {
+            ps.setString(1, key);
+            ps.setString(2, this.serviceName);
+            final ResultSet rs = ps.executeQuery();
+            try {
+                while (rs.next()) {
+                    rslt.add(rs.getString(1));
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            ps.close();
+        }
+        return rslt;
+    }
+
+    /** @return The version of the lock row of the service, 0 if no change has been made yet */
+    private long readVersion(Connection conn) throws SQLException {
+        final PreparedStatement ps = conn.prepareStatement(SELECT_LOCK_VERSION_SQL);
+        try {
+            ps.setString(1, this.serviceName);
+            final ResultSet rs = ps.executeQuery();
+            try {
+                return rs.next() ? rs.getLong(1) : 0;
+            } finally {
+                rs.close();
+            }
+        } finally {
+            ps.close();
+        }
+    }
+
+    /**
+     * Recompute the rows from a set of ancestors to a set of descendants after the memberships that
+     * connect them changed, and write the rows that differ from the stored ones.
+     *
+     * <p>Every changed path runs through the group whose memberships changed, so the ancestors are
+     * that group and the groups it is nested in, and the rows of every other group are current. The
+     * depth from an ancestor to a descendant is one more than the smallest depth from any of its
+     * member groups, which is read from the table for member groups that are not ancestors
+     * themselves and recomputed for those that are.
+     *
+     * @param ancestorKeys The group whose memberships changed and its ancestors
+     * @param descendantKeys The groups whose rows from the ancestors may have changed
+     * @param deletedKey Key of a group being deleted, never followed as a member, or null
+     */
+    private void writeDelta(
+            Connection conn,
+            Set<String> ancestorKeys,
+            Set<String> descendantKeys,
+            String deletedKey)
+            throws SQLException {
+        if (ancestorKeys.isEmpty() || descendantKeys.isEmpty()) {
+            return;
+        }
+
+        final Map<String, Set<String>> childKeys = new HashMap<>();
+        for (final String ancestorKey : ancestorKeys) {
+            final Set<String> keys = this.readChildKeys(ancestorKey, conn);
+            keys.remove(deletedKey);
+            childKeys.put(ancestorKey, keys);
+        }
+        final Map<String, Map<String, Integer>> depths = new HashMap<>();
+        for (final String childKey : this.getOtherChildKeys(childKeys)) {
+            depths.put(childKey, this.readDescendantDepths(childKey, conn));
+        }
+        for (final String ancestorKey : ancestorKeys) {
+            this.computeDepths(ancestorKey, childKeys, descendantKeys, depths);
+        }
+
+        int inserts = 0;
+        int updates = 0;
+        int deletes = 0;
+        final PreparedStatement psInsert = conn.prepareStatement(INSERT_CLOSURE_SQL);
+        try {
+            final PreparedStatement psUpdate = conn.prepareStatement(UPDATE_DEPTH_SQL);
+            try {
+                final PreparedStatement psDelete = conn.prepareStatement(DELETE_PATH_SQL);
+                try {
+                    for (final String ancestorKey : ancestorKeys) {
+                        final Map<String, Integer> stored =
+                                this.readDescendantDepths(ancestorKey, conn);
+                        final Map<String, Integer> computed = depths.get(ancestorKey);
+                        for (final String descendantKey : descendantKeys) {
+                            final Integer before = stored.get(descendantKey);
+                            final Integer after = computed.get(descendantKey);
+                            if (before == null && after != null) {
+                                psInsert.setString(1, ancestorKey);
+                                psInsert.setString(2, descendantKey);
+                                psInsert.setInt(3, after);
+                                psInsert.setString(4, this.serviceName);
+                                psInsert.addBatch();
+                                inserts++;
+                            } else if (before != null && after == null) {
+                                psDelete.setString(1, ancestorKey);
+                                psDelete.setString(2, descendantKey);
+                                psDelete.setString(3, this.serviceName);
+                                psDelete.addBatch();
+                                deletes++;
+                            } else if (before != null && !before.equals(after)) {
+                                psUpdate.setInt(1, after);
+                                psUpdate.setString(2, ancestorKey);
+                                psUpdate.setString(3, descendantKey);
+                                psUpdate.setString(4, this.serviceName);
+                                psUpdate.addBatch();
+                                updates++;
+                            }
+                        }
+                    }
+
+                    this.logger.debug(
+                            "Inserting {}, updating {} and deleting {} {} rows of service '{}'",
+                            inserts,
+                            updates,
+                            deletes,
+                            CLOSURE_TABLE,
+                            this.serviceName);
+                    if (deletes > 0) {
+                        psDelete.executeBatch();
+                    }
+                    if (updates > 0) {
+                        psUpdate.executeBatch();
+                    }
+                    if (inserts > 0) {
+                        psInsert.executeBatch();
+                    }
+                } finally {
+                    psDelete.close();
+                }
+            } finally {
+                psUpdate.close();
+            }
+        } finally {
+            psInsert.close();
+        }
+    }
+
+    /** @return The member groups of the ancestors that are not ancestors themselves */
+    private Set<String> getOtherChildKeys(Map<String, Set<String>> childKeys) {
+        final Set<String> rslt = new HashSet<>();
+        for (final Set<String> keys : childKeys.values()) {
+            rslt.addAll(keys);
+        }
+        rslt.removeAll(childKeys.keySet());
+        return rslt;
+    }
+
+    /**
+     * Compute the depths from an ancestor to the descendants, after those of its member groups.
+     * Ancestors are entered with no paths before their members are visited, so a membership cycle
+     * ends the recursion instead of looping.
+     *
+     * @return Depth by descendant key, for the descendants the ancestor has a path to
+     */
+    private Map<String, Integer> computeDepths(
+            String ancestorKey,
+            Map<String, Set<String>> childKeys,
+            Set<String> descendantKeys,
+            Map<String, Map<String, Integer>> depths) {
+        Map<String, Integer> rslt = depths.get(ancestorKey);
+        if (rslt != null) {
+            return rslt;
+        }
+        rslt = new HashMap<>();
+        depths.put(ancestorKey, rslt);
+
+        for (final String childKey : childKeys.get(ancestorKey)) {
+            if (descendantKeys.contains(childKey) && !childKey.equals(ancestorKey)) {
+                rslt.put(childKey, 1);
+            }
+            final Map<String, Integer> childDepths =
+                    childKeys.containsKey(childKey)
+                            ? this.computeDepths(childKey, childKeys, descendantKeys, depths)
+                            : depths.get(childKey);
+            for (final Map.Entry<String, Integer> path : childDepths.entrySet()) {
+                final String descendantKey = path.getKey();
+                if (descendantKeys.contains(descendantKey) && !descendantKey.equals(ancestorKey)) {
+                    final Integer depth = rslt.get(descendantKey);
+                    if (depth == null || depth > path.getValue() + 1) {
+                        rslt.put(descendantKey, path.getValue() + 1);
+                    }
+                }
+            }
+        }
+        return rslt;
+    }
+
+    /**
+     * Replace the rows of each of the ancestors with their descendants in the closure.
+     *
+     * @return The number of rows inserted
+     */
+    private int writePaths(Connection conn, GroupClosure closure, Set<String> ancestorKeys)
+            throws SQLException {
+        int rows = 0;
+        final PreparedStatement psDelete = conn.prepareStatement(DELETE_ANCESTOR_SQL);
+        try {
+            final PreparedStatement psInsert = conn.prepareStatement(INSERT_CLOSURE_SQL);
+            try {
+                for (final String ancestorKey : ancestorKeys) {
+                    psDelete.setString(1, ancestorKey);
+                    psDelete.setString(2, this.serviceName);
+                    psDelete.addBatch();
+
+                    for (final Map.Entry<String, Integer> path :
+                            closure.getDescendantDepths(ancestorKey).entrySet()) {
+                        psInsert.setString(1, ancestorKey);
+                        psInsert.setString(2, path.getKey());
+                        psInsert.setInt(3, path.getValue());
+                        psInsert.setString(4, this.serviceName);
+                        psInsert.addBatch();
+                        rows++;
+                    }
+                }
+
+                this.logger.debug(
+                        "Replacing the {} rows of {} groups of service '{}'",
+                        CLOSURE_TABLE,
+                        ancestorKeys.size(),
+                        this.serviceName);
+                psDelete.executeBatch();
+                if (rows > 0) {
+                    psInsert.executeBatch();
+                }
+            } finally {
+                psInsert.close();
+            }
+        } finally {
+            psDelete.close();
+        }
+        return rows;
+    }
+
+    private Cache getClosureCache() {
+        Cache cache = this.closureCache;
+        if (cache == null) {
+            final CacheManager cacheManager =
+                    ApplicationContextLocator.getApplicationContext()
+                            .getBean("cacheManager", CacheManager.class);
+            cache = cacheManager.getCache(CLOSURE_CACHE_NAME);
+            this.closureCache = cache;
+        }
+        return cache;
+    }
+}
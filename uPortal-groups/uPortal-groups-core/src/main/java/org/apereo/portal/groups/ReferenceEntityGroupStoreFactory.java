@@ -45,6 +45,15 @@ public class ReferenceEntityGroupStoreFactory implements IEntityGroupStoreFactor
     @Override
     public IEntityGroupStore newGroupStore(ComponentGroupServiceDescriptor svcDescriptor)
             throws GroupsException {
+        if (svcDescriptor != null && svcDescriptor.isClosureEnabled()) {
+            try {
+                return new RDBMEntityGroupStore(
+                        RDBMGroupClosureStore.forService(svcDescriptor.getName()));
+            } catch (Exception ex) {
+                log.error("ReferenceEntityGroupStoreFactory.newGroupStore(): " + ex);
+                throw new GroupsException(ex);
+            }
+        }
         return newInstance();
     }
     /**
@@ -14,6 +14,7 @@
  */
 package org.apereo.portal.layout.dlm;
 
+import java.util.UUID;
 import org.apereo.portal.layout.om.IStylesheetUserPreferences;
 import org.w3c.dom.Document;
 
@@ -22,6 +23,7 @@ public class DistributedUserLayout {
     private final Document layout;
     private final IStylesheetUserPreferences distributedStructureStylesheetUserPreferences;
     private final IStylesheetUserPreferences distributedThemeStylesheetUserPreferences;
+    private final String cacheKey = UUID.randomUUID().toString();
 
     /**
      * This constructor seems to be used with fragment owners.
@@ -54,6 +56,14 @@ public class DistributedUserLayout {
         return this.layout;
     }
 
+    /**
+     * @return A key unique to this instance of the layout, shared by every layout manager rendering
+     *     this instance
+     */
+    public String getCacheKey() {
+        return this.cacheKey;
+    }
+
     public IStylesheetUserPreferences getDistributedStructureStylesheetUserPreferences() {
         return this.distributedStructureStylesheetUserPreferences;
     }
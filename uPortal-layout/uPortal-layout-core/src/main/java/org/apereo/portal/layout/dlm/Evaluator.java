@@ -66,6 +66,11 @@ public abstract class Evaluator {
         return evaluatorId;
     }
 
+    /** @return The JPA entity version, incremented by every persisted change to the evaluator */
+    public long getEntityVersion() {
+        return entityVersion;
+    }
+
     public abstract boolean isApplicable(IPerson person);
 
     /**
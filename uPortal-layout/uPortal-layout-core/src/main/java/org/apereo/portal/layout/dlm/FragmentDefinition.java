@@ -15,7 +15,6 @@
 package org.apereo.portal.layout.dlm;
 
 import java.util.LinkedList;
-import java.util.List;
 import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -145,10 +144,6 @@ public class FragmentDefinition extends EvaluatorGroup {
         return cDefaultLayoutOwnerId;
     }
 
-    public List<Evaluator> getEvaluators() {
-        return this.evaluators;
-    }
-
     public boolean isNoAudienceIncluded() {
         return evaluators == null || evaluators.size() == 0;
     }
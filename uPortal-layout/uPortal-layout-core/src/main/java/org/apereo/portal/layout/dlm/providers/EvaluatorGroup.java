@@ -53,4 +53,8 @@ public abstract class EvaluatorGroup extends Evaluator {
     public void addEvaluator(Evaluator e) {
         this.evaluators.add(e);
     }
+
+    public List<Evaluator> getEvaluators() {
+        return this.evaluators;
+    }
 }
@@ -20,6 +20,7 @@ import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import javax.xml.stream.XMLEventReader;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -271,13 +272,20 @@ public class TransientUserLayoutManagerWrapper implements IUserLayoutManager {
 
     @Override
     public String getCacheKey() throws PortalException {
-        // we don't need to worry about extending the base cache key here,
-        // because the transient channels are always rendered in a focused
-        // mode, that means that the user preference attributes will be
-        // sufficient to describe the layout state.
-        // In general, however one would need to append that focused channel
-        // subscribe id and fname (both are required for global scope use).
-        return man.getCacheKey();
+        // the transient channels are always rendered in a focused mode, so the
+        // user preference attributes describe the layout state for this user.
+        // The subscribe id to fname mappings are appended because the same
+        // transient subscribe id can refer to different channels for users
+        // sharing a base cache key (guests).
+        final String cacheKey = man.getCacheKey();
+        if (mSubIdMap.isEmpty()) {
+            return cacheKey;
+        }
+        final Map<String, String> transientChannels;
+        synchronized (mSubIdMap) {
+            transientChannels = new TreeMap<String, String>(mSubIdMap);
+        }
+        return cacheKey + transientChannels;
     }
 
     @Override
@@ -1227,8 +1227,16 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
         return v.elements();
     }
 
+    /**
+     * Guest layouts can't be modified and every guest session renders the layout instance shared
+     * through the layout cache, so guests are keyed by that instance. This lets rendering caches be
+     * shared between guest sessions.
+     */
     @Override
     public String getCacheKey() {
+        if (this.owner.isGuest()) {
+            return this.getDistributedUserLayout().getCacheKey();
+        }
         return this.cacheKey;
     }
 
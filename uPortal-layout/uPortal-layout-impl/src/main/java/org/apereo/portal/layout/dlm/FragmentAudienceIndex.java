@@ -0,0 +1,428 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.layout.dlm;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import org.apereo.portal.groups.GroupsException;
+import org.apereo.portal.groups.IEntityGroup;
+import org.apereo.portal.groups.IGroupMember;
+import org.apereo.portal.layout.dlm.providers.AllUsersEvaluatorFactory;
+import org.apereo.portal.layout.dlm.providers.AttributeEvaluator;
+import org.apereo.portal.layout.dlm.providers.EvaluatorGroup;
+import org.apereo.portal.layout.dlm.providers.GroupMembershipEvaluator;
+import org.apereo.portal.layout.dlm.providers.GuestUserEvaluatorFactory;
+import org.apereo.portal.layout.dlm.providers.Paren;
+import org.apereo.portal.security.IPerson;
+import org.apereo.portal.services.GroupService;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The audiences of a list of {@link FragmentDefinition}s compiled into a single decision structure.
+ * Identical leaf {@link Evaluator}s (group membership tests, attribute tests, etc.) are shared
+ * between all fragments so each is evaluated at most once per person, and only if a fragment
+ * audience actually needs its result.
+ *
+ * <p>The set of applicable fragments is memoized by the person's audience signature: the values of
+ * the person attributes referenced by the audiences, the guest flag, the keys of the person's
+ * direct parent groups and the results of any evaluators that don't depend only on those inputs.
+ * People with the same signature share the result. Memoized results expire after a configurable
+ * time so changes deeper in the group hierarchy are eventually picked up.
+ *
+ * <p>An index is only valid for the fragment definitions it was compiled from, see {@link
+ * #getFingerprint(List)}.
+ *
+ * @since 5.3
+ */
+public class FragmentAudienceIndex {
+    private static final Logger logger = LoggerFactory.getLogger(FragmentAudienceIndex.class);
+
+    private final String fingerprint;
+    private final List<AudienceNode> fragmentAudiences;
+    private final List<Evaluator> tests;
+    private final boolean[] groupTests;
+    private final int[] opaqueTests;
+    private final SortedSet<String> attributeNames;
+    private final boolean guestSensitive;
+    private final Cache<List<Object>, int[]> applicableFragments;
+
+    private FragmentAudienceIndex(
+            String fingerprint,
+            List<AudienceNode> fragmentAudiences,
+            List<Evaluator> tests,
+            boolean[] groupTests,
+            int[] opaqueTests,
+            SortedSet<String> attributeNames,
+            boolean guestSensitive,
+            int maxCachedSignatures,
+            long signatureTimeToLiveSeconds) {
+        this.fingerprint = fingerprint;
+        this.fragmentAudiences = fragmentAudiences;
+        this.tests = tests;
+        this.groupTests = groupTests;
+        this.opaqueTests = opaqueTests;
+        this.attributeNames = attributeNames;
+        this.guestSensitive = guestSensitive;
+        this.applicableFragments =
+                CacheBuilder.newBuilder()
+                        .maximumSize(maxCachedSignatures)
+                        .expireAfterWrite(signatureTimeToLiveSeconds, TimeUnit.SECONDS)
+                        .build();
+    }
+
+    /**
+     * Computes a string that changes whenever the name, order or audience of any of the fragment
+     * definitions changes. Persistent definitions are identified by their id and entity version,
+     * which is incremented whenever a definition or its audience is updated, so the check is cheap
+     * enough to do on every lookup. Only definitions that have not been persisted are serialized.
+     *
+     * @return The fingerprint, null if a fragment definition could not be serialized
+     */
+    public static String getFingerprint(List<FragmentDefinition> fragmentDefinitions) {
+        final StringBuilder fingerprint = new StringBuilder();
+        Element root = null;
+        for (final FragmentDefinition fragmentDefinition : fragmentDefinitions) {
+            if (fragmentDefinition.getId() >= 0) {
+                fingerprint
+                        .append(fragmentDefinition.getId())
+                        .append(':')
+                        .append(fragmentDefinition.getEntityVersion())
+                        .append(';');
+                continue;
+            }
+
+            if (root == null) {
+                root = DocumentHelper.createElement("fragments");
+            }
+            try {
+                fragmentDefinition.toElement(root);
+            } catch (RuntimeException e) {
+                logger.debug(
+                        "Failed to serialize fragment definitions, audiences can't be compiled", e);
+                return null;
+            }
+            fingerprint.append(fragmentDefinition.getName()).append(';');
+        }
+
+        if (root != null) {
+            fingerprint.append(root.asXML());
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * Compile the audiences of the specified fragment definitions.
+     *
+     * @param fragmentDefinitions The fragment definitions, in precedence order
+     * @param fingerprint The {@link #getFingerprint(List)} of the fragment definitions
+     * @param maxCachedSignatures The max number of audience signatures to memoize results for
+     * @param signatureTimeToLiveSeconds How long memoized results are used for
+     */
+    public static FragmentAudienceIndex compile(
+            List<FragmentDefinition> fragmentDefinitions,
+            String fingerprint,
+            int maxCachedSignatures,
+            long signatureTimeToLiveSeconds) {
+        final Compiler compiler = new Compiler();
+        final List<AudienceNode> fragmentAudiences =
+                new ArrayList<AudienceNode>(fragmentDefinitions.size());
+        for (final FragmentDefinition fragmentDefinition : fragmentDefinitions) {
+            fragmentAudiences.add(compiler.compileAll(Paren.Type.OR, fragmentDefinition));
+        }
+
+        final int testCount = compiler.tests.size();
+        final boolean[] groupTests = new boolean[testCount];
+        final List<Integer> opaqueTests = new ArrayList<Integer>();
+        final SortedSet<String> attributeNames = new TreeSet<String>();
+        boolean guestSensitive = false;
+        for (int testIndex = 0; testIndex < testCount; testIndex++) {
+            final Evaluator test = compiler.tests.get(testIndex);
+            final Class<?> testClass = test.getClass();
+            if (testClass == GroupMembershipEvaluator.class) {
+                groupTests[testIndex] = true;
+            } else if (testClass == AttributeEvaluator.class) {
+                attributeNames.add(((AttributeEvaluator) test).getAttributeName());
+            } else if (testClass == GuestUserEvaluatorFactory.class) {
+                guestSensitive = true;
+            } else if (testClass != AllUsersEvaluatorFactory.class) {
+                // Unknown inputs, the result itself has to be part of the signature
+                opaqueTests.add(testIndex);
+            }
+        }
+
+        final int[] opaqueTestIndexes = new int[opaqueTests.size()];
+        for (int i = 0; i < opaqueTestIndexes.length; i++) {
+            opaqueTestIndexes[i] = opaqueTests.get(i);
+        }
+
+        logger.debug(
+                "Compiled audiences of {} fragments into {} distinct tests",
+                fragmentDefinitions.size(),
+                testCount);
+
+        return new FragmentAudienceIndex(
+                fingerprint,
+                Collections.unmodifiableList(fragmentAudiences),
+                Collections.unmodifiableList(compiler.tests),
+                groupTests,
+                opaqueTestIndexes,
+                Collections.unmodifiableSortedSet(attributeNames),
+                guestSensitive,
+                maxCachedSignatures,
+                signatureTimeToLiveSeconds);
+    }
+
+    /** @return The fingerprint of the fragment definitions this index was compiled from */
+    public String getFingerprint() {
+        return this.fingerprint;
+    }
+
+    /** @return The number of distinct leaf evaluators referenced by all fragment audiences */
+    public int getTestCount() {
+        return this.tests.size();
+    }
+
+    /**
+     * Determine the fragment definitions applicable to the person.
+     *
+     * @param fragmentDefinitions The fragment definitions this index was compiled from
+     * @return The applicable fragment definitions, in the order of the specified list
+     */
+    public List<FragmentDefinition> getApplicableFragmentDefinitions(
+            List<FragmentDefinition> fragmentDefinitions, IPerson person) {
+        final Evaluation evaluation = new Evaluation(person, this.tests);
+        final List<Object> signature = this.getSignature(evaluation);
+
+        int[] applicable = this.applicableFragments.getIfPresent(signature);
+        if (applicable == null) {
+            applicable = this.evaluate(fragmentDefinitions, evaluation);
+            this.applicableFragments.put(signature, applicable);
+        } else {
+            logger.debug("Using memoized applicable fragments for {}", person.getUserName());
+        }
+
+        final List<FragmentDefinition> result =
+                new ArrayList<FragmentDefinition>(applicable.length);
+        for (final int fragmentIndex : applicable) {
+            result.add(fragmentDefinitions.get(fragmentIndex));
+        }
+        return result;
+    }
+
+    private int[] evaluate(List<FragmentDefinition> fragmentDefinitions, Evaluation evaluation) {
+        final int[] applicable = new int[this.fragmentAudiences.size()];
+        int applicableCount = 0;
+        for (int fragmentIndex = 0;
+                fragmentIndex < this.fragmentAudiences.size();
+                fragmentIndex++) {
+            final boolean isApplicable;
+            try {
+                isApplicable = this.fragmentAudiences.get(fragmentIndex).evaluate(evaluation);
+            } catch (Exception e) {
+                throw new RuntimeException(
+                        "Failed to evaluate whether fragment '"
+                                + fragmentDefinitions.get(fragmentIndex).getName()
+                                + "' is applicable to user '"
+                                + evaluation.person.getUserName()
+                                + "'",
+                        e);
+            }
+            if (isApplicable) {
+                applicable[applicableCount++] = fragmentIndex;
+            }
+        }
+        return Arrays.copyOf(applicable, applicableCount);
+    }
+
+    /** Build the audience signature, evaluating any opaque tests along the way. */
+    private List<Object> getSignature(Evaluation evaluation) {
+        final IPerson person = evaluation.person;
+        final List<Object> signature =
+                new ArrayList<Object>(this.attributeNames.size() + this.opaqueTests.length + 2);
+
+        for (final String attributeName : this.attributeNames) {
+            signature.add(person.getAttribute(attributeName));
+        }
+        if (this.guestSensitive) {
+            signature.add(person.isGuest());
+        }
+        for (final boolean groupTest : this.groupTests) {
+            if (groupTest) {
+                signature.add(this.getParentGroupKeys(person));
+                break;
+            }
+        }
+        for (final int testIndex : this.opaqueTests) {
+            signature.add(evaluation.test(testIndex));
+        }
+
+        return signature;
+    }
+
+    /**
+     * Direct and deep group membership of the person is fully determined by the person's direct
+     * parent groups, so their keys stand in for the results of all group membership tests.
+     */
+    protected Set<String> getParentGroupKeys(IPerson person) {
+        if (person.getEntityIdentifier() == null) {
+            return Collections.emptySet();
+        }
+        try {
+            final IGroupMember groupMember =
+                    GroupService.getGroupMember(person.getEntityIdentifier());
+            final Set<String> parentGroupKeys = new TreeSet<String>();
+            for (final IEntityGroup parentGroup : groupMember.getParentGroups()) {
+                parentGroupKeys.add(parentGroup.getKey());
+            }
+            return parentGroupKeys;
+        } catch (GroupsException e) {
+            throw new RuntimeException(
+                    "Unable to determine the parent groups of user '" + person.getUserName() + "'",
+                    e);
+        }
+    }
+
+    /** Per person evaluation state, each test result is computed at most once. */
+    private static final class Evaluation {
+        private final IPerson person;
+        private final List<Evaluator> tests;
+        private final Boolean[] results;
+
+        Evaluation(IPerson person, List<Evaluator> tests) {
+            this.person = person;
+            this.tests = tests;
+            this.results = new Boolean[tests.size()];
+        }
+
+        boolean test(int testIndex) {
+            Boolean result = this.results[testIndex];
+            if (result == null) {
+                result = this.tests.get(testIndex).isApplicable(this.person);
+                this.results[testIndex] = result;
+            }
+            return result;
+        }
+    }
+
+    /** Builds the audience tree, sharing identical leaf evaluators. */
+    private static final class Compiler {
+        private final List<Evaluator> tests = new ArrayList<Evaluator>();
+        private final Map<String, Integer> testIndexes = new LinkedHashMap<String, Integer>();
+
+        AudienceNode compileAll(Paren.Type type, EvaluatorGroup group) {
+            final List<Evaluator> evaluators = group.getEvaluators();
+            final List<AudienceNode> children = new ArrayList<AudienceNode>();
+            if (evaluators != null) {
+                for (final Evaluator evaluator : evaluators) {
+                    children.add(this.compile(evaluator));
+                }
+            }
+            return new ParenNode(type, children);
+        }
+
+        AudienceNode compile(Evaluator evaluator) {
+            if (evaluator instanceof Paren && ((Paren) evaluator).getType() != null) {
+                return this.compileAll(((Paren) evaluator).getType(), (Paren) evaluator);
+            }
+
+            final String testKey = getTestKey(evaluator);
+            Integer testIndex = this.testIndexes.get(testKey);
+            if (testIndex == null) {
+                testIndex = this.tests.size();
+                this.tests.add(evaluator);
+                this.testIndexes.put(testKey, testIndex);
+            }
+            return new TestNode(testIndex);
+        }
+
+        /** Leaf evaluators that serialize to the same XML are the same test */
+        private static String getTestKey(Evaluator evaluator) {
+            final Element root = DocumentHelper.createElement("audience");
+            try {
+                evaluator.toElement(root);
+            } catch (RuntimeException e) {
+                return evaluator.getClass().getName() + "@" + System.identityHashCode(evaluator);
+            }
+            return evaluator.getClass().getName() + root.asXML();
+        }
+    }
+
+    private abstract static class AudienceNode {
+        abstract boolean evaluate(Evaluation evaluation);
+    }
+
+    private static final class TestNode extends AudienceNode {
+        private final int testIndex;
+
+        TestNode(int testIndex) {
+            this.testIndex = testIndex;
+        }
+
+        @Override
+        boolean evaluate(Evaluation evaluation) {
+            return evaluation.test(this.testIndex);
+        }
+    }
+
+    /** Same semantics as {@link Paren#isApplicable(IPerson)}, including short-circuiting */
+    private static final class ParenNode extends AudienceNode {
+        private final Paren.Type type;
+        private final List<AudienceNode> children;
+
+        ParenNode(Paren.Type type, List<AudienceNode> children) {
+            this.type = type;
+            this.children = children;
+        }
+
+        @Override
+        boolean evaluate(Evaluation evaluation) {
+            switch (this.type) {
+                case AND:
+                    for (final AudienceNode child : this.children) {
+                        if (!child.evaluate(evaluation)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                case NOT:
+                    return !this.anyApplicable(evaluation);
+                default:
+                    return this.anyApplicable(evaluation);
+            }
+        }
+
+        private boolean anyApplicable(Evaluation evaluation) {
+            for (final AudienceNode child : this.children) {
+                if (child.evaluate(evaluation)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
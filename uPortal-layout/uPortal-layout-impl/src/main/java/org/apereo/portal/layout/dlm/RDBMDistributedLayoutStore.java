@@ -809,6 +809,7 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
         // Now update UP_USER...
         this.jdbcOperations.update(
                 "UPDATE up_user SET next_struct_id = ? WHERE user_id = ?", nextId, person.getID());
+        this.discardStructIdBlock(person.getID());
 
         // (4) Convert external DLM pathrefs to internal form (noderefs)...
         for (final Iterator<org.dom4j.Attribute> itr =
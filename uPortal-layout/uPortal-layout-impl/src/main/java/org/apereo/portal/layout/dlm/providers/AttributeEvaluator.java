@@ -92,6 +92,11 @@ public class AttributeEvaluator extends Evaluator {
         this.value = value;
     }
 
+    /** @return The name of the person attribute this evaluator tests */
+    public String getAttributeName() {
+        return this.name;
+    }
+
     @Override
     public boolean isApplicable(IPerson p) {
         String attrib = (String) p.getAttribute(name);
@@ -53,6 +53,10 @@ public class Paren extends EvaluatorGroup {
         type = t;
     }
 
+    public Type getType() {
+        return this.type;
+    }
+
     @Override
     public boolean isApplicable(IPerson toPerson) {
         boolean rslt = false;
@@ -15,6 +15,7 @@
 package org.apereo.portal.layout.simple;
 
 import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -30,7 +31,11 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Resource;
+import javax.servlet.http.HttpSession;
 import javax.sql.DataSource;
 import org.apereo.portal.EntityIdentifier;
 import org.apereo.portal.IUserProfile;
@@ -47,6 +52,7 @@ import org.apereo.portal.layout.LayoutStructure;
 import org.apereo.portal.layout.dao.IStylesheetDescriptorDao;
 import org.apereo.portal.portlet.registry.IPortletDefinitionRegistry;
 import org.apereo.portal.security.IPerson;
+import org.apereo.portal.security.IPersonManager;
 import org.apereo.portal.security.ISecurityContext;
 import org.apereo.portal.security.provider.PersonImpl;
 import org.apereo.portal.spring.locator.CounterStoreLocator;
@@ -58,10 +64,14 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.web.session.HttpSessionDestroyedEvent;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
@@ -78,7 +88,10 @@ import org.w3c.dom.Node;
  * <p>Prior to uPortal 2.5, this class existed in the org.jasig.portal package. It was moved to its
  * present package to express that it is part of the Simple Layout Manager implementation.
  */
-public abstract class RDBMUserLayoutStore implements IUserLayoutStore, InitializingBean {
+public abstract class RDBMUserLayoutStore
+        implements IUserLayoutStore,
+                InitializingBean,
+                ApplicationListener<HttpSessionDestroyedEvent> {
 
     private static final String PROFILE_TABLE_NAME = "UP_USER_PROFILE";
 
@@ -88,6 +101,11 @@ public abstract class RDBMUserLayoutStore implements IUserLayoutStore, Initializ
     protected static final String channelPrefix = "n";
     protected static final String folderPrefix = "s";
 
+    public static final int DEFAULT_STRUCT_ID_BLOCK_SIZE = 10;
+    private static final int MAX_STRUCT_ID_RESERVE_ATTEMPTS = 10;
+    // Unused blocks are dropped after this long, their remaining ids are simply never used
+    private static final long STRUCT_ID_BLOCK_IDLE_MINUTES = 30;
+
     protected TransactionOperations transactionOperations;
     protected TransactionOperations nextStructTransactionOperations;
     protected JdbcOperations jdbcOperations;
@@ -98,8 +116,31 @@ public abstract class RDBMUserLayoutStore implements IUserLayoutStore, Initializ
     protected IPortletDefinitionRegistry portletDefinitionRegistry;
     protected IStylesheetDescriptorDao stylesheetDescriptorDao;
 
+    private int structIdBlockSize = DEFAULT_STRUCT_ID_BLOCK_SIZE;
+    private final ConcurrentMap<Integer, StructIdBlock> structIdBlocks =
+            CacheBuilder.newBuilder()
+                    .expireAfterAccess(STRUCT_ID_BLOCK_IDLE_MINUTES, TimeUnit.MINUTES)
+                    .<Integer, StructIdBlock>build()
+                    .asMap();
+
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
+    /**
+     * Number of struct ids reserved in <code>UP_USER.NEXT_STRUCT_ID</code> at a time for each user,
+     * a value of 1 reserves every id individually.
+     */
+    @Value(
+            "${org.apereo.portal.layout.simple.RDBMUserLayoutStore.structIdBlockSize:"
+                    + DEFAULT_STRUCT_ID_BLOCK_SIZE
+                    + "}")
+    public void setStructIdBlockSize(int structIdBlockSize) {
+        if (structIdBlockSize < 1) {
+            throw new IllegalArgumentException(
+                    "structIdBlockSize must be at least 1: " + structIdBlockSize);
+        }
+        this.structIdBlockSize = structIdBlockSize;
+    }
+
     @Autowired
     public void setLocaleStore(ILocaleStore localeStore) {
         this.localeStore = localeStore;
@@ -382,7 +423,10 @@ public abstract class RDBMUserLayoutStore implements IUserLayoutStore, Initializ
     }
 
     /**
-     * Return the next available structure id for a user
+     * Return the next available structure id for a user. Ids are handed out from a block reserved
+     * for the user in <code>UP_USER.NEXT_STRUCT_ID</code>, a new block is only reserved once the
+     * current one is used up. Code in this class that rewrites the counter discards the block with
+     * {@link #discardStructIdBlock(int)}, reservations by other servers never overlap the block.
      *
      * @param person
      * @param prefix
@@ -390,54 +434,136 @@ public abstract class RDBMUserLayoutStore implements IUserLayoutStore, Initializ
      */
     protected String getNextStructId(final IPerson person, final String prefix) {
         final int userId = person.getID();
-        return nextStructTransactionOperations.execute(
-                new TransactionCallback<String>() {
-                    @Override
-                    public String doInTransaction(TransactionStatus status) {
-                        return jdbcOperations.execute(
-                                new ConnectionCallback<String>() {
-                                    @Override
-                                    public String doInConnection(Connection con)
-                                            throws SQLException, DataAccessException {
 
-                                        Statement stmt = con.createStatement();
-                                        try {
-                                            String sQuery =
-                                                    "SELECT NEXT_STRUCT_ID FROM UP_USER WHERE USER_ID="
-                                                            + userId;
-                                            logger.debug("getNextStructId(): {}", sQuery);
-                                            ResultSet rs = stmt.executeQuery(sQuery);
-                                            int currentStructId;
-                                            try {
-                                                if (rs.next()) {
-                                                    currentStructId = rs.getInt(1);
-                                                } else {
-                                                    throw new SQLException(
-                                                            "no rows returned for query ["
-                                                                    + sQuery
-                                                                    + "]");
-                                                }
-                                            } finally {
-                                                rs.close();
-                                            }
-                                            int nextStructId = currentStructId + 1;
-                                            String sUpdate =
-                                                    "UPDATE UP_USER SET NEXT_STRUCT_ID="
-                                                            + nextStructId
-                                                            + " WHERE USER_ID="
-                                                            + userId
-                                                            + " AND NEXT_STRUCT_ID="
-                                                            + currentStructId;
-                                            logger.debug("getNextStructId(): {}", sUpdate);
-                                            stmt.executeUpdate(sUpdate);
-                                            return prefix + nextStructId;
-                                        } finally {
-                                            stmt.close();
+        StructIdBlock block = structIdBlocks.get(userId);
+        if (block == null) {
+            block = new StructIdBlock();
+            final StructIdBlock existing = structIdBlocks.putIfAbsent(userId, block);
+            if (existing != null) {
+                block = existing;
+            }
+        }
+
+        // Only threads working on the same user wait while a new block is reserved
+        synchronized (block) {
+            if (!block.hasNext()) {
+                final int lastStructId = reserveStructIdBlock(userId);
+                block.reset(lastStructId - structIdBlockSize + 1, lastStructId);
+            }
+            return prefix + block.next();
+        }
+    }
+
+    /**
+     * Discard the struct ids reserved for the user on this server. Must be called after <code>
+     * UP_USER.NEXT_STRUCT_ID</code> is set to a value that was not reserved through {@link
+     * #getNextStructId(IPerson, String)}, such as after a layout import, since the ids of the block
+     * may be in use by then.
+     */
+    protected void discardStructIdBlock(final int userId) {
+        final StructIdBlock block = structIdBlocks.remove(userId);
+        if (block != null) {
+            // Threads that already hold the block must not hand out its remaining ids either
+            synchronized (block) {
+                block.reset(1, 0);
+            }
+            logger.debug("Discarded the struct ids reserved for user {}", userId);
+        }
+    }
+
+    /**
+     * Advance <code>UP_USER.NEXT_STRUCT_ID</code> by the block size and return the last id of the
+     * reserved range. The counter is only updated if it still has the value that was read, so
+     * concurrent reservations from other threads or other portal servers never get overlapping
+     * ranges. Each attempt runs in its own transaction so a retry reads the latest committed value.
+     */
+    private int reserveStructIdBlock(final int userId) {
+        for (int attempt = 1; attempt <= MAX_STRUCT_ID_RESERVE_ATTEMPTS; attempt++) {
+            Integer reserved;
+            try {
+                reserved =
+                        nextStructTransactionOperations.execute(
+                                new TransactionCallback<Integer>() {
+                                    @Override
+                                    public Integer doInTransaction(TransactionStatus status) {
+                                        final Integer currentStructId =
+                                                jdbcOperations.queryForObject(
+                                                        "SELECT NEXT_STRUCT_ID FROM UP_USER WHERE USER_ID=?",
+                                                        Integer.class,
+                                                        userId);
+                                        final int lastStructId =
+                                                (currentStructId != null ? currentStructId : 0)
+                                                        + structIdBlockSize;
+
+                                        final int updated;
+                                        if (currentStructId != null) {
+                                            updated =
+                                                    jdbcOperations.update(
+                                                            "UPDATE UP_USER SET NEXT_STRUCT_ID=? WHERE USER_ID=? AND NEXT_STRUCT_ID=?",
+                                                            lastStructId,
+                                                            userId,
+                                                            currentStructId);
+                                        } else {
+                                            updated =
+                                                    jdbcOperations.update(
+                                                            "UPDATE UP_USER SET NEXT_STRUCT_ID=? WHERE USER_ID=? AND NEXT_STRUCT_ID IS NULL",
+                                                            lastStructId,
+                                                            userId);
                                         }
+
+                                        return updated == 1 ? lastStructId : null;
                                     }
                                 });
-                    }
-                });
+            } catch (ConcurrencyFailureException e) {
+                // The database rejected the concurrent update of the row, try again
+                logger.debug(
+                        "Concurrent update of NEXT_STRUCT_ID for user {} on attempt {}",
+                        userId,
+                        attempt,
+                        e);
+                reserved = null;
+            }
+
+            if (reserved != null) {
+                logger.debug(
+                        "Reserved {} struct ids up to {} for user {} on attempt {}",
+                        structIdBlockSize,
+                        reserved,
+                        userId,
+                        attempt);
+                return reserved;
+            }
+
+            // Back off for a short random time so competing servers don't retry in lock step
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(attempt * 5) + 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(
+                        "Interrupted while reserving struct ids for user " + userId, e);
+            }
+        }
+
+        throw new IllegalStateException(
+                "Unable to reserve struct ids for user "
+                        + userId
+                        + " after "
+                        + MAX_STRUCT_ID_RESERVE_ATTEMPTS
+                        + " attempts, NEXT_STRUCT_ID is being modified concurrently");
+    }
+
+    /**
+     * Discards the unused struct ids reserved for the user of the destroyed session. The reserved
+     * range has already been removed from <code>UP_USER.NEXT_STRUCT_ID</code> so dropping it can
+     * never cause an id to be handed out twice.
+     */
+    @Override
+    public void onApplicationEvent(HttpSessionDestroyedEvent event) {
+        final HttpSession session = event.getSession();
+        final Object person = session.getAttribute(IPersonManager.PERSON_SESSION_KEY);
+        if (person instanceof IPerson) {
+            structIdBlocks.remove(((IPerson) person).getID());
+        }
     }
 
     protected Document getPersonalUserLayout(final IPerson person, final IUserProfile profile) {
@@ -609,6 +735,9 @@ public abstract class RDBMUserLayoutStore implements IUserLayoutStore, Initializ
 
                                 userId = userLayoutIds.first;
                                 layoutId = userLayoutIds.second;
+
+                                // NEXT_STRUCT_ID may have been raised to the template's counter
+                                discardStructIdBlock(realUserId);
                             }
 
                             int firstStructId;
@@ -1621,4 +1750,26 @@ public abstract class RDBMUserLayoutStore implements IUserLayoutStore, Initializ
                     }
                 });
     }
+
+    /**
+     * Range of struct ids reserved for a user, handed out in order. Guarded by its own monitor so
+     * concurrent edits of the same user's layout on this server share a single reservation.
+     */
+    private static final class StructIdBlock {
+        private int nextStructId = 1;
+        private int lastStructId = 0;
+
+        private boolean hasNext() {
+            return nextStructId <= lastStructId;
+        }
+
+        private int next() {
+            return nextStructId++;
+        }
+
+        private void reset(int firstStructId, int lastStructId) {
+            this.nextStructId = firstStructId;
+            this.lastStructId = lastStructId;
+        }
+    }
 }
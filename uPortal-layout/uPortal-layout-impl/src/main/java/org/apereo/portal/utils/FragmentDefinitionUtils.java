@@ -23,12 +23,14 @@ import java.util.Locale;
 import java.util.Set;
 import org.apereo.portal.layout.dlm.ConfigurationLoader;
 import org.apereo.portal.layout.dlm.FragmentActivator;
+import org.apereo.portal.layout.dlm.FragmentAudienceIndex;
 import org.apereo.portal.layout.dlm.FragmentDefinition;
 import org.apereo.portal.layout.dlm.UserView;
 import org.apereo.portal.security.IPerson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.w3c.dom.Document;
 
@@ -43,6 +45,11 @@ public class FragmentDefinitionUtils implements IFragmentDefinitionUtils {
 
     private ConfigurationLoader configurationLoader;
     private FragmentActivator fragmentActivator;
+    private int maxCachedAudienceSignatures = 10000;
+    private long audienceSignatureTimeToLive = 300;
+
+    /** Compiled audiences of the current fragment definitions, replaced when they change */
+    private volatile FragmentAudienceIndex audienceIndex;
 
     @Autowired
     public void setConfigurationLoader(ConfigurationLoader configurationLoader) {
@@ -54,6 +61,24 @@ public class FragmentDefinitionUtils implements IFragmentDefinitionUtils {
         this.fragmentActivator = fragmentActivator;
     }
 
+    /**
+     * @param maxCachedAudienceSignatures Max number of distinct audience signatures to remember the
+     *     applicable fragments for.
+     */
+    @Value("${org.apereo.portal.utils.FragmentDefinitionUtils.maxCachedAudienceSignatures:10000}")
+    public void setMaxCachedAudienceSignatures(int maxCachedAudienceSignatures) {
+        this.maxCachedAudienceSignatures = maxCachedAudienceSignatures;
+    }
+
+    /**
+     * @param audienceSignatureTimeToLive Seconds the applicable fragments for an audience signature
+     *     are remembered for.
+     */
+    @Value("${org.apereo.portal.utils.FragmentDefinitionUtils.audienceSignatureTimeToLive:300}")
+    public void setAudienceSignatureTimeToLive(long audienceSignatureTimeToLive) {
+        this.audienceSignatureTimeToLive = audienceSignatureTimeToLive;
+    }
+
     @Override
     public final List<FragmentDefinition> getFragmentDefinitions() {
         return this.configurationLoader.getFragments();
@@ -76,23 +101,53 @@ public class FragmentDefinitionUtils implements IFragmentDefinitionUtils {
 
     @Override
     public List<FragmentDefinition> getFragmentDefinitionsApplicableToPerson(final IPerson person) {
-        final List<FragmentDefinition> result = new ArrayList<FragmentDefinition>();
         final List<FragmentDefinition> definitions = this.configurationLoader.getFragments();
+        if (definitions == null) {
+            return new ArrayList<FragmentDefinition>();
+        }
         logger.debug("About to check applicability of {} fragments", definitions.size());
 
-        if (definitions != null) {
-            for (final FragmentDefinition fragmentDefinition : definitions) {
-                logger.debug(
-                        "Checking applicability of the following fragment: {}",
-                        fragmentDefinition.getName());
-                if (fragmentDefinition.isApplicable(person)) {
-                    result.add(fragmentDefinition);
-                }
+        final FragmentAudienceIndex index = this.getAudienceIndex(definitions);
+        if (index != null) {
+            return index.getApplicableFragmentDefinitions(definitions, person);
+        }
+
+        final List<FragmentDefinition> result = new ArrayList<FragmentDefinition>();
+        for (final FragmentDefinition fragmentDefinition : definitions) {
+            logger.debug(
+                    "Checking applicability of the following fragment: {}",
+                    fragmentDefinition.getName());
+            if (fragmentDefinition.isApplicable(person)) {
+                result.add(fragmentDefinition);
             }
         }
         return result;
     }
 
+    /**
+     * @return The compiled audiences of the fragment definitions, null if they can't be compiled
+     */
+    private FragmentAudienceIndex getAudienceIndex(final List<FragmentDefinition> definitions) {
+        final String fingerprint = FragmentAudienceIndex.getFingerprint(definitions);
+        if (fingerprint == null) {
+            return null;
+        }
+
+        FragmentAudienceIndex index = this.audienceIndex;
+        if (index == null || !fingerprint.equals(index.getFingerprint())) {
+            index =
+                    FragmentAudienceIndex.compile(
+                            definitions,
+                            fingerprint,
+                            this.maxCachedAudienceSignatures,
+                            this.audienceSignatureTimeToLive);
+            this.audienceIndex = index;
+            logger.debug(
+                    "Compiled fragment audiences into {} distinct tests", index.getTestCount());
+        }
+        return index;
+    }
+
     @Override
     public List<UserView> getFragmentDefinitionUserViews(final Locale locale) {
         return this.getFragmentDefinitionUserViews(this.getFragmentDefinitions(), locale);
@@ -0,0 +1,212 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.layout.dlm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apereo.portal.layout.dlm.providers.AttributeEvaluator;
+import org.apereo.portal.layout.dlm.providers.Paren;
+import org.apereo.portal.security.IPerson;
+import org.apereo.portal.security.provider.PersonImpl;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.junit.Test;
+
+/** Tests for {@link FragmentAudienceIndex}. */
+public class FragmentAudienceIndexTest {
+
+    @Test
+    public void testSharedTestsEvaluatedOnce() {
+        final CountingEvaluator first = new CountingEvaluator("shared");
+        final CountingEvaluator second = new CountingEvaluator("shared");
+
+        final FragmentDefinition fragmentA = new FragmentDefinition("a");
+        fragmentA.addEvaluator(first);
+        final FragmentDefinition fragmentB = new FragmentDefinition("b");
+        final Paren and = new Paren(Paren.Type.AND);
+        and.addEvaluator(second);
+        and.addEvaluator(new AttributeEvaluator("dept", "exists", null));
+        fragmentB.addEvaluator(and);
+
+        final List<FragmentDefinition> fragments = Arrays.asList(fragmentA, fragmentB);
+        final FragmentAudienceIndex index = compile(fragments);
+        assertEquals(2, index.getTestCount());
+
+        final List<FragmentDefinition> applicable =
+                index.getApplicableFragmentDefinitions(fragments, createPerson("jdoe", "math"));
+        assertEquals(fragments, applicable);
+        assertEquals(1, first.count + second.count);
+    }
+
+    @Test
+    public void testMatchesUncompiledEvaluation() {
+        final FragmentDefinition math = new FragmentDefinition("math");
+        math.addEvaluator(new AttributeEvaluator("dept", "equals", "math"));
+
+        final FragmentDefinition notMath = new FragmentDefinition("notMath");
+        final Paren not = new Paren(Paren.Type.NOT);
+        not.addEvaluator(new AttributeEvaluator("dept", "equals", "math"));
+        notMath.addEvaluator(not);
+
+        final FragmentDefinition mathOrArt = new FragmentDefinition("mathOrArt");
+        final Paren or = new Paren(Paren.Type.OR);
+        or.addEvaluator(new AttributeEvaluator("dept", "equals", "math"));
+        or.addEvaluator(new AttributeEvaluator("dept", "startsWith", "ar"));
+        mathOrArt.addEvaluator(or);
+
+        final FragmentDefinition empty = new FragmentDefinition("empty");
+
+        final List<FragmentDefinition> fragments = Arrays.asList(math, notMath, mathOrArt, empty);
+        final FragmentAudienceIndex index = compile(fragments);
+
+        for (final IPerson person :
+                Arrays.asList(
+                        createPerson("jdoe", "math"),
+                        createPerson("jsmith", "art"),
+                        createPerson("jroe", "math"),
+                        createPerson("nodept", null))) {
+            assertEquals(
+                    person.getUserName(),
+                    uncompiled(fragments, person),
+                    index.getApplicableFragmentDefinitions(fragments, person));
+        }
+        assertEquals(
+                Arrays.asList(math, mathOrArt),
+                index.getApplicableFragmentDefinitions(fragments, createPerson("jroe", "math")));
+    }
+
+    @Test
+    public void testFingerprint() {
+        final FragmentDefinition fragment = new FragmentDefinition("a");
+        fragment.addEvaluator(new AttributeEvaluator("dept", "equals", "math"));
+        final String before = FragmentAudienceIndex.getFingerprint(Arrays.asList(fragment));
+
+        fragment.addEvaluator(new AttributeEvaluator("dept", "equals", "art"));
+        assertNotEquals(before, FragmentAudienceIndex.getFingerprint(Arrays.asList(fragment)));
+
+        fragment.addEvaluator(new UnserializableEvaluator());
+        assertNull(FragmentAudienceIndex.getFingerprint(Arrays.asList(fragment)));
+    }
+
+    @Test
+    public void testPersistentFingerprint() throws Exception {
+        final FragmentDefinition fragment = new FragmentDefinition("a");
+        fragment.addEvaluator(new UnserializableEvaluator());
+        setEntityField(fragment, "evaluatorId", 5L);
+        setEntityField(fragment, "entityVersion", 1L);
+        final String before = FragmentAudienceIndex.getFingerprint(Arrays.asList(fragment));
+        assertEquals("5:1;", before);
+
+        // Audience changes are only picked up once persisted
+        fragment.addEvaluator(new AttributeEvaluator("dept", "equals", "art"));
+        assertEquals(before, FragmentAudienceIndex.getFingerprint(Arrays.asList(fragment)));
+
+        setEntityField(fragment, "entityVersion", 2L);
+        assertNotEquals(before, FragmentAudienceIndex.getFingerprint(Arrays.asList(fragment)));
+    }
+
+    private static void setEntityField(Evaluator evaluator, String name, long value)
+            throws Exception {
+        final Field field = Evaluator.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.setLong(evaluator, value);
+    }
+
+    private static FragmentAudienceIndex compile(List<FragmentDefinition> fragments) {
+        return FragmentAudienceIndex.compile(
+                fragments, FragmentAudienceIndex.getFingerprint(fragments), 100, 60);
+    }
+
+    private static List<FragmentDefinition> uncompiled(
+            List<FragmentDefinition> fragments, IPerson person) {
+        final List<FragmentDefinition> result = new ArrayList<FragmentDefinition>();
+        for (final FragmentDefinition fragment : fragments) {
+            if (fragment.isApplicable(person)) {
+                result.add(fragment);
+            }
+        }
+        return result;
+    }
+
+    private static IPerson createPerson(String userName, String dept) {
+        final IPerson person = new PersonImpl();
+        person.setUserName(userName);
+        person.setID(2);
+        if (dept != null) {
+            person.setAttribute("dept", dept);
+        }
+        return person;
+    }
+
+    private static class CountingEvaluator extends Evaluator {
+        private final String name;
+        private int count;
+
+        CountingEvaluator(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean isApplicable(IPerson person) {
+            this.count++;
+            return true;
+        }
+
+        @Override
+        public void toElement(Element parent) {
+            final Element element = DocumentHelper.createElement("counting");
+            element.addAttribute("name", this.name);
+            parent.add(element);
+        }
+
+        @Override
+        public Class<? extends EvaluatorFactory> getFactoryClass() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getSummary() {
+            return "(COUNTING " + this.name + ")";
+        }
+    }
+
+    private static class UnserializableEvaluator extends Evaluator {
+        @Override
+        public boolean isApplicable(IPerson person) {
+            return false;
+        }
+
+        @Override
+        public void toElement(Element parent) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Class<? extends EvaluatorFactory> getFactoryClass() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getSummary() {
+            return "(NO ONE)";
+        }
+    }
+}
@@ -37,6 +37,8 @@ import org.apereo.portal.events.aggr.login.LoginAggregation;
 import org.apereo.portal.events.aggr.login.LoginAggregationDao;
 import org.apereo.portal.events.aggr.login.LoginAggregationKey;
 import org.apereo.portal.events.aggr.login.LoginAggregationKeyImpl;
+import org.apereo.portal.events.aggr.popular.PopularityIndex;
+import org.apereo.portal.events.aggr.popular.RankedCount;
 import org.apereo.portal.groups.IEntityGroup;
 import org.apereo.portal.security.IPerson;
 import org.apereo.portal.services.GroupService;
@@ -72,6 +74,7 @@ public class ActivityController {
     private SearchRequestAggregationDao<SearchRequestAggregation> searchRequestAggregationDao;
     private ConcurrentUserAggregationDao<ConcurrentUserAggregation> concurrentUserAggregationDao;
     private LoginAggregationDao<LoginAggregation> loginAggregationDao;
+    private PopularityIndex popularityIndex;
 
     @Autowired
     public void setAggregatedGroupLookupDao(AggregatedGroupLookupDao aggregatedGroupLookupDao) {
@@ -95,6 +98,11 @@ public class ActivityController {
         this.loginAggregationDao = loginAggregationDao;
     }
 
+    @Autowired
+    public void setPopularityIndex(PopularityIndex popularityIndex) {
+        this.popularityIndex = popularityIndex;
+    }
+
     @RenderMapping
     public ModelAndView summary(PortletRequest request) throws TypeMismatchException {
         final Map<String, Object> model = new HashMap<String, Object>();
@@ -254,27 +262,42 @@ public class ActivityController {
     }
 
     private List<SearchInfo> getPopularSearchTerms() {
-        DateTime end = new DateTime();
-        DateTime begin = end.minusDays(1);
         final IEntityGroup everyone = GroupService.getRootGroup(IPerson.class);
         final AggregatedGroupMapping group =
                 aggregatedGroupLookupDao.getGroupMapping(everyone.getKey());
-        List<SearchRequestAggregationImpl> aggregations =
-                searchRequestAggregationDao.getAggregations(
-                        begin, end, AggregationInterval.FIVE_MINUTE, group);
-        Map<String, SearchInfo> resultBuilder = new HashMap<String, SearchInfo>();
-        for (SearchRequestAggregationImpl aggregation : aggregations) {
-            SearchInfo info = resultBuilder.get(aggregation.getSearchTerm());
-            if (info == null) {
-                info = new SearchInfo(aggregation.getSearchTerm(), aggregation.getCount());
-                resultBuilder.put(aggregation.getSearchTerm(), info);
-            } else {
-                info.incrementCount(aggregation.getCount());
+
+        // Precomputed ranking over the closed intervals of the last day
+        final List<RankedCount<String>> ranking =
+                this.popularityIndex.getPopularSearchTerms(group, 24);
+        final List<SearchInfo> results;
+        if (ranking != null) {
+            results = new ArrayList<SearchInfo>(ranking.size());
+            for (final RankedCount<String> rankedCount : ranking) {
+                results.add(
+                        new SearchInfo(
+                                rankedCount.getKey(),
+                                (int) Math.min(rankedCount.getCount(), Integer.MAX_VALUE)));
+            }
+        } else {
+            DateTime end = new DateTime();
+            DateTime begin = end.minusDays(1);
+            List<SearchRequestAggregationImpl> aggregations =
+                    searchRequestAggregationDao.getAggregations(
+                            begin, end, AggregationInterval.FIVE_MINUTE, group);
+            Map<String, SearchInfo> resultBuilder = new HashMap<String, SearchInfo>();
+            for (SearchRequestAggregationImpl aggregation : aggregations) {
+                SearchInfo info = resultBuilder.get(aggregation.getSearchTerm());
+                if (info == null) {
+                    info = new SearchInfo(aggregation.getSearchTerm(), aggregation.getCount());
+                    resultBuilder.put(aggregation.getSearchTerm(), info);
+                } else {
+                    info.incrementCount(aggregation.getCount());
+                }
             }
+            results = new ArrayList<SearchInfo>(resultBuilder.values());
+            Collections.sort(results);
+            Collections.reverse(results);
         }
-        List<SearchInfo> results = new ArrayList<SearchInfo>(resultBuilder.values());
-        Collections.sort(results);
-        Collections.reverse(results);
         return results.size() > 10 ? results.subList(0, 9) : results;
     }
 
@@ -39,7 +39,7 @@ public class ConfigurablePreferencesBasedTokenGenerator implements DynamicSkinUn
      */
     @Override
     public String generateToken(final DynamicSkinInstanceData data) {
-        final PortletPreferences preferences = data.getPortletRequest().getPreferences();
+        final PortletPreferences preferences = data.getPortletPreferences();
         int hash = 0;
         // Add the list of preference names to an ordered list so we can get reliable hashcode
         // calculations.
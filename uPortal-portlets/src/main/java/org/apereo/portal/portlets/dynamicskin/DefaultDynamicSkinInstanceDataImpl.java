@@ -32,6 +32,7 @@ public class DefaultDynamicSkinInstanceDataImpl implements DynamicSkinInstanceDa
     private String portletAbsolutePathRoot;
     private String skinName;
     private PortletRequest portletRequest;
+    private PortletPreferences portletPreferences;
     private Map<String, String> variableNameToValueMap;
 
     public DefaultDynamicSkinInstanceDataImpl(final PortletRequest request) {
@@ -40,6 +41,16 @@ public class DefaultDynamicSkinInstanceDataImpl implements DynamicSkinInstanceDa
         this.portletRequest = request;
     }
 
+    /**
+     * Creates skin instance data that is not tied to a portlet request, the preferences should be
+     * safe to use from any thread; e.g. a {@link ReadOnlyPortletPreferences} snapshot.
+     */
+    public DefaultDynamicSkinInstanceDataImpl(
+            final String portletAbsolutePathRoot, final PortletPreferences preferences) {
+        this.pullDataFromPortletPreferences(preferences);
+        this.portletAbsolutePathRoot = portletAbsolutePathRoot;
+    }
+
     /** @see DynamicSkinInstanceData#getPortletAbsolutePathRoot() */
     @Override
     public String getPortletAbsolutePathRoot() {
@@ -57,6 +68,11 @@ public class DefaultDynamicSkinInstanceDataImpl implements DynamicSkinInstanceDa
         return this.portletRequest;
     }
 
+    @Override
+    public PortletPreferences getPortletPreferences() {
+        return this.portletPreferences;
+    }
+
     /** @see DynamicSkinInstanceData#getVariablesValuesMap() */
     @Override
     public Map<String, String> getVariableNameToValueMap() {
@@ -74,6 +90,7 @@ public class DefaultDynamicSkinInstanceDataImpl implements DynamicSkinInstanceDa
     }
 
     private void pullDataFromPortletPreferences(final PortletPreferences prefs) {
+        this.portletPreferences = prefs;
         this.skinName =
                 prefs.getValue(
                         DynamicRespondrSkinConstants.PREF_SKIN_NAME,
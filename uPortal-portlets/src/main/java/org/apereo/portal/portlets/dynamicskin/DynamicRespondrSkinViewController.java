@@ -16,6 +16,9 @@ package org.apereo.portal.portlets.dynamicskin;
 
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.portlet.PortletPreferences;
 import javax.portlet.PortletRequest;
 import javax.portlet.RenderRequest;
@@ -137,11 +140,33 @@ public class DynamicRespondrSkinViewController {
     private String calculateDynamicSkinUrlPathToUse(PortletRequest request, String lessfileBaseName)
             throws IOException {
         final DynamicSkinInstanceData data = new DefaultDynamicSkinInstanceDataImpl(request);
-        if (!service.skinCssFileExists(data)) {
-            // Trigger the LESS compilation
-            service.generateSkinCssFile(data);
+        if (service.skinCssFileExists(data)) {
+            return service.getSkinCssPath(data);
         }
-        return service.getSkinCssPath(data);
+
+        // Trigger the LESS compilation; only one runs per skin configuration
+        final Future<?> compilation = service.scheduleSkinCssFileGeneration(data);
+
+        // Keep serving the previous CSS for the skin until the new one is ready
+        final String lastGoodCssPath = service.getLastGoodSkinCssPath(data);
+        if (lastGoodCssPath != null) {
+            return lastGoodCssPath;
+        }
+
+        // Nothing compiled for this skin yet, wait for it
+        try {
+            compilation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted waiting for skin {} to compile", lessfileBaseName);
+        } catch (ExecutionException | CancellationException e) {
+            logger.warn("Failed to compile skin {}", lessfileBaseName, e);
+        }
+        if (service.skinCssFileExists(data)) {
+            return service.getSkinCssPath(data);
+        }
+        logger.warn("Skin {} is not compiled, using the default skin CSS", lessfileBaseName);
+        return calculateDefaultSkinCssLocationInWebapp(lessfileBaseName);
     }
 
     /**
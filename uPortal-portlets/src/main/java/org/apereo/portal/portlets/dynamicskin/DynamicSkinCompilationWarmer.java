@@ -0,0 +1,147 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlets.dynamicskin;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.portlet.PortletConfig;
+import javax.portlet.PortletContext;
+import org.apache.pluto.container.om.portlet.PortletDefinition;
+import org.apache.pluto.container.om.portlet.Preference;
+import org.apereo.portal.portlet.om.IPortletDefinition;
+import org.apereo.portal.portlet.om.IPortletDescriptorKey;
+import org.apereo.portal.portlet.om.IPortletPreference;
+import org.apereo.portal.portlet.registry.IPortletDefinitionRegistry;
+import org.apereo.portal.portlets.dynamicskin.storage.DynamicSkinService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.portlet.context.PortletConfigAware;
+import org.springframework.web.portlet.context.PortletContextAware;
+
+/**
+ * Optionally queues LESS compilation of every published dynamic skin when the DynamicRespondrSkin
+ * portlet starts, so the first users after a deployment do not wait on the compiler. Skin
+ * configuration is read from the portlet definition preferences; per-entity overrides are compiled
+ * on demand as before.
+ *
+ * @since 5.3
+ */
+@Component
+public class DynamicSkinCompilationWarmer
+        implements ApplicationListener<ContextRefreshedEvent>,
+                PortletContextAware,
+                PortletConfigAware {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private DynamicSkinService service;
+    private IPortletDefinitionRegistry portletDefinitionRegistry;
+    private PortletContext portletContext;
+    private PortletConfig portletConfig;
+    private boolean enabled = false;
+
+    @Autowired
+    public void setService(DynamicSkinService service) {
+        this.service = service;
+    }
+
+    @Autowired
+    public void setPortletDefinitionRegistry(IPortletDefinitionRegistry portletDefinitionRegistry) {
+        this.portletDefinitionRegistry = portletDefinitionRegistry;
+    }
+
+    @Value("${dynamic-skin.warmup.enabled:false}")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void setPortletContext(PortletContext portletContext) {
+        this.portletContext = portletContext;
+    }
+
+    @Override
+    public void setPortletConfig(PortletConfig portletConfig) {
+        this.portletConfig = portletConfig;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (!enabled || portletContext == null || portletConfig == null) {
+            return;
+        }
+
+        final String portletAbsolutePathRoot = portletContext.getRealPath("/");
+        int scheduled = 0;
+        for (final IPortletDefinition portletDefinition :
+                portletDefinitionRegistry.getAllPortletDefinitions()) {
+            final IPortletDescriptorKey descriptorKey = portletDefinition.getPortletDescriptorKey();
+            if (!descriptorKey.isFrameworkPortlet()
+                    || !portletConfig.getPortletName().equals(descriptorKey.getPortletName())) {
+                continue;
+            }
+
+            try {
+                final ReadOnlyPortletPreferences preferences =
+                        new ReadOnlyPortletPreferences(getPreferences(portletDefinition));
+                if (!Boolean.valueOf(
+                        preferences.getValue(DynamicRespondrSkinConstants.PREF_DYNAMIC, "false"))) {
+                    continue;
+                }
+
+                final DynamicSkinInstanceData data =
+                        new DefaultDynamicSkinInstanceDataImpl(
+                                portletAbsolutePathRoot, preferences);
+                if (!service.skinCssFileExists(data)) {
+                    service.scheduleSkinCssFileGeneration(data);
+                    scheduled++;
+                }
+            } catch (RuntimeException e) {
+                logger.warn(
+                        "Failed to schedule skin compilation for portlet {}",
+                        portletDefinition.getFName(),
+                        e);
+            }
+        }
+        logger.info("Scheduled {} dynamic skin compilations at startup", scheduled);
+    }
+
+    /** Descriptor preferences overlaid with the preferences set on the portlet definition. */
+    private Map<String, String[]> getPreferences(IPortletDefinition portletDefinition) {
+        final Map<String, String[]> preferences = new LinkedHashMap<>();
+
+        final PortletDefinition portletDescriptor =
+                portletDefinitionRegistry.getParentPortletDescriptor(
+                        portletDefinition.getPortletDefinitionId());
+        if (portletDescriptor != null && portletDescriptor.getPortletPreferences() != null) {
+            for (final Preference preference :
+                    portletDescriptor.getPortletPreferences().getPortletPreferences()) {
+                final List<String> values = preference.getValues();
+                preferences.put(preference.getName(), values.toArray(new String[values.size()]));
+            }
+        }
+
+        for (final IPortletPreference preference : portletDefinition.getPortletPreferences()) {
+            preferences.put(preference.getName(), preference.getValues());
+        }
+        return preferences;
+    }
+}
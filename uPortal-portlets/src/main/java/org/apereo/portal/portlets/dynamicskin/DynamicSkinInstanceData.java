@@ -15,6 +15,7 @@
 package org.apereo.portal.portlets.dynamicskin;
 
 import java.util.Map;
+import javax.portlet.PortletPreferences;
 import javax.portlet.PortletRequest;
 
 /** Interface for classes used to store data about a dynamic skin instance. */
@@ -35,9 +36,18 @@ public interface DynamicSkinInstanceData {
     /**
      * Returns the {@link PortletRequest} object for the current request.
      *
-     * @return the portlet request object
+     * @return the portlet request object, or null if the data is not tied to a request (for example
+     *     when skins are compiled in the background)
      */
     PortletRequest getPortletRequest();
+    /**
+     * Returns the portlet preferences the skin instance was configured from. Unlike the {@link
+     * PortletRequest}, the preferences remain usable after the request has completed.
+     *
+     * @return the portlet preferences
+     * @since 5.3
+     */
+    PortletPreferences getPortletPreferences();
     /**
      * Returns the map of variables that will be used in the LESS compilation for the dynamic skin.
      *
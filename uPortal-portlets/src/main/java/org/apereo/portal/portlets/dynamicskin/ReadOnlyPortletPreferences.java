@@ -0,0 +1,105 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlets.dynamicskin;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.portlet.PortletPreferences;
+import javax.portlet.ReadOnlyException;
+
+/**
+ * Immutable {@link PortletPreferences} snapshot. Used to hand dynamic skin configuration to
+ * background LESS compilation where the originating portlet request is no longer available.
+ *
+ * @since 5.3
+ */
+public final class ReadOnlyPortletPreferences implements PortletPreferences {
+
+    private final Map<String, String[]> preferences;
+
+    public ReadOnlyPortletPreferences(final Map<String, String[]> preferences) {
+        final Map<String, String[]> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, String[]> entry : preferences.entrySet()) {
+            final String[] values = entry.getValue();
+            copy.put(entry.getKey(), values != null ? values.clone() : null);
+        }
+        this.preferences = Collections.unmodifiableMap(copy);
+    }
+
+    /** Copies the current values of the specified preferences. */
+    public ReadOnlyPortletPreferences(final PortletPreferences preferences) {
+        this(preferences.getMap());
+    }
+
+    @Override
+    public boolean isReadOnly(String key) {
+        return true;
+    }
+
+    @Override
+    public String getValue(String key, String def) {
+        final String[] values = this.preferences.get(key);
+        if (values == null || values.length == 0) {
+            return def;
+        }
+        return values[0];
+    }
+
+    @Override
+    public String[] getValues(String key, String[] def) {
+        final String[] values = this.preferences.get(key);
+        if (values == null) {
+            return def;
+        }
+        return values.clone();
+    }
+
+    @Override
+    public void setValue(String key, String value) throws ReadOnlyException {
+        throw new ReadOnlyException("Preferences are read only: " + key);
+    }
+
+    @Override
+    public void setValues(String key, String[] values) throws ReadOnlyException {
+        throw new ReadOnlyException("Preferences are read only: " + key);
+    }
+
+    @Override
+    public Enumeration<String> getNames() {
+        return Collections.enumeration(this.preferences.keySet());
+    }
+
+    @Override
+    public Map<String, String[]> getMap() {
+        return this.preferences;
+    }
+
+    @Override
+    public void reset(String key) throws ReadOnlyException {
+        throw new ReadOnlyException("Preferences are read only: " + key);
+    }
+
+    @Override
+    public void store() {
+        throw new UnsupportedOperationException("Preferences are read only");
+    }
+
+    @Override
+    public String toString() {
+        return "ReadOnlyPortletPreferences" + this.preferences.keySet();
+    }
+}
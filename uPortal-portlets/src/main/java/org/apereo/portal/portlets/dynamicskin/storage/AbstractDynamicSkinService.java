@@ -24,7 +24,17 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.portlet.PortletContext;
 import javax.portlet.PortletRequest;
 import javax.xml.parsers.DocumentBuilder;
@@ -34,15 +44,19 @@ import net.sf.ehcache.Cache;
 import net.sf.ehcache.Element;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apereo.portal.portlets.dynamicskin.DefaultDynamicSkinInstanceDataImpl;
 import org.apereo.portal.portlets.dynamicskin.DynamicRespondrSkinConstants;
 import org.apereo.portal.portlets.dynamicskin.DynamicSkinException;
 import org.apereo.portal.portlets.dynamicskin.DynamicSkinInstanceData;
 import org.apereo.portal.portlets.dynamicskin.DynamicSkinUniqueTokenGenerator;
+import org.apereo.portal.portlets.dynamicskin.ReadOnlyPortletPreferences;
 import org.lesscss.LessCompiler;
 import org.lesscss.LessException;
 import org.lesscss.LessSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.util.Assert;
 import org.w3c.dom.Document;
 import org.w3c.dom.NodeList;
@@ -67,9 +81,31 @@ public abstract class AbstractDynamicSkinService implements DynamicSkinService {
      */
     private Set<String> instanceKeysForExistingCss = new CopyOnWriteArraySet<>();
 
+    /** LESS compilations that are queued or running, keyed by CSS instance key. */
+    private final ConcurrentMap<String, Future<?>> compilationsInProgress =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Path of the CSS file for each CSS instance key (skin name and unique token) that is known to
+     * exist.
+     */
+    private final ConcurrentMap<String, String> cssPaths = new ConcurrentHashMap<>();
+
+    /**
+     * CSS instance key of the most recent CSS file known to exist for each skin name. Its path is
+     * served while a changed skin configuration is compiled in the background.
+     */
+    private final ConcurrentMap<String, String> lastGoodCssInstanceKeys = new ConcurrentHashMap<>();
+
+    private final AtomicLong compilationCount = new AtomicLong();
+    private final AtomicLong compilationFailureCount = new AtomicLong();
+    private final AtomicLong totalCompilationMillis = new AtomicLong();
+    private volatile long lastCompilationMillis;
+
     private Cache cssSkinFailureCache;
     private DynamicSkinUniqueTokenGenerator uniqueTokenGenerator;
     private DynamicSkinCssFileNamer cssFileNamer;
+    private ExecutorService compilerExecutor;
 
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -114,10 +150,7 @@ public abstract class AbstractDynamicSkinService implements DynamicSkinService {
         }
         boolean exists = innerSkinCssFileExists(data);
         if (exists) {
-            if (!supportsRetainmentOfNonCurrentCss()) {
-                instanceKeysForExistingCss.clear();
-            }
-            instanceKeysForExistingCss.add(cssInstanceKey);
+            cssFileExists(data, cssInstanceKey);
         }
         return exists;
     }
@@ -126,6 +159,17 @@ public abstract class AbstractDynamicSkinService implements DynamicSkinService {
         return data.getSkinName() + getUniqueToken(data);
     }
 
+    /** Record that the CSS file for the specified instance key exists */
+    private void cssFileExists(DynamicSkinInstanceData data, String cssInstanceKey) {
+        if (!supportsRetainmentOfNonCurrentCss()) {
+            instanceKeysForExistingCss.clear();
+            cssPaths.clear();
+        }
+        cssPaths.put(cssInstanceKey, getSkinCssPath(data));
+        instanceKeysForExistingCss.add(cssInstanceKey);
+        lastGoodCssInstanceKeys.put(data.getSkinName(), cssInstanceKey);
+    }
+
     /**
      * Methods that subclasses should define to return true if they support retaining of non-current
      * CSS files (meaning that when changes are made both the old and the new compiled CSS are
@@ -150,61 +194,196 @@ public abstract class AbstractDynamicSkinService implements DynamicSkinService {
     protected abstract boolean innerSkinCssFileExists(DynamicSkinInstanceData data);
 
     /**
-     * Creates the skin css file in a thread-safe manner that allows multiple different skin files
-     * to be created simultaneously to handle large tenant situations where all the custom CSS files
-     * were cleared away after a uPortal deploy.
-     *
-     * <p>Since the less compilation phase is fairly slow (several seconds) and intensive, this
-     * method will allow multiple threads to process different less compilations at the same time
-     * but ensure the same output file will not be created multiple times. Also this method will not
-     * let a bad LESS file cause repeated LESS compilations and completely take down the portal. The
-     * bad file will be blacklisted for a period of time to limit performance impacts.
+     * Creates the skin css file, blocking until the file has been created. Compilation is
+     * single-flight per CSS instance key: a caller that finds a compilation of the same key in
+     * progress, whether started by {@link #generateSkinCssFile(DynamicSkinInstanceData)} or {@link
+     * #scheduleSkinCssFileGeneration(DynamicSkinInstanceData)}, waits for it instead of compiling
+     * again.
      *
      * @see DynamicSkinService#generateSkinCssFile(DynamicSkinInstanceData)
      */
     @Override
     public void generateSkinCssFile(DynamicSkinInstanceData data) {
-        final String cssInstanceKey = getCssInstanceKey(data);
-        synchronized (cssInstanceKey) {
-            if (instanceKeysForExistingCss.contains(cssInstanceKey)) {
-                /*
-                 * Two or more threads needing the same CSS file managed to invoke
-                 * this method.  An earlier thread has already generated the file
-                 * we need.  Concurrency features of the CopyOnWriteArraySet
-                 * (compiledCssFilepaths) guarantee that we will enter this if {}
-                 * block (and exit) for a filePathname that's been successfully
-                 * generated by another thread.
-                 */
-                return;
+        final Future<?> compilation = submitCompilation(data, false);
+        try {
+            compilation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DynamicSkinException(
+                    "Interrupted waiting for the LESS compilation of: " + getCssInstanceKey(data),
+                    e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw new DynamicSkinException(
+                    "Error compiling the LESS file to create:  " + getCssInstanceKey(data), cause);
+        }
+    }
+
+    /**
+     * Queues creation of the skin css file on the compiler executor and returns without waiting. If
+     * no compiler executor is configured the file is created on the calling thread.
+     *
+     * @see DynamicSkinService#scheduleSkinCssFileGeneration(DynamicSkinInstanceData)
+     */
+    @Override
+    public Future<?> scheduleSkinCssFileGeneration(DynamicSkinInstanceData data) {
+        return submitCompilation(data, true);
+    }
+
+    /**
+     * Returns the path of the CSS file most recently compiled or found for the skin, as long as the
+     * CSS file for its unique token is still known to exist.
+     *
+     * @see DynamicSkinService#getLastGoodSkinCssPath(DynamicSkinInstanceData)
+     */
+    @Override
+    public String getLastGoodSkinCssPath(DynamicSkinInstanceData data) {
+        final String cssInstanceKey = lastGoodCssInstanceKeys.get(data.getSkinName());
+        if (cssInstanceKey == null || !instanceKeysForExistingCss.contains(cssInstanceKey)) {
+            return null;
+        }
+        return cssPaths.get(cssInstanceKey);
+    }
+
+    private Future<?> submitCompilation(
+            final DynamicSkinInstanceData data, final boolean background) {
+        final String cssInstanceKey = getCssInstanceKey(data);
+        Future<?> compilation = compilationsInProgress.get(cssInstanceKey);
+        if (compilation != null) {
+            return compilation;
+        }
+
+        // The compilation may outlive the portlet request, so it gets its own copy of the data
+        final DynamicSkinInstanceData detachedData =
+                new DefaultDynamicSkinInstanceDataImpl(
+                        data.getPortletAbsolutePathRoot(),
+                        new ReadOnlyPortletPreferences(data.getPortletPreferences()));
+        final AtomicReference<Future<?>> self = new AtomicReference<>();
+        final FutureTask<Void> task =
+                new FutureTask<Void>(
+                        new Callable<Void>() {
+                            @Override
+                            public Void call() {
+                                try {
+                                    compileSkinCssFile(detachedData, cssInstanceKey);
+                                } finally {
+                                    /*
+                                     * Done before the result is published so that callers
+                                     * returning from Future.get() no longer see the compilation
+                                     * as in progress.
+                                     */
+                                    compilationsInProgress.remove(cssInstanceKey, self.get());
+                                }
+                                return null;
+                            }
+                        });
+        self.set(task);
+
+        compilation = compilationsInProgress.putIfAbsent(cssInstanceKey, task);
+        if (compilation != null) {
+            // Another thread started compiling the same CSS first
+            return compilation;
+        }
+
+        if (background && compilerExecutor != null) {
             try {
-                if (!cssSkinFailureCache.getKeysWithExpiryCheck().contains(cssInstanceKey)) {
-                    createLessIncludeFile(data);
-                    processLessFile(data);
-                    if (!supportsRetainmentOfNonCurrentCss()) {
-                        instanceKeysForExistingCss.clear();
-                    }
-                    instanceKeysForExistingCss.add(cssInstanceKey);
-                } else {
-                    // Though this should never happen except when developers are modifying the LESS
-                    // files and make a mistake,
-                    // if we previously tried to create the CSS file and failed for some reason,
-                    // don't try to compile it
-                    // again for a bit since the process is so processor intensive. It would
-                    // virtually hang the uPortal
-                    // service trying to compile a bad LESS file repeatedly on different threads.
-                    logger.warn(
-                            "Skipping generation of CSS file {} due to previous LESS compilation failures",
-                            cssInstanceKey);
-                }
-            } catch (Exception e) {
-                cssSkinFailureCache.put(new Element(cssInstanceKey, cssInstanceKey));
-                throw new RuntimeException(
-                        "Error compiling the LESS file to create:  " + cssInstanceKey, e);
+                compilerExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                logger.warn(
+                        "LESS compiler queue is full, compilation of CSS file {} was not scheduled",
+                        cssInstanceKey);
+                task.cancel(false);
+                compilationsInProgress.remove(cssInstanceKey, task);
+            }
+        } else {
+            task.run();
+        }
+        return task;
+    }
+
+    /**
+     * Since the less compilation phase is fairly slow (several seconds) and intensive, this method
+     * will not let a bad LESS file cause repeated LESS compilations and completely take down the
+     * portal. The bad file will be blacklisted for a period of time to limit performance impacts.
+     */
+    private void compileSkinCssFile(DynamicSkinInstanceData data, String cssInstanceKey) {
+        if (instanceKeysForExistingCss.contains(cssInstanceKey)) {
+            /*
+             * Another compilation of the same CSS file completed between the caller
+             * checking for the file and this compilation starting.
+             */
+            return;
+        }
+        try {
+            if (!cssSkinFailureCache.getKeysWithExpiryCheck().contains(cssInstanceKey)) {
+                final long start = System.currentTimeMillis();
+                compileLess(data);
+                final long compilationMillis = System.currentTimeMillis() - start;
+
+                compilationCount.incrementAndGet();
+                totalCompilationMillis.addAndGet(compilationMillis);
+                lastCompilationMillis = compilationMillis;
+                logger.info(
+                        "Compiled LESS for CSS file {} in {}ms", cssInstanceKey, compilationMillis);
+
+                cssFileExists(data, cssInstanceKey);
+            } else {
+                // Though this should never happen except when developers are modifying the LESS
+                // files and make a mistake,
+                // if we previously tried to create the CSS file and failed for some reason,
+                // don't try to compile it
+                // again for a bit since the process is so processor intensive. It would
+                // virtually hang the uPortal
+                // service trying to compile a bad LESS file repeatedly on different threads.
+                logger.warn(
+                        "Skipping generation of CSS file {} due to previous LESS compilation failures",
+                        cssInstanceKey);
             }
+        } catch (Exception e) {
+            compilationFailureCount.incrementAndGet();
+            cssSkinFailureCache.put(new Element(cssInstanceKey, cssInstanceKey));
+            throw new RuntimeException(
+                    "Error compiling the LESS file to create:  " + cssInstanceKey, e);
         }
     }
 
+    /**
+     * Writes the LESS include file for the skin configuration and compiles it into the skin CSS
+     * file. Called at most once at a time for each CSS instance key.
+     */
+    protected void compileLess(DynamicSkinInstanceData data) throws IOException, LessException {
+        createLessIncludeFile(data);
+        processLessFile(data);
+    }
+
+    /** @return number of successful LESS compilations since startup */
+    public long getCompilationCount() {
+        return compilationCount.get();
+    }
+
+    /** @return number of failed LESS compilations since startup */
+    public long getCompilationFailureCount() {
+        return compilationFailureCount.get();
+    }
+
+    /** @return total time in milliseconds spent in successful LESS compilations */
+    public long getTotalCompilationMillis() {
+        return totalCompilationMillis.get();
+    }
+
+    /** @return time in milliseconds of the most recent successful LESS compilation */
+    public long getLastCompilationMillis() {
+        return lastCompilationMillis;
+    }
+
+    /** @return number of LESS compilations currently queued or running */
+    public int getCompilationsInProgress() {
+        return compilationsInProgress.size();
+    }
+
     /**
      * Create the less include file by appending the configurable preference definitions (minus the
      * configuration prefix string) to the end of the template file; e.g. portlet preference name
@@ -348,6 +527,16 @@ public abstract class AbstractDynamicSkinService implements DynamicSkinService {
         return skins;
     }
 
+    /**
+     * Executor used by {@link #scheduleSkinCssFileGeneration(DynamicSkinInstanceData)}. Should be
+     * bounded, compilations it rejects are skipped and retried on a later request.
+     */
+    @Autowired(required = false)
+    public void setCompilerExecutor(
+            @Qualifier("dynamicSkinCompilerExecutor") ExecutorService compilerExecutor) {
+        this.compilerExecutor = compilerExecutor;
+    }
+
     public void setLocalRelativeRootPath(String path) {
         this.localRelativeRootPath = path;
     }
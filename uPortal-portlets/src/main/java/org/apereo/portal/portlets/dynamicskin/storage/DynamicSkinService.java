@@ -15,6 +15,7 @@
 package org.apereo.portal.portlets.dynamicskin.storage;
 
 import java.util.SortedSet;
+import java.util.concurrent.Future;
 import javax.portlet.PortletRequest;
 import org.apereo.portal.portlets.dynamicskin.DynamicSkinInstanceData;
 
@@ -51,6 +52,27 @@ public interface DynamicSkinService {
      */
     void generateSkinCssFile(DynamicSkinInstanceData data);
 
+    /**
+     * Starts generating the skin CSS file for the provided skin instance data without waiting for
+     * it to be created. Only one compilation runs for a given skin instance; if one is already in
+     * progress it is returned instead of starting another.
+     *
+     * @param data skin instance data
+     * @return the compilation, completes once the CSS file has been created
+     * @since 5.3
+     */
+    Future<?> scheduleSkinCssFileGeneration(DynamicSkinInstanceData data);
+
+    /**
+     * Returns the path to the most recent CSS file known to exist for the skin named by the
+     * provided data, which may have been compiled from an earlier configuration of the skin.
+     *
+     * @param data skin instance data
+     * @return path to the last good skin CSS file, or null if no CSS file is known for the skin
+     * @since 5.3
+     */
+    String getLastGoodSkinCssPath(DynamicSkinInstanceData data);
+
     /**
      * Return set of skins that exist.
      *
@@ -51,7 +51,7 @@ public class PrefValueDynamicSkinCssFileNamer implements DynamicSkinCssFileNamer
      */
     @Override
     public String generateCssFileName(final DynamicSkinInstanceData data) {
-        final PortletPreferences preferences = data.getPortletRequest().getPreferences();
+        final PortletPreferences preferences = data.getPortletPreferences();
         return getCssFileName(preferences);
     }
 
@@ -14,6 +14,7 @@
  */
 package org.apereo.portal.portlets.popular;
 
+import com.google.common.base.Predicate;
 import com.google.visualization.datasource.base.TypeMismatchException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -27,6 +28,8 @@ import org.apereo.portal.EntityIdentifier;
 import org.apereo.portal.events.aggr.AggregationInterval;
 import org.apereo.portal.events.aggr.groups.AggregatedGroupLookupDao;
 import org.apereo.portal.events.aggr.groups.AggregatedGroupMapping;
+import org.apereo.portal.events.aggr.popular.PopularityIndex;
+import org.apereo.portal.events.aggr.popular.RankedCount;
 import org.apereo.portal.events.aggr.portletlayout.PortletLayoutAggregation;
 import org.apereo.portal.events.aggr.portletlayout.PortletLayoutAggregationDao;
 import org.apereo.portal.events.aggr.portlets.AggregatedPortletMapping;
@@ -64,18 +67,25 @@ import org.springframework.web.servlet.ModelAndView;
 @RequestMapping("VIEW")
 public class PopularPortletsController {
     public static final AggregationInterval AGGREGATION_INTERVAL = AggregationInterval.DAY;
+    public static final int DEFAULT_DAYS = 30;
 
     private IPersonManager personManager;
     private IPortalRequestUtils portalRequestUtils;
     private PortletLayoutAggregationDao<PortletLayoutAggregation> portletLayoutDao;
     private AggregatedGroupLookupDao aggregatedGroupLookupDao;
     private IPortletDefinitionDao portletDefinitionDao;
+    private PopularityIndex popularityIndex;
 
     @Autowired
     public void setPortletDefinitionDao(IPortletDefinitionDao portletDefinitionDao) {
         this.portletDefinitionDao = portletDefinitionDao;
     }
 
+    @Autowired
+    public void setPopularityIndex(PopularityIndex popularityIndex) {
+        this.popularityIndex = popularityIndex;
+    }
+
     @Autowired
     public void setPersonManager(IPersonManager personManager) {
         this.personManager = personManager;
@@ -121,15 +131,13 @@ public class PopularPortletsController {
     }
 
     private List<PortletUsage> buildEventCounts(Integer days, IPerson user, Locale locale) {
-        final DateTime end = new DateTime();
-        final DateTime begin = end.minusDays(days);
+        if (days == null) {
+            days = DEFAULT_DAYS;
+        }
 
         final IEntityGroup everyone = GroupService.getRootGroup(IPerson.class);
         final AggregatedGroupMapping group =
                 aggregatedGroupLookupDao.getGroupMapping(everyone.getKey());
-        final List<PortletLayoutAggregation> aggregations =
-                portletLayoutDao.getAggregationsForAllPortlets(
-                        begin, end, AGGREGATION_INTERVAL, group);
 
         final EntityIdentifier ei = user.getEntityIdentifier();
         final AuthorizationServiceFacade authService = AuthorizationServiceFacade.instance();
@@ -137,37 +145,84 @@ public class PopularPortletsController {
 
         final Map<String, PortletUsage> resultBuilder = new HashMap<String, PortletUsage>();
 
-        for (final PortletLayoutAggregation aggregation : aggregations) {
-            final AggregatedPortletMapping portlet = aggregation.getPortletMapping();
-            final String fname = portlet.getFname();
-            PortletUsage portletUsage = resultBuilder.get(fname);
-            if (portletUsage == null) {
-                final IPortletDefinition portletDefinition =
-                        this.portletDefinitionDao.getPortletDefinitionByFname(fname);
-
-                if (portletDefinition == null
-                        || !ap.canSubscribe(
-                                portletDefinition.getPortletDefinitionId().getStringId())) {
-                    // Skip portlets that no longer exist or cannot be subscribed to
-                    continue;
+        // Precomputed ranking over the closed days of the window, limited to the portlets the
+        // user can subscribe to before it is cut down to the ranking size
+        final List<RankedCount<String>> ranking =
+                this.popularityIndex.getPopularPortlets(
+                        group,
+                        days,
+                        new Predicate<String>() {
+                            @Override
+                            public boolean apply(String fname) {
+                                return getPortletUsage(resultBuilder, fname, ap, locale) != null;
+                            }
+                        });
+        if (ranking != null) {
+            for (final RankedCount<String> rankedCount : ranking) {
+                final PortletUsage portletUsage =
+                        getPortletUsage(resultBuilder, rankedCount.getKey(), ap, locale);
+                if (portletUsage != null) {
+                    portletUsage.incrementCount(
+                            (int) Math.min(rankedCount.getCount(), Integer.MAX_VALUE));
+                }
+            }
+        } else {
+            final DateTime end = new DateTime();
+            final DateTime begin = end.minusDays(days);
+            final List<PortletLayoutAggregation> aggregations =
+                    portletLayoutDao.getAggregationsForAllPortlets(
+                            begin, end, AGGREGATION_INTERVAL, group);
+
+            for (final PortletLayoutAggregation aggregation : aggregations) {
+                final AggregatedPortletMapping portlet = aggregation.getPortletMapping();
+                final PortletUsage portletUsage =
+                        getPortletUsage(resultBuilder, portlet.getFname(), ap, locale);
+                if (portletUsage != null) {
+                    portletUsage.incrementCount(aggregation.getAddCount());
                 }
-
-                portletUsage =
-                        new PortletUsage(
-                                portletDefinition.getPortletDefinitionId().getLongId(),
-                                fname,
-                                portletDefinition.getTitle(locale.toString()),
-                                portletDefinition.getDescription(locale.toString()));
-
-                resultBuilder.put(fname, portletUsage);
             }
-
-            portletUsage.incrementCount(aggregation.getAddCount());
         }
 
-        final ArrayList<PortletUsage> results = new ArrayList<PortletUsage>(resultBuilder.values());
+        final ArrayList<PortletUsage> results = new ArrayList<PortletUsage>(resultBuilder.size());
+        for (final PortletUsage portletUsage : resultBuilder.values()) {
+            if (portletUsage != null) {
+                results.add(portletUsage);
+            }
+        }
         Collections.sort(results);
 
         return results;
     }
+
+    /**
+     * @return The usage tracked for the portlet, null if the portlet no longer exists or cannot be
+     *     subscribed to
+     */
+    private PortletUsage getPortletUsage(
+            Map<String, PortletUsage> resultBuilder,
+            String fname,
+            IAuthorizationPrincipal ap,
+            Locale locale) {
+        if (resultBuilder.containsKey(fname)) {
+            return resultBuilder.get(fname);
+        }
+
+        final IPortletDefinition portletDefinition =
+                this.portletDefinitionDao.getPortletDefinitionByFname(fname);
+
+        PortletUsage portletUsage = null;
+        if (portletDefinition != null
+                && ap.canSubscribe(portletDefinition.getPortletDefinitionId().getStringId())) {
+            portletUsage =
+                    new PortletUsage(
+                            portletDefinition.getPortletDefinitionId().getLongId(),
+                            fname,
+                            portletDefinition.getTitle(locale.toString()),
+                            portletDefinition.getDescription(locale.toString()));
+        }
+
+        // Remember skipped portlets too so they are only looked up once
+        resultBuilder.put(fname, portletUsage);
+        return portletUsage;
+    }
 }
@@ -1002,58 +1002,78 @@ public final class PortletAdministrationHelper implements ServletContextAware {
         EntityIdentifier ei = person.getEntityIdentifier();
         IAuthorizationPrincipal ap = authorizationService.newPrincipal(ei.getKey(), ei.getType());
 
-        final String activity;
+        final String activity = getLifecycleActivity(state);
+        if (ap.hasPermission(
+                IPermission.PORTAL_PUBLISH, activity, IPermission.ALL_PORTLETS_TARGET)) {
+            logger.debug(
+                    "Found permission for category ALL_PORTLETS and lifecycle state "
+                            + state.toString());
+            return true;
+        }
+
+        if (categories.isEmpty()) {
+            logger.debug("No permission for lifecycle state " + state.toString());
+            return false;
+        }
+
+        final Set<String> categoryIds = new HashSet<>();
+        for (JsonEntityBean category : categories) {
+            categoryIds.add(category.getId());
+        }
+
+        /*
+         * Permission to manage a later lifecycle state implies permission to manage this one (see
+         * IAuthorizationPrincipal.canManage(PortletLifecycleState, String)), so check each activity
+         * from MAINTENANCE back to the requested state against all the categories at once.
+         */
+        final PortletLifecycleState[] states = PortletLifecycleState.values();
+        for (int i = states.length - 1; i >= 0 && states[i].isEqualToOrAfter(state); i--) {
+            final Set<String> permitted =
+                    authorizationService.getPermittedTargets(
+                            ap,
+                            IPermission.PORTAL_PUBLISH,
+                            getLifecycleActivity(states[i]),
+                            categoryIds);
+            if (!permitted.isEmpty()) {
+                logger.debug(
+                        "Found permission for categories "
+                                + permitted
+                                + " and lifecycle state "
+                                + state.toString());
+                return true;
+            }
+        }
+        logger.debug("No permission for lifecycle state " + state.toString());
+        return false;
+    }
+
+    private static String getLifecycleActivity(PortletLifecycleState state) {
         switch (state) {
             case APPROVED:
                 {
-                    activity = IPermission.PORTLET_MANAGER_APPROVED_ACTIVITY;
-                    break;
+                    return IPermission.PORTLET_MANAGER_APPROVED_ACTIVITY;
                 }
             case CREATED:
                 {
-                    activity = IPermission.PORTLET_MANAGER_CREATED_ACTIVITY;
-                    break;
+                    return IPermission.PORTLET_MANAGER_CREATED_ACTIVITY;
                 }
             case PUBLISHED:
                 {
-                    activity = IPermission.PORTLET_MANAGER_ACTIVITY;
-                    break;
+                    return IPermission.PORTLET_MANAGER_ACTIVITY;
                 }
             case EXPIRED:
                 {
-                    activity = IPermission.PORTLET_MANAGER_EXPIRED_ACTIVITY;
-                    break;
+                    return IPermission.PORTLET_MANAGER_EXPIRED_ACTIVITY;
                 }
             case MAINTENANCE:
                 {
-                    activity = IPermission.PORTLET_MANAGER_MAINTENANCE_ACTIVITY;
-                    break;
+                    return IPermission.PORTLET_MANAGER_MAINTENANCE_ACTIVITY;
                 }
             default:
                 {
                     throw new IllegalArgumentException("");
                 }
         }
-        if (ap.hasPermission(
-                IPermission.PORTAL_PUBLISH, activity, IPermission.ALL_PORTLETS_TARGET)) {
-            logger.debug(
-                    "Found permission for category ALL_PORTLETS and lifecycle state "
-                            + state.toString());
-            return true;
-        }
-
-        for (JsonEntityBean category : categories) {
-            if (ap.canManage(state, category.getId())) {
-                logger.debug(
-                        "Found permission for category "
-                                + category.getName()
-                                + " and lifecycle state "
-                                + state.toString());
-                return true;
-            }
-        }
-        logger.debug("No permission for lifecycle state " + state.toString());
-        return false;
     }
 
     public IPortletWindowId getDelegateWindowId(ExternalContext externalContext, String fname) {
@@ -41,6 +41,7 @@ import javax.portlet.ResourceURL;
 import org.apache.commons.lang.StringUtils;
 import org.apereo.portal.events.aggr.AggregationInterval;
 import org.apereo.portal.events.aggr.AggregationIntervalHelper;
+import org.apereo.portal.events.aggr.AggregationRollupService;
 import org.apereo.portal.events.aggr.BaseAggregation;
 import org.apereo.portal.events.aggr.BaseAggregationDao;
 import org.apereo.portal.events.aggr.BaseAggregationKey;
@@ -95,6 +96,8 @@ public abstract class BaseStatisticsReportController<
 
     @Autowired private AggregationIntervalHelper intervalHelper;
 
+    @Autowired private AggregationRollupService aggregationRollupService;
+
     @Autowired protected AggregatedGroupLookupDao aggregatedGroupDao;
 
     @org.springframework.beans.factory.annotation.Value(
@@ -466,12 +469,17 @@ public abstract class BaseStatisticsReportController<
         }
 
         // Query for all aggregation data in the time range for all groups.  Only the
-        // interval and discriminator data is used from the keys.
+        // interval and discriminator data is used from the keys. Closed portions of the
+        // range are served from rollups instead of being reloaded for every report.
         final Set<K> keys = createAggregationsQueryKeyset(columnGroups, form);
         final BaseAggregationDao<T, K> baseAggregationDao = this.getBaseAggregationDao();
         final Collection<T> aggregations =
-                baseAggregationDao.getAggregations(
-                        startDateTime, endDateTime, keys, extractGroupsArray(columnGroups));
+                this.aggregationRollupService.getAggregations(
+                        baseAggregationDao,
+                        startDateTime,
+                        endDateTime,
+                        keys,
+                        extractGroupsArray(columnGroups));
 
         // Organize the results by group and sort them chronologically by adding them to the sorted
         // set
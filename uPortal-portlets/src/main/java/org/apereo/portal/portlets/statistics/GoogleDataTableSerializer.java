@@ -18,19 +18,165 @@ import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
+import com.google.visualization.datasource.datatable.ColumnDescription;
+import com.google.visualization.datasource.datatable.TableCell;
+import com.google.visualization.datasource.datatable.TableRow;
+import com.google.visualization.datasource.datatable.value.BooleanValue;
+import com.google.visualization.datasource.datatable.value.DateTimeValue;
+import com.google.visualization.datasource.datatable.value.DateValue;
+import com.google.visualization.datasource.datatable.value.NumberValue;
+import com.google.visualization.datasource.datatable.value.TimeOfDayValue;
+import com.google.visualization.datasource.datatable.value.Value;
+import com.google.visualization.datasource.datatable.value.ValueType;
 import com.google.visualization.datasource.render.JsonRenderer;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 /**
- * GoogleDataTableSerializer configures a Google DataTable to be serialized using Google's Json
- * serialization code.
+ * GoogleDataTableSerializer serializes a Google DataTable in the JSON format produced by Google's
+ * {@link JsonRenderer}. Rows are written directly to the {@link JsonGenerator} as they are visited
+ * instead of rendering the whole table into a single String first, so large reports stream to the
+ * client without a second copy of the table in memory.
  */
 public class GoogleDataTableSerializer extends JsonSerializer<JsonDataTable> {
 
     @Override
     public void serialize(JsonDataTable dataTable, JsonGenerator gen, SerializerProvider provider)
             throws IOException, JsonProcessingException {
-        final CharSequence formatted = JsonRenderer.renderDataTable(dataTable, true, true, false);
-        gen.writeRawValue(formatted.toString());
+        final List<ColumnDescription> columnDescriptions = dataTable.getColumnDescriptions();
+        if (columnDescriptions.isEmpty()) {
+            // Matches the JsonRenderer output for a table without columns
+            gen.writeRawValue("");
+            return;
+        }
+
+        gen.writeStartObject();
+
+        gen.writeArrayFieldStart("cols");
+        final StringBuilder columnJson = new StringBuilder();
+        for (final ColumnDescription columnDescription : columnDescriptions) {
+            columnJson.setLength(0);
+            JsonRenderer.appendColumnDescriptionJson(columnDescription, columnJson);
+            gen.writeRawValue(columnJson.toString());
+        }
+        gen.writeEndArray();
+
+        gen.writeArrayFieldStart("rows");
+        for (final TableRow row : dataTable.getRows()) {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("c");
+            for (final TableCell cell : row.getCells()) {
+                writeCell(cell, gen);
+            }
+            gen.writeEndArray();
+            writeCustomProperties(row.getCustomProperties(), gen);
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+
+        writeCustomProperties(dataTable.getCustomProperties(), gen);
+        gen.writeEndObject();
+    }
+
+    private void writeCell(TableCell cell, JsonGenerator gen) throws IOException {
+        final Value value = cell.getValue();
+
+        gen.writeStartObject();
+        gen.writeFieldName("v");
+        if (value == null || value.isNull()) {
+            gen.writeNull();
+        } else {
+            writeValue(value, gen);
+
+            final String formattedValue = cell.getFormattedValue();
+            if (formattedValue != null
+                    && !(value.getType() == ValueType.TEXT
+                            && formattedValue.equals(value.toString()))) {
+                gen.writeStringField("f", formattedValue);
+            }
+        }
+        writeCustomProperties(cell.getCustomProperties(), gen);
+        gen.writeEndObject();
+    }
+
+    private void writeValue(Value value, JsonGenerator gen) throws IOException {
+        switch (value.getType()) {
+            case BOOLEAN:
+                {
+                    gen.writeBoolean(((BooleanValue) value).getValue());
+                    break;
+                }
+            case NUMBER:
+                {
+                    gen.writeNumber(((NumberValue) value).getValue());
+                    break;
+                }
+            case TEXT:
+                {
+                    gen.writeString(value.toString());
+                    break;
+                }
+            case DATE:
+                {
+                    final DateValue dateValue = (DateValue) value;
+                    gen.writeString(
+                            "Date("
+                                    + dateValue.getYear()
+                                    + ","
+                                    + dateValue.getMonth()
+                                    + ","
+                                    + dateValue.getDayOfMonth()
+                                    + ")");
+                    break;
+                }
+            case DATETIME:
+                {
+                    final DateTimeValue dateTimeValue = (DateTimeValue) value;
+                    gen.writeString(
+                            "Date("
+                                    + dateTimeValue.getYear()
+                                    + ","
+                                    + dateTimeValue.getMonth()
+                                    + ","
+                                    + dateTimeValue.getDayOfMonth()
+                                    + ","
+                                    + dateTimeValue.getHourOfDay()
+                                    + ","
+                                    + dateTimeValue.getMinute()
+                                    + ","
+                                    + dateTimeValue.getSecond()
+                                    + ")");
+                    break;
+                }
+            case TIMEOFDAY:
+                {
+                    final TimeOfDayValue timeOfDayValue = (TimeOfDayValue) value;
+                    gen.writeStartArray();
+                    gen.writeNumber(timeOfDayValue.getHours());
+                    gen.writeNumber(timeOfDayValue.getMinutes());
+                    gen.writeNumber(timeOfDayValue.getSeconds());
+                    gen.writeNumber(timeOfDayValue.getMilliseconds());
+                    gen.writeEndArray();
+                    break;
+                }
+            default:
+                {
+                    throw new IllegalArgumentException("Illegal value Type " + value.getType());
+                }
+        }
+    }
+
+    private void writeCustomProperties(Map<String, String> customProperties, JsonGenerator gen)
+            throws IOException {
+        if (customProperties == null || customProperties.isEmpty()) {
+            return;
+        }
+
+        gen.writeObjectFieldStart("p");
+        for (final Map.Entry<String, String> property : customProperties.entrySet()) {
+            gen.writeStringField(property.getKey(), property.getValue());
+        }
+        gen.writeEndObject();
     }
 }
@@ -0,0 +1,208 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlets.dynamicskin.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.sf.ehcache.Cache;
+import org.apereo.portal.portlets.dynamicskin.ConfigurablePreferencesBasedTokenGenerator;
+import org.apereo.portal.portlets.dynamicskin.DefaultDynamicSkinInstanceDataImpl;
+import org.apereo.portal.portlets.dynamicskin.DynamicSkinInstanceData;
+import org.apereo.portal.portlets.dynamicskin.DynamicSkinUniqueTokenGenerator;
+import org.apereo.portal.portlets.dynamicskin.ReadOnlyPortletPreferences;
+import org.apereo.portal.portlets.dynamicskin.storage.filesystem.UniqueTokenBasedDynamicSkinCssFileNamer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the single-flight and background LESS compilation of {@link AbstractDynamicSkinService}.
+ */
+public class AbstractDynamicSkinServiceTest {
+
+    private ExecutorService compilerExecutor;
+    private TestDynamicSkinService service;
+
+    @Before
+    public void setUp() {
+        final Cache failureCache = mock(Cache.class);
+        given(failureCache.getKeysWithExpiryCheck()).willReturn(Collections.emptyList());
+        final DynamicSkinUniqueTokenGenerator generator =
+                new ConfigurablePreferencesBasedTokenGenerator();
+        this.service =
+                new TestDynamicSkinService(
+                        generator,
+                        new UniqueTokenBasedDynamicSkinCssFileNamer(generator),
+                        failureCache);
+        this.compilerExecutor = Executors.newSingleThreadExecutor();
+        this.service.setCompilerExecutor(this.compilerExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        this.service.release();
+        this.compilerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testScheduleCompilesInBackground() throws Exception {
+        final DynamicSkinInstanceData data = createData("#000");
+
+        final Future<?> compilation = this.service.scheduleSkinCssFileGeneration(data);
+        assertTrue(this.service.awaitCompilationStarted());
+        assertFalse(compilation.isDone());
+        assertFalse(this.service.skinCssFileExists(data));
+        assertEquals(1, this.service.getCompilationsInProgress());
+
+        this.service.release();
+        compilation.get(5, TimeUnit.SECONDS);
+        assertTrue(this.service.skinCssFileExists(data));
+        assertEquals(0, this.service.getCompilationsInProgress());
+        assertEquals(1, this.service.getCompilationCount());
+    }
+
+    @Test
+    public void testConcurrentRequestsCompileOnce() throws Exception {
+        final DynamicSkinInstanceData data = createData("#000");
+
+        final Future<?> compilation = this.service.scheduleSkinCssFileGeneration(data);
+        assertTrue(this.service.awaitCompilationStarted());
+        assertSame(compilation, this.service.scheduleSkinCssFileGeneration(createData("#000")));
+
+        // A blocking request for the same CSS waits for the running compilation
+        final ExecutorService requestThread = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> request =
+                    requestThread.submit(
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    service.generateSkinCssFile(createData("#000"));
+                                }
+                            });
+            assertFalse(request.isDone());
+
+            this.service.release();
+            request.get(5, TimeUnit.SECONDS);
+            compilation.get(5, TimeUnit.SECONDS);
+        } finally {
+            requestThread.shutdownNow();
+        }
+
+        assertEquals(1, this.service.compilations.get());
+
+        // Once the CSS exists it is not compiled again
+        this.service.generateSkinCssFile(createData("#000"));
+        assertEquals(1, this.service.compilations.get());
+    }
+
+    @Test
+    public void testLastGoodPathServedWhileRecompiling() throws Exception {
+        final DynamicSkinInstanceData original = createData("#000");
+        assertNull(this.service.getLastGoodSkinCssPath(original));
+        this.service.release();
+        this.service.generateSkinCssFile(original);
+        final String originalPath = this.service.getSkinCssPath(original);
+
+        this.service.block();
+        final DynamicSkinInstanceData changed = createData("#fff");
+        final Future<?> compilation = this.service.scheduleSkinCssFileGeneration(changed);
+        assertTrue(this.service.awaitCompilationStarted());
+        assertEquals(originalPath, this.service.getLastGoodSkinCssPath(changed));
+
+        this.service.release();
+        compilation.get(5, TimeUnit.SECONDS);
+        assertEquals(
+                this.service.getSkinCssPath(changed), this.service.getLastGoodSkinCssPath(changed));
+        assertFalse(originalPath.equals(this.service.getSkinCssPath(changed)));
+    }
+
+    private static DynamicSkinInstanceData createData(String color) {
+        return new DefaultDynamicSkinInstanceDataImpl(
+                "/portlet",
+                new ReadOnlyPortletPreferences(
+                        Collections.singletonMap("PREFcolor1", new String[] {color})));
+    }
+
+    /** Keeps compiled CSS in memory, compilation blocks until released */
+    private static final class TestDynamicSkinService extends AbstractDynamicSkinService {
+        final AtomicInteger compilations = new AtomicInteger();
+        private volatile CountDownLatch started = new CountDownLatch(1);
+        private volatile CountDownLatch released = new CountDownLatch(1);
+
+        TestDynamicSkinService(
+                DynamicSkinUniqueTokenGenerator uniqueTokenGenerator,
+                DynamicSkinCssFileNamer namer,
+                Cache failureCache) {
+            super(uniqueTokenGenerator, namer, failureCache);
+        }
+
+        boolean awaitCompilationStarted() throws InterruptedException {
+            return this.started.await(5, TimeUnit.SECONDS);
+        }
+
+        void block() {
+            this.started = new CountDownLatch(1);
+            this.released = new CountDownLatch(1);
+        }
+
+        void release() {
+            this.released.countDown();
+        }
+
+        @Override
+        protected void compileLess(DynamicSkinInstanceData data) {
+            this.compilations.incrementAndGet();
+            this.started.countDown();
+            try {
+                this.released.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public String getSkinCssPath(DynamicSkinInstanceData data) {
+            return this.localRelativeRootPath + "/" + this.getSkinCssFilename(data);
+        }
+
+        @Override
+        protected boolean supportsRetainmentOfNonCurrentCss() {
+            return true;
+        }
+
+        @Override
+        protected boolean innerSkinCssFileExists(DynamicSkinInstanceData data) {
+            return false;
+        }
+
+        @Override
+        protected void moveCssFileToFinalLocation(DynamicSkinInstanceData data, File tempCssFile) {}
+    }
+}
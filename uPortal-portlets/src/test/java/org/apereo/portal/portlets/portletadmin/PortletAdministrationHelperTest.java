@@ -14,14 +14,39 @@
  */
 package org.apereo.portal.portlets.portletadmin;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.apereo.portal.EntityIdentifier;
+import org.apereo.portal.layout.dlm.remoting.JsonEntityBean;
 import org.apereo.portal.portlet.dao.jpa.PortletTypeImpl;
 import org.apereo.portal.portlet.om.IPortletType;
+import org.apereo.portal.portlet.om.PortletCategory;
+import org.apereo.portal.portlet.om.PortletLifecycleState;
 import org.apereo.portal.portletpublishing.xml.PortletPublishingDefinition;
+import org.apereo.portal.security.IAuthorizationPrincipal;
+import org.apereo.portal.security.IAuthorizationService;
+import org.apereo.portal.security.IPermission;
+import org.apereo.portal.security.IPerson;
 import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
 
 /** Unit test for PortletAdministrationHelper. */
 public class PortletAdministrationHelperTest {
@@ -53,6 +78,54 @@ public class PortletAdministrationHelperTest {
         assertNull(helper.updateFormForSinglePortletType(portletDefinitions, form));
     }
 
+    /**
+     * Permission to manage a later lifecycle state in any of the categories implies permission for
+     * an earlier state, and each activity is checked against all the categories in one call.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void hasLifecyclePermissionChecksCategoriesTogether() {
+        PortletAdministrationHelper helper = new PortletAdministrationHelper();
+        IAuthorizationService authorizationService = mock(IAuthorizationService.class);
+        ReflectionTestUtils.setField(helper, "authorizationService", authorizationService);
+
+        IPerson person = mock(IPerson.class);
+        when(person.getEntityIdentifier())
+                .thenReturn(new EntityIdentifier("someUser", IPerson.class));
+        IAuthorizationPrincipal principal = mock(IAuthorizationPrincipal.class);
+        when(authorizationService.newPrincipal("someUser", IPerson.class)).thenReturn(principal);
+        when(authorizationService.getPermittedTargets(
+                        eq(principal), anyString(), anyString(), any(Collection.class)))
+                .thenReturn(Collections.<String>emptySet());
+        when(authorizationService.getPermittedTargets(
+                        eq(principal),
+                        eq(IPermission.PORTAL_PUBLISH),
+                        eq(IPermission.PORTLET_MANAGER_EXPIRED_ACTIVITY),
+                        any(Collection.class)))
+                .thenReturn(Collections.singleton("local.2"));
+
+        SortedSet<JsonEntityBean> categories = new TreeSet<>();
+        categories.add(new JsonEntityBean(new PortletCategory("local.1")));
+        categories.add(new JsonEntityBean(new PortletCategory("local.2")));
+
+        assertTrue(
+                helper.hasLifecyclePermission(person, PortletLifecycleState.CREATED, categories));
+        assertFalse(
+                helper.hasLifecyclePermission(
+                        person, PortletLifecycleState.MAINTENANCE, categories));
+        verify(authorizationService, never())
+                .canPrincipalManage(
+                        any(IAuthorizationPrincipal.class),
+                        any(PortletLifecycleState.class),
+                        anyString());
+        verify(authorizationService, times(2))
+                .getPermittedTargets(
+                        principal,
+                        IPermission.PORTAL_PUBLISH,
+                        IPermission.PORTLET_MANAGER_MAINTENANCE_ACTIVITY,
+                        new HashSet<>(Arrays.asList("local.1", "local.2")));
+    }
+
     /**
      * Note: Not unit testing PortletAdministrationHelper.savePortletRegistration(). Reason: There
      * is an upfront call to hasLifecyclePermission() which relies on the authorizationService to be
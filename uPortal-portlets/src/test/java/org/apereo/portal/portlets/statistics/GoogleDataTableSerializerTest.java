@@ -0,0 +1,73 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlets.statistics;
+
+import static org.junit.Assert.assertEquals;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.visualization.datasource.datatable.ColumnDescription;
+import com.google.visualization.datasource.datatable.TableCell;
+import com.google.visualization.datasource.datatable.TableRow;
+import com.google.visualization.datasource.datatable.value.DateTimeValue;
+import com.google.visualization.datasource.datatable.value.DateValue;
+import com.google.visualization.datasource.datatable.value.NumberValue;
+import com.google.visualization.datasource.datatable.value.TimeOfDayValue;
+import com.google.visualization.datasource.datatable.value.ValueType;
+import com.google.visualization.datasource.render.JsonRenderer;
+import org.junit.Test;
+
+public class GoogleDataTableSerializerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testMatchesJsonRenderer() throws Exception {
+        final JsonDataTable table = new JsonDataTable();
+        table.addColumn(new ColumnDescription("date", ValueType.DATE, "Date"));
+        table.addColumn(new ColumnDescription("count", ValueType.NUMBER, "Everyone"));
+
+        TableRow row = new TableRow();
+        row.addCell(new TableCell(new DateValue(2018, 0, 31)));
+        row.addCell(new NumberValue(42));
+        table.addRow(row);
+
+        row = new TableRow();
+        row.addCell(new TableCell(new DateValue(2018, 1, 1)));
+        row.addCell(NumberValue.getNullValue());
+        table.addRow(row);
+
+        assertEquals(render(table), objectMapper.writeValueAsString(table));
+    }
+
+    @Test
+    public void testTimeColumnsMatchJsonRenderer() throws Exception {
+        final JsonDataTable table = new JsonDataTable();
+        table.addColumn(new ColumnDescription("date", ValueType.DATETIME, "Date"));
+        table.addColumn(new ColumnDescription("time", ValueType.TIMEOFDAY, "Time"));
+        table.addColumn(new ColumnDescription("count", ValueType.NUMBER, "Everyone"));
+
+        final TableRow row = new TableRow();
+        row.addCell(new DateTimeValue(2018, 11, 24, 13, 5, 0, 0));
+        row.addCell(new TimeOfDayValue(13, 5, 0));
+        row.addCell(new TableCell(new NumberValue(7), "seven"));
+        table.addRow(row);
+
+        assertEquals(render(table), objectMapper.writeValueAsString(table));
+    }
+
+    private String render(JsonDataTable table) {
+        return JsonRenderer.renderDataTable(table, true, true, false).toString();
+    }
+}
@@ -18,9 +18,12 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.nio.charset.Charset;
 import java.util.concurrent.TimeUnit;
 import javax.portlet.CacheControl;
 import org.apereo.portal.portlet.rendering.PortletOutputHandler;
+import org.apereo.portal.portlet.rendering.PortletResourceOutputHandler;
+import org.apereo.portal.portlet.rendering.RenderPortletOutputHandler;
 
 /** Java bean to represent the data cached for a portlet request via {@link CacheControl}s. */
 public class CachedPortletData<T extends Serializable>
@@ -31,6 +34,9 @@ public class CachedPortletData<T extends Serializable>
 
     private final String cachedWriterOutput;
     private final byte[] cachedStreamOutput;
+    private final OffHeapPortletOutput offHeapOutput;
+    /** If set the stream output holds writer output encoded with this character encoding */
+    private final String outputEncoding;
 
     private final String contentType;
 
@@ -57,6 +63,8 @@ public class CachedPortletData<T extends Serializable>
         this.portletResult = portletResult;
         this.cachedWriterOutput = cachedWriterOutput;
         this.cachedStreamOutput = cachedStreamOutput;
+        this.offHeapOutput = null;
+        this.outputEncoding = null;
 
         this.contentType = contentType;
 
@@ -66,12 +74,158 @@ public class CachedPortletData<T extends Serializable>
         this.updateExpirationTime(expirationTime);
     }
 
+    /** Copy of the data with the output replaced */
+    private CachedPortletData(
+            CachedPortletData<T> data,
+            String cachedWriterOutput,
+            byte[] cachedStreamOutput,
+            OffHeapPortletOutput offHeapOutput) {
+        this.portletResult = data.portletResult;
+        this.cachedWriterOutput = cachedWriterOutput;
+        this.cachedStreamOutput = cachedStreamOutput;
+        this.offHeapOutput = offHeapOutput;
+        this.outputEncoding = data.outputEncoding;
+
+        this.contentType = data.contentType;
+
+        this.publicScope = data.publicScope;
+        this.etag = data.etag;
+        this.timeStored = data.timeStored;
+        this.expirationTime = data.expirationTime;
+    }
+
+    /** Copy of the data with the writer output replaced by its encoded bytes */
+    private CachedPortletData(
+            CachedPortletData<T> data, byte[] encodedWriterOutput, String outputEncoding) {
+        this.portletResult = data.portletResult;
+        this.cachedWriterOutput = null;
+        this.cachedStreamOutput = encodedWriterOutput;
+        this.offHeapOutput = null;
+        this.outputEncoding = outputEncoding;
+
+        this.contentType = data.contentType;
+
+        this.publicScope = data.publicScope;
+        this.etag = data.etag;
+        this.timeStored = data.timeStored;
+        this.expirationTime = data.expirationTime;
+    }
+
+    /**
+     * Resource output is written to the response as bytes. Encoding writer output once when it is
+     * cached means replaying it is a plain byte copy instead of encoding it again on every hit.
+     *
+     * @param characterEncoding The character encoding of the response the output was written to
+     * @return A copy of this data with the writer output encoded, this data if there is no writer
+     *     output or it can't be encoded without loss
+     */
+    CachedPortletData<T> encodeWriterOutput(String characterEncoding) {
+        if (this.cachedWriterOutput == null
+                || characterEncoding == null
+                || !Charset.isSupported(characterEncoding)) {
+            return this;
+        }
+
+        final Charset charset = Charset.forName(characterEncoding);
+        if (!charset.canEncode() || !charset.newEncoder().canEncode(this.cachedWriterOutput)) {
+            // Keep the characters so replaying to a response with another encoding stays exact
+            return this;
+        }
+
+        final byte[] encodedWriterOutput = this.cachedWriterOutput.getBytes(charset);
+        return new CachedPortletData<T>(this, encodedWriterOutput, characterEncoding);
+    }
+
+    /**
+     * @return A copy of this data with the output moved into the store, this data if the store
+     *     doesn't take the output
+     */
+    CachedPortletData<T> moveOffHeap(OffHeapPortletOutputStore offHeapOutputStore) {
+        if (this.offHeapOutput != null && this.offHeapOutput.isHeld()) {
+            return this.unhold().moveOffHeap(offHeapOutputStore);
+        }
+
+        final OffHeapPortletOutput storedOutput;
+        if (this.cachedWriterOutput != null) {
+            storedOutput = offHeapOutputStore.storeWriterOutput(this.cachedWriterOutput);
+        } else if (this.cachedStreamOutput != null) {
+            storedOutput = offHeapOutputStore.storeStreamOutput(this.cachedStreamOutput);
+        } else {
+            storedOutput = null;
+        }
+
+        if (storedOutput == null) {
+            return this;
+        }
+        return new CachedPortletData<T>(this, null, null, storedOutput);
+    }
+
+    /**
+     * @return This data with its output held for a replay, see {@link OffHeapPortletOutput#hold()}.
+     *     Null if the off-heap output has been released.
+     */
+    @Override
+    public CachedPortletData<T> holdOutput() {
+        if (this.offHeapOutput == null || this.offHeapOutput.isHeld()) {
+            return this;
+        }
+
+        final OffHeapPortletOutput heldOutput = this.offHeapOutput.hold();
+        if (heldOutput == null) {
+            return null;
+        }
+        return new CachedPortletData<T>(this, null, null, heldOutput);
+    }
+
+    /**
+     * @return Data to cache again after it was held for a replay: the output tracked by the store
+     *     if it is still stored, else the output copied back onto the heap
+     */
+    private CachedPortletData<T> unhold() {
+        final OffHeapPortletOutput source = this.offHeapOutput.getSource();
+        if (!source.isReleased()) {
+            return new CachedPortletData<T>(this, null, null, source);
+        }
+        if (this.offHeapOutput.isWriterOutput()) {
+            return new CachedPortletData<T>(this, this.offHeapOutput.getWriterOutput(), null, null);
+        }
+        return new CachedPortletData<T>(this, null, this.offHeapOutput.getStreamOutput(), null);
+    }
+
+    /** @return The off-heap output tracked by the store, null if the output is on the heap */
+    OffHeapPortletOutput getOffHeapOutput() {
+        return this.offHeapOutput != null ? this.offHeapOutput.getSource() : null;
+    }
+
     public void replay(PortletOutputHandler portletOutputHandler) throws IOException {
         if (contentType != null) {
             portletOutputHandler.setContentType(contentType);
         }
 
-        if (this.cachedWriterOutput != null) {
+        if (this.outputEncoding != null && !this.isEncodedFor(portletOutputHandler)) {
+            // Encoded for a different character encoding, fall back to writing the characters
+            final PrintWriter printWriter = portletOutputHandler.getPrintWriter();
+            printWriter.write(this.getCachedWriterOutput());
+            return;
+        }
+        if (this.outputEncoding != null) {
+            // Set explicitly so the encoding is still declared when writing to the output stream
+            ((PortletResourceOutputHandler) portletOutputHandler)
+                    .setCharacterEncoding(this.outputEncoding);
+        }
+
+        if (portletOutputHandler instanceof RenderPortletOutputHandler && this.isWriterOutput()) {
+            final RenderPortletOutputHandler renderOutputHandler =
+                    (RenderPortletOutputHandler) portletOutputHandler;
+            if (renderOutputHandler.replayOutput(this.getCachedWriterOutput())) {
+                // The cached string is used as the rendered output as is, no copy is made
+                return;
+            }
+        }
+
+        if (this.offHeapOutput != null) {
+            this.offHeapOutput.replay(portletOutputHandler);
+        } else if (this.cachedWriterOutput != null) {
             final PrintWriter printWriter = portletOutputHandler.getPrintWriter();
             printWriter.write(this.cachedWriterOutput);
         } else if (this.cachedStreamOutput != null) {
@@ -80,6 +234,24 @@ public class CachedPortletData<T extends Serializable>
         }
     }
 
+    /** @return true if the output was written with the portlet's writer */
+    private boolean isWriterOutput() {
+        if (this.offHeapOutput != null) {
+            return this.offHeapOutput.isWriterOutput();
+        }
+        return this.cachedWriterOutput != null;
+    }
+
+    /** @return true if the encoded writer output can be written to the handler's output stream */
+    private boolean isEncodedFor(PortletOutputHandler portletOutputHandler) {
+        if (!(portletOutputHandler instanceof PortletResourceOutputHandler)) {
+            return false;
+        }
+        final String characterEncoding =
+                ((PortletResourceOutputHandler) portletOutputHandler).getCharacterEncoding();
+        return this.outputEncoding.equalsIgnoreCase(characterEncoding);
+    }
+
     /**
      * The time since the epoch in milliseconds that this content expires. -1 if it never expires
      */
@@ -104,10 +276,27 @@ public class CachedPortletData<T extends Serializable>
     }
 
     public String getCachedWriterOutput() {
+        if (outputEncoding != null) {
+            return new String(this.getStreamBytes(), Charset.forName(outputEncoding));
+        }
+        if (offHeapOutput != null && offHeapOutput.isWriterOutput()) {
+            return offHeapOutput.getWriterOutput();
+        }
         return cachedWriterOutput;
     }
 
     public byte[] getCachedStreamOutput() {
+        if (outputEncoding != null) {
+            // The bytes are encoded writer output
+            return null;
+        }
+        return this.getStreamBytes();
+    }
+
+    private byte[] getStreamBytes() {
+        if (offHeapOutput != null && !offHeapOutput.isWriterOutput()) {
+            return offHeapOutput.getStreamOutput();
+        }
         return cachedStreamOutput;
     }
 
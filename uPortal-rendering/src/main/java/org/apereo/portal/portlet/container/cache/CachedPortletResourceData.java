@@ -65,6 +65,30 @@ public class CachedPortletResourceData<T extends Serializable>
         this.locale = locale;
     }
 
+    /** Copy of the data with the wrapped render data replaced */
+    private CachedPortletResourceData(
+            CachedPortletResourceData<T> data, CachedPortletData<T> cachedPortletData) {
+        this.cachedPortletData = cachedPortletData;
+        this.headers = data.headers;
+        this.status = data.status;
+        this.characterEncoding = data.characterEncoding;
+        this.contentLength = data.contentLength;
+        this.locale = data.locale;
+    }
+
+    /**
+     * @return A copy of this data with the output moved into the store, this data if the store
+     *     doesn't take the output
+     */
+    CachedPortletResourceData<T> moveOffHeap(OffHeapPortletOutputStore offHeapOutputStore) {
+        final CachedPortletData<T> storedData =
+                this.cachedPortletData.moveOffHeap(offHeapOutputStore);
+        if (storedData == this.cachedPortletData) {
+            return this;
+        }
+        return new CachedPortletResourceData<T>(this, storedData);
+    }
+
     public final void replay(PortletResourceOutputHandler portletOutputHandler) throws IOException {
         // Write status
         if (status != null) {
@@ -122,6 +146,23 @@ public class CachedPortletResourceData<T extends Serializable>
         return this.cachedPortletData.getTimeStored();
     }
 
+    @Override
+    public CachedPortletResourceData<T> holdOutput() {
+        final CachedPortletData<T> heldData = this.cachedPortletData.holdOutput();
+        if (heldData == null) {
+            return null;
+        }
+        if (heldData == this.cachedPortletData) {
+            return this;
+        }
+        return new CachedPortletResourceData<T>(this, heldData);
+    }
+
+    /** @return The off-heap output tracked by the store, null if the output is on the heap */
+    OffHeapPortletOutput getOffHeapOutput() {
+        return this.cachedPortletData.getOffHeapOutput();
+    }
+
     public CachedPortletData<T> getCachedPortletData() {
         return cachedPortletData;
     }
@@ -33,4 +33,13 @@ public interface CachedPortletResultHolder<T extends Serializable> {
 
     /** @return The time the result was cached */
     long getTimeStored();
+
+    /**
+     * Called when cached data is looked up for a replay. Output stored off-heap may be released at
+     * any time, the returned data keeps it readable until the replay is done.
+     *
+     * @return The data to replay, null if the cached output was stored off-heap and has since been
+     *     released, the cached result must not be used then
+     */
+    CachedPortletResultHolder<T> holdOutput();
 }
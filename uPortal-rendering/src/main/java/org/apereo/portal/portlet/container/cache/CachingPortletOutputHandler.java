@@ -21,8 +21,10 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import javax.portlet.CacheControl;
+import org.apache.commons.io.Charsets;
 import org.apache.commons.io.output.StringBuilderWriter;
 import org.apereo.portal.portlet.rendering.PortletOutputHandler;
+import org.apereo.portal.portlet.rendering.RenderPortletOutputHandler;
 
 /**
  * Captures the output of a portlet for later re-use. The maximumSize field allows for setting a max
@@ -54,10 +56,22 @@ public class CachingPortletOutputHandler implements PortletOutputHandler {
             return null;
         }
 
+        String writerOutput = this.cachingWriter != null ? this.cachingWriter.toString() : null;
+        byte[] streamOutput =
+                this.cachingOutputStream != null ? this.cachingOutputStream.toByteArray() : null;
+        if (streamOutput != null
+                && this.portletOutputHandler instanceof RenderPortletOutputHandler) {
+            // Rendered output ends up as a string, decode it once here instead of on every replay
+            final String characterEncoding =
+                    ((RenderPortletOutputHandler) this.portletOutputHandler).getCharacterEncoding();
+            writerOutput = new String(streamOutput, Charsets.toCharset(characterEncoding));
+            streamOutput = null;
+        }
+
         return new CachedPortletData<T>(
                 portletResult,
-                this.cachingWriter != null ? this.cachingWriter.toString() : null,
-                this.cachingOutputStream != null ? this.cachingOutputStream.toByteArray() : null,
+                writerOutput,
+                streamOutput,
                 contentType,
                 cacheControl.isPublicScope(),
                 cacheControl.getETag(),
@@ -57,8 +57,13 @@ public class CachingPortletResourceOutputHandler extends CachingPortletOutputHan
             return null;
         }
 
+        // Store writer output the way it is sent so replaying it doesn't have to encode it again
+        final CachedPortletData<T> encodedPortletData =
+                cachedPortletData.encodeWriterOutput(
+                        this.portletResourceOutputHandler.getCharacterEncoding());
+
         return new CachedPortletResourceData<T>(
-                cachedPortletData, headers, status, characterEncoding, contentLength, locale);
+                encodedPortletData, headers, status, characterEncoding, contentLength, locale);
     }
 
     public Map<String, List<Serializable>> getHeaders() {
@@ -0,0 +1,275 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.container.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apereo.portal.portlet.rendering.PortletOutputHandler;
+
+/**
+ * Portlet output stored outside of the Java heap by the {@link OffHeapPortletOutputStore}. Writer
+ * output is stored UTF-8 encoded, both kinds of output are optionally gzip compressed. The output
+ * is decoded incrementally while it is replayed, it is never materialized on the heap as a whole.
+ *
+ * <p>The store may release the output at any time to stay within its size limit. Cached data is
+ * handed out for replay with a {@link #hold() held} view of the output, which stays readable until
+ * the replay is done.
+ */
+final class OffHeapPortletOutput implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final boolean writerOutput;
+    private final boolean compressed;
+    private final int size;
+
+    private static final AtomicReferenceFieldUpdater<OffHeapPortletOutput, ByteBuffer>
+            BUFFER_UPDATER =
+                    AtomicReferenceFieldUpdater.newUpdater(
+                            OffHeapPortletOutput.class, ByteBuffer.class, "buffer");
+
+    private final transient OffHeapPortletOutput source;
+    private final transient boolean stored;
+
+    private transient volatile ByteBuffer buffer;
+    private transient volatile boolean referenced;
+
+    OffHeapPortletOutput(ByteBuffer buffer, boolean writerOutput, boolean compressed) {
+        this.source = null;
+        this.stored = true;
+        this.buffer = buffer;
+        this.writerOutput = writerOutput;
+        this.compressed = compressed;
+        this.size = buffer.remaining();
+    }
+
+    /** A held view of the source output, see {@link #hold()} */
+    private OffHeapPortletOutput(OffHeapPortletOutput source, ByteBuffer buffer) {
+        this.source = source;
+        this.stored = true;
+        this.buffer = buffer;
+        this.writerOutput = source.writerOutput;
+        this.compressed = source.compressed;
+        this.size = source.size;
+    }
+
+    /**
+     * Hold on to the output for a replay. The view keeps the memory readable even if the store
+     * releases the output before the replay is done, the memory is freed once the view is no longer
+     * used.
+     *
+     * @return A view of the output, null if the output has already been released
+     */
+    OffHeapPortletOutput hold() {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer == null) {
+            return null;
+        }
+        this.referenced = true;
+        return new OffHeapPortletOutput(this.getSource(), buffer);
+    }
+
+    /** @return true if this is a view returned by {@link #hold()} */
+    boolean isHeld() {
+        return this.source != null;
+    }
+
+    /** @return The output tracked by the store, this output unless it is a held view */
+    OffHeapPortletOutput getSource() {
+        return this.source != null ? this.source : this;
+    }
+
+    /** @return true if the store tracks the output, false if it was deserialized onto the heap */
+    boolean isStored() {
+        return this.stored;
+    }
+
+    /** @return true if the output was written with a writer, false if with an output stream */
+    boolean isWriterOutput() {
+        return this.writerOutput;
+    }
+
+    /** @return Number of bytes of memory holding the output */
+    int getSize() {
+        return this.size;
+    }
+
+    /** @return true if the output has been released by the store */
+    boolean isReleased() {
+        return this.buffer == null;
+    }
+
+    /** @return true if the output was used since the last call, clears the used flag */
+    boolean clearReferenced() {
+        final boolean wasReferenced = this.referenced;
+        this.referenced = false;
+        return wasReferenced;
+    }
+
+    /**
+     * Drop the reference to the off-heap memory, it is freed once the buffer and any held views are
+     * collected
+     *
+     * @return true if this call released the output, false if it was already released
+     */
+    boolean release() {
+        return BUFFER_UPDATER.getAndSet(this, null) != null;
+    }
+
+    /** Write the output to the handler the same way the portlet originally wrote it */
+    void replay(PortletOutputHandler portletOutputHandler) throws IOException {
+        final ByteBuffer buffer = this.getBuffer();
+        if (this.writerOutput) {
+            final PrintWriter printWriter = portletOutputHandler.getPrintWriter();
+            this.copyTo(buffer, printWriter);
+        } else if (this.compressed) {
+            final OutputStream outputStream = portletOutputHandler.getOutputStream();
+            IOUtils.copy(this.openStream(buffer), outputStream);
+        } else {
+            final OutputStream outputStream = portletOutputHandler.getOutputStream();
+            Channels.newChannel(outputStream).write(buffer);
+        }
+    }
+
+    /** @return The writer output decoded to a String */
+    String getWriterOutput() {
+        final StringWriter writer = new StringWriter(this.size);
+        try {
+            this.copyTo(this.getBuffer(), writer);
+        } catch (IOException e) {
+            // Can't happen, reading from memory
+            throw new IllegalStateException("Failed to decode off-heap portlet output", e);
+        }
+        return writer.toString();
+    }
+
+    /** @return A copy of the output stream bytes */
+    byte[] getStreamOutput() {
+        try {
+            return IOUtils.toByteArray(this.openStream(this.getBuffer()));
+        } catch (IOException e) {
+            // Can't happen, reading from memory
+            throw new IllegalStateException("Failed to read off-heap portlet output", e);
+        }
+    }
+
+    /** @return A read-only view of the buffer positioned at the start of the output */
+    private ByteBuffer getBuffer() {
+        final ByteBuffer buffer = this.buffer;
+        if (buffer == null) {
+            throw new IllegalStateException("Off-heap portlet output has been released");
+        }
+        this.referenced = true;
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private void copyTo(ByteBuffer buffer, Writer writer) throws IOException {
+        final Reader reader = new InputStreamReader(this.openStream(buffer), CHARSET);
+        final char[] chars = new char[BUFFER_SIZE];
+        for (int read = reader.read(chars); read != -1; read = reader.read(chars)) {
+            writer.write(chars, 0, read);
+        }
+    }
+
+    private InputStream openStream(ByteBuffer buffer) throws IOException {
+        final InputStream inputStream = new ByteBufferInputStream(buffer);
+        if (this.compressed) {
+            return new GZIPInputStream(inputStream, BUFFER_SIZE);
+        }
+        return inputStream;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        final ByteBuffer buffer = this.getBuffer();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        out.write(bytes);
+    }
+
+    /** Deserialized output, for example from cache replication, is kept on the heap */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        final byte[] bytes = new byte[this.size];
+        in.readFully(bytes);
+        this.buffer = ByteBuffer.wrap(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapPortletOutput [writerOutput="
+                + this.writerOutput
+                + ", compressed="
+                + this.compressed
+                + ", size="
+                + this.size
+                + ", released="
+                + (this.buffer == null)
+                + "]";
+    }
+
+    /** Reads the remaining bytes of a buffer */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+            return this.buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+            final int read = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+    }
+}
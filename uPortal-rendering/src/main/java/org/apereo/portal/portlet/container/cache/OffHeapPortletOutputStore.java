@@ -0,0 +1,211 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.container.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores cached portlet output in direct {@link ByteBuffer}s so large output caches don't add to
+ * the heap the garbage collector has to manage. The total size of the stored output is bounded by
+ * {@link #setMaxBytes(long)}, when it is exceeded outputs are released in CLOCK order: outputs are
+ * visited oldest first and are released unless they were used since they were last visited.
+ *
+ * <p>The store is disabled while the max size is 0. The JVM must allow at least the max size in
+ * direct memory, see <code>-XX:MaxDirectMemorySize</code>.
+ */
+public class OffHeapPortletOutputStore {
+    private final Queue<OffHeapPortletOutput> outputs =
+            new ConcurrentLinkedQueue<OffHeapPortletOutput>();
+    private final AtomicInteger outputCount = new AtomicInteger();
+    private final AtomicLong usedBytes = new AtomicLong();
+    /** Outputs released by {@link #remove(OffHeapPortletOutput)} that are still queued */
+    private final AtomicInteger removedOutputs = new AtomicInteger();
+
+    private volatile long maxBytes = 0;
+    private volatile int minBytes = 2048;
+    private volatile boolean compress = false;
+
+    /** Maximum bytes of direct memory to use for portlet output, 0 disables the store */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.evict();
+    }
+
+    /** Output smaller than this number of bytes is left on the heap */
+    public void setMinBytes(int minBytes) {
+        this.minBytes = minBytes;
+    }
+
+    /** If output should be gzip compressed before it is stored */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public boolean isEnabled() {
+        return this.maxBytes > 0;
+    }
+
+    /** @return The number of bytes of direct memory currently holding stored output */
+    public long getUsedBytes() {
+        return this.usedBytes.get();
+    }
+
+    /**
+     * @return The output stored off-heap, null if the store is disabled or the output is too small
+     *     or too large to be stored
+     */
+    OffHeapPortletOutput storeWriterOutput(String writerOutput) {
+        // A char encodes to at most 3 UTF-8 bytes, skip encoding output that can't reach the
+        // minimum
+        if (!this.isEnabled() || writerOutput.length() * 3L < this.minBytes) {
+            return null;
+        }
+        return this.store(writerOutput.getBytes(OffHeapPortletOutput.CHARSET), true);
+    }
+
+    /**
+     * @return The output stored off-heap, null if the store is disabled or the output is too small
+     *     or too large to be stored
+     */
+    OffHeapPortletOutput storeStreamOutput(byte[] streamOutput) {
+        if (!this.isEnabled()) {
+            return null;
+        }
+        return this.store(streamOutput, false);
+    }
+
+    private OffHeapPortletOutput store(byte[] bytes, boolean writerOutput) {
+        if (bytes.length < this.minBytes) {
+            return null;
+        }
+
+        final boolean compress = this.compress;
+        if (compress) {
+            bytes = gzip(bytes);
+        }
+        if (bytes.length > this.maxBytes) {
+            return null;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+
+        final OffHeapPortletOutput output =
+                new OffHeapPortletOutput(buffer, writerOutput, compress);
+        this.usedBytes.addAndGet(output.getSize());
+        this.outputCount.incrementAndGet();
+        this.outputs.add(output);
+        this.evict();
+        return output;
+    }
+
+    /**
+     * Release output that is no longer cached, for example because the cache evicted, expired or
+     * replaced the entry holding it, so it stops counting towards the max size
+     */
+    void remove(OffHeapPortletOutput output) {
+        output = output.getSource();
+        if (!output.isStored() || !output.release()) {
+            return;
+        }
+        this.outputCount.decrementAndGet();
+        this.usedBytes.addAndGet(-output.getSize());
+
+        // Drop released outputs from the queue once they outnumber the stored ones
+        if (this.removedOutputs.incrementAndGet() > this.outputCount.get()) {
+            this.purgeRemoved();
+        }
+    }
+
+    private void purgeRemoved() {
+        final List<OffHeapPortletOutput> released = new ArrayList<OffHeapPortletOutput>();
+        for (final OffHeapPortletOutput output : this.outputs) {
+            if (output.isReleased()) {
+                released.add(output);
+            }
+        }
+        for (final OffHeapPortletOutput output : released) {
+            if (this.outputs.remove(output)) {
+                this.removedOutputs.decrementAndGet();
+            }
+        }
+    }
+
+    /** Release outputs until the used bytes fit in the max size */
+    private void evict() {
+        // Every output gets at most one second chance per call, bounds the loop under concurrent
+        // use
+        int visitsLeft = this.outputCount.get() * 2;
+        while (this.usedBytes.get() > this.maxBytes && visitsLeft-- > 0) {
+            final OffHeapPortletOutput output = this.outputs.poll();
+            if (output == null) {
+                return;
+            }
+
+            if (output.isReleased()) {
+                // Already removed, it no longer counts towards the used bytes
+                this.removedOutputs.decrementAndGet();
+                continue;
+            }
+
+            if (output.clearReferenced() && visitsLeft > 0) {
+                this.outputs.add(output);
+                continue;
+            }
+
+            if (output.release()) {
+                this.outputCount.decrementAndGet();
+                this.usedBytes.addAndGet(-output.getSize());
+            } else {
+                // Removed concurrently and counted as still queued
+                this.removedOutputs.decrementAndGet();
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+        try {
+            final GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed);
+            gzipOutputStream.write(bytes);
+            gzipOutputStream.close();
+        } catch (IOException e) {
+            // Can't happen, writing to memory
+            throw new IllegalStateException("Failed to compress portlet output", e);
+        }
+        return compressed.toByteArray();
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapPortletOutputStore [maxBytes="
+                + this.maxBytes
+                + ", usedBytes="
+                + this.usedBytes.get()
+                + ", outputs="
+                + this.outputCount.get()
+                + "]";
+    }
+}
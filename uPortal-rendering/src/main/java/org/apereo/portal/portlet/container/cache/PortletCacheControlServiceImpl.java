@@ -17,6 +17,7 @@ package org.apereo.portal.portlet.container.cache;
 import java.io.Serializable;
 import java.util.Locale;
 import java.util.Map;
+import javax.annotation.PostConstruct;
 import javax.portlet.CacheControl;
 import javax.portlet.MimeResponse;
 import javax.servlet.http.HttpServletRequest;
@@ -24,6 +25,7 @@ import javax.servlet.http.HttpSession;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
 import org.apache.pluto.container.om.portlet.PortletDefinition;
 import org.apereo.portal.portlet.om.IPortletDefinitionId;
 import org.apereo.portal.portlet.om.IPortletEntity;
@@ -73,6 +75,8 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
     // default to 100 KB
     private int cacheSizeThreshold = 102400;
 
+    private final OffHeapPortletOutputStore offHeapOutputStore = new OffHeapPortletOutputStore();
+
     @Autowired
     public void setTaggedCacheEntryPurger(TaggedCacheEntryPurger taggedCacheEntryPurger) {
         this.taggedCacheEntryPurger = taggedCacheEntryPurger;
@@ -134,11 +138,69 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
         this.cacheSizeThreshold = cacheSizeThreshold;
     }
 
+    /** Release the off-heap output of cached data once the output caches drop it */
+    @PostConstruct
+    public void init() {
+        final CacheEventListenerAdapter offHeapOutputReleaser =
+                new CacheEventListenerAdapter() {
+                    @Override
+                    public void notifyElementRemoved(Ehcache cache, Element element) {
+                        releaseOffHeapOutput(element, null);
+                    }
+
+                    @Override
+                    public void notifyElementExpired(Ehcache cache, Element element) {
+                        releaseOffHeapOutput(element, null);
+                    }
+
+                    @Override
+                    public void notifyElementEvicted(Ehcache cache, Element element) {
+                        releaseOffHeapOutput(element, null);
+                    }
+                };
+
+        for (final Ehcache cache :
+                new Ehcache[] {
+                    this.privateScopePortletRenderHeaderOutputCache,
+                    this.publicScopePortletRenderHeaderOutputCache,
+                    this.privateScopePortletRenderOutputCache,
+                    this.publicScopePortletRenderOutputCache,
+                    this.privateScopePortletResourceOutputCache,
+                    this.publicScopePortletResourceOutputCache
+                }) {
+            cache.getCacheEventNotificationService().registerListener(offHeapOutputReleaser);
+        }
+    }
+
     @Override
     public int getCacheSizeThreshold() {
         return cacheSizeThreshold;
     }
 
+    /**
+     * @param offHeapMaxBytes Maximum bytes of direct memory used to store cached portlet output, 0
+     *     keeps all cached output on the heap
+     */
+    @Value(
+            "${org.apereo.portal.portlet.container.cache.PortletCacheControlServiceImpl.offHeapMaxBytes:0}")
+    public void setOffHeapMaxBytes(long offHeapMaxBytes) {
+        this.offHeapOutputStore.setMaxBytes(offHeapMaxBytes);
+    }
+
+    /** @param offHeapMinBytes Cached output smaller than this is kept on the heap */
+    @Value(
+            "${org.apereo.portal.portlet.container.cache.PortletCacheControlServiceImpl.offHeapMinBytes:2048}")
+    public void setOffHeapMinBytes(int offHeapMinBytes) {
+        this.offHeapOutputStore.setMinBytes(offHeapMinBytes);
+    }
+
+    /** @param offHeapCompress If output stored off-heap should be gzip compressed */
+    @Value(
+            "${org.apereo.portal.portlet.container.cache.PortletCacheControlServiceImpl.offHeapCompress:false}")
+    public void setOffHeapCompress(boolean offHeapCompress) {
+        this.offHeapOutputStore.setCompress(offHeapCompress);
+    }
+
     @Autowired
     public void setPortletWindowRegistry(IPortletWindowRegistry portletWindowRegistry) {
         this.portletWindowRegistry = portletWindowRegistry;
@@ -411,8 +473,16 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
             return null;
         }
 
+        // Hold the off-heap output now, the store may release it before the replay
+        final CachedPortletResultHolder<T> heldPortletData = cachedPortletData.holdOutput();
+        if (heldPortletData == null) {
+            logger.debug("Off-heap output for key {} was released", cacheKey);
+            outputCache.removeElement(publicCacheElement);
+            return null;
+        }
+
         logger.debug("Returning cached output with key {} for {}", cacheKey, portletWindow);
-        return (CachedPortletResultHolder<T>) publicCacheElement.getObjectValue();
+        return heldPortletData;
     }
 
     @Override
@@ -519,6 +589,14 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
             Serializable cacheKey,
             CachedPortletResultHolder<?> data,
             CacheControl cacheControl) {
+        data = this.moveOffHeap(data);
+
+        // Cache listeners only see the new element when an element is replaced
+        final Element previousElement = cache.getQuiet(cacheKey);
+        if (previousElement != null) {
+            this.releaseOffHeapOutput(previousElement, getOffHeapOutput(data));
+        }
+
         // using validation method, ignore expirationTime and defer to cache configuration
         if (cacheControl.getETag() != null) {
             final Element element = new Element(cacheKey, data);
@@ -546,6 +624,38 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
         cache.put(element);
     }
 
+    /** Move the output of the data into the off-heap store if it is enabled and takes it */
+    protected CachedPortletResultHolder<?> moveOffHeap(CachedPortletResultHolder<?> data) {
+        if (!this.offHeapOutputStore.isEnabled()) {
+            return data;
+        }
+        if (data instanceof CachedPortletData) {
+            return ((CachedPortletData<?>) data).moveOffHeap(this.offHeapOutputStore);
+        }
+        if (data instanceof CachedPortletResourceData) {
+            return ((CachedPortletResourceData<?>) data).moveOffHeap(this.offHeapOutputStore);
+        }
+        return data;
+    }
+
+    /** Remove the off-heap output of the element's data from the store, unless it is kept */
+    protected void releaseOffHeapOutput(Element element, OffHeapPortletOutput keptOutput) {
+        final OffHeapPortletOutput offHeapOutput = getOffHeapOutput(element.getObjectValue());
+        if (offHeapOutput != null && offHeapOutput != keptOutput) {
+            this.offHeapOutputStore.remove(offHeapOutput);
+        }
+    }
+
+    private static OffHeapPortletOutput getOffHeapOutput(Object data) {
+        if (data instanceof CachedPortletData) {
+            return ((CachedPortletData<?>) data).getOffHeapOutput();
+        }
+        if (data instanceof CachedPortletResourceData) {
+            return ((CachedPortletResourceData<?>) data).getOffHeapOutput();
+        }
+        return null;
+    }
+
     @Override
     public boolean purgeCachedPortletData(
             IPortletWindowId portletWindowId, HttpServletRequest httpRequest) {
@@ -23,12 +23,17 @@ import org.apache.commons.io.output.WriterOutputStream;
 /**
  * PortletOutputHandler that stores all content written to a string. Requires that an encoding be
  * specified in case the portlet writes to the output stream.
+ *
+ * <p>Cached output is handed over with {@link #replayOutput(String)}, the string is then returned
+ * from {@link #getOutput()} as is rather than being copied through the buffer.
  */
 public class RenderPortletOutputHandler implements PortletOutputHandler {
     private final StringBuilderWriter writer = new StringBuilderWriter();
     private final PrintWriter printWriter = new PrintWriter(this.writer);
     private final String characterEncoding;
     private OutputStream writerOutputStream;
+    private boolean outputRequested;
+    private String replayedOutput;
 
     private int bufferSize = Integer.MAX_VALUE;
     private String contentType;
@@ -39,10 +44,33 @@ public class RenderPortletOutputHandler implements PortletOutputHandler {
 
     /** @return The output the portlet has written, calls {@link #flushBuffer()} first */
     public String getOutput() {
+        if (this.replayedOutput != null) {
+            return this.replayedOutput;
+        }
         this.flushBuffer();
         return writer.getBuilder().toString();
     }
 
+    /** @return The encoding used to decode output written to the output stream */
+    public String getCharacterEncoding() {
+        return this.characterEncoding;
+    }
+
+    /**
+     * Use previously rendered output as the output of this handler without copying it. Only
+     * possible while neither the writer nor the output stream have been handed out.
+     *
+     * @return true if the output was taken, false if it has to be written to {@link
+     *     #getPrintWriter()} instead
+     */
+    public boolean replayOutput(String output) {
+        if (this.outputRequested || this.replayedOutput != null) {
+            return false;
+        }
+        this.replayedOutput = output;
+        return true;
+    }
+
     /** @return The content-type the portlet set */
     @Override
     public String getContentType() {
@@ -51,11 +79,13 @@ public class RenderPortletOutputHandler implements PortletOutputHandler {
 
     @Override
     public PrintWriter getPrintWriter() {
+        this.requestOutput();
         return this.printWriter;
     }
 
     @Override
     public OutputStream getOutputStream() {
+        this.requestOutput();
         if (this.writerOutputStream == null) {
             this.writerOutputStream =
                     new WriterOutputStream(this.printWriter, this.characterEncoding);
@@ -64,6 +94,15 @@ public class RenderPortletOutputHandler implements PortletOutputHandler {
         return writerOutputStream;
     }
 
+    /** Move replayed output into the buffer so further writes are appended after it */
+    private void requestOutput() {
+        this.outputRequested = true;
+        if (this.replayedOutput != null) {
+            this.writer.getBuilder().append(this.replayedOutput);
+            this.replayedOutput = null;
+        }
+    }
+
     @Override
     public void flushBuffer() {
         if (this.writerOutputStream != null) {
@@ -95,6 +134,7 @@ public class RenderPortletOutputHandler implements PortletOutputHandler {
 
     @Override
     public void resetBuffer() {
+        this.replayedOutput = null;
         this.flushBuffer();
         final StringBuilder builder = this.writer.getBuilder();
         if (builder.length() > 0) {
@@ -0,0 +1,141 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrency limit that adapts to observed latency using additive-increase/multiplicative-decrease
+ * (AIMD). Each execution that completes quickly while the limit is at least half used raises the
+ * limit by one, each execution that fails or exceeds its latency threshold multiplies the limit by
+ * the backoff ratio. The limit always stays between the configured minimum and maximum.
+ *
+ * @since 5.3
+ */
+public class AdaptiveConcurrencyLimit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // Only updated while holding the monitor, volatile for lock-free reads in tryAcquire
+    private volatile double limit;
+
+    /**
+     * @param initialLimit The starting limit
+     * @param minLimit The lowest the limit will be reduced to, at least 1
+     * @param maxLimit The highest the limit will be raised to
+     * @param backoffRatio Multiplier applied to the limit on a slow or failed execution, between 0
+     *     and 1
+     */
+    public AdaptiveConcurrencyLimit(
+            int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException(
+                    "minLimit must be at least 1 and maxLimit must be at least minLimit");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio must be between 0 and 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Attempt to start an execution.
+     *
+     * @return true if the execution may start and {@link #release(boolean)} must be called when it
+     *     completes, false if the limit has been reached
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            final int current = this.inFlight.get();
+            if (current >= this.getLimit()) {
+                this.rejected.incrementAndGet();
+                return false;
+            }
+            if (this.inFlight.compareAndSet(current, current + 1)) {
+                this.accepted.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Complete an execution started by a successful {@link #tryAcquire()} and adjust the limit.
+     *
+     * @param drop true if the execution failed or exceeded its latency threshold
+     */
+    public void release(boolean drop) {
+        final int current = this.inFlight.getAndDecrement();
+
+        synchronized (this) {
+            if (drop) {
+                this.dropped.incrementAndGet();
+                this.limit = Math.max(this.minLimit, this.limit * this.backoffRatio);
+            } else if (current * 2 >= this.limit) {
+                // Only grow when the limit is actually being used
+                this.limit = Math.min(this.maxLimit, this.limit + 1);
+            }
+        }
+    }
+
+    /** @return The current limit */
+    public int getLimit() {
+        return (int) this.limit;
+    }
+
+    /** @return The number of executions currently running */
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /** @return The number of executions that have been allowed to start */
+    public long getAccepted() {
+        return this.accepted.get();
+    }
+
+    /** @return The number of executions rejected because the limit was reached */
+    public long getRejected() {
+        return this.rejected.get();
+    }
+
+    /** @return The number of executions that were slow or failed */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveConcurrencyLimit [limit="
+                + this.getLimit()
+                + ", inFlight="
+                + this.getInFlight()
+                + ", accepted="
+                + this.getAccepted()
+                + ", rejected="
+                + this.getRejected()
+                + ", dropped="
+                + this.getDropped()
+                + "]";
+    }
+}
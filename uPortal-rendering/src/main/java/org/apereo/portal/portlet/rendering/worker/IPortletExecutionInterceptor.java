@@ -70,4 +70,22 @@ public interface IPortletExecutionInterceptor {
             HttpServletResponse response,
             IPortletExecutionContext context,
             Exception e);
+
+    /**
+     * Called when the worker is canceled before it started to execute, neither {@link
+     * #preExecution(HttpServletRequest, HttpServletResponse, IPortletExecutionContext)} nor {@link
+     * #postExecution(HttpServletRequest, HttpServletResponse, IPortletExecutionContext, Exception)}
+     * will be called for it. Runs in the same thread as the thread that calls {@link
+     * IPortletExecutionWorker#cancel()}
+     *
+     * @param request The request used by the worker, this is a SHARED object that is not scoped to
+     *     the worker so be careful.
+     * @param response The response used by the worker, this is a SHARED object that is not scoped
+     *     to the worker so be careful.
+     * @param context The portlet execution context
+     */
+    default void executionCanceled(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            IPortletExecutionContext context) {}
 }
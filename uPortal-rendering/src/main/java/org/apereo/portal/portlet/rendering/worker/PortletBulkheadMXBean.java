@@ -0,0 +1,42 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import java.util.Map;
+
+/** JMX stats for the per-portlet execution bulkheads */
+public interface PortletBulkheadMXBean {
+
+    /** @return true if executions are limited per portlet */
+    boolean isEnabled();
+
+    /** @param enabled false to stop limiting executions per portlet */
+    void setEnabled(boolean enabled);
+
+    /** @return The current concurrency limit by portlet fname */
+    Map<String, Integer> getLimits();
+
+    /** @return The number of running executions by portlet fname */
+    Map<String, Integer> getInFlight();
+
+    /** @return The number of rejected executions by portlet fname */
+    Map<String, Long> getRejections();
+
+    /** @return The number of executions that were slow or failed by portlet fname */
+    Map<String, Long> getDrops();
+
+    /** @return Total number of rejected executions across all portlets */
+    long getRejectionTotal();
+}
@@ -0,0 +1,74 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import org.apereo.portal.utils.threading.QualityOfServiceBlockingQueue;
+
+/**
+ * Work queue for the portlet thread pool that queues tasks per portlet fname and hands them out
+ * round-robin across fnames. A single slow or popular portlet filling the queue does not delay
+ * queued executions of other portlets. Tasks that are not {@link IPortletExecutionContext}s share a
+ * single queue.
+ *
+ * @since 5.3
+ */
+public class PortletExecutionQueue extends QualityOfServiceBlockingQueue<String, Runnable> {
+    private static final String DEFAULT_KEY = "";
+
+    private String lastKey;
+
+    public PortletExecutionQueue(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    protected String getElementKey(Runnable e) {
+        if (e instanceof IPortletExecutionContext) {
+            final String portletFname = ((IPortletExecutionContext) e).getPortletFname();
+            if (portletFname != null) {
+                return portletFname;
+            }
+        }
+        return DEFAULT_KEY;
+    }
+
+    /** Returns the first non-empty key after the previously returned key, wrapping around. */
+    @Override
+    protected String getNextElementKey() {
+        String firstKey = null;
+        boolean passedLastKey = this.lastKey == null;
+        for (final String key : this.getKeySet()) {
+            if (this.isKeyEmpty(key)) {
+                if (key.equals(this.lastKey)) {
+                    passedLastKey = true;
+                }
+                continue;
+            }
+            if (passedLastKey) {
+                this.lastKey = key;
+                return key;
+            }
+            if (firstKey == null) {
+                firstKey = key;
+            }
+            if (key.equals(this.lastKey)) {
+                passedLastKey = true;
+            }
+        }
+
+        this.lastKey = firstKey;
+        return firstKey;
+    }
+}
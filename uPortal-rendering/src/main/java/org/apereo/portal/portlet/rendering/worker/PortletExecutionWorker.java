@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -65,6 +66,8 @@ abstract class PortletExecutionWorker<V> implements IPortletExecutionWorker<V> {
     private volatile long complete = 0;
     private final AtomicInteger cancelCount = new AtomicInteger();
     private final AtomicBoolean canceled = new AtomicBoolean();
+    // Claimed by whichever comes first, the execution starting or cancel() of an unstarted worker
+    private final AtomicBoolean executionClaimed = new AtomicBoolean();
     private volatile boolean retrieved = false;
 
     public PortletExecutionWorker(
@@ -217,6 +220,12 @@ abstract class PortletExecutionWorker<V> implements IPortletExecutionWorker<V> {
 
         @Override
         public V1 call() throws Exception {
+            if (!executionClaimed.compareAndSet(false, true)) {
+                // Canceled before it started, the interceptors have been notified by cancel()
+                throw new CancellationException(
+                        "Worker for " + portletWindowId + " was canceled before it started");
+            }
+
             startExecution();
 
             try {
@@ -268,6 +277,21 @@ abstract class PortletExecutionWorker<V> implements IPortletExecutionWorker<V> {
         workerThread = null;
     }
 
+    private void doExecutionCanceled() {
+        // Iterate over handlers in reverse, like post execution
+        final ListIterator<IPortletExecutionInterceptor> listIterator =
+                this.interceptors.listIterator(this.interceptors.size());
+        while (listIterator.hasPrevious()) {
+            final IPortletExecutionInterceptor interceptor = listIterator.previous();
+            try {
+                interceptor.executionCanceled(request, response, this);
+            } catch (Throwable ex2) {
+                logger.error(
+                        "HandlerInterceptor.executionCanceled threw exception for {}", this, ex2);
+            }
+        }
+    }
+
     private void doPostExecution(Exception e) {
         // Iterate over handlers in reverse for post execution
         final ListIterator<IPortletExecutionInterceptor> listIterator =
@@ -364,7 +388,8 @@ abstract class PortletExecutionWorker<V> implements IPortletExecutionWorker<V> {
                     "submit() must be called before cancel() can be called");
         }
 
-        if (this.isComplete()) {
+        // A worker that has not started yet is still queued and can be canceled too
+        if (this.isStarted() && this.isComplete()) {
             return;
         }
 
@@ -377,6 +402,11 @@ abstract class PortletExecutionWorker<V> implements IPortletExecutionWorker<V> {
         // Cancel the future, interrupting the thread
         this.future.cancel(true);
 
+        // A worker that never starts never runs the post execution interceptors
+        if (this.executionClaimed.compareAndSet(false, true)) {
+            this.doExecutionCanceled();
+        }
+
         // Track the number of times cancel has been called
         final int count = this.cancelCount.getAndIncrement();
         if (count > 0) {
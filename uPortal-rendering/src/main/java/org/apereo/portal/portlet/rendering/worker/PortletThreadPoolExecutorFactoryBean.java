@@ -0,0 +1,71 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.springframework.scheduling.concurrent.ThreadPoolExecutorFactoryBean;
+
+/**
+ * Creates the portlet execution thread pool. With a queue capacity greater than 0 the pool uses a
+ * {@link PortletExecutionQueue} so queued portlet executions are handed to worker threads fairly
+ * across portlets. {@link PortletExecutionCallable}s are queued as-is instead of being wrapped in a
+ * new task so the queue can determine the portlet each task is for.
+ *
+ * @since 5.3
+ */
+public class PortletThreadPoolExecutorFactoryBean extends ThreadPoolExecutorFactoryBean {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected BlockingQueue<Runnable> createQueue(int queueCapacity) {
+        if (queueCapacity > 0) {
+            return new PortletExecutionQueue(queueCapacity);
+        }
+        return super.createQueue(queueCapacity);
+    }
+
+    @Override
+    protected ThreadPoolExecutor createExecutor(
+            int corePoolSize,
+            int maxPoolSize,
+            int keepAliveSeconds,
+            BlockingQueue<Runnable> queue,
+            ThreadFactory threadFactory,
+            RejectedExecutionHandler rejectedExecutionHandler) {
+        return new ThreadPoolExecutor(
+                corePoolSize,
+                maxPoolSize,
+                keepAliveSeconds,
+                TimeUnit.SECONDS,
+                queue,
+                threadFactory,
+                rejectedExecutionHandler) {
+            @SuppressWarnings("unchecked")
+            @Override
+            protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+                if (callable instanceof PortletExecutionCallable) {
+                    return (RunnableFuture<T>) callable;
+                }
+                return super.newTaskFor(callable);
+            }
+        };
+    }
+}
@@ -14,7 +14,9 @@
  */
 package org.apereo.portal.rendering;
 
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apereo.portal.character.stream.CharacterEventReader;
@@ -33,6 +35,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 /** Inserts the results of portlet's rendering into the character stream */
 public class PortletRenderingIncorporationComponent extends CharacterPipelineComponentWrapper {
+    /**
+     * Request attribute holding the {@link Set} of portlet windows whose content was incorporated
+     */
+    public static final String INCORPORATED_PORTLET_WINDOWS =
+            PortletRenderingIncorporationComponent.class.getName()
+                    + ".INCORPORATED_PORTLET_WINDOWS";
+
+    /**
+     * Request attribute holding the {@link Set} of portlet windows whose rendered header output was
+     * incorporated
+     */
+    public static final String INCORPORATED_PORTLET_HEADER_WINDOWS =
+            PortletRenderingIncorporationComponent.class.getName()
+                    + ".INCORPORATED_PORTLET_HEADER_WINDOWS";
+
     private IPortletExecutionManager portletExecutionManager;
 
     @Autowired
@@ -93,6 +110,12 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
                         final IPortletWindowId portletWindowId =
                                 headerPlaceholderEvent.getPortletWindowId();
 
+                        if (portletExecutionManager.isPortletRenderHeaderRequested(
+                                portletWindowId, this.request, this.response)) {
+                            recordIncorporated(
+                                    INCORPORATED_PORTLET_HEADER_WINDOWS, portletWindowId);
+                        }
+
                         final String output =
                                 portletExecutionManager.getPortletHeadOutput(
                                         portletWindowId, this.request, this.response);
@@ -106,6 +129,8 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
                         final IPortletWindowId portletWindowId =
                                 contentPlaceholderEvent.getPortletWindowId();
 
+                        recordIncorporated(INCORPORATED_PORTLET_WINDOWS, portletWindowId);
+
                         final String output =
                                 portletExecutionManager.getPortletOutput(
                                         portletWindowId, this.request, this.response);
@@ -162,5 +187,16 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
                     }
             }
         }
+
+        @SuppressWarnings("unchecked")
+        private void recordIncorporated(String attributeName, IPortletWindowId portletWindowId) {
+            Set<IPortletWindowId> portletWindowIds =
+                    (Set<IPortletWindowId>) this.request.getAttribute(attributeName);
+            if (portletWindowIds == null) {
+                portletWindowIds = new LinkedHashSet<IPortletWindowId>();
+                this.request.setAttribute(attributeName, portletWindowIds);
+            }
+            portletWindowIds.add(portletWindowId);
+        }
     }
 }
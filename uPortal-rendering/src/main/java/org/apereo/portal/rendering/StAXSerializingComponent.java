@@ -33,6 +33,7 @@ import org.apereo.portal.character.stream.events.CharacterEvent;
 import org.apereo.portal.utils.cache.CacheKey;
 import org.apereo.portal.xml.XmlUtilities;
 import org.apereo.portal.xml.stream.ChunkingEventReader;
+import org.apereo.portal.xml.stream.ChunkingPatternScanner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,8 +49,7 @@ public class StAXSerializingComponent implements CharacterPipelineComponent {
 
     private StAXPipelineComponent wrappedComponent;
     private Map<String, CharacterEventSource> chunkingElements;
-    private Map<Pattern, CharacterEventSource> chunkingPatternEventSources;
-    private Pattern[] chunkingPatterns;
+    private ChunkingPatternScanner chunkingPatternScanner;
 
     @Autowired
     public void setXmlUtilities(XmlUtilities xmlUtilities) {
@@ -76,11 +76,8 @@ public class StAXSerializingComponent implements CharacterPipelineComponent {
             compiledChunkingPatternEventSources.put(pattern, value);
         }
 
-        this.chunkingPatternEventSources = compiledChunkingPatternEventSources;
-        this.chunkingPatterns =
-                this.chunkingPatternEventSources
-                        .keySet()
-                        .toArray(new Pattern[this.chunkingPatternEventSources.size()]);
+        this.chunkingPatternScanner =
+                new ChunkingPatternScanner(compiledChunkingPatternEventSources);
     }
 
     @Override
@@ -106,8 +103,7 @@ public class StAXSerializingComponent implements CharacterPipelineComponent {
                 new ChunkingEventReader(
                         request,
                         this.chunkingElements,
-                        this.chunkingPatternEventSources,
-                        this.chunkingPatterns,
+                        this.chunkingPatternScanner,
                         xmlEventReader,
                         xmlEventWriter,
                         writer);
@@ -0,0 +1,493 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.apereo.portal.character.stream.CharacterEventBufferReader;
+import org.apereo.portal.character.stream.CharacterEventReader;
+import org.apereo.portal.character.stream.FilteringCharacterEventReader;
+import org.apereo.portal.character.stream.events.CharacterDataEvent;
+import org.apereo.portal.character.stream.events.CharacterDataEventImpl;
+import org.apereo.portal.character.stream.events.CharacterEvent;
+import org.apereo.portal.character.stream.events.CharacterEventTypes;
+import org.apereo.portal.portlet.container.cache.CacheState;
+import org.apereo.portal.portlet.container.cache.CachedPortletData;
+import org.apereo.portal.portlet.container.cache.IPortletCacheControlService;
+import org.apereo.portal.portlet.container.cache.PublicPortletCacheKey;
+import org.apereo.portal.portlet.om.IPortletWindow;
+import org.apereo.portal.portlet.om.IPortletWindowId;
+import org.apereo.portal.portlet.registry.IPortletWindowRegistry;
+import org.apereo.portal.portlet.rendering.PortletRenderResult;
+import org.apereo.portal.rendering.CharacterPipelineComponentWrapper;
+import org.apereo.portal.rendering.PipelineEventReader;
+import org.apereo.portal.rendering.PipelineEventReaderImpl;
+import org.apereo.portal.rendering.PortletRenderingIncorporationComponent;
+import org.apereo.portal.security.IPerson;
+import org.apereo.portal.url.IPortalRequestInfo;
+import org.apereo.portal.url.IUrlSyntaxProvider;
+import org.apereo.portal.url.UrlType;
+import org.apereo.portal.user.IUserInstanceManager;
+import org.apereo.portal.utils.cache.CacheKey;
+import org.jasig.resourceserver.aggr.om.Included;
+import org.jasig.resourceserver.utils.aggr.ResourcesElementsProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Caches the fully incorporated page output for guest users so it can be shared between guest
+ * sessions. Must wrap the {@link PortletRenderingIncorporationComponent}; on a cache hit neither
+ * the theme pipeline nor any portlets are executed.
+ *
+ * <p>Pages are keyed by the cache key of the wrapped pipeline, which describes the layout, theme,
+ * skin and locale. A page is only cached if the output of every portlet on it came from the public
+ * scope portlet output cache, the public cache key and time stored of each of those entries is
+ * recorded with the page. A cached page is used only while all of the recorded portlet cache
+ * entries are still current, so it is invalidated whenever any of the portlet entries expires, is
+ * purged or is replaced. Character data is stored gzip compressed, placeholder events for
+ * components further up the pipeline (analytics) are stored as-is.
+ */
+public class SharedPageCachingComponent extends CharacterPipelineComponentWrapper {
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private ResourcesElementsProvider resourcesElementsProvider;
+    private IUserInstanceManager userInstanceManager;
+    private IUrlSyntaxProvider urlSyntaxProvider;
+    private IPortletWindowRegistry portletWindowRegistry;
+    private IPortletCacheControlService portletCacheControlService;
+    private Ehcache cache;
+    private boolean enabled = true;
+
+    @Autowired
+    public void setResourcesElementsProvider(ResourcesElementsProvider resourcesElementsProvider) {
+        this.resourcesElementsProvider = resourcesElementsProvider;
+    }
+
+    @Autowired
+    public void setUserInstanceManager(IUserInstanceManager userInstanceManager) {
+        this.userInstanceManager = userInstanceManager;
+    }
+
+    @Autowired
+    public void setUrlSyntaxProvider(IUrlSyntaxProvider urlSyntaxProvider) {
+        this.urlSyntaxProvider = urlSyntaxProvider;
+    }
+
+    @Autowired
+    public void setPortletWindowRegistry(IPortletWindowRegistry portletWindowRegistry) {
+        this.portletWindowRegistry = portletWindowRegistry;
+    }
+
+    @Autowired
+    public void setPortletCacheControlService(
+            IPortletCacheControlService portletCacheControlService) {
+        this.portletCacheControlService = portletCacheControlService;
+    }
+
+    public void setCache(Ehcache cache) {
+        this.cache = cache;
+    }
+
+    /** Set to false to render every guest page through the full pipeline, defaults to true */
+    @Value("${org.apereo.portal.rendering.cache.SharedPageCachingComponent.enabled:true}")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public CacheKey getCacheKey(HttpServletRequest request, HttpServletResponse response) {
+        return this.wrappedComponent.getCacheKey(request, response);
+    }
+
+    @Override
+    public PipelineEventReader<CharacterEventReader, CharacterEvent> getEventReader(
+            HttpServletRequest request, HttpServletResponse response) {
+        if (!this.enabled
+                || Included.PLAIN == this.resourcesElementsProvider.getDefaultIncludedType()
+                || !this.isShareable(request)) {
+            return this.wrappedComponent.getEventReader(request, response);
+        }
+
+        final CacheKey cacheKey = this.wrappedComponent.getCacheKey(request, response);
+        final Element element = this.cache.get(cacheKey);
+        if (element != null) {
+            final SharedPage sharedPage = (SharedPage) element.getObjectValue();
+            if (this.isCurrent(sharedPage, request)) {
+                logger.debug("Found shared page for key {}", cacheKey);
+                return sharedPage.createEventReader();
+            }
+
+            logger.debug("Shared page for key {} is stale, removing it", cacheKey);
+            this.cache.removeElement(element);
+        }
+
+        final PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader =
+                this.wrappedComponent.getEventReader(request, response);
+        final Map<String, String> outputProperties = pipelineEventReader.getOutputProperties();
+        final PageCapturingEventReader pageCapturingEventReader =
+                new PageCapturingEventReader(
+                        pipelineEventReader.getEventReader(), request, cacheKey, outputProperties);
+        return new PipelineEventReaderImpl<CharacterEventReader, CharacterEvent>(
+                pageCapturingEventReader, outputProperties);
+    }
+
+    /**
+     * Only guest renders of the layout itself are shared. Requests that target a portlet or carry
+     * portlet parameters are rendered per request.
+     */
+    protected boolean isShareable(HttpServletRequest request) {
+        final IPerson person = this.userInstanceManager.getUserInstance(request).getPerson();
+        if (!person.isGuest()) {
+            return false;
+        }
+
+        final IPortalRequestInfo portalRequestInfo =
+                this.urlSyntaxProvider.getPortalRequestInfo(request);
+        return portalRequestInfo.getUrlType() == UrlType.RENDER
+                && portalRequestInfo.getTargetedPortletWindowId() == null
+                && portalRequestInfo.getPortletRequestInfoMap().isEmpty();
+    }
+
+    /** @return true if every portlet cache entry the page was built from is still current */
+    protected boolean isCurrent(SharedPage sharedPage, HttpServletRequest request) {
+        final long now = System.currentTimeMillis();
+        for (final SharedPortletOutput portletOutput : sharedPage.portletOutputs) {
+            final IPortletWindowId portletWindowId =
+                    this.resolvePortletWindowId(request, portletOutput);
+            if (portletWindowId == null) {
+                return false;
+            }
+
+            final CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult>
+                    cacheState = this.getCacheState(request, portletWindowId, portletOutput.header);
+            final CachedPortletData<PortletRenderResult> cachedPortletData =
+                    cacheState.getCachedPortletData();
+            if (cachedPortletData == null
+                    || !cachedPortletData.isPublicScope()
+                    || cachedPortletData.getTimeStored() != portletOutput.timeStored
+                    || isExpired(cachedPortletData, now)
+                    || !portletOutput.publicCacheKey.equals(
+                            cacheState.getPublicPortletCacheKey())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Portlet windows of the same layout node have the same id in every guest session, new sessions
+     * may not have created the window yet.
+     */
+    private IPortletWindowId resolvePortletWindowId(
+            HttpServletRequest request, SharedPortletOutput portletOutput) {
+        IPortletWindow portletWindow =
+                this.portletWindowRegistry.getPortletWindow(request, portletOutput.portletWindowId);
+        if (portletWindow == null) {
+            portletWindow =
+                    this.portletWindowRegistry.getOrCreateDefaultPortletWindowByLayoutNodeId(
+                            request, portletOutput.layoutNodeId);
+        }
+        if (portletWindow == null
+                || !portletOutput.portletWindowId.equals(portletWindow.getPortletWindowId())) {
+            return null;
+        }
+        return portletWindow.getPortletWindowId();
+    }
+
+    private CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult> getCacheState(
+            HttpServletRequest request, IPortletWindowId portletWindowId, boolean header) {
+        if (header) {
+            return this.portletCacheControlService.getPortletRenderHeaderState(
+                    request, portletWindowId);
+        }
+        return this.portletCacheControlService.getPortletRenderState(request, portletWindowId);
+    }
+
+    private static boolean isExpired(CachedPortletData<?> cachedPortletData, long now) {
+        final long expirationTime = cachedPortletData.getExpirationTime();
+        return expirationTime != -1 && expirationTime <= now;
+    }
+
+    /**
+     * Record the portlet cache entries that were incorporated into the page, returns null if any of
+     * them is not publicly cached.
+     */
+    @SuppressWarnings("unchecked")
+    protected List<SharedPortletOutput> getSharedPortletOutputs(HttpServletRequest request) {
+        final Set<IPortletWindowId> contentWindowIds =
+                (Set<IPortletWindowId>)
+                        request.getAttribute(
+                                PortletRenderingIncorporationComponent
+                                        .INCORPORATED_PORTLET_WINDOWS);
+        final Set<IPortletWindowId> headerWindowIds =
+                (Set<IPortletWindowId>)
+                        request.getAttribute(
+                                PortletRenderingIncorporationComponent
+                                        .INCORPORATED_PORTLET_HEADER_WINDOWS);
+
+        final List<SharedPortletOutput> portletOutputs = new ArrayList<SharedPortletOutput>();
+        if (!this.addSharedPortletOutputs(request, contentWindowIds, false, portletOutputs)
+                || !this.addSharedPortletOutputs(request, headerWindowIds, true, portletOutputs)) {
+            return null;
+        }
+        return portletOutputs;
+    }
+
+    private boolean addSharedPortletOutputs(
+            HttpServletRequest request,
+            Set<IPortletWindowId> portletWindowIds,
+            boolean header,
+            List<SharedPortletOutput> portletOutputs) {
+        if (portletWindowIds == null) {
+            return true;
+        }
+
+        final long now = System.currentTimeMillis();
+        for (final IPortletWindowId portletWindowId : portletWindowIds) {
+            final IPortletWindow portletWindow =
+                    this.portletWindowRegistry.getPortletWindow(request, portletWindowId);
+            if (portletWindow == null) {
+                return false;
+            }
+
+            final CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult>
+                    cacheState = this.getCacheState(request, portletWindowId, header);
+            final CachedPortletData<PortletRenderResult> cachedPortletData =
+                    cacheState.getCachedPortletData();
+            if (cachedPortletData == null
+                    || !cachedPortletData.isPublicScope()
+                    || isExpired(cachedPortletData, now)) {
+                logger.debug(
+                        "Output of {} is not publicly cached, page will not be shared",
+                        portletWindowId);
+                return false;
+            }
+
+            portletOutputs.add(
+                    new SharedPortletOutput(
+                            portletWindowId,
+                            portletWindow.getPortletEntity().getLayoutNodeId(),
+                            header,
+                            cacheState.getPublicPortletCacheKey(),
+                            cachedPortletData.getTimeStored(),
+                            cachedPortletData.getExpirationTime()));
+        }
+        return true;
+    }
+
+    /** Cache the captured page, the entry lives no longer than the portlet output it contains. */
+    protected void cachePage(
+            HttpServletRequest request,
+            CacheKey cacheKey,
+            List<Serializable> segments,
+            Map<String, String> outputProperties) {
+        final List<SharedPortletOutput> portletOutputs = this.getSharedPortletOutputs(request);
+        if (portletOutputs == null) {
+            return;
+        }
+
+        long expirationTime = -1;
+        for (final SharedPortletOutput portletOutput : portletOutputs) {
+            if (portletOutput.expirationTime != -1
+                    && (expirationTime == -1 || portletOutput.expirationTime < expirationTime)) {
+                expirationTime = portletOutput.expirationTime;
+            }
+        }
+
+        final SharedPage sharedPage =
+                new SharedPage(
+                        segments,
+                        new LinkedHashMap<String, String>(outputProperties),
+                        portletOutputs);
+        final Element element = new Element(cacheKey, sharedPage);
+        if (expirationTime != -1) {
+            final long timeToLive =
+                    TimeUnit.MILLISECONDS.toSeconds(expirationTime - System.currentTimeMillis());
+            if (timeToLive < 1) {
+                return;
+            }
+            element.setTimeToLive((int) Math.min(timeToLive, Integer.MAX_VALUE));
+        }
+        this.cache.put(element);
+        logger.debug(
+                "Cached shared page with {} portlet outputs for key {}",
+                portletOutputs.size(),
+                cacheKey);
+    }
+
+    static byte[] compress(String data) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length() / 4);
+        try {
+            final Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), CHARSET);
+            writer.write(data);
+            writer.close();
+        } catch (IOException e) {
+            // Can't happen, writing to memory
+            throw new IllegalStateException("Failed to compress page data", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static String decompress(byte[] data) {
+        final StringBuilder builder = new StringBuilder(data.length * 4);
+        try {
+            final Reader reader =
+                    new InputStreamReader(
+                            new GZIPInputStream(new ByteArrayInputStream(data)), CHARSET);
+            final char[] buffer = new char[4096];
+            for (int read = reader.read(buffer); read != -1; read = reader.read(buffer)) {
+                builder.append(buffer, 0, read);
+            }
+            reader.close();
+        } catch (IOException e) {
+            // Can't happen, reading data this class compressed from memory
+            throw new IllegalStateException("Failed to decompress page data", e);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Passes events through to the page output while capturing them, caches the page once the
+     * wrapped reader is exhausted.
+     */
+    private class PageCapturingEventReader extends FilteringCharacterEventReader {
+        private final HttpServletRequest request;
+        private final CacheKey cacheKey;
+        private final Map<String, String> outputProperties;
+        private final List<Serializable> segments = new ArrayList<Serializable>();
+        private final StringBuilder data = new StringBuilder();
+        private boolean complete = false;
+
+        public PageCapturingEventReader(
+                CharacterEventReader delegate,
+                HttpServletRequest request,
+                CacheKey cacheKey,
+                Map<String, String> outputProperties) {
+            super(delegate);
+            this.request = request;
+            this.cacheKey = cacheKey;
+            this.outputProperties = outputProperties;
+        }
+
+        @Override
+        public boolean hasNext() {
+            final boolean hasNext = super.hasNext();
+            if (!hasNext && !this.complete) {
+                this.complete = true;
+                this.flushData();
+                cachePage(this.request, this.cacheKey, this.segments, this.outputProperties);
+            }
+            return hasNext;
+        }
+
+        @Override
+        protected CharacterEvent filterEvent(CharacterEvent event, boolean peek) {
+            if (CharacterEventTypes.CHARACTER == event.getEventType()) {
+                this.data.append(((CharacterDataEvent) event).getData());
+            } else {
+                this.flushData();
+                this.segments.add(event);
+            }
+            return event;
+        }
+
+        private void flushData() {
+            if (this.data.length() > 0) {
+                this.segments.add(compress(this.data.toString()));
+                this.data.setLength(0);
+            }
+        }
+    }
+
+    /** A page shared between guest sessions */
+    static final class SharedPage implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /** Compressed character data as byte[] or placeholder {@link CharacterEvent}s */
+        private final List<Serializable> segments;
+
+        private final Map<String, String> outputProperties;
+        private final List<SharedPortletOutput> portletOutputs;
+
+        SharedPage(
+                List<Serializable> segments,
+                Map<String, String> outputProperties,
+                List<SharedPortletOutput> portletOutputs) {
+            this.segments = Collections.unmodifiableList(segments);
+            this.outputProperties = Collections.unmodifiableMap(outputProperties);
+            this.portletOutputs = Collections.unmodifiableList(portletOutputs);
+        }
+
+        PipelineEventReader<CharacterEventReader, CharacterEvent> createEventReader() {
+            final List<CharacterEvent> events = new ArrayList<CharacterEvent>(this.segments.size());
+            for (final Serializable segment : this.segments) {
+                if (segment instanceof byte[]) {
+                    events.add(CharacterDataEventImpl.create(decompress((byte[]) segment)));
+                } else {
+                    events.add((CharacterEvent) segment);
+                }
+            }
+            return new PipelineEventReaderImpl<CharacterEventReader, CharacterEvent>(
+                    new CharacterEventBufferReader(events.listIterator()), this.outputProperties);
+        }
+    }
+
+    /** The public portlet cache entry a shared page was built from */
+    static final class SharedPortletOutput implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final IPortletWindowId portletWindowId;
+        private final String layoutNodeId;
+        private final boolean header;
+        private final PublicPortletCacheKey publicCacheKey;
+        private final long timeStored;
+        private final long expirationTime;
+
+        SharedPortletOutput(
+                IPortletWindowId portletWindowId,
+                String layoutNodeId,
+                boolean header,
+                PublicPortletCacheKey publicCacheKey,
+                long timeStored,
+                long expirationTime) {
+            this.portletWindowId = portletWindowId;
+            this.layoutNodeId = layoutNodeId;
+            this.header = header;
+            this.publicCacheKey = publicCacheKey;
+            this.timeStored = timeStored;
+            this.expirationTime = expirationTime;
+        }
+    }
+}
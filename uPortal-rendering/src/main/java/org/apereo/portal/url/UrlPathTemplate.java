@@ -0,0 +1,288 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.url;
+
+import com.google.common.collect.ImmutableList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The parsed form of a request path as understood by {@link UrlSyntaxProviderImpl}: the folder
+ * names, the portlet folder name and the {@link UrlState} and {@link UrlType} parts of the path.
+ * Templates only depend on the path string, so they are parsed once and shared between requests;
+ * the folder and portlet names are resolved against the user's layout each time the template is
+ * bound to a request.
+ *
+ * <p>Whether a state part is recognized depends on a portlet actually being targeted once the names
+ * have been resolved, so the state and type parts are parsed for both outcomes.
+ */
+final class UrlPathTemplate {
+    private static final Pattern SLASH_PATTERN = Pattern.compile(UrlSyntaxProviderImpl.SLASH);
+
+    /**
+     * Enum used to keep track of the parser state when reading the URL string. IMPORTANT, if you
+     * add a new parse step the SWITCH block in parse MUST be updated
+     */
+    private enum ParseStep {
+        FOLDER,
+        PORTLET,
+        STATE,
+        TYPE,
+        COMPLETE;
+    }
+
+    private final List<String> folderNames;
+    private final boolean portletStepReached;
+    private final boolean portletPathPresent;
+    private final String portletFolderName;
+    private final Tail targetedTail;
+    private final Tail untargetedTail;
+
+    private UrlPathTemplate(ParseResult targeted, ParseResult untargeted) {
+        this.folderNames = ImmutableList.copyOf(targeted.folderNames);
+        this.portletStepReached = targeted.portletStepReached;
+        this.portletPathPresent = targeted.portletPathPresent;
+        this.portletFolderName = targeted.portletFolderName;
+        this.targetedTail = new Tail(targeted);
+        this.untargetedTail = new Tail(untargeted);
+    }
+
+    /** Parse the path within the application of a portal request */
+    static UrlPathTemplate parse(String requestPath) {
+        final String[] requestPathParts = SLASH_PATTERN.split(requestPath);
+        return new UrlPathTemplate(parse(requestPathParts, true), parse(requestPathParts, false));
+    }
+
+    /** @return The folder names in the path, empty if the path does not target a folder */
+    List<String> getFolderNames() {
+        return this.folderNames;
+    }
+
+    /**
+     * @return true if the path reached the point where a portlet may be targeted, either by the
+     *     {@value UrlSyntaxProviderImpl#PORTLET_PATH_PREFIX} path part or by the {@value
+     *     UrlSyntaxProviderImpl#PARAM_TARGET_PORTLET} parameter
+     */
+    boolean isPortletStepReached() {
+        return this.portletStepReached;
+    }
+
+    /**
+     * @return true if the portlet is targeted by the path, in which case the {@value
+     *     UrlSyntaxProviderImpl#PARAM_TARGET_PORTLET} parameter is not considered
+     */
+    boolean isPortletPathPresent() {
+        return this.portletPathPresent;
+    }
+
+    /** @return The portlet folder name in the path, null if there is none */
+    String getPortletFolderName() {
+        return this.portletFolderName;
+    }
+
+    /** @return The state and type parts of the path, depending on a portlet being targeted */
+    Tail getTail(boolean portletTargeted) {
+        return portletTargeted ? this.targetedTail : this.untargetedTail;
+    }
+
+    private static ParseResult parse(String[] requestPathParts, boolean portletTargeted) {
+        final ParseResult rslt = new ParseResult();
+
+        ParseStep parseStep = ParseStep.FOLDER;
+        for (int pathPartIndex = 0; pathPartIndex < requestPathParts.length; pathPartIndex++) {
+            String pathPart = requestPathParts[pathPartIndex];
+
+            if (StringUtils.isEmpty(pathPart)) {
+                continue;
+            }
+
+            switch (parseStep) {
+                case FOLDER:
+                    {
+                        parseStep = ParseStep.PORTLET;
+
+                        if (UrlSyntaxProviderImpl.FOLDER_PATH_PREFIX.equals(pathPart)) {
+                            pathPartIndex++;
+
+                            for (; pathPartIndex < requestPathParts.length; pathPartIndex++) {
+                                pathPart = requestPathParts[pathPartIndex];
+
+                                if (UrlSyntaxProviderImpl.PORTLET_PATH_PREFIX.equals(pathPart)) {
+                                    // Step back one path part so the portlet step sees the prefix
+                                    pathPartIndex--;
+                                    break;
+                                }
+
+                                if (pathPart.endsWith(UrlSyntaxProviderImpl.REQUEST_TYPE_SUFFIX)) {
+                                    pathPartIndex--;
+                                    pathPart = requestPathParts[pathPartIndex];
+
+                                    // If a state was added to the folder list remove it and step
+                                    // back one so the state step can handle it
+                                    if (UrlState.valueOfIngoreCase(pathPart, null) != null) {
+                                        rslt.folderNames.removeLast();
+                                        pathPartIndex--;
+                                    }
+                                    break;
+                                }
+
+                                rslt.folderNames.add(pathPart);
+                            }
+                            break;
+                        }
+                    }
+                    // fall through
+                case PORTLET:
+                    {
+                        parseStep = ParseStep.STATE;
+                        rslt.portletStepReached = true;
+
+                        if (UrlSyntaxProviderImpl.PORTLET_PATH_PREFIX.equals(pathPart)) {
+                            rslt.portletPathPresent = true;
+                            if (++pathPartIndex < requestPathParts.length) {
+                                rslt.portletFolderName = requestPathParts[pathPartIndex];
+                            }
+                            break;
+                        }
+                    }
+                    // fall through
+                case STATE:
+                    {
+                        parseStep = ParseStep.TYPE;
+
+                        // States other than the default only make sense if a portlet is being
+                        // targeted
+                        if (!portletTargeted) {
+                            break;
+                        }
+
+                        rslt.urlState = UrlState.valueOfIngoreCase(pathPart, null);
+                        if (rslt.urlState != null) {
+                            break;
+                        }
+                    }
+                    // fall through
+                case TYPE:
+                    {
+                        parseStep = ParseStep.COMPLETE;
+
+                        if (pathPartIndex == requestPathParts.length - 1
+                                && pathPart.endsWith(UrlSyntaxProviderImpl.REQUEST_TYPE_SUFFIX)
+                                && pathPart.length()
+                                        > UrlSyntaxProviderImpl.REQUEST_TYPE_SUFFIX.length()) {
+                            final String urlTypePart =
+                                    pathPart.substring(
+                                            0,
+                                            pathPart.length()
+                                                    - UrlSyntaxProviderImpl.REQUEST_TYPE_SUFFIX
+                                                            .length());
+                            final UrlType urlType;
+
+                            // Handle inline resourceIds, look for a . in the request type string
+                            // and use the suffix as the urlType
+                            final int lastPeriod = urlTypePart.lastIndexOf('.');
+                            if (lastPeriod >= 0 && lastPeriod < urlTypePart.length()) {
+                                final String urlTypePartSuffix =
+                                        urlTypePart.substring(lastPeriod + 1);
+                                urlType = UrlType.valueOfIngoreCase(urlTypePartSuffix, null);
+                                // Only applies if the state step created the portlet request info
+                                if (urlType == UrlType.RESOURCE && rslt.urlState != null) {
+                                    rslt.resourceId = urlTypePart.substring(0, lastPeriod);
+                                }
+                            } else {
+                                urlType = UrlType.valueOfIngoreCase(urlTypePart, null);
+                            }
+
+                            if (urlType != null) {
+                                rslt.urlType = urlType;
+                                break;
+                            }
+                        }
+                    }
+                    // fall through
+                default:
+                    // Nothing to do -- some cases don't need treatment
+            }
+        }
+
+        return rslt;
+    }
+
+    @Override
+    public String toString() {
+        return "UrlPathTemplate [folderNames="
+                + this.folderNames
+                + ", portletPathPresent="
+                + this.portletPathPresent
+                + ", portletFolderName="
+                + this.portletFolderName
+                + ", targetedTail="
+                + this.targetedTail
+                + ", untargetedTail="
+                + this.untargetedTail
+                + "]";
+    }
+
+    /** The state and type parts of the path */
+    static final class Tail {
+        private final UrlState urlState;
+        private final UrlType urlType;
+        private final String resourceId;
+
+        private Tail(ParseResult parseResult) {
+            this.urlState = parseResult.urlState;
+            this.urlType = parseResult.urlType;
+            this.resourceId = parseResult.resourceId;
+        }
+
+        /** @return The requested URL state, null if the path does not specify one */
+        UrlState getUrlState() {
+            return this.urlState;
+        }
+
+        /** @return The URL type, null if the path does not specify one */
+        UrlType getUrlType() {
+            return this.urlType;
+        }
+
+        /** @return The inline resource id of the targeted portlet, null if there is none */
+        String getResourceId() {
+            return this.resourceId;
+        }
+
+        @Override
+        public String toString() {
+            return "[urlState="
+                    + this.urlState
+                    + ", urlType="
+                    + this.urlType
+                    + ", resourceId="
+                    + this.resourceId
+                    + "]";
+        }
+    }
+
+    private static final class ParseResult {
+        private final LinkedList<String> folderNames = new LinkedList<String>();
+        private boolean portletStepReached;
+        private boolean portletPathPresent;
+        private String portletFolderName;
+        private UrlState urlState;
+        private UrlType urlType;
+        private String resourceId;
+    }
+}
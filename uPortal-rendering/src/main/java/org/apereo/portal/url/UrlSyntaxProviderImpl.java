@@ -15,6 +15,8 @@
 package org.apereo.portal.url;
 
 import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import java.io.UnsupportedEncodingException;
@@ -26,7 +28,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -37,7 +38,6 @@ import javax.portlet.PortletMode;
 import javax.portlet.WindowState;
 import javax.servlet.http.HttpServletRequest;
 import javax.xml.xpath.XPathExpression;
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.apereo.portal.IUserPreferencesManager;
 import org.apereo.portal.layout.IUserLayout;
@@ -56,6 +56,7 @@ import org.apereo.portal.xml.xpath.XPathOperations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.web.csrf.CsrfToken;
 import org.springframework.stereotype.Component;
 import org.springframework.web.util.UrlPathHelper;
@@ -100,7 +101,6 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
     static final String FOLDER_PATH_PREFIX = "f";
     static final String REQUEST_TYPE_SUFFIX = ".uP";
 
-    private static final Pattern SLASH_PATTERN = Pattern.compile(SLASH);
     private static final String PORTAL_CANONICAL_URL =
             UrlSyntaxProviderImpl.class.getName() + ".PORTAL_CANONICAL_URL";
     private static final String PORTAL_REQUEST_INFO_ATTR =
@@ -208,6 +208,35 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
             }
         };
 
+        /**
+         * @return The parameter the name is for, null if the name does not start with any of the
+         *     parameter prefixes. All the prefixes share {@link
+         *     UrlSyntaxProviderImpl#PORTLET_CONTROL_PREFIX} and differ in the following character,
+         *     so the name is classified without iterating over the values.
+         */
+        public static SuffixedPortletParameter forParameterName(String name) {
+            final int length = PORTLET_CONTROL_PREFIX.length();
+            if (name.length() <= length || !name.startsWith(PORTLET_CONTROL_PREFIX)) {
+                return null;
+            }
+            switch (name.charAt(length)) {
+                case 'r':
+                    return RESOURCE_ID;
+                case 'c':
+                    return CACHEABILITY;
+                case 'd':
+                    return DELEGATE_PARENT;
+                case 's':
+                    return WINDOW_STATE;
+                case 'm':
+                    return PORTLET_MODE;
+                case 'p':
+                    return COPY_PARAMETERS;
+                default:
+                    return null;
+            }
+        }
+
         protected final Logger logger = LoggerFactory.getLogger(this.getClass());
         private final String parameterPrefix;
         private final Set<UrlType> validUrlTypes;
@@ -237,19 +266,6 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
                 Map<IPortletWindowId, IPortletWindowId> delegateIdMappings);
     }
 
-    /**
-     * Enum used in getPortalRequestInfo to keep track of the parser state when reading the URL
-     * string. IMPORTANT, if you add a new parse step the SWITCH block in getPortalRequestInfo MUST
-     * be updated
-     */
-    private enum ParseStep {
-        FOLDER,
-        PORTLET,
-        STATE,
-        TYPE,
-        COMPLETE;
-    }
-
     protected final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     /** WindowStates that are communicated as part of the path */
@@ -268,6 +284,8 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
     private IUrlNodeSyntaxHelperRegistry urlNodeSyntaxHelperRegistry;
     private IPortalUrlProvider portalUrlProvider;
     private IUserInstanceManager userInstanceManager;
+    private Cache<String, UrlPathTemplate> urlPathTemplates =
+            CacheBuilder.newBuilder().maximumSize(2000).build();
     private XPathOperations xpathOperations;
 
     @Autowired
@@ -308,6 +326,15 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
         this.urlNodeSyntaxHelperRegistry = urlNodeSyntaxHelperRegistry;
     }
 
+    /**
+     * Maximum number of distinct request paths whose parsed {@link UrlPathTemplate} is kept. Paths
+     * that share the same folder and portlet names only have to be bound to the user's layout.
+     */
+    @Value("${org.apereo.portal.url.UrlSyntaxProviderImpl.maxCachedUrlPaths:2000}")
+    public void setMaxCachedUrlPaths(long maxCachedUrlPaths) {
+        this.urlPathTemplates = CacheBuilder.newBuilder().maximumSize(maxCachedUrlPaths).build();
+    }
+
     /* (non-Javadoc)
      * @see org.apereo.portal.url.IPortalUrlProvider#getPortalRequestInfo(javax.servlet.http.HttpServletRequest)
      */
@@ -355,224 +382,93 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
             IPortletWindowId targetedPortletWindowId = null;
             PortletRequestInfoImpl targetedPortletRequestInfo = null;
 
-            final String[] requestPathParts = SLASH_PATTERN.split(requestPath);
+            final UrlPathTemplate urlPathTemplate = this.getUrlPathTemplate(requestPath);
+            logger.trace("Binding {} for request path [{}].", urlPathTemplate, requestPath);
 
-            UrlState requestedUrlState = null;
-            ParseStep parseStep = ParseStep.FOLDER;
-            for (int pathPartIndex = 0; pathPartIndex < requestPathParts.length; pathPartIndex++) {
-                String pathPart = requestPathParts[pathPartIndex];
+            final List<String> folderNames = urlPathTemplate.getFolderNames();
+            if (!folderNames.isEmpty()) {
+                final String targetedLayoutNodeId =
+                        urlNodeSyntaxHelper.getLayoutNodeForFolderNames(request, folderNames);
+                portalRequestInfo.setTargetedLayoutNodeId(targetedLayoutNodeId);
+            }
 
-                logger.trace("In parseStep {} considering pathPart [{}].", parseStep, pathPart);
+            if (urlPathTemplate.isPortletStepReached()) {
+                final String targetedLayoutNodeId = portalRequestInfo.getTargetedLayoutNodeId();
 
-                if (StringUtils.isEmpty(pathPart)) {
-                    continue;
+                if (urlPathTemplate.isPortletPathPresent()) {
+                    final String portletFolderName = urlPathTemplate.getPortletFolderName();
+                    if (portletFolderName != null) {
+                        targetedPortletWindowId =
+                                urlNodeSyntaxHelper.getPortletForFolderName(
+                                        request, targetedLayoutNodeId, portletFolderName);
+                    }
+                } else {
+                    // See if a portlet was targeted by parameter
+                    final String[] targetedPortletIds = parameterMap.remove(PARAM_TARGET_PORTLET);
+                    if (targetedPortletIds != null && targetedPortletIds.length > 0) {
+                        final String targetedPortletString = targetedPortletIds[0];
+                        targetedPortletWindowId =
+                                urlNodeSyntaxHelper.getPortletForFolderName(
+                                        request, targetedLayoutNodeId, targetedPortletString);
+                    }
                 }
+            }
 
-                switch (parseStep) {
-                    case FOLDER:
-                        {
-                            parseStep = ParseStep.PORTLET;
-
-                            if (FOLDER_PATH_PREFIX.equals(pathPart)) {
-
-                                logger.trace(
-                                        "Skipping adding {} to the folders deque "
-                                                + "because it is simply the folder path prefix.",
-                                        pathPart);
-
-                                pathPartIndex++;
-
-                                final LinkedList<String> folders = new LinkedList<String>();
-                                for (; pathPartIndex < requestPathParts.length; pathPartIndex++) {
-                                    pathPart = requestPathParts[pathPartIndex];
-
-                                    if (PORTLET_PATH_PREFIX.equals(pathPart)) {
-                                        logger.trace(
-                                                "Found the portlet part of the path "
-                                                        + "demarked by portlet path prefix [{}]; "
-                                                        + "stepping back one path part to finish folder processing",
-                                                pathPart);
-                                        pathPartIndex--;
-                                        break;
-                                    } else {
-
-                                        if (pathPart.endsWith(REQUEST_TYPE_SUFFIX)) {
-                                            logger.trace(
-                                                    "Found the end of the folder path with pathPart [{}];"
-                                                            + " stepping back one, checking for state, "
-                                                            + "and finishing folder parsing",
-                                                    pathPart);
-                                            pathPartIndex--;
-                                            pathPart = requestPathParts[pathPartIndex];
-
-                                            // If a state was added to the folder list remove it and
-                                            // step back one so
-                                            // other code can handle it
-                                            if (UrlState.valueOfIngoreCase(pathPart, null)
-                                                    != null) {
-                                                logger.trace(
-                                                        "A state was added to the end of folder list {};"
-                                                                + " removing it.",
-                                                        folders);
-                                                folders.removeLast();
-                                                pathPartIndex--;
-                                            }
-                                            break;
-                                        }
-                                    }
-
-                                    logger.trace("Adding pathPart [{}] to folders.", pathPart);
-                                    folders.add(pathPart);
-                                }
-
-                                logger.trace("Folders is [{}]", folders);
-                                if (folders.size() > 0) {
-                                    final String targetedLayoutNodeId =
-                                            urlNodeSyntaxHelper.getLayoutNodeForFolderNames(
-                                                    request, folders);
-                                    portalRequestInfo.setTargetedLayoutNodeId(targetedLayoutNodeId);
-                                }
-                                break;
-                            }
-                        }
-                        // fall through
-                    case PORTLET:
-                        {
-                            parseStep = ParseStep.STATE;
-
-                            final String targetedLayoutNodeId =
-                                    portalRequestInfo.getTargetedLayoutNodeId();
+            // States other than the default only make sense if a portlet is being targeted
+            final UrlPathTemplate.Tail urlPathTail =
+                    urlPathTemplate.getTail(targetedPortletWindowId != null);
 
-                            if (PORTLET_PATH_PREFIX.equals(pathPart)) {
-                                if (++pathPartIndex < requestPathParts.length) {
-                                    pathPart = requestPathParts[pathPartIndex];
+            final UrlState requestedUrlState = urlPathTail.getUrlState();
+            if (requestedUrlState != null) {
+                portalRequestInfo.setUrlState(requestedUrlState);
 
-                                    targetedPortletWindowId =
-                                            urlNodeSyntaxHelper.getPortletForFolderName(
-                                                    request, targetedLayoutNodeId, pathPart);
-                                }
+                // If the request is stateless
+                if (statelessUrlStates.contains(requestedUrlState)) {
+                    final IPortletWindow statelessPortletWindow =
+                            this.portletWindowRegistry.getOrCreateStatelessPortletWindow(
+                                    request, targetedPortletWindowId);
+                    targetedPortletWindowId = statelessPortletWindow.getPortletWindowId();
+                }
 
-                                break;
-                            }
+                // Create the portlet request info
+                targetedPortletRequestInfo =
+                        portalRequestInfo.getPortletRequestInfo(targetedPortletWindowId);
+                portalRequestInfo.setTargetedPortletWindowId(targetedPortletWindowId);
 
-                            // See if a portlet was targeted by parameter
-                            final String[] targetedPortletIds =
-                                    parameterMap.remove(PARAM_TARGET_PORTLET);
-                            if (targetedPortletIds != null && targetedPortletIds.length > 0) {
-                                final String targetedPortletString = targetedPortletIds[0];
-                                targetedPortletWindowId =
-                                        urlNodeSyntaxHelper.getPortletForFolderName(
-                                                request,
-                                                targetedLayoutNodeId,
-                                                targetedPortletString);
-                            }
-                        }
-                        // fall through
-                    case STATE:
+                // Set window state based on URL State first then look for the window state
+                // parameter
+                switch (requestedUrlState) {
+                    case MAX:
                         {
-                            parseStep = ParseStep.TYPE;
-
-                            // States other than the default only make sense if a portlet is being
-                            // targeted
-                            if (targetedPortletWindowId == null) {
-                                break;
-                            }
+                            targetedPortletRequestInfo.setWindowState(WindowState.MAXIMIZED);
+                        }
+                        break;
 
-                            requestedUrlState = UrlState.valueOfIngoreCase(pathPart, null);
-
-                            // Set the URL state
-                            if (requestedUrlState != null) {
-                                portalRequestInfo.setUrlState(requestedUrlState);
-
-                                // If the request is stateless
-                                if (statelessUrlStates.contains(requestedUrlState)) {
-                                    final IPortletWindow statelessPortletWindow =
-                                            this.portletWindowRegistry
-                                                    .getOrCreateStatelessPortletWindow(
-                                                            request, targetedPortletWindowId);
-                                    targetedPortletWindowId =
-                                            statelessPortletWindow.getPortletWindowId();
-                                }
-
-                                // Create the portlet request info
-                                targetedPortletRequestInfo =
-                                        portalRequestInfo.getPortletRequestInfo(
-                                                targetedPortletWindowId);
-                                portalRequestInfo.setTargetedPortletWindowId(
-                                        targetedPortletWindowId);
-
-                                // Set window state based on URL State first then look for the
-                                // window state parameter
-                                switch (requestedUrlState) {
-                                    case MAX:
-                                        {
-                                            targetedPortletRequestInfo.setWindowState(
-                                                    WindowState.MAXIMIZED);
-                                        }
-                                        break;
-
-                                    case DETACHED:
-                                        {
-                                            targetedPortletRequestInfo.setWindowState(
-                                                    IPortletRenderer.DETACHED);
-                                        }
-                                        break;
-
-                                    case EXCLUSIVE:
-                                        {
-                                            targetedPortletRequestInfo.setWindowState(
-                                                    IPortletRenderer.EXCLUSIVE);
-                                        }
-                                        break;
-
-                                    default:
-                                        // Nothing to do -- some cases don't need treatment
-                                }
-
-                                break;
-                            }
+                    case DETACHED:
+                        {
+                            targetedPortletRequestInfo.setWindowState(IPortletRenderer.DETACHED);
                         }
-                        // fall through
-                    case TYPE:
+                        break;
+
+                    case EXCLUSIVE:
                         {
-                            parseStep = ParseStep.COMPLETE;
-
-                            if (pathPartIndex == requestPathParts.length - 1
-                                    && pathPart.endsWith(REQUEST_TYPE_SUFFIX)
-                                    && pathPart.length() > REQUEST_TYPE_SUFFIX.length()) {
-                                final String urlTypePart =
-                                        pathPart.substring(
-                                                0,
-                                                pathPart.length() - REQUEST_TYPE_SUFFIX.length());
-                                final UrlType urlType;
-
-                                // Handle inline resourceIds, look for a . in the request type
-                                // string and use the suffix as the urlType
-                                final int lastPeriod = urlTypePart.lastIndexOf('.');
-                                if (lastPeriod >= 0 && lastPeriod < urlTypePart.length()) {
-                                    final String urlTypePartSuffix =
-                                            urlTypePart.substring(lastPeriod + 1);
-                                    urlType = UrlType.valueOfIngoreCase(urlTypePartSuffix, null);
-                                    if (urlType == UrlType.RESOURCE
-                                            && targetedPortletRequestInfo != null) {
-                                        final String resourceId =
-                                                urlTypePart.substring(0, lastPeriod);
-                                        targetedPortletRequestInfo.setResourceId(resourceId);
-                                    }
-                                } else {
-                                    urlType = UrlType.valueOfIngoreCase(urlTypePart, null);
-                                }
-
-                                if (urlType != null) {
-                                    portalRequestInfo.setUrlType(urlType);
-                                    break;
-                                }
-                            }
+                            targetedPortletRequestInfo.setWindowState(IPortletRenderer.EXCLUSIVE);
                         }
-                        // fall through
+                        break;
+
                     default:
                         // Nothing to do -- some cases don't need treatment
                 }
+
+                final String resourceId = urlPathTail.getResourceId();
+                if (resourceId != null) {
+                    targetedPortletRequestInfo.setResourceId(resourceId);
+                }
+            }
+
+            final UrlType urlType = urlPathTail.getUrlType();
+            if (urlType != null) {
+                portalRequestInfo.setUrlType(urlType);
             }
 
             // If a targeted portlet window ID is found but no targeted portlet request info has
@@ -654,13 +550,10 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
                 // Portlet control parameters are either used directly or as a prefix to a windowId.
                 // Use the
                 // SuffixedPortletParameter to simplify their parsing
-                for (final SuffixedPortletParameter suffixedPortletParameter :
-                        SuffixedPortletParameter.values()) {
+                final SuffixedPortletParameter suffixedPortletParameter =
+                        SuffixedPortletParameter.forParameterName(name);
+                if (suffixedPortletParameter != null) {
                     final String parameterPrefix = suffixedPortletParameter.getParameterPrefix();
-                    // Skip to the next parameter prefix if the current doesn't match
-                    if (!name.startsWith(parameterPrefix)) {
-                        continue;
-                    }
 
                     // All of these parameters require at least one value
                     if (values.isEmpty()) {
@@ -668,7 +561,7 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
                                 "Ignoring parameter {} as it must have a value. Value: {}",
                                 name,
                                 values);
-                        break;
+                        continue;
                     }
 
                     // Verify the parameter is being used on the correct type of URL
@@ -681,7 +574,7 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
                                 validUrlTypes,
                                 portalRequestInfo.getUrlType(),
                                 values);
-                        break;
+                        continue;
                     }
 
                     // Determine the portlet window and request info the parameter targets
@@ -697,7 +590,7 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
                                         + " by the request. The parameter will be ignored. Value: {}",
                                 name,
                                 values);
-                        break;
+                        continue;
                     }
 
                     parameterEntryItr.remove();
@@ -709,7 +602,6 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
                             portletRequestInfo,
                             values,
                             delegateIdMappings);
-                    break;
                 }
             }
 
@@ -776,6 +668,16 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
         }
     }
 
+    /** @return The parsed template for the request path, from the cache if possible */
+    protected UrlPathTemplate getUrlPathTemplate(String requestPath) {
+        UrlPathTemplate urlPathTemplate = this.urlPathTemplates.getIfPresent(requestPath);
+        if (urlPathTemplate == null) {
+            urlPathTemplate = UrlPathTemplate.parse(requestPath);
+            this.urlPathTemplates.put(requestPath, urlPathTemplate);
+        }
+        return urlPathTemplate;
+    }
+
     protected IPortalRequestInfo parseLegacyPortalUrl(
             HttpServletRequest request, Map<String, String[]> parameterMap) {
         final PortalRequestInfoImpl portalRequestInfo = new PortalRequestInfoImpl();
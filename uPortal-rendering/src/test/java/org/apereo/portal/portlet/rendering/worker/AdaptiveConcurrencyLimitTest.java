@@ -0,0 +1,75 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Tests for {@link AdaptiveConcurrencyLimit}. */
+public class AdaptiveConcurrencyLimitTest {
+
+    @Test
+    public void testRejectsOverLimit() {
+        final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, .5);
+
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+        assertEquals(2, limit.getInFlight());
+        assertEquals(1, limit.getRejected());
+
+        limit.release(false);
+        assertEquals(1, limit.getInFlight());
+        assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    public void testAdditiveIncreaseMultiplicativeDecrease() {
+        final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 2, 6, .5);
+
+        // Saturated and fast, grows up to the max
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limit.tryAcquire());
+            assertTrue(limit.tryAcquire());
+            assertTrue(limit.tryAcquire());
+            limit.release(false);
+            limit.release(false);
+            limit.release(false);
+        }
+        assertEquals(6, limit.getLimit());
+
+        // Slow, halves down to the min
+        assertTrue(limit.tryAcquire());
+        limit.release(true);
+        assertEquals(3, limit.getLimit());
+        assertTrue(limit.tryAcquire());
+        limit.release(true);
+        assertEquals(2, limit.getLimit());
+        assertEquals(2, limit.getDropped());
+
+        // Mostly idle, doesn't grow
+        assertTrue(limit.tryAcquire());
+        limit.release(false);
+        assertTrue(limit.tryAcquire());
+        limit.release(false);
+        assertEquals(3, limit.getLimit());
+        assertTrue(limit.tryAcquire());
+        limit.release(false);
+        assertEquals(3, limit.getLimit());
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/** Tests for {@link PortletExecutionQueue}. */
+public class PortletExecutionQueueTest {
+
+    @Test
+    public void testRoundRobinAcrossPortlets() {
+        final PortletExecutionQueue queue = new PortletExecutionQueue(10);
+
+        final Runnable slow1 = createTask("slow");
+        final Runnable slow2 = createTask("slow");
+        final Runnable slow3 = createTask("slow");
+        final Runnable fast1 = createTask("fast");
+        final Runnable fast2 = createTask("fast");
+        final Runnable other = mock(Runnable.class);
+
+        assertTrue(queue.offer(slow1));
+        assertTrue(queue.offer(slow2));
+        assertTrue(queue.offer(slow3));
+        assertTrue(queue.offer(fast1));
+        assertTrue(queue.offer(fast2));
+        assertTrue(queue.offer(other));
+
+        final Runnable first = queue.poll();
+        final Runnable second = queue.poll();
+        final Runnable third = queue.poll();
+        assertTrue(first != second && second != third && first != third);
+        assertTrue(
+                "one task of each key before any key repeats",
+                distinctKeys(queue, first, second, third));
+
+        assertEquals(3, queue.size());
+        queue.poll();
+        queue.poll();
+        final Runnable last = queue.poll();
+        assertEquals(slow3, last);
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testCapacity() {
+        final PortletExecutionQueue queue = new PortletExecutionQueue(1);
+        assertTrue(queue.offer(createTask("a")));
+        assertFalse(queue.offer(createTask("b")));
+    }
+
+    private static boolean distinctKeys(PortletExecutionQueue queue, Runnable... tasks) {
+        final Set<String> keys = new HashSet<String>();
+        for (final Runnable task : tasks) {
+            keys.add(queue.getElementKey(task));
+        }
+        return keys.size() == tasks.length;
+    }
+
+    private static Runnable createTask(String portletFname) {
+        final Runnable task =
+                mock(
+                        Runnable.class,
+                        withSettings().extraInterfaces(IPortletExecutionContext.class));
+        Mockito.when(((IPortletExecutionContext) task).getPortletFname()).thenReturn(portletFname);
+        return task;
+    }
+}
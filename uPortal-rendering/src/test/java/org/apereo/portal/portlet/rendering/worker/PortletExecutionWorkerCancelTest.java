@@ -0,0 +1,133 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apereo.portal.portlet.om.IPortletWindow;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/** Tests that interceptors hear about workers canceled before they started. */
+public class PortletExecutionWorkerCancelTest {
+    private final CountDownLatch blocker = new CountDownLatch(1);
+    private ExecutorService executorService;
+    private IPortletExecutionInterceptor interceptor;
+
+    @Before
+    public void setup() throws Exception {
+        this.executorService = Executors.newSingleThreadExecutor();
+        this.interceptor = mock(IPortletExecutionInterceptor.class);
+
+        // Occupy the only thread so submitted workers wait in the queue
+        final CountDownLatch blocking = new CountDownLatch(1);
+        this.executorService.submit(
+                new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        blocking.countDown();
+                        blocker.await();
+                        return null;
+                    }
+                });
+        blocking.await();
+    }
+
+    @After
+    public void teardown() {
+        this.blocker.countDown();
+        this.executorService.shutdownNow();
+    }
+
+    @Test
+    public void testCancelQueuedWorker() throws Exception {
+        final TestWorker worker = new TestWorker();
+        worker.submit();
+        verify(this.interceptor).preSubmit(any(), any(), Mockito.eq(worker));
+
+        worker.cancel();
+        worker.cancel();
+        verify(this.interceptor).executionCanceled(any(), any(), Mockito.eq(worker));
+
+        // The queued worker never runs once the thread is free
+        this.blocker.countDown();
+        this.executorService.shutdown();
+        this.executorService.awaitTermination(10, TimeUnit.SECONDS);
+        assertFalse(worker.isStarted());
+        verify(this.interceptor, never()).preExecution(any(), any(), any());
+        verify(this.interceptor, never()).postExecution(any(), any(), any(), any());
+    }
+
+    @Test
+    public void testCancelStartedWorker() throws Exception {
+        this.blocker.countDown();
+
+        final CountDownLatch running = new CountDownLatch(1);
+        final TestWorker worker =
+                new TestWorker() {
+                    @Override
+                    protected Void callInternal() throws Exception {
+                        running.countDown();
+                        Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                        return null;
+                    }
+                };
+        worker.submit();
+        running.await();
+
+        worker.cancel();
+        this.executorService.shutdown();
+        this.executorService.awaitTermination(10, TimeUnit.SECONDS);
+        verify(this.interceptor).postExecution(any(), any(), Mockito.eq(worker), any());
+        verify(this.interceptor, never()).executionCanceled(any(), any(), any());
+    }
+
+    private class TestWorker extends PortletExecutionWorker<Void> {
+        TestWorker() {
+            super(
+                    executorService,
+                    Collections.singletonList(interceptor),
+                    null,
+                    new MockHttpServletRequest(),
+                    new MockHttpServletResponse(),
+                    mock(IPortletWindow.class, Mockito.RETURNS_DEEP_STUBS),
+                    1000);
+        }
+
+        @Override
+        public ExecutionType getExecutionType() {
+            return ExecutionType.RENDER;
+        }
+
+        @Override
+        protected Void callInternal() throws Exception {
+            return null;
+        }
+    }
+}
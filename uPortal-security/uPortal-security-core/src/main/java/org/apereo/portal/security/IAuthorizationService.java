@@ -14,6 +14,8 @@
  */
 package org.apereo.portal.security;
 
+import java.util.Collection;
+import java.util.Set;
 import org.apereo.portal.AuthorizationException;
 import org.apereo.portal.groups.GroupsException;
 import org.apereo.portal.groups.IGroupMember;
@@ -91,6 +93,32 @@ public interface IAuthorizationService {
      */
     boolean canPrincipalBrowse(IAuthorizationPrincipal principal, IPortletDefinition portlet);
 
+    /**
+     * Answers which of the portlets the principal has permission to browse. Equivalent to invoking
+     * {@link #canPrincipalBrowse(IAuthorizationPrincipal, IPortletDefinition)} for each portlet,
+     * but the principal's groups and permissions are resolved once for the whole collection.
+     *
+     * @param principal principal
+     * @param portlets Portlets to check
+     * @return The browsable subset of the portlets, never null
+     * @since 5.3
+     */
+    Set<IPortletDefinition> getBrowsablePortlets(
+            IAuthorizationPrincipal principal, Collection<IPortletDefinition> portlets);
+
+    /**
+     * Answers which of the portlets the principal has permission to subscribe to. Equivalent to
+     * invoking {@link #canPrincipalSubscribe(IAuthorizationPrincipal, String)} for each portlet,
+     * but the principal's groups and permissions are resolved once for the whole collection.
+     *
+     * @param principal principal
+     * @param portlets Portlets to check
+     * @return The subscribable subset of the portlets, never null
+     * @since 5.3
+     */
+    Set<IPortletDefinition> getSubscribablePortlets(
+            IAuthorizationPrincipal principal, Collection<IPortletDefinition> portlets);
+
     /**
      * Answers if the principal has permission to subscribe to this Channel.
      *
@@ -118,6 +146,27 @@ public interface IAuthorizationService {
     boolean doesPrincipalHavePermission(
             IAuthorizationPrincipal principal, String owner, String activity, String target)
             throws AuthorizationException;
+    /**
+     * Answers which of the targets the owner has given the principal permission to perform the
+     * activity on. Params <code>principal</code>, <code>owner</code> and <code>activity</code> must
+     * be non-null. Equivalent to invoking {@link #doesPrincipalHavePermission(
+     * IAuthorizationPrincipal, String, String, String)} for each target, but the targets are
+     * evaluated together in a single pass and the answers are cached for later individual checks.
+     *
+     * @return The permitted subset of the targets, never null
+     * @param principal IAuthorizationPrincipal
+     * @param owner java.lang.String
+     * @param activity java.lang.String
+     * @param targets the target strings to check
+     * @exception AuthorizationException indicates authorization information could not be retrieved.
+     * @since 5.3
+     */
+    Set<String> getPermittedTargets(
+            IAuthorizationPrincipal principal,
+            String owner,
+            String activity,
+            Collection<String> targets)
+            throws AuthorizationException;
     /**
      * Returns the <code>IPermissions</code> owner has granted this <code>Principal</code> for the
      * specified activity and target. This includes inherited <code>IPermissions</code>. Null
@@ -14,6 +14,9 @@
  */
 package org.apereo.portal.security;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 import org.apereo.portal.AuthorizationException;
 import org.apereo.portal.permission.IPermissionActivity;
 import org.apereo.portal.permission.IPermissionOwner;
@@ -48,4 +51,34 @@ public interface IPermissionPolicy {
             IPermissionActivity activity,
             IPermissionTarget target)
             throws AuthorizationException;
+
+    /**
+     * Answers which of the targets the owner has authorized the principal to perform the activity
+     * on. The default implementation invokes {@link #doesPrincipalHavePermission} once per target,
+     * policies that can evaluate many targets in a single pass should override it.
+     *
+     * @param service org.apereo.portal.security.IAuthorizationService
+     * @param principal org.apereo.portal.security.IAuthorizationPrincipal
+     * @param owner The 'namespace' of the activity
+     * @param activity The behavior that requires permission
+     * @param targets The objects upon which the behavior will be invoked
+     * @return The permitted subset of the targets, never null
+     * @exception AuthorizationException
+     * @since 5.3
+     */
+    default Set<IPermissionTarget> getPermittedTargets(
+            IAuthorizationService service,
+            IAuthorizationPrincipal principal,
+            IPermissionOwner owner,
+            IPermissionActivity activity,
+            Collection<IPermissionTarget> targets)
+            throws AuthorizationException {
+        final Set<IPermissionTarget> rslt = new HashSet<>();
+        for (IPermissionTarget target : targets) {
+            if (doesPrincipalHavePermission(service, principal, owner, activity, target)) {
+                rslt.add(target);
+            }
+        }
+        return rslt;
+    }
 }
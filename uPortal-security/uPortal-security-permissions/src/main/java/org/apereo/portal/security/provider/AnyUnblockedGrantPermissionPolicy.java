@@ -14,8 +14,13 @@
  */
 package org.apereo.portal.security.provider;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.Element;
@@ -115,26 +120,9 @@ public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
         }
 
         // Is this user a super-user?  (Should this logic be moved to AuthorizationImpl?)
-        final IPermissionActivity allPermissionsActivity =
-                permissionOwnerDao.getPermissionActivity(
-                        IPermission.PORTAL_SYSTEM, IPermission.ALL_PERMISSIONS_ACTIVITY);
-        if (!activity.equals(
-                allPermissionsActivity)) { // NOTE:  Must check to avoid infinite recursion
-            final IPermissionOwner allPermissionsOwner =
-                    permissionOwnerDao.getPermissionOwner(IPermission.PORTAL_SYSTEM);
-            final IPermissionTarget allPermissionsTarget =
-                    targetProviderRegistry
-                            .getTargetProvider(allPermissionsActivity.getTargetProviderKey())
-                            .getTarget(IPermission.ALL_TARGET);
-            if (doesPrincipalHavePermission(
-                    service,
-                    principal,
-                    allPermissionsOwner,
-                    allPermissionsActivity,
-                    allPermissionsTarget)) {
-                // Stop checking;  just return true
-                return true;
-            }
+        if (isSuperUser(service, principal, activity)) {
+            // Stop checking;  just return true
+            return true;
         }
 
         /*
@@ -142,30 +130,7 @@ public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
          * perform the specified activity over an entire class of targets;
          * see if one of those applies in this case.
          */
-        IPermissionTarget collectiveTarget =
-                null; // The "collective noun" representing a class of thing
-        switch (target.getTargetType()) {
-            case PORTLET:
-                collectiveTarget =
-                        targetProviderRegistry
-                                .getTargetProvider(activity.getTargetProviderKey())
-                                .getTarget(IPermission.ALL_PORTLETS_TARGET);
-                break;
-            case CATEGORY:
-                collectiveTarget =
-                        targetProviderRegistry
-                                .getTargetProvider(activity.getTargetProviderKey())
-                                .getTarget(IPermission.ALL_CATEGORIES_TARGET);
-                break;
-            case GROUP:
-                collectiveTarget =
-                        targetProviderRegistry
-                                .getTargetProvider(activity.getTargetProviderKey())
-                                .getTarget(IPermission.ALL_GROUPS_TARGET);
-                break;
-            default:
-                // This sort of handling does not apply;  just pass through
-        }
+        final IPermissionTarget collectiveTarget = getCollectiveTarget(activity, target);
         /*
          * NOTE:  Cannot generalize to a collective target if we are already on
          * the collective target, else StackOverflowError.
@@ -222,6 +187,260 @@ public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
         return rslt;
     }
 
+    /**
+     * Evaluates all the targets in a single walk up the principal's groups tree. The super-user
+     * permission and each collective target are checked once for the whole collection, each group
+     * is visited once, and the targets are only looked up individually for those groups that hold
+     * permissions for the activity.
+     */
+    @Override
+    public Set<IPermissionTarget> getPermittedTargets(
+            IAuthorizationService service,
+            IAuthorizationPrincipal principal,
+            IPermissionOwner owner,
+            IPermissionActivity activity,
+            Collection<IPermissionTarget> targets)
+            throws AuthorizationException {
+
+        final Set<IPermissionTarget> rslt = new HashSet<>();
+
+        // Fail closed on null arguments, same as doesPrincipalHavePermission()
+        if (service == null
+                || principal == null
+                || owner == null
+                || activity == null
+                || targets == null) {
+            log.error(
+                    "Null argument to AnyUnblockedGrantPermissionPolicy getPermittedTargets() method "
+                            + "should not be possible;  service='{}', principal='{}', owner='{}', "
+                            + "activity='{}', targets='{}'",
+                    service,
+                    principal,
+                    owner,
+                    activity,
+                    targets,
+                    new AuthorizationException("Null argument"));
+            return rslt;
+        }
+
+        if (isSuperUser(service, principal, activity)) {
+            for (IPermissionTarget target : targets) {
+                if (target != null) {
+                    rslt.add(target);
+                }
+            }
+            return rslt;
+        }
+
+        // Targets covered by a collective target the principal holds need no further checks
+        final Map<IPermissionTarget, Boolean> collectiveTargetResults = new HashMap<>();
+        final List<IPermissionTarget> remainingTargets = new ArrayList<>();
+        final Set<String> remainingTargetKeys = new HashSet<>();
+        for (IPermissionTarget target : targets) {
+            if (target == null) {
+                continue;
+            }
+            final IPermissionTarget collectiveTarget = getCollectiveTarget(activity, target);
+            if (collectiveTarget != null && !collectiveTarget.equals(target)) {
+                Boolean collectiveResult = collectiveTargetResults.get(collectiveTarget);
+                if (collectiveResult == null) {
+                    collectiveResult =
+                            doesPrincipalHavePermission(
+                                    service, principal, owner, activity, collectiveTarget);
+                    collectiveTargetResults.put(collectiveTarget, collectiveResult);
+                }
+                if (collectiveResult) {
+                    rslt.add(target);
+                    continue;
+                }
+            }
+            remainingTargets.add(target);
+            remainingTargetKeys.add(target.getKey());
+        }
+
+        if (remainingTargets.isEmpty()) {
+            return rslt;
+        }
+
+        // Search ourselves and all ancestors for unblocked GRANTs.
+        final Set<String> grantedTargetKeys;
+        try {
+            grantedTargetKeys =
+                    getTargetsWithUnblockedPathToGrant(
+                            service,
+                            principal,
+                            owner,
+                            activity,
+                            remainingTargetKeys,
+                            new HashMap<IGroupMember, Set<String>>());
+        } catch (Exception e) {
+            log.error(
+                    "Error searching for unblocked paths to grant for principal ["
+                            + principal
+                            + "]",
+                    e);
+            // fail closed
+            return rslt;
+        }
+
+        for (IPermissionTarget target : remainingTargets) {
+            if (grantedTargetKeys.contains(target.getKey())) {
+                rslt.add(target);
+            }
+        }
+
+        log.trace(
+                "Principal '{}' is granted permission to perform activity '{}' on {} of {} "
+                        + "targets under permission owning system '{}'",
+                principal,
+                activity.getFname(),
+                rslt.size(),
+                targets.size(),
+                owner.getFname());
+
+        return rslt;
+    }
+
+    private boolean isSuperUser(
+            IAuthorizationService service,
+            IAuthorizationPrincipal principal,
+            IPermissionActivity activity) {
+        final IPermissionActivity allPermissionsActivity =
+                permissionOwnerDao.getPermissionActivity(
+                        IPermission.PORTAL_SYSTEM, IPermission.ALL_PERMISSIONS_ACTIVITY);
+        if (activity.equals(allPermissionsActivity)) {
+            // NOTE:  Must check to avoid infinite recursion
+            return false;
+        }
+        final IPermissionOwner allPermissionsOwner =
+                permissionOwnerDao.getPermissionOwner(IPermission.PORTAL_SYSTEM);
+        final IPermissionTarget allPermissionsTarget =
+                targetProviderRegistry
+                        .getTargetProvider(allPermissionsActivity.getTargetProviderKey())
+                        .getTarget(IPermission.ALL_TARGET);
+        return doesPrincipalHavePermission(
+                service,
+                principal,
+                allPermissionsOwner,
+                allPermissionsActivity,
+                allPermissionsTarget);
+    }
+
+    /**
+     * uPortal uses a few "special" targets that signal permission to perform the specified activity
+     * over an entire class of targets. Returns the "collective noun" representing the class of the
+     * target, or null if this sort of handling does not apply.
+     */
+    private IPermissionTarget getCollectiveTarget(
+            IPermissionActivity activity, IPermissionTarget target) {
+        switch (target.getTargetType()) {
+            case PORTLET:
+                return targetProviderRegistry
+                        .getTargetProvider(activity.getTargetProviderKey())
+                        .getTarget(IPermission.ALL_PORTLETS_TARGET);
+            case CATEGORY:
+                return targetProviderRegistry
+                        .getTargetProvider(activity.getTargetProviderKey())
+                        .getTarget(IPermission.ALL_CATEGORIES_TARGET);
+            case GROUP:
+                return targetProviderRegistry
+                        .getTargetProvider(activity.getTargetProviderKey())
+                        .getTarget(IPermission.ALL_GROUPS_TARGET);
+            default:
+                // This sort of handling does not apply;  just pass through
+                return null;
+        }
+    }
+
+    /**
+     * Bulk counterpart of {@link #hasUnblockedPathToGrant}. Returns the keys of those targets for
+     * which the principal has an unblocked path to a GRANT: targets GRANTed to the principal or to
+     * any of its parent groups (recursively), less the targets DENYed to the principal itself.
+     * Answers are memoized per group member so groups shared by several paths are visited once;
+     * groups encountered again while still being evaluated contribute nothing, which breaks cycles.
+     */
+    private Set<String> getTargetsWithUnblockedPathToGrant(
+            IAuthorizationService service,
+            IAuthorizationPrincipal principal,
+            IPermissionOwner owner,
+            IPermissionActivity activity,
+            Set<String> targetKeys,
+            Map<IGroupMember, Set<String>> visitedGroups)
+            throws GroupsException {
+
+        final IGroupMember principalAsGroupMember = service.getGroupMember(principal);
+        final Set<String> visited = visitedGroups.get(principalAsGroupMember);
+        if (visited != null) {
+            return visited;
+        }
+        visitedGroups.put(principalAsGroupMember, new HashSet<String>());
+
+        /*
+         * Step #1:  Specific GRANT/DENY attached to this principal.  Most groups hold no
+         * permissions for the activity at all;  only look at individual targets (which
+         * takes permissions granted on groups containing the target into account) when
+         * this one does.
+         */
+        final Set<String> rslt = new HashSet<>();
+        final Set<String> deniedTargetKeys = new HashSet<>();
+        final IPermission[] activityPermissions =
+                service.getPermissionsForPrincipal(
+                        principal, owner.getFname(), activity.getFname(), null);
+        if (activityPermissions.length > 0) {
+            for (String targetKey : targetKeys) {
+                final Set<IPermission> activePermissions =
+                        removeInactivePermissions(
+                                service.getPermissionsForPrincipal(
+                                        principal,
+                                        owner.getFname(),
+                                        activity.getFname(),
+                                        targetKey));
+                if (containsType(activePermissions, IPermission.PERMISSION_TYPE_DENY)) {
+                    // DENY trumps both GRANT & inherited permissions
+                    deniedTargetKeys.add(targetKey);
+                } else if (containsType(activePermissions, IPermission.PERMISSION_TYPE_GRANT)) {
+                    rslt.add(targetKey);
+                }
+            }
+        }
+
+        /*
+         * Step #2:  Seek answers for the undecided targets from affiliated groups
+         */
+        final int undecided = targetKeys.size() - deniedTargetKeys.size();
+        for (IGroupMember parentGroup : principalAsGroupMember.getParentGroups()) {
+            if (rslt.size() == undecided) {
+                // Every target not DENYed here is already GRANTed
+                break;
+            }
+            try {
+                if (parentGroup != null) {
+                    final IAuthorizationPrincipal parentPrincipal =
+                            service.newPrincipal(parentGroup);
+                    for (String targetKey :
+                            getTargetsWithUnblockedPathToGrant(
+                                    service,
+                                    parentPrincipal,
+                                    owner,
+                                    activity,
+                                    targetKeys,
+                                    visitedGroups)) {
+                        if (!deniedTargetKeys.contains(targetKey)) {
+                            rslt.add(targetKey);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                // problem evaluating this path, but permission may be
+                // granted by an unbroken portion of the group structure
+                log.error("Error evaluating permissions of parent group [" + parentGroup + "]", e);
+            }
+        }
+
+        visitedGroups.put(principalAsGroupMember, rslt);
+        return rslt;
+    }
+
     private boolean hasUnblockedPathToGrantWithCache(
             IAuthorizationService service,
             IAuthorizationPrincipal principal,
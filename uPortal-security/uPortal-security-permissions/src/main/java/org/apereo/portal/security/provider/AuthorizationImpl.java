@@ -17,8 +17,11 @@ package org.apereo.portal.security.provider;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -434,32 +437,108 @@ public class AuthorizationImpl implements IAuthorizationService {
 
         String target = PermissionHelper.permissionTargetIdForPortletDefinition(portlet);
 
-        PortletLifecycleState state = portlet.getLifecycleState();
+        // Test the appropriate permission.
+        return doesPrincipalHavePermission(principal, owner, getBrowseActivity(portlet), target);
+    }
 
-        /*
-         * Each channel lifecycle state now has its own browse permission.  The
-         * following logic checks the appropriate permission for the lifecycle.
-         */
-        String permission;
+    @Override
+    public Set<IPortletDefinition> getBrowsablePortlets(
+            IAuthorizationPrincipal principal, Collection<IPortletDefinition> portlets) {
+        final Map<String, Map<String, IPortletDefinition>> targetsByActivity = new HashMap<>();
+        for (IPortletDefinition portlet : portlets) {
+            addPortletTarget(targetsByActivity, getBrowseActivity(portlet), portlet);
+        }
+        return getPermittedPortlets(principal, targetsByActivity);
+    }
+
+    @Override
+    public Set<IPortletDefinition> getSubscribablePortlets(
+            IAuthorizationPrincipal principal, Collection<IPortletDefinition> portlets) {
+        final Map<String, Map<String, IPortletDefinition>> targetsByActivity = new HashMap<>();
+        for (IPortletDefinition portlet : portlets) {
+            addPortletTarget(targetsByActivity, getSubscribeActivity(portlet), portlet);
+        }
+        return getPermittedPortlets(principal, targetsByActivity);
+    }
+
+    /**
+     * Each portlet lifecycle state has its own browse permission. Returns the activity that must be
+     * checked for the current lifecycle state of the portlet.
+     */
+    private String getBrowseActivity(IPortletDefinition portlet) {
+        PortletLifecycleState state = portlet.getLifecycleState();
         if (state.equals(PortletLifecycleState.PUBLISHED)
                 || state.equals(PortletLifecycleState.MAINTENANCE)) {
             // NB:  There is no separate BROWSE permission for MAINTENANCE
             // mode;  everyone simply sees the 'out of service' message
-            permission = IPermission.PORTLET_BROWSE_ACTIVITY;
+            return IPermission.PORTLET_BROWSE_ACTIVITY;
         } else if (state.equals(PortletLifecycleState.APPROVED)) {
-            permission = IPermission.PORTLET_BROWSE_APPROVED_ACTIVITY;
+            return IPermission.PORTLET_BROWSE_APPROVED_ACTIVITY;
         } else if (state.equals(PortletLifecycleState.CREATED)) {
-            permission = IPermission.PORTLET_BROWSE_CREATED_ACTIVITY;
+            return IPermission.PORTLET_BROWSE_CREATED_ACTIVITY;
         } else if (state.equals(PortletLifecycleState.EXPIRED)) {
-            permission = IPermission.PORTLET_BROWSE_EXPIRED_ACTIVITY;
+            return IPermission.PORTLET_BROWSE_EXPIRED_ACTIVITY;
         } else {
             throw new AuthorizationException(
                     "Unrecognized lifecycle state for channel "
                             + portlet.getPortletDefinitionId().getStringId());
         }
+    }
 
-        // Test the appropriate permission.
-        return doesPrincipalHavePermission(principal, owner, permission, target);
+    /**
+     * Each portlet lifecycle state has its own subscribe permission. Returns the activity that must
+     * be checked for the current lifecycle state of the portlet.
+     */
+    private String getSubscribeActivity(IPortletDefinition portlet) {
+        PortletLifecycleState state = portlet.getLifecycleState();
+        if (state.equals(PortletLifecycleState.PUBLISHED)
+                || state.equals(PortletLifecycleState.MAINTENANCE)) {
+            // NB:  There is no separate SUBSCRIBE permission for MAINTENANCE
+            // mode;  everyone simply sees the 'out of service' message
+            return IPermission.PORTLET_SUBSCRIBER_ACTIVITY;
+        } else if (state.equals(PortletLifecycleState.APPROVED)) {
+            return IPermission.PORTLET_SUBSCRIBER_APPROVED_ACTIVITY;
+        } else if (state.equals(PortletLifecycleState.CREATED)) {
+            return IPermission.PORTLET_SUBSCRIBER_CREATED_ACTIVITY;
+        } else if (state.equals(PortletLifecycleState.EXPIRED)) {
+            return IPermission.PORTLET_SUBSCRIBER_EXPIRED_ACTIVITY;
+        } else {
+            throw new AuthorizationException(
+                    "Unrecognized lifecycle state for channel "
+                            + portlet.getPortletDefinitionId().getStringId());
+        }
+    }
+
+    private void addPortletTarget(
+            Map<String, Map<String, IPortletDefinition>> targetsByActivity,
+            String activity,
+            IPortletDefinition portlet) {
+        Map<String, IPortletDefinition> targets = targetsByActivity.get(activity);
+        if (targets == null) {
+            targets = new LinkedHashMap<>();
+            targetsByActivity.put(activity, targets);
+        }
+        targets.put(PermissionHelper.permissionTargetIdForPortletDefinition(portlet), portlet);
+    }
+
+    /** Evaluates each group of portlet targets with a single bulk check of their activity. */
+    private Set<IPortletDefinition> getPermittedPortlets(
+            IAuthorizationPrincipal principal,
+            Map<String, Map<String, IPortletDefinition>> targetsByActivity) {
+        final Set<IPortletDefinition> rslt = new HashSet<>();
+        for (Map.Entry<String, Map<String, IPortletDefinition>> entry :
+                targetsByActivity.entrySet()) {
+            final Map<String, IPortletDefinition> targets = entry.getValue();
+            for (String target :
+                    getPermittedTargets(
+                            principal,
+                            IPermission.PORTAL_SUBSCRIBE,
+                            entry.getKey(),
+                            targets.keySet())) {
+                rslt.add(targets.get(target));
+            }
+        }
+        return rslt;
     }
 
     /**
@@ -486,31 +565,8 @@ public class AuthorizationImpl implements IAuthorizationService {
 
         String target = PermissionHelper.permissionTargetIdForPortletDefinition(portlet);
 
-        PortletLifecycleState state = portlet.getLifecycleState();
-
-        /*
-         * Each channel lifecycle state now has its own subscribe permission.  The
-         * following logic checks the appropriate permission for the lifecycle.
-         */
-        String permission;
-        if (state.equals(PortletLifecycleState.PUBLISHED)
-                || state.equals(PortletLifecycleState.MAINTENANCE)) {
-            // NB:  There is no separate SUBSCRIBE permission for MAINTENANCE
-            // mode;  everyone simply sees the 'out of service' message
-            permission = IPermission.PORTLET_SUBSCRIBER_ACTIVITY;
-        } else if (state.equals(PortletLifecycleState.APPROVED)) {
-            permission = IPermission.PORTLET_SUBSCRIBER_APPROVED_ACTIVITY;
-        } else if (state.equals(PortletLifecycleState.CREATED)) {
-            permission = IPermission.PORTLET_SUBSCRIBER_CREATED_ACTIVITY;
-        } else if (state.equals(PortletLifecycleState.EXPIRED)) {
-            permission = IPermission.PORTLET_SUBSCRIBER_EXPIRED_ACTIVITY;
-        } else {
-            throw new AuthorizationException(
-                    "Unrecognized lifecycle state for channel " + portletDefinitionId);
-        }
-
         // Test the appropriate permission.
-        return doesPrincipalHavePermission(principal, owner, permission, target);
+        return doesPrincipalHavePermission(principal, owner, getSubscribeActivity(portlet), target);
     }
 
     /**
@@ -556,16 +612,7 @@ public class AuthorizationImpl implements IAuthorizationService {
             IPermissionPolicy policy)
             throws AuthorizationException {
 
-        final CacheKeyBuilder<Serializable, Serializable> cacheKeyBuilder =
-                CacheKey.builder(AuthorizationImpl.class.getName());
-        final String username = principal.getKey();
-        if (IPerson.class.equals(principal.getType())) {
-            cacheKeyBuilder.addTag(UsernameTaggedCacheEntryPurger.createCacheEntryTag(username));
-        }
-        cacheKeyBuilder.addAll(
-                policy.getClass(), username, principal.getType(), owner, activity, target);
-
-        final CacheKey key = cacheKeyBuilder.build();
+        final CacheKey key = createPermissionCacheKey(principal, owner, activity, target, policy);
 
         final Element element = this.doesPrincipalHavePermissionCache.get(key);
         if (element != null) {
@@ -607,19 +654,7 @@ public class AuthorizationImpl implements IAuthorizationService {
              * We need to log a WARNing, but this method is invoked a lot, and we don't want to do
              * it incessantly.
              */
-            final Long now = System.currentTimeMillis();
-            final String missingDataTrackerKey = owner + ":" + activity;
-            final Long lastLogMessageTime = missingDataLogTracker.get(missingDataTrackerKey);
-            if (lastLogMessageTime == null
-                    || lastLogMessageTime < now - MISSING_DATA_LOG_PERIOD_MILLIS) {
-                logger.warn(
-                        "Activity '{}' is not defined for owner '{}';  only admins will be "
-                                + "able to access this function;  this warning usually means that expected data "
-                                + "was not imported",
-                        activity,
-                        owner);
-                missingDataLogTracker.put(missingDataTrackerKey, now);
-            }
+            logMissingActivity(owner, activity);
             // This pass becomes a check for superuser (Portal Administrators)
             rslt =
                     doesPrincipalHavePermission(
@@ -635,6 +670,131 @@ public class AuthorizationImpl implements IAuthorizationService {
         return rslt;
     }
 
+    /**
+     * Answers which of the targets the owner has given the principal permission to perform the
+     * activity on, as evaluated by the default policy. Answers already present in the permission
+     * cache are reused; the remaining targets are handed to the policy together so the principal's
+     * groups and permissions are resolved once, and the answers are then added to the cache for
+     * subsequent single-target checks.
+     *
+     * @return The permitted subset of the targets, never null
+     * @param principal IAuthorizationPrincipal
+     * @param owner java.lang.String
+     * @param activity java.lang.String
+     * @param targets the target strings to check
+     * @exception AuthorizationException indicates authorization information could not be retrieved.
+     */
+    @Override
+    public Set<String> getPermittedTargets(
+            IAuthorizationPrincipal principal,
+            String owner,
+            String activity,
+            Collection<String> targets)
+            throws AuthorizationException {
+        final IPermissionPolicy policy = getDefaultPermissionPolicy();
+        final Set<String> rslt = new HashSet<>();
+
+        final Map<String, CacheKey> uncachedTargets = new LinkedHashMap<>();
+        for (String target : targets) {
+            if (rslt.contains(target) || uncachedTargets.containsKey(target)) {
+                continue;
+            }
+            final CacheKey key =
+                    createPermissionCacheKey(principal, owner, activity, target, policy);
+            final Element element = this.doesPrincipalHavePermissionCache.get(key);
+            if (element == null) {
+                uncachedTargets.put(target, key);
+            } else if ((Boolean) element.getValue()) {
+                rslt.add(target);
+            }
+        }
+        if (uncachedTargets.isEmpty()) {
+            return rslt;
+        }
+
+        final Set<String> permittedTargets = new HashSet<>();
+        final IPermissionActivity ipActivity =
+                permissionOwnerDao.getPermissionActivity(owner, activity);
+        if (ipActivity != null) {
+            final IPermissionOwner ipOwner = permissionOwnerDao.getPermissionOwner(owner);
+            final IPermissionTargetProvider targetProvider =
+                    targetProviderRegistry.getTargetProvider(ipActivity.getTargetProviderKey());
+            final Map<IPermissionTarget, String> ipTargets = new LinkedHashMap<>();
+            for (String target : uncachedTargets.keySet()) {
+                final IPermissionTarget ipTarget = targetProvider.getTarget(target);
+                if (ipTarget != null) {
+                    ipTargets.put(ipTarget, target);
+                }
+            }
+            for (IPermissionTarget ipTarget :
+                    policy.getPermittedTargets(
+                            this, principal, ipOwner, ipActivity, ipTargets.keySet())) {
+                permittedTargets.add(ipTargets.get(ipTarget));
+            }
+        } else {
+            // Same as doesPrincipalHavePermission:  only superusers may perform unknown activities
+            logMissingActivity(owner, activity);
+            if (doesPrincipalHavePermission(
+                    principal,
+                    IPermission.PORTAL_SYSTEM,
+                    IPermission.ALL_PERMISSIONS_ACTIVITY,
+                    IPermission.ALL_TARGET,
+                    policy)) {
+                permittedTargets.addAll(uncachedTargets.keySet());
+            }
+        }
+
+        for (Map.Entry<String, CacheKey> entry : uncachedTargets.entrySet()) {
+            final boolean permitted = permittedTargets.contains(entry.getKey());
+            this.doesPrincipalHavePermissionCache.put(new Element(entry.getValue(), permitted));
+            if (permitted) {
+                rslt.add(entry.getKey());
+            }
+        }
+
+        return rslt;
+    }
+
+    private CacheKey createPermissionCacheKey(
+            IAuthorizationPrincipal principal,
+            String owner,
+            String activity,
+            String target,
+            IPermissionPolicy policy) {
+        final CacheKeyBuilder<Serializable, Serializable> cacheKeyBuilder =
+                CacheKey.builder(AuthorizationImpl.class.getName());
+        final String username = principal.getKey();
+        if (IPerson.class.equals(principal.getType())) {
+            cacheKeyBuilder.addTag(UsernameTaggedCacheEntryPurger.createCacheEntryTag(username));
+        }
+        cacheKeyBuilder.addAll(
+                policy.getClass(), username, principal.getType(), owner, activity, target);
+
+        return cacheKeyBuilder.build();
+    }
+
+    /**
+     * The activity is not defined for the owner. This circumstance means that a piece of the
+     * fundamental Permissions data expected by the code is missing in the database, see {@link
+     * #doesPrincipalHavePermission(IAuthorizationPrincipal, String, String, String,
+     * IPermissionPolicy)}. Logs a WARNing, but not incessantly.
+     */
+    private void logMissingActivity(String owner, String activity) {
+        final Long now = System.currentTimeMillis();
+        final String missingDataTrackerKey = owner + ":" + activity;
+        final Long lastLogMessageTime = missingDataLogTracker.get(missingDataTrackerKey);
+        if (lastLogMessageTime == null
+                || lastLogMessageTime < now - MISSING_DATA_LOG_PERIOD_MILLIS) {
+            logger.warn(
+                    "Activity '{}' is not defined for owner '{}';  only admins will be "
+                            + "able to access this function;  this warning usually means that expected data "
+                            + "was not imported",
+                    activity,
+                    owner);
+            missingDataLogTracker.put(missingDataTrackerKey, now);
+        }
+    }
+
     /**
      * Returns the <code>IPermissions</code> owner has granted this <code>Principal</code> for the
      * specified activity and target. Null parameters will be ignored, that is, all <code>
@@ -0,0 +1,139 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.jpa;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import org.apereo.portal.jpa.BasePortalJpaDao.PortalTransactional;
+import org.apereo.portal.utils.JdbcUtils;
+import org.apereo.portal.version.VersionUtils;
+import org.apereo.portal.version.om.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.stereotype.Component;
+
+/**
+ * Update the portal db from 4.1.0. Creates the group closure tables of RDBMGroupClosureStore, which
+ * are defined in tables.xml and so only created by a db init. A closure table created before
+ * SERVICE_NAME was part of its primary key is dropped and created again, the closure is rebuilt
+ * from UP_GROUP_MEMBERSHIP the first time it is read.
+ */
+@Component
+public class Version410PortalDatabaseUpdateHelper implements IVersionedDatabaseUpdateHelper {
+    static final String CLOSURE_TABLE = "UP_GROUP_CLOSURE";
+    static final String LOCK_TABLE = "UP_GROUP_CLOSURE_LOCK";
+    static final String SERVICE_COLUMN = "SERVICE_NAME";
+
+    static final String[] CREATE_CLOSURE_SQL = {
+        "CREATE TABLE "
+                + CLOSURE_TABLE
+                + " (ANCESTOR_ID VARCHAR(200) NOT NULL, DESCENDANT_ID VARCHAR(200) NOT NULL,"
+                + " DEPTH INTEGER NOT NULL, SERVICE_NAME VARCHAR(80) NOT NULL,"
+                + " PRIMARY KEY (ANCESTOR_ID, DESCENDANT_ID, SERVICE_NAME))",
+        "CREATE INDEX UPGC_DESCENDANT_IDX ON " + CLOSURE_TABLE + " (DESCENDANT_ID)",
+        "CREATE INDEX UPGC_SERVICE_IDX ON " + CLOSURE_TABLE + " (SERVICE_NAME)"
+    };
+    static final String CREATE_LOCK_SQL =
+            "CREATE TABLE "
+                    + LOCK_TABLE
+                    + " (SERVICE_NAME VARCHAR(80) NOT NULL, VERSION INTEGER NOT NULL,"
+                    + " PRIMARY KEY (SERVICE_NAME))";
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Version version = VersionUtils.parseVersion("4.1.0");
+
+    private JdbcOperations jdbcOperations;
+
+    @Autowired
+    @Qualifier(BasePortalJpaDao.PERSISTENCE_UNIT_NAME)
+    public void setJdbcOperations(JdbcOperations jdbcOperations) {
+        this.jdbcOperations = jdbcOperations;
+    }
+
+    @Override
+    public String getDatabaseName() {
+        return BasePortalJpaDao.PERSISTENCE_UNIT_NAME;
+    }
+
+    @Override
+    public Version getVersion() {
+        return version;
+    }
+
+    @Override
+    public void preUpdate() {}
+
+    @PortalTransactional
+    @Override
+    public void postUpdate() {
+        if (JdbcUtils.doesTableExist(this.jdbcOperations, CLOSURE_TABLE)) {
+            if (isServiceInPrimaryKey()) {
+                logger.info("{} already exists", CLOSURE_TABLE);
+            } else {
+                logger.info(
+                        "Creating {} again with {} in the primary key",
+                        CLOSURE_TABLE,
+                        SERVICE_COLUMN);
+                JdbcUtils.dropTableIfExists(this.jdbcOperations, CLOSURE_TABLE);
+                this.jdbcOperations.batchUpdate(CREATE_CLOSURE_SQL);
+            }
+        } else {
+            logger.info("Creating {}", CLOSURE_TABLE);
+            this.jdbcOperations.batchUpdate(CREATE_CLOSURE_SQL);
+        }
+
+        if (JdbcUtils.doesTableExist(this.jdbcOperations, LOCK_TABLE)) {
+            logger.info("{} already exists", LOCK_TABLE);
+        } else {
+            logger.info("Creating {}", LOCK_TABLE);
+            this.jdbcOperations.execute(CREATE_LOCK_SQL);
+        }
+    }
+
+    /** @return true if SERVICE_NAME is a column of the primary key of UP_GROUP_CLOSURE */
+    private boolean isServiceInPrimaryKey() {
+        return this.jdbcOperations.execute(
+                new ConnectionCallback<Boolean>() {
+                    @Override
+                    public Boolean doInConnection(Connection con)
+                            throws SQLException, DataAccessException {
+                        final DatabaseMetaData metaData = con.getMetaData();
+                        for (final String tableName :
+                                new String[] {CLOSURE_TABLE, CLOSURE_TABLE.toLowerCase()}) {
+                            final ResultSet keys = metaData.getPrimaryKeys(null, null, tableName);
+                            try {
+                                while (keys.next()) {
+                                    if (SERVICE_COLUMN.equalsIgnoreCase(
+                                            keys.getString("COLUMN_NAME"))) {
+                                        return true;
+                                    }
+                                }
+                            } finally {
+                                keys.close();
+                            }
+                        }
+                        return false;
+                    }
+                });
+    }
+}
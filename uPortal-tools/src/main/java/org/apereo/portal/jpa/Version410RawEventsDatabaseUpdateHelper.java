@@ -0,0 +1,132 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.jpa;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import org.apereo.portal.jpa.BaseRawEventsJpaDao.RawEventsTransactional;
+import org.apereo.portal.version.VersionUtils;
+import org.apereo.portal.version.om.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.stereotype.Component;
+
+/**
+ * Update the raw events db from 4.1.0. The hibernate update adds the EVENT_BINARY column but
+ * doesn't change the nullability of existing columns, this drops the NOT NULL constraint from
+ * EVENT_DATA so raw events can be stored with only the binary encoding.
+ */
+@Component
+public class Version410RawEventsDatabaseUpdateHelper implements IVersionedDatabaseUpdateHelper {
+    static final String TABLE_NAME = "UP_RAW_EVENTS";
+    static final String COLUMN_NAME = "EVENT_DATA";
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Version version = VersionUtils.parseVersion("4.1.0");
+
+    private JdbcOperations jdbcOperations;
+
+    @Autowired
+    @Qualifier(BaseRawEventsJpaDao.PERSISTENCE_UNIT_NAME)
+    public void setJdbcOperations(JdbcOperations jdbcOperations) {
+        this.jdbcOperations = jdbcOperations;
+    }
+
+    @Override
+    public String getDatabaseName() {
+        return BaseRawEventsJpaDao.PERSISTENCE_UNIT_NAME;
+    }
+
+    @Override
+    public Version getVersion() {
+        return version;
+    }
+
+    @Override
+    public void preUpdate() {}
+
+    @RawEventsTransactional
+    @Override
+    public void postUpdate() {
+        final String alterSql =
+                this.jdbcOperations.execute(
+                        new ConnectionCallback<String>() {
+                            @Override
+                            public String doInConnection(Connection con)
+                                    throws SQLException, DataAccessException {
+                                final DatabaseMetaData metaData = con.getMetaData();
+                                if (!isNotNull(metaData)) {
+                                    return null;
+                                }
+                                return getAlterSql(metaData.getDatabaseProductName());
+                            }
+                        });
+
+        if (alterSql == null) {
+            logger.info("{}.{} already allows null values", TABLE_NAME, COLUMN_NAME);
+            return;
+        }
+
+        logger.info("Allowing null values in {}.{}: {}", TABLE_NAME, COLUMN_NAME, alterSql);
+        this.jdbcOperations.execute(alterSql);
+    }
+
+    /** @return true if the EVENT_DATA column exists and does not allow null values */
+    private boolean isNotNull(DatabaseMetaData metaData) throws SQLException {
+        for (final String tableName : new String[] {TABLE_NAME, TABLE_NAME.toLowerCase()}) {
+            final ResultSet columns = metaData.getColumns(null, null, tableName, null);
+            try {
+                while (columns.next()) {
+                    if (COLUMN_NAME.equalsIgnoreCase(columns.getString("COLUMN_NAME"))) {
+                        return columns.getInt("NULLABLE") == DatabaseMetaData.columnNoNulls;
+                    }
+                }
+            } finally {
+                columns.close();
+            }
+        }
+
+        return false;
+    }
+
+    /** @return The DDL that drops the NOT NULL constraint from EVENT_DATA on the named database */
+    static String getAlterSql(String databaseProductName) {
+        final String product = databaseProductName.toLowerCase();
+        final String alterTable = "ALTER TABLE " + TABLE_NAME + " ";
+        if (product.contains("mysql") || product.contains("mariadb")) {
+            return alterTable + "MODIFY " + COLUMN_NAME + " LONGTEXT NULL";
+        }
+        if (product.contains("oracle")) {
+            return alterTable + "MODIFY (" + COLUMN_NAME + " NULL)";
+        }
+        if (product.contains("microsoft")) {
+            return alterTable + "ALTER COLUMN " + COLUMN_NAME + " NVARCHAR(MAX) NULL";
+        }
+        if (product.contains("hsql")) {
+            return alterTable + "ALTER COLUMN " + COLUMN_NAME + " SET NULL";
+        }
+
+        // PostgreSQL, DB2 and the SQL standard
+        return alterTable + "ALTER COLUMN " + COLUMN_NAME + " DROP NOT NULL";
+    }
+}
@@ -14,6 +14,9 @@
  */
 package org.apereo.portal.tools.dbloader;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -21,28 +24,51 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang.ArrayUtils;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.StatementCreatorUtils;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionOperations;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
-/** Generates and executes SQL INSERT statements as the data XML document is parsed. */
+/**
+ * Generates and executes SQL INSERT statements as the data XML document is parsed. Consecutive rows
+ * of a table that set the same columns are executed as one JDBC batch, each batch is committed in
+ * its own transaction.
+ */
 public class DataXmlHandler extends BaseDbXmlHandler {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
     private final JdbcOperations jdbcOperations;
     private final TransactionOperations transactionOperations;
     private final Map<String, Map<String, Integer>> tableColumnInfo;
+    private final int batchSize;
     private final List<String> script = new LinkedList<String>();
 
     public DataXmlHandler(
             JdbcOperations jdbcOperations,
             TransactionOperations transactionOperations,
             Map<String, Map<String, Integer>> tableColumnTypes) {
+        this(jdbcOperations, transactionOperations, tableColumnTypes, DEFAULT_BATCH_SIZE);
+    }
+
+    /** @param batchSize Maximum number of rows executed in one batch, 1 disables batching */
+    public DataXmlHandler(
+            JdbcOperations jdbcOperations,
+            TransactionOperations transactionOperations,
+            Map<String, Map<String, Integer>> tableColumnTypes,
+            int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1: " + batchSize);
+        }
         this.jdbcOperations = jdbcOperations;
         this.transactionOperations = transactionOperations;
         this.tableColumnInfo = tableColumnTypes;
+        this.batchSize = batchSize;
     }
 
     public List<String> getScript() {
@@ -54,6 +80,15 @@ public class DataXmlHandler extends BaseDbXmlHandler {
     private String currentValue = null;
     private Map<String, String> rowData;
 
+    // Rows waiting to be executed, all use batchSql and batchTypes
+    private List<Object[]> batchValues = new ArrayList<Object[]>();
+    private String batchSql = null;
+    private int[] batchTypes = null;
+
+    // Statistics for the current table
+    private long tableStart;
+    private int tableRows;
+
     /* (non-Javadoc)
      * @see org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String, java.lang.String, java.lang.String, org.xml.sax.Attributes)
      */
@@ -77,6 +112,8 @@ public class DataXmlHandler extends BaseDbXmlHandler {
 
             if (this.currentTable == null) {
                 this.currentTable = itemName;
+                this.tableStart = System.nanoTime();
+                this.tableRows = 0;
             } else if (this.currentColumn == null) {
                 this.currentColumn = itemName;
             }
@@ -90,12 +127,22 @@ public class DataXmlHandler extends BaseDbXmlHandler {
             this.doInsert();
             this.rowData = null;
         } else if ("table".equals(name)) {
+            this.executeBatch();
+            this.logTableStatistics();
             this.currentTable = null;
         }
 
         this.chars = null;
     }
 
+    /* (non-Javadoc)
+     * @see org.xml.sax.helpers.DefaultHandler#endDocument()
+     */
+    @Override
+    public void endDocument() throws SAXException {
+        this.executeBatch();
+    }
+
     protected final void doInsert() {
         if (this.rowData.size() == 0) {
             this.logger.warn(
@@ -139,8 +186,8 @@ public class DataXmlHandler extends BaseDbXmlHandler {
                         + ") VALUES ("
                         + parameters
                         + ")";
-        if (this.logger.isInfoEnabled()) {
-            this.logger.info(
+        if (this.logger.isDebugEnabled()) {
+            this.logger.debug(
                     sql
                             + "\t"
                             + Arrays.asList(values)
@@ -148,12 +195,78 @@ public class DataXmlHandler extends BaseDbXmlHandler {
                             + Arrays.asList(ArrayUtils.toObject(types)));
         }
 
+        // Rows can only share a batch if they set the same columns
+        if (!sql.equals(this.batchSql) || !Arrays.equals(types, this.batchTypes)) {
+            this.executeBatch();
+            this.batchSql = sql;
+            this.batchTypes = types;
+        }
+
+        this.batchValues.add(values);
+        this.tableRows++;
+        if (this.batchValues.size() >= this.batchSize) {
+            this.executeBatch();
+        }
+    }
+
+    /** Execute and commit the pending rows */
+    protected final void executeBatch() {
+        if (this.batchValues.isEmpty()) {
+            return;
+        }
+
+        final String sql = this.batchSql;
+        final int[] types = this.batchTypes;
+        final List<Object[]> rows = this.batchValues;
+        this.batchValues = new ArrayList<Object[]>();
+
         this.transactionOperations.execute(
                 new TransactionCallbackWithoutResult() {
                     @Override
                     protected void doInTransactionWithoutResult(TransactionStatus status) {
-                        jdbcOperations.update(sql, values, types);
+                        if (rows.size() == 1) {
+                            jdbcOperations.update(sql, rows.get(0), types);
+                            return;
+                        }
+
+                        jdbcOperations.batchUpdate(
+                                sql,
+                                new BatchPreparedStatementSetter() {
+                                    @Override
+                                    public void setValues(PreparedStatement ps, int i)
+                                            throws SQLException {
+                                        final Object[] values = rows.get(i);
+                                        for (int index = 0; index < values.length; index++) {
+                                            StatementCreatorUtils.setParameterValue(
+                                                    ps, index + 1, types[index], values[index]);
+                                        }
+                                    }
+
+                                    @Override
+                                    public int getBatchSize() {
+                                        return rows.size();
+                                    }
+                                });
                     }
                 });
     }
+
+    private void logTableStatistics() {
+        if (this.tableRows == 0 || !this.logger.isInfoEnabled()) {
+            return;
+        }
+
+        final long elapsedNanos = Math.max(1, System.nanoTime() - this.tableStart);
+        final long rowsPerSecond = this.tableRows * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        this.logger.info(
+                "Inserted "
+                        + this.tableRows
+                        + " rows into "
+                        + this.currentTable
+                        + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(elapsedNanos)
+                        + "ms ("
+                        + rowsPerSecond
+                        + " rows/s)");
+    }
 }
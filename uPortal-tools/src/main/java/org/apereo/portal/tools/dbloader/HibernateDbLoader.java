@@ -45,6 +45,7 @@ import org.hibernate.mapping.Table;
 import org.hibernate.mapping.UniqueKey;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ResourceLoaderAware;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.Lazy;
@@ -78,6 +79,7 @@ public class HibernateDbLoader
     private JdbcOperations jdbcOperations;
     private TransactionOperations transactionOperations;
     private ResourceLoader resourceLoader;
+    private int batchSize = DataXmlHandler.DEFAULT_BATCH_SIZE;
 
     @Autowired
     public void setJdbcOperations(
@@ -92,6 +94,12 @@ public class HibernateDbLoader
         this.transactionOperations = transactionOperations;
     }
 
+    /** Maximum number of data rows inserted with one JDBC batch, 1 inserts rows one at a time */
+    @Value("${org.apereo.portal.tools.dbloader.HibernateDbLoader.batchSize:500}")
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
     @Override
     public boolean supports(String persistenceUnit) {
         return BasePortalJpaDao.PERSISTENCE_UNIT_NAME.equals(persistenceUnit);
@@ -322,7 +330,8 @@ public class HibernateDbLoader
         // Setup parser with custom handler to generate Table model and parse
         final SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
         final DataXmlHandler dh =
-                new DataXmlHandler(jdbcOperations, transactionOperations, tableColumnTypes);
+                new DataXmlHandler(
+                        jdbcOperations, transactionOperations, tableColumnTypes, this.batchSize);
         saxParser.parse(new InputSource(dataFile.getInputStream()), dh);
     }
 }
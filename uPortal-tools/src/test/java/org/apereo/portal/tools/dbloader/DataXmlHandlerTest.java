@@ -0,0 +1,140 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.tools.dbloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.io.StringReader;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.SAXParserFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+import org.xml.sax.InputSource;
+
+public class DataXmlHandlerTest {
+    private static final String INSERT_NAME_VALUE =
+            "INSERT INTO UP_SEQUENCE (SEQUENCE_NAME, SEQUENCE_VALUE) VALUES (?, ?)";
+    private static final int[] NAME_VALUE_TYPES = new int[] {Types.VARCHAR, Types.INTEGER};
+
+    private JdbcOperations jdbcOperations;
+    private TransactionOperations transactionOperations;
+    private Map<String, Map<String, Integer>> tableColumnTypes;
+
+    @Before
+    public void setup() {
+        this.jdbcOperations = mock(JdbcOperations.class);
+        this.transactionOperations =
+                new TransactionOperations() {
+                    @Override
+                    public <T> T execute(TransactionCallback<T> action)
+                            throws TransactionException {
+                        return action.doInTransaction(null);
+                    }
+                };
+
+        final Map<String, Integer> columnTypes = new HashMap<String, Integer>();
+        columnTypes.put("SEQUENCE_NAME", Types.VARCHAR);
+        columnTypes.put("SEQUENCE_VALUE", Types.INTEGER);
+        this.tableColumnTypes = new HashMap<String, Map<String, Integer>>();
+        this.tableColumnTypes.put("UP_SEQUENCE", columnTypes);
+    }
+
+    @Test
+    public void testRowsBatched() throws Exception {
+        this.parse(
+                2, row("A", "1") + row("B", "2") + row("C", "3") + row("D", "4") + row("E", "5"));
+
+        final ArgumentCaptor<BatchPreparedStatementSetter> setters =
+                ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+        verify(this.jdbcOperations, times(2)).batchUpdate(eq(INSERT_NAME_VALUE), setters.capture());
+        final List<BatchPreparedStatementSetter> batches = setters.getAllValues();
+        assertEquals(2, batches.get(0).getBatchSize());
+        assertEquals(2, batches.get(1).getBatchSize());
+
+        // The remaining single row is inserted without a batch
+        verify(this.jdbcOperations)
+                .update(INSERT_NAME_VALUE, new Object[] {"E", "5"}, NAME_VALUE_TYPES);
+        verifyNoMoreInteractions(this.jdbcOperations);
+    }
+
+    @Test
+    public void testColumnChangeSplitsBatch() throws Exception {
+        this.parse(
+                10,
+                row("A", "1")
+                        + row("B", "2")
+                        + "<row><column><name>SEQUENCE_NAME</name><value>C</value></column></row>"
+                        + row("D", "4"));
+
+        final ArgumentCaptor<BatchPreparedStatementSetter> setters =
+                ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+        verify(this.jdbcOperations).batchUpdate(eq(INSERT_NAME_VALUE), setters.capture());
+        assertEquals(2, setters.getValue().getBatchSize());
+        verify(this.jdbcOperations)
+                .update(
+                        "INSERT INTO UP_SEQUENCE (SEQUENCE_NAME) VALUES (?)",
+                        new Object[] {"C"},
+                        new int[] {Types.VARCHAR});
+        verify(this.jdbcOperations)
+                .update(INSERT_NAME_VALUE, new Object[] {"D", "4"}, NAME_VALUE_TYPES);
+        verifyNoMoreInteractions(this.jdbcOperations);
+    }
+
+    @Test
+    public void testBatchingDisabled() throws Exception {
+        this.parse(1, row("A", "1") + row("B", "2"));
+
+        verify(this.jdbcOperations, times(2))
+                .update(eq(INSERT_NAME_VALUE), any(Object[].class), eq(NAME_VALUE_TYPES));
+        verifyNoMoreInteractions(this.jdbcOperations);
+    }
+
+    private void parse(int batchSize, String rows) throws Exception {
+        final String data =
+                "<data><table><name>UP_SEQUENCE</name><rows>" + rows + "</rows></table></data>";
+        final DataXmlHandler handler =
+                new DataXmlHandler(
+                        this.jdbcOperations,
+                        this.transactionOperations,
+                        this.tableColumnTypes,
+                        batchSize);
+        SAXParserFactory.newInstance()
+                .newSAXParser()
+                .parse(new InputSource(new StringReader(data)), handler);
+    }
+
+    private static String row(String name, String value) {
+        return "<row><column><name>SEQUENCE_NAME</name><value>"
+                + name
+                + "</value></column><column><name>SEQUENCE_VALUE</name><value>"
+                + value
+                + "</value></column></row>";
+    }
+}
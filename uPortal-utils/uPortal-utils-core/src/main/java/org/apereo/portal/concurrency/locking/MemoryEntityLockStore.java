@@ -16,25 +16,52 @@ package org.apereo.portal.concurrency.locking;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apereo.portal.concurrency.IEntityLock;
 import org.apereo.portal.concurrency.LockingException;
-import org.apereo.portal.utils.SmartCache;
 
-/** In-memory store for <code>IEntityLocks</code>. */
+/**
+ * In-memory store for <code>IEntityLocks</code>.
+ *
+ * <p>Locks are kept in a {@link ConcurrentHashMap} per entity type, keyed by entity key and lock
+ * owner. Entries are immutable and every state transition (add, update, delete, expire) is a single
+ * atomic map operation, so no monitor is held while reading or writing the store. A lock is only
+ * stored while at least one whole second of its lifetime remains and is treated as gone once that
+ * (truncated) interval has elapsed, matching the previous <code>SmartCache</code> based behavior.
+ *
+ * <p>Expired entries are reclaimed through a timer wheel with one slot per second. Each stored
+ * entry is scheduled in the slot for the second after it expires; the wheel is advanced by
+ * whichever caller first observes that the clock has moved to a new second, so each entry is
+ * visited once per revolution of the wheel.
+ */
 public class MemoryEntityLockStore implements IEntityLockStore {
+    /** Number of one second slots in the expiry wheel. */
+    private static final int WHEEL_SLOTS = 512;
+
     private static IEntityLockStore singleton;
 
-    // The lock store is a Map that contains a SmartCache for each entity type:
-    private Map lockCache;
+    // The lock store contains a Map of locks for each entity type:
+    private volatile ConcurrentMap<Class, ConcurrentMap<String, LockEntry>> lockCache;
+
+    private final Queue<ExpiryTask>[] expiryWheel;
+    private final AtomicLong sweptThroughSecond;
 
     /** MemoryEntityLockStore constructor comment. */
+    @SuppressWarnings("unchecked")
     public MemoryEntityLockStore() {
         super();
+        expiryWheel = new Queue[WHEEL_SLOTS];
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            expiryWheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        sweptThroughSecond = new AtomicLong(System.currentTimeMillis() / 1000);
         initializeCache();
     }
 
@@ -45,7 +72,17 @@ public class MemoryEntityLockStore implements IEntityLockStore {
      */
     @Override
     public void add(IEntityLock lock) throws LockingException {
-        primAdd(lock, lock.getExpirationTime());
+        final long now = System.currentTimeMillis();
+        expireEntries(now);
+
+        final LockEntry entry = newLockEntry(lock, lock.getExpirationTime(), now);
+        if (entry != null) {
+            final ConcurrentMap<String, LockEntry> locks = getLockCache(lock.getEntityType());
+            final String key = getCacheKey(lock);
+            locks.put(key, entry);
+            scheduleExpiry(locks, key, entry);
+        }
+        // Else the lock has already expired.
     }
 
     /**
@@ -55,15 +92,15 @@ public class MemoryEntityLockStore implements IEntityLockStore {
      */
     @Override
     public void delete(IEntityLock lock) throws LockingException {
-        Map m = getLockCache(lock.getEntityType());
-        synchronized (m) {
-            m.remove(getCacheKey(lock));
-        }
+        getLockCache(lock.getEntityType()).remove(getCacheKey(lock));
     }
 
     @Override
     public void deleteAll() {
         initializeCache();
+        for (Queue<ExpiryTask> slot : expiryWheel) {
+            slot.clear();
+        }
     }
 
     /**
@@ -73,7 +110,8 @@ public class MemoryEntityLockStore implements IEntityLockStore {
      */
     @Override
     public void deleteExpired(java.util.Date expiration) throws LockingException {
-        // let SmartCache handle it.
+        // Expired locks are never returned from the store, advancing the wheel reclaims them.
+        expireEntries(System.currentTimeMillis());
     }
 
     /**
@@ -97,40 +135,29 @@ public class MemoryEntityLockStore implements IEntityLockStore {
             java.util.Date expiration,
             String lockOwner)
             throws LockingException {
-        List locks = new ArrayList();
-        Map cache = null;
-        Collection caches = null;
-        Iterator cacheIterator = null;
-        Iterator cacheKeyIterator = null;
-        Iterator keyIterator = null;
-        IEntityLock lock = null;
+        final long now = System.currentTimeMillis();
+        expireEntries(now);
 
+        final Collection<ConcurrentMap<String, LockEntry>> caches;
         if (entityType == null) {
             caches = getLockCache().values();
         } else {
-            caches = new ArrayList(1);
-            caches.add(getLockCache(entityType));
+            final ConcurrentMap<String, LockEntry> cache = getLockCache().get(entityType);
+            if (cache == null) {
+                return new IEntityLock[0];
+            }
+            caches = Collections.singletonList(cache);
         }
 
-        cacheIterator = caches.iterator();
-        while (cacheIterator.hasNext()) {
-            cache = (Map) cacheIterator.next();
-            cacheKeyIterator = cache.keySet().iterator();
-            List keys = new ArrayList();
-
-            // Synchronize on the cache only while collecting its keys.  There is some
-            // exposure here.
-            synchronized (cache) {
-                while (cacheKeyIterator.hasNext()) {
-                    keys.add(cacheKeyIterator.next());
+        final List<IEntityLock> locks = new ArrayList<>();
+        for (ConcurrentMap<String, LockEntry> cache : caches) {
+            // Iteration over a ConcurrentHashMap is weakly consistent, no locking is required.
+            for (LockEntry entry : cache.values()) {
+                if (entry.isExpired(now)) {
+                    continue;
                 }
-            }
-
-            keyIterator = keys.iterator();
-            while (keyIterator.hasNext()) {
-                lock = getLockFromCache(keyIterator.next(), cache);
-                if ((lock != null)
-                        && ((entityKey == null) || (entityKey.equals(lock.getEntityKey())))
+                final IEntityLock lock = entry.lock;
+                if (((entityKey == null) || (entityKey.equals(lock.getEntityKey())))
                         && ((lockType == null) || (lockType.intValue() == lock.getLockType()))
                         && ((lockOwner == null) || (lockOwner.equals(lock.getLockOwner())))
                         && ((expiration == null)
@@ -139,7 +166,7 @@ public class MemoryEntityLockStore implements IEntityLockStore {
                 }
             }
         }
-        return ((IEntityLock[]) locks.toArray(new IEntityLock[locks.size()]));
+        return locks.toArray(new IEntityLock[locks.size()]);
     }
 
     /**
@@ -149,18 +176,12 @@ public class MemoryEntityLockStore implements IEntityLockStore {
      * @return IEntityLock
      */
     public IEntityLock find(IEntityLock lock) throws LockingException {
-        IEntityLock foundLock = null;
-        Map m = getLockCache(lock.getEntityType());
-        foundLock = getLockFromCache(getCacheKey(lock), m);
-
-        if (foundLock != null) {
-            if (lock.getLockType() != foundLock.getLockType()
-                    || !lock.getExpirationTime().equals(foundLock.getExpirationTime())) {
-                foundLock = null;
-            }
-        }
-
-        return foundLock;
+        final LockEntry entry =
+                getLockFromCache(
+                        getCacheKey(lock),
+                        getLockCache(lock.getEntityType()),
+                        System.currentTimeMillis());
+        return entry != null && entry.matches(lock) ? entry.lock : null;
     }
 
     /**
@@ -185,13 +206,13 @@ public class MemoryEntityLockStore implements IEntityLockStore {
             String lockOwner)
             throws LockingException {
         IEntityLock[] locks = find(entityType, entityKey, lockType, null, lockOwner);
-        List lockAL = new ArrayList(locks.length);
+        List<IEntityLock> lockAL = new ArrayList<>(locks.length);
         for (int i = 0; i < locks.length; i++) {
             if (locks[i].getExpirationTime().after(expiration)) {
                 lockAL.add(locks[i]);
             }
         }
-        return ((IEntityLock[]) lockAL.toArray(new IEntityLock[lockAL.size()]));
+        return lockAL.toArray(new IEntityLock[lockAL.size()]);
     }
 
     /** @param lock org.apereo.portal.concurrency.locking.IEntityLock */
@@ -199,34 +220,36 @@ public class MemoryEntityLockStore implements IEntityLockStore {
         return lock.getEntityKey() + lock.getLockOwner();
     }
 
-    /** @return java.util.Map */
-    private java.util.Map getLockCache() {
+    private ConcurrentMap<Class, ConcurrentMap<String, LockEntry>> getLockCache() {
         return lockCache;
     }
 
-    /** @return java.util.Map */
-    private synchronized Map getLockCache(Class type) {
-        Map m = (Map) getLockCache().get(type);
+    private ConcurrentMap<String, LockEntry> getLockCache(Class type) {
+        final ConcurrentMap<Class, ConcurrentMap<String, LockEntry>> cache = getLockCache();
+        ConcurrentMap<String, LockEntry> m = cache.get(type);
         if (m == null) {
-            m = new SmartCache();
-            getLockCache().put(type, m);
+            m = new ConcurrentHashMap<>();
+            final ConcurrentMap<String, LockEntry> existing = cache.putIfAbsent(type, m);
+            if (existing != null) {
+                m = existing;
+            }
         }
         return m;
     }
 
-    private IEntityLock getLockFromCache(Object cacheKey, Map cache) {
-        synchronized (cache) {
-            return (IEntityLock) cache.get(cacheKey);
+    /** Returns the unexpired entry for the key, removing it from the cache if it has expired. */
+    private LockEntry getLockFromCache(
+            String cacheKey, ConcurrentMap<String, LockEntry> cache, long now) {
+        final LockEntry entry = cache.get(cacheKey);
+        if (entry != null && entry.isExpired(now)) {
+            cache.remove(cacheKey, entry);
+            return null;
         }
+        return entry;
     }
 
     private void initializeCache() {
-        lockCache = new HashMap(10);
-    }
-
-    /** @param newLockCache java.util.Map */
-    private void setLockCache(java.util.Map newLockCache) {
-        lockCache = newLockCache;
+        lockCache = new ConcurrentHashMap<>(10);
     }
 
     /** @return org.apereo.portal.concurrency.locking.IEntityLockStore */
@@ -247,8 +270,9 @@ public class MemoryEntityLockStore implements IEntityLockStore {
     }
 
     /**
-     * Make sure the store has a reference to the lock, and then add the lock to refresh the
-     * SmartCache wrapper.
+     * Make sure the store has a reference to the lock, and then replace its entry with one that
+     * expires at <code>newExpiration</code>. The replacement only succeeds if the entry that was
+     * checked is still the current one, a concurrent change causes the check to be repeated.
      *
      * @param lock org.apereo.portal.concurrency.locking.IEntityLock
      * @param newExpiration java.util.Date
@@ -257,30 +281,118 @@ public class MemoryEntityLockStore implements IEntityLockStore {
     @Override
     public void update(IEntityLock lock, java.util.Date newExpiration, Integer newLockType)
             throws LockingException {
-        if (find(lock) == null) {
-            throw new LockingException("Problem updating " + lock + " : not found in store.");
+        final long now = System.currentTimeMillis();
+        expireEntries(now);
+
+        final ConcurrentMap<String, LockEntry> locks = getLockCache(lock.getEntityType());
+        final String key = getCacheKey(lock);
+        while (true) {
+            final LockEntry current = getLockFromCache(key, locks, now);
+            if (current == null || !current.matches(lock)) {
+                throw new LockingException("Problem updating " + lock + " : not found in store.");
+            }
+
+            final LockEntry replacement = newLockEntry(lock, newExpiration, now);
+            if (replacement == null) {
+                // The new expiration has already passed, leave the current entry to expire.
+                return;
+            }
+            if (locks.replace(key, current, replacement)) {
+                scheduleExpiry(locks, key, replacement);
+                return;
+            }
         }
-        primAdd(lock, newExpiration);
     }
 
     /**
-     * Adds this IEntityLock to the store.
-     *
-     * @param lock
-     * @param expiration
+     * @return an entry for the lock that expires after the whole seconds remaining until <code>
+     *     expiration</code>, or null if less than a second remains.
      */
-    private void primAdd(IEntityLock lock, Date expiration) throws LockingException {
-        long now = System.currentTimeMillis();
-        long willExpire = expiration.getTime();
-        long cacheIntervalSecs = (willExpire - now) / 1000;
-
+    private LockEntry newLockEntry(IEntityLock lock, Date expiration, long now) {
+        final long cacheIntervalSecs = (expiration.getTime() - now) / 1000;
         if (cacheIntervalSecs > 0) {
-            SmartCache sc = (SmartCache) getLockCache(lock.getEntityType());
+            return new LockEntry(lock, now + cacheIntervalSecs * 1000);
+        }
+        return null;
+    }
+
+    /** Places the entry in the wheel slot for the first whole second after it expires. */
+    private void scheduleExpiry(
+            ConcurrentMap<String, LockEntry> locks, String key, LockEntry entry) {
+        final ExpiryTask task = new ExpiryTask(locks, key, entry);
+        expiryWheel[slotFor(task.dueSecond)].add(task);
+    }
+
+    /**
+     * Advances the wheel to the current second, removing the entries whose slots have come due.
+     * Only the caller that moves the wheel forward does the sweep, everyone else returns
+     * immediately.
+     */
+    private void expireEntries(long now) {
+        final long nowSecond = now / 1000;
+        final long swept = sweptThroughSecond.get();
+        if (swept >= nowSecond || !sweptThroughSecond.compareAndSet(swept, nowSecond)) {
+            return;
+        }
 
-            synchronized (sc) {
-                sc.put(getCacheKey(lock), lock, (cacheIntervalSecs));
+        // After a full revolution every slot has been visited, so never sweep more than that.
+        final long first = Math.max(swept + 1, nowSecond - WHEEL_SLOTS + 1);
+        final List<ExpiryTask> deferred = new ArrayList<>();
+        for (long second = first; second <= nowSecond; second++) {
+            final Queue<ExpiryTask> slot = expiryWheel[slotFor(second)];
+            ExpiryTask task;
+            while ((task = slot.poll()) != null) {
+                if (task.dueSecond <= nowSecond) {
+                    // Only removes the entry if it was not replaced or deleted in the meantime.
+                    task.locks.remove(task.key, task.entry);
+                } else {
+                    // Due in a later revolution of the wheel.
+                    deferred.add(task);
+                }
             }
         }
-        // Else the lock has already expired.
+        for (ExpiryTask task : deferred) {
+            expiryWheel[slotFor(task.dueSecond)].add(task);
+        }
+    }
+
+    private static int slotFor(long second) {
+        return (int) (second % WHEEL_SLOTS);
+    }
+
+    /** Immutable association of a lock with the time its store entry expires. */
+    private static final class LockEntry {
+        private final IEntityLock lock;
+        private final long expires;
+
+        private LockEntry(IEntityLock lock, long expires) {
+            this.lock = lock;
+            this.expires = expires;
+        }
+
+        private boolean isExpired(long now) {
+            return expires < now;
+        }
+
+        /** @return true if the stored lock has the lock type and expiration of the specified one */
+        private boolean matches(IEntityLock other) {
+            return other.getLockType() == lock.getLockType()
+                    && other.getExpirationTime().equals(lock.getExpirationTime());
+        }
+    }
+
+    /** Pending removal of a lock entry, queued in the expiry wheel. */
+    private static final class ExpiryTask {
+        private final ConcurrentMap<String, LockEntry> locks;
+        private final String key;
+        private final LockEntry entry;
+        private final long dueSecond;
+
+        private ExpiryTask(ConcurrentMap<String, LockEntry> locks, String key, LockEntry entry) {
+            this.locks = locks;
+            this.key = key;
+            this.entry = entry;
+            this.dueSecond = entry.expires / 1000 + 1;
+        }
     }
 }
@@ -19,6 +19,8 @@ import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.constructs.blocking.SelfPopulatingCache;
@@ -29,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 
@@ -40,6 +43,8 @@ public class CachingResourceLoaderImpl implements CachingResourceLoader {
     private final CachedResourceEntryFactory entryFactory = new CachedResourceEntryFactory();
 
     private long checkInterval = TimeUnit.MINUTES.toMillis(1);
+    private boolean watchFileResources = false;
+    private ResourceFileWatcher resourceFileWatcher;
 
     private Ehcache resourceCache;
     private ResourcesElementsProvider resourcesElementsProvider;
@@ -61,6 +66,43 @@ public class CachingResourceLoaderImpl implements CachingResourceLoader {
         this.checkInterval = checkInterval;
     }
 
+    /**
+     * Watch the directories of file system resources for changes instead of checking their
+     * lastModified time every check interval. Resources that are not files, for example those in
+     * jars, are still checked every interval. Defaults to false.
+     */
+    @Value(
+            "${org.apereo.portal.utils.cache.resource.CachingResourceLoaderImpl.watchFileResources:false}")
+    public void setWatchFileResources(boolean watchFileResources) {
+        this.watchFileResources = watchFileResources;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!this.watchFileResources) {
+            return;
+        }
+        try {
+            this.resourceFileWatcher = new ResourceFileWatcher(this.resourceCache);
+        } catch (IOException e) {
+            this.logger.warn(
+                    "Failed to create a WatchService, resources will be checked for changes every "
+                            + this.checkInterval
+                            + "ms",
+                    e);
+            return;
+        }
+        this.resourceFileWatcher.start();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (this.resourceFileWatcher != null) {
+            this.resourceFileWatcher.close();
+            this.resourceFileWatcher = null;
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.apereo.portal.utils.cache.CachingResourceLoader#getResource(org.springframework.core.io.Resource, org.apereo.portal.utils.cache.ResourceBuilder)
      */
@@ -95,6 +137,15 @@ public class CachingResourceLoaderImpl implements CachingResourceLoader {
             this.logger.trace("Found " + cachedResource + " in cache");
         }
 
+        // Watched resources are removed from the cache when they change, no need to check
+        final ResourceFileWatcher resourceFileWatcher = this.resourceFileWatcher;
+        if (resourceFileWatcher != null && resourceFileWatcher.isWatched(resource)) {
+            if (this.logger.isTraceEnabled()) {
+                this.logger.trace(cachedResource + " is watched for changes, returning");
+            }
+            return cachedResource;
+        }
+
         // Found it, now check if the last-load time is within the check interval
         final long lastCheckTime = cachedResource.getLastCheckTime();
         if (lastCheckTime + checkInterval >= System.currentTimeMillis()) {
@@ -121,11 +172,13 @@ public class CachingResourceLoaderImpl implements CachingResourceLoader {
             cachedResource.setLastCheckTime(System.currentTimeMillis());
             this.resourceCache.put(
                     element); // do a cache put to notify the cache the object has been modified
+            this.watchResource(cachedResource);
             return cachedResource;
         }
 
         // The resource has been modified, reload it.
         cachedResource = this.loadResource(resource, builder);
+        this.watchResource(cachedResource);
 
         // Cache the loaded resource
         this.resourceCache.put(new Element(resource, cachedResource));
@@ -189,6 +242,14 @@ public class CachingResourceLoaderImpl implements CachingResourceLoader {
         return 0;
     }
 
+    /** Start watching the files of the resource for changes if watching is enabled */
+    private void watchResource(CachedResource<?> cachedResource) {
+        final ResourceFileWatcher resourceFileWatcher = this.resourceFileWatcher;
+        if (resourceFileWatcher != null && resourceFileWatcher.watch(cachedResource)) {
+            this.logger.trace("Watching {} for changes", cachedResource);
+        }
+    }
+
     private <T> CachedResource<T> loadResource(Resource resource, Loader<T> builder)
             throws IOException {
         final long lastLoadTime = System.currentTimeMillis();
@@ -226,7 +287,10 @@ public class CachingResourceLoaderImpl implements CachingResourceLoader {
         @Override
         protected Object createEntry(Object key, GetResourceArguments<?> threadData)
                 throws Exception {
-            return loadResource(threadData.resource, threadData.builder);
+            final CachedResource<?> cachedResource =
+                    loadResource(threadData.resource, threadData.builder);
+            watchResource(cachedResource);
+            return cachedResource;
         }
     }
 }
@@ -0,0 +1,249 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.cache.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.sf.ehcache.Ehcache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+/**
+ * Watches the directories of file system resources loaded by the {@link CachingResourceLoaderImpl}.
+ * A cached resource whose main and additional resources are all files is marked as watched and no
+ * longer needs lastModified checks, when a change event arrives for one of its files it is removed
+ * from the resource cache so the next request reloads it. Resources that live in jars or are
+ * otherwise not files are never watched and keep being polled.
+ */
+class ResourceFileWatcher implements Runnable {
+    protected final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Ehcache resourceCache;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    private final ConcurrentMap<Path, WatchKey> watchedDirectories =
+            new ConcurrentHashMap<Path, WatchKey>();
+    private final ConcurrentMap<Path, Set<Resource>> dependentResources =
+            new ConcurrentHashMap<Path, Set<Resource>>();
+    private final ConcurrentMap<Path, Long> lastChangeTimes = new ConcurrentHashMap<Path, Long>();
+    private final Set<Resource> watchedResources =
+            Collections.newSetFromMap(new ConcurrentHashMap<Resource, Boolean>());
+
+    private volatile boolean running = true;
+
+    ResourceFileWatcher(Ehcache resourceCache) throws IOException {
+        this.resourceCache = resourceCache;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this, "ResourceFileWatcher-" + resourceCache.getName());
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.thread.start();
+    }
+
+    void close() {
+        this.running = false;
+        try {
+            this.watchService.close();
+        } catch (IOException e) {
+            this.logger.warn("Failed to close WatchService", e);
+        }
+    }
+
+    /** @return true if change events are delivered for every file the resource was loaded from */
+    boolean isWatched(Resource resource) {
+        return this.watchedResources.contains(resource);
+    }
+
+    /**
+     * Start watching the files the cached resource was loaded from.
+     *
+     * @return true if the resource is now watched, false if it must be polled for changes
+     */
+    boolean watch(CachedResource<?> cachedResource) {
+        final Resource resource = cachedResource.getResource();
+        final Map<Resource, Long> additionalResources = cachedResource.getAdditionalResources();
+
+        final List<Path> files = new ArrayList<Path>(1 + additionalResources.size());
+        if (!this.addFile(resource, files)) {
+            return false;
+        }
+        for (final Resource additionalResource : additionalResources.keySet()) {
+            if (!this.addFile(additionalResource, files)) {
+                return false;
+            }
+        }
+
+        boolean newDirectory = false;
+        for (final Path file : files) {
+            final Boolean registered = this.registerDirectory(file.getParent());
+            if (registered == null) {
+                return false;
+            }
+            newDirectory |= registered;
+            this.addDependentResource(file, resource);
+        }
+
+        // Changes made while the resource was loading were seen before the dependency existed
+        final long lastLoadTime = cachedResource.getLastLoadTime();
+        for (final Path file : files) {
+            final Long lastChangeTime = this.lastChangeTimes.get(file);
+            if (lastChangeTime != null && lastChangeTime >= lastLoadTime) {
+                return false;
+            }
+            // Nothing is reported for changes made before the directory was registered
+            if (newDirectory && file.toFile().lastModified() >= lastLoadTime) {
+                return false;
+            }
+        }
+
+        this.watchedResources.add(resource);
+        return true;
+    }
+
+    private boolean addFile(Resource resource, List<Path> files) {
+        final File file;
+        try {
+            file = resource.getFile();
+        } catch (IOException e) {
+            // Not resolvable to a file, for example a resource in a jar
+            return false;
+        }
+        final Path path = file.toPath().toAbsolutePath().normalize();
+        if (path.getParent() == null) {
+            return false;
+        }
+        files.add(path);
+        return true;
+    }
+
+    /**
+     * @return true if the directory was registered by this call, false if it already was, null if
+     *     it can not be watched
+     */
+    private Boolean registerDirectory(Path directory) {
+        if (this.watchedDirectories.containsKey(directory)) {
+            return Boolean.FALSE;
+        }
+
+        synchronized (this.watchedDirectories) {
+            if (this.watchedDirectories.containsKey(directory)) {
+                return Boolean.FALSE;
+            }
+            try {
+                final WatchKey watchKey =
+                        directory.register(
+                                this.watchService,
+                                StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_DELETE,
+                                StandardWatchEventKinds.ENTRY_MODIFY);
+                this.watchedDirectories.put(directory, watchKey);
+                this.logger.debug("Watching {} for resource changes", directory);
+                return Boolean.TRUE;
+            } catch (IOException | ClosedWatchServiceException e) {
+                this.logger.warn(
+                        "Failed to watch {}, resources in it will be polled for changes",
+                        directory,
+                        e);
+                return null;
+            }
+        }
+    }
+
+    private void addDependentResource(Path file, Resource resource) {
+        Set<Resource> resources = this.dependentResources.get(file);
+        if (resources == null) {
+            resources = Collections.newSetFromMap(new ConcurrentHashMap<Resource, Boolean>());
+            final Set<Resource> existing = this.dependentResources.putIfAbsent(file, resources);
+            if (existing != null) {
+                resources = existing;
+            }
+        }
+        resources.add(resource);
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            final WatchKey watchKey;
+            try {
+                watchKey = this.watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+
+            final Path directory = (Path) watchKey.watchable();
+            for (final WatchEvent<?> event : watchKey.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    this.logger.debug("Change events for {} were lost", directory);
+                    this.invalidateDirectory(directory);
+                } else {
+                    this.invalidateFile(directory.resolve((Path) event.context()));
+                }
+            }
+
+            if (!watchKey.reset()) {
+                // The directory is no longer accessible, stop tracking it
+                this.watchedDirectories.remove(directory, watchKey);
+                this.invalidateDirectory(directory);
+            }
+        }
+        this.logger.debug("Stopped watching for resource changes");
+    }
+
+    private void invalidateFile(Path file) {
+        // Record the change first so a dependency being added concurrently sees it
+        this.lastChangeTimes.put(file, System.currentTimeMillis());
+
+        final Set<Resource> resources = this.dependentResources.remove(file);
+        if (resources == null) {
+            return;
+        }
+        for (final Resource resource : resources) {
+            this.invalidate(resource);
+            this.logger.debug("{} changed, removed {} from the cache", file, resource);
+        }
+    }
+
+    private void invalidateDirectory(Path directory) {
+        for (final Path file : this.dependentResources.keySet()) {
+            if (directory.equals(file.getParent())) {
+                this.invalidateFile(file);
+            }
+        }
+    }
+
+    private void invalidate(Resource resource) {
+        this.watchedResources.remove(resource);
+        this.resourceCache.remove(resource);
+    }
+}
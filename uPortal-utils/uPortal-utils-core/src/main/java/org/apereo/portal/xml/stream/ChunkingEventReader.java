@@ -19,8 +19,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.regex.MatchResult;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.servlet.http.HttpServletRequest;
 import javax.xml.namespace.QName;
@@ -31,7 +29,6 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
 import org.apereo.portal.character.stream.CharacterEventSource;
-import org.apereo.portal.character.stream.events.CharacterDataEventImpl;
 import org.apereo.portal.character.stream.events.CharacterEvent;
 
 /**
@@ -45,8 +42,7 @@ public class ChunkingEventReader extends BaseXMLEventReader {
 
     private final HttpServletRequest request;
     private final Map<String, CharacterEventSource> chunkingElements;
-    private final Map<Pattern, CharacterEventSource> chunkingPatternEventSources;
-    private final Pattern[] chunkingPatterns;
+    private final ChunkingPatternScanner chunkingPatternScanner;
     private final XMLEventWriter xmlEventWriter;
     private final StringWriter writer;
     private boolean removeXmlDeclaration = true;
@@ -65,12 +61,27 @@ public class ChunkingEventReader extends BaseXMLEventReader {
             XMLEventReader xmlEventReader,
             XMLEventWriter xmlEventWriter,
             StringWriter writer) {
+        this(
+                request,
+                chunkingElements,
+                new ChunkingPatternScanner(chunkingPatterns, chunkingPatternEventSources),
+                xmlEventReader,
+                xmlEventWriter,
+                writer);
+    }
+
+    public ChunkingEventReader(
+            HttpServletRequest request,
+            Map<String, CharacterEventSource> chunkingElements,
+            ChunkingPatternScanner chunkingPatternScanner,
+            XMLEventReader xmlEventReader,
+            XMLEventWriter xmlEventWriter,
+            StringWriter writer) {
         super(xmlEventReader);
 
         this.request = request;
         this.chunkingElements = chunkingElements;
-        this.chunkingPatternEventSources = chunkingPatternEventSources;
-        this.chunkingPatterns = chunkingPatterns;
+        this.chunkingPatternScanner = chunkingPatternScanner;
         this.xmlEventWriter = xmlEventWriter;
         this.writer = writer;
     }
@@ -174,7 +185,8 @@ public class ChunkingEventReader extends BaseXMLEventReader {
         this.xmlEventWriter.flush();
 
         // Add character chunk to events
-        this.chunkString(this.characterEvents, this.writer.toString(), 0);
+        this.chunkingPatternScanner.chunkString(
+                this.request, this.writer.toString(), this.characterEvents);
 
         this.clearWriter();
     }
@@ -185,58 +197,6 @@ public class ChunkingEventReader extends BaseXMLEventReader {
         buffer.delete(0, buffer.length());
     }
 
-    /**
-     * Breaks up the String into a List of CharacterEvents based on the configured Map of Patterns
-     * to CharacterEventSources
-     */
-    protected void chunkString(
-            final List<CharacterEvent> characterEvents,
-            final CharSequence buffer,
-            int patternIndex) {
-        // Iterate over the chunking patterns
-        for (; patternIndex < this.chunkingPatterns.length; patternIndex++) {
-            final Pattern pattern = this.chunkingPatterns[patternIndex];
-
-            final Matcher matcher = pattern.matcher(buffer);
-            if (matcher.find()) {
-                final CharacterEventSource eventSource =
-                        this.chunkingPatternEventSources.get(pattern);
-                int prevMatchEnd = 0;
-
-                do {
-                    // Add all of the text up to the match as a new chunk, use subSequence to avoid
-                    // extra string alloc
-                    this.chunkString(
-                            characterEvents,
-                            buffer.subSequence(prevMatchEnd, matcher.start()),
-                            patternIndex + 1);
-
-                    // Get the generated CharacterEvents for the match
-                    final MatchResult matchResult = matcher.toMatchResult();
-                    eventSource.generateCharacterEvents(this.request, matchResult, characterEvents);
-
-                    prevMatchEnd = matcher.end();
-                } while (matcher.find());
-
-                // Add any remaining text from the original CharacterDataEvent
-                if (prevMatchEnd < buffer.length()) {
-                    this.chunkString(
-                            characterEvents,
-                            buffer.subSequence(prevMatchEnd, buffer.length()),
-                            patternIndex + 1);
-                }
-
-                return;
-            }
-        }
-
-        // Buffer didn't match anything, just append the string data
-
-        // de-duplication of the event string data
-        final String eventString = buffer.toString();
-        characterEvents.add(CharacterDataEventImpl.create(eventString));
-    }
-
     @Override
     public boolean hasNext() {
         if (this.peekedEvent != null) {
@@ -0,0 +1,365 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.xml.stream;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
+import org.apereo.portal.character.stream.CharacterEventSource;
+import org.apereo.portal.character.stream.events.CharacterDataEventImpl;
+import org.apereo.portal.character.stream.events.CharacterEvent;
+
+/**
+ * Breaks a character buffer up into {@link CharacterEvent}s at the matches of a set of chunking
+ * {@link Pattern}s. Immutable once created and safe to share between threads.
+ *
+ * <p>When every pattern starts with a literal prefix the buffer is scanned once: candidate offsets
+ * are found by the first character of the prefixes and a pattern is only evaluated, anchored, at
+ * offsets where its prefix is present. Where matches of different patterns would overlap the
+ * leftmost match wins, ties are resolved by the iteration order of the pattern map. If any pattern
+ * has no literal prefix the buffer is scanned once per pattern instead, in pattern map order.
+ */
+public final class ChunkingPatternScanner {
+    private static final String META_CHARACTERS = ".^$|?*+()[]{}";
+    private static final String QUANTIFIER_CHARACTERS = "?*+{";
+
+    private final Pattern[] patterns;
+    private final CharacterEventSource[] eventSources;
+    private final String[] literalPrefixes;
+
+    // Pattern indexes by the first character of their literal prefix, offset by minFirstChar.
+    // null if any pattern has no literal prefix.
+    private final int[][] candidatesByFirstChar;
+    private final char minFirstChar;
+
+    /**
+     * @param chunkingPatternEventSources The patterns to chunk on and the source of the events for
+     *     each match. The iteration order of the map is the priority of the patterns.
+     */
+    public ChunkingPatternScanner(Map<Pattern, CharacterEventSource> chunkingPatternEventSources) {
+        final int patternCount = chunkingPatternEventSources.size();
+        this.patterns = new Pattern[patternCount];
+        this.eventSources = new CharacterEventSource[patternCount];
+        this.literalPrefixes = new String[patternCount];
+
+        boolean allPrefixed = true;
+        char minFirstChar = Character.MAX_VALUE;
+        char maxFirstChar = Character.MIN_VALUE;
+        int index = 0;
+        for (final Map.Entry<Pattern, CharacterEventSource> entry :
+                chunkingPatternEventSources.entrySet()) {
+            final Pattern pattern = entry.getKey();
+            final String literalPrefix = getLiteralPrefix(pattern);
+            this.patterns[index] = pattern;
+            this.eventSources[index] = entry.getValue();
+            this.literalPrefixes[index] = literalPrefix;
+            if (literalPrefix.isEmpty()) {
+                allPrefixed = false;
+            } else {
+                final char firstChar = literalPrefix.charAt(0);
+                minFirstChar = (char) Math.min(minFirstChar, firstChar);
+                maxFirstChar = (char) Math.max(maxFirstChar, firstChar);
+            }
+            index++;
+        }
+
+        if (!allPrefixed || patternCount == 0) {
+            this.candidatesByFirstChar = null;
+            this.minFirstChar = 0;
+            return;
+        }
+
+        final List<List<Integer>> candidates = new ArrayList<List<Integer>>();
+        for (int c = minFirstChar; c <= maxFirstChar; c++) {
+            candidates.add(null);
+        }
+        for (int i = 0; i < patternCount; i++) {
+            final int slot = this.literalPrefixes[i].charAt(0) - minFirstChar;
+            List<Integer> slotCandidates = candidates.get(slot);
+            if (slotCandidates == null) {
+                slotCandidates = new ArrayList<Integer>(1);
+                candidates.set(slot, slotCandidates);
+            }
+            slotCandidates.add(i);
+        }
+
+        this.candidatesByFirstChar = new int[candidates.size()][];
+        for (int slot = 0; slot < candidates.size(); slot++) {
+            final List<Integer> slotCandidates = candidates.get(slot);
+            if (slotCandidates != null) {
+                final int[] patternIndexes = new int[slotCandidates.size()];
+                for (int i = 0; i < patternIndexes.length; i++) {
+                    patternIndexes[i] = slotCandidates.get(i);
+                }
+                this.candidatesByFirstChar[slot] = patternIndexes;
+            }
+        }
+        this.minFirstChar = minFirstChar;
+    }
+
+    /**
+     * Convenience for callers that hold the patterns and their event sources separately, the
+     * patterns array determines the priority.
+     */
+    public ChunkingPatternScanner(
+            Pattern[] chunkingPatterns,
+            Map<Pattern, CharacterEventSource> chunkingPatternEventSources) {
+        this(orderEventSources(chunkingPatterns, chunkingPatternEventSources));
+    }
+
+    private static Map<Pattern, CharacterEventSource> orderEventSources(
+            Pattern[] chunkingPatterns,
+            Map<Pattern, CharacterEventSource> chunkingPatternEventSources) {
+        final Map<Pattern, CharacterEventSource> ordered =
+                new LinkedHashMap<Pattern, CharacterEventSource>();
+        for (final Pattern pattern : chunkingPatterns) {
+            ordered.put(pattern, chunkingPatternEventSources.get(pattern));
+        }
+        return ordered;
+    }
+
+    /** @return true if buffers are chunked in a single pass over the characters */
+    public boolean isSinglePass() {
+        return this.candidatesByFirstChar != null;
+    }
+
+    /**
+     * Adds the character data of the buffer to the event list, with the events generated for each
+     * pattern match in place of the matched characters.
+     */
+    public void chunkString(
+            HttpServletRequest request, CharSequence buffer, List<CharacterEvent> characterEvents) {
+        if (this.candidatesByFirstChar == null) {
+            this.chunkStringByPattern(request, buffer, characterEvents, 0);
+            return;
+        }
+
+        final int length = buffer.length();
+        final Matcher[] matchers = new Matcher[this.patterns.length];
+        int prevMatchEnd = 0;
+        int offset = 0;
+        while (offset < length) {
+            final int slot = buffer.charAt(offset) - this.minFirstChar;
+            if (slot < 0 || slot >= this.candidatesByFirstChar.length) {
+                offset++;
+                continue;
+            }
+            final int[] candidates = this.candidatesByFirstChar[slot];
+            if (candidates == null) {
+                offset++;
+                continue;
+            }
+
+            final int patternIndex = this.matchAt(buffer, offset, candidates, matchers);
+            if (patternIndex < 0) {
+                offset++;
+                continue;
+            }
+
+            if (offset > prevMatchEnd) {
+                characterEvents.add(
+                        CharacterDataEventImpl.create(
+                                buffer.subSequence(prevMatchEnd, offset).toString()));
+            }
+
+            final Matcher matcher = matchers[patternIndex];
+            this.eventSources[patternIndex].generateCharacterEvents(
+                    request, matcher.toMatchResult(), characterEvents);
+
+            prevMatchEnd = matcher.end();
+            offset = prevMatchEnd;
+        }
+
+        if (prevMatchEnd == 0) {
+            // Buffer didn't match anything, just append the string data
+            characterEvents.add(CharacterDataEventImpl.create(buffer.toString()));
+        } else if (prevMatchEnd < length) {
+            characterEvents.add(
+                    CharacterDataEventImpl.create(
+                            buffer.subSequence(prevMatchEnd, length).toString()));
+        }
+    }
+
+    /**
+     * @return The index of the first candidate pattern that matches at the offset, -1 if none do
+     */
+    private int matchAt(CharSequence buffer, int offset, int[] candidates, Matcher[] matchers) {
+        for (final int patternIndex : candidates) {
+            if (!regionMatches(buffer, offset, this.literalPrefixes[patternIndex])) {
+                continue;
+            }
+
+            Matcher matcher = matchers[patternIndex];
+            if (matcher == null) {
+                matcher = this.patterns[patternIndex].matcher(buffer);
+                // The region start is a candidate offset, not the start of the input
+                matcher.useAnchoringBounds(false);
+                matchers[patternIndex] = matcher;
+            }
+            matcher.region(offset, buffer.length());
+            if (matcher.lookingAt()) {
+                return patternIndex;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Chunks the buffer with each pattern in turn, used when the patterns cannot be found in a
+     * single pass. Each pattern splits the buffer and the remaining patterns are applied to the
+     * text between its matches.
+     */
+    private void chunkStringByPattern(
+            final HttpServletRequest request,
+            final CharSequence buffer,
+            final List<CharacterEvent> characterEvents,
+            int patternIndex) {
+        // Iterate over the chunking patterns
+        for (; patternIndex < this.patterns.length; patternIndex++) {
+            final Matcher matcher = this.patterns[patternIndex].matcher(buffer);
+            if (matcher.find()) {
+                final CharacterEventSource eventSource = this.eventSources[patternIndex];
+                int prevMatchEnd = 0;
+
+                do {
+                    // Add all of the text up to the match as a new chunk, use subSequence to avoid
+                    // extra string alloc
+                    this.chunkStringByPattern(
+                            request,
+                            buffer.subSequence(prevMatchEnd, matcher.start()),
+                            characterEvents,
+                            patternIndex + 1);
+
+                    // Get the generated CharacterEvents for the match
+                    eventSource.generateCharacterEvents(
+                            request, matcher.toMatchResult(), characterEvents);
+
+                    prevMatchEnd = matcher.end();
+                } while (matcher.find());
+
+                // Add any remaining text from the original CharacterDataEvent
+                if (prevMatchEnd < buffer.length()) {
+                    this.chunkStringByPattern(
+                            request,
+                            buffer.subSequence(prevMatchEnd, buffer.length()),
+                            characterEvents,
+                            patternIndex + 1);
+                }
+
+                return;
+            }
+        }
+
+        // Buffer didn't match anything, just append the string data
+        characterEvents.add(CharacterDataEventImpl.create(buffer.toString()));
+    }
+
+    private static boolean regionMatches(CharSequence buffer, int offset, String prefix) {
+        final int prefixLength = prefix.length();
+        if (offset + prefixLength > buffer.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefixLength; i++) {
+            if (buffer.charAt(offset + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The literal text every match of the pattern starts with, an empty string if the
+     *     pattern has flags, top level alternation or starts with a non-literal construct.
+     */
+    static String getLiteralPrefix(Pattern pattern) {
+        final String regex = pattern.pattern();
+        if (pattern.flags() != 0 || hasTopLevelAlternation(regex)) {
+            return "";
+        }
+
+        final StringBuilder prefix = new StringBuilder();
+        final int length = regex.length();
+        int index = 0;
+        while (index < length) {
+            final char c = regex.charAt(index);
+            final char literal;
+            final int next;
+            if (c == '\\') {
+                if (index + 1 >= length || Character.isLetterOrDigit(regex.charAt(index + 1))) {
+                    // Character classes, back references, \Q quoting and control escapes
+                    break;
+                }
+                literal = regex.charAt(index + 1);
+                next = index + 2;
+            } else if (META_CHARACTERS.indexOf(c) >= 0) {
+                break;
+            } else {
+                literal = c;
+                next = index + 1;
+            }
+
+            // A quantified character is not guaranteed to be part of every match
+            if (next < length && QUANTIFIER_CHARACTERS.indexOf(regex.charAt(next)) >= 0) {
+                break;
+            }
+
+            prefix.append(literal);
+            index = next;
+        }
+        return prefix.toString();
+    }
+
+    private static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int index = 0; index < regex.length(); index++) {
+            final char c = regex.charAt(index);
+            if (c == '\\') {
+                index++;
+            } else if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                }
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        final Collection<String> regexes = new ArrayList<String>(this.patterns.length);
+        for (final Pattern pattern : this.patterns) {
+            regexes.add(pattern.pattern());
+        }
+        return "ChunkingPatternScanner [patterns="
+                + regexes
+                + ", singlePass="
+                + isSinglePass()
+                + "]";
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.xml.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.events.StartElement;
+import org.apereo.portal.character.stream.CharacterEventSource;
+import org.apereo.portal.character.stream.events.CharacterDataEventImpl;
+import org.apereo.portal.character.stream.events.CharacterEvent;
+import org.junit.Test;
+
+public class ChunkingPatternScannerTest {
+    private static final String TITLE_PATTERN = "\\{up-portlet-title\\(([^\\)]+)\\)\\}";
+    private static final String HELP_PATTERN = "\\{up-portlet-help\\(([^\\)]+)\\)\\}";
+    private static final String LINK_PATTERN = "\\{up-portlet-link\\(([^,]+),([^\\)]+)\\)\\}";
+
+    @Test
+    public void testLiteralPrefix() {
+        assertEquals(
+                "{up-portlet-title(",
+                ChunkingPatternScanner.getLiteralPrefix(Pattern.compile(TITLE_PATTERN)));
+        assertEquals(
+                "{up-portlet-link(",
+                ChunkingPatternScanner.getLiteralPrefix(Pattern.compile(LINK_PATTERN)));
+        assertEquals("a", ChunkingPatternScanner.getLiteralPrefix(Pattern.compile("ab?c")));
+        assertEquals("ab", ChunkingPatternScanner.getLiteralPrefix(Pattern.compile("ab\\dc")));
+        assertEquals("", ChunkingPatternScanner.getLiteralPrefix(Pattern.compile("ab|cd")));
+        assertEquals("", ChunkingPatternScanner.getLiteralPrefix(Pattern.compile("^abc")));
+        assertEquals("", ChunkingPatternScanner.getLiteralPrefix(Pattern.compile("[ab]c")));
+        assertEquals("", ChunkingPatternScanner.getLiteralPrefix(Pattern.compile("\\Qab\\E")));
+        assertEquals(
+                "",
+                ChunkingPatternScanner.getLiteralPrefix(
+                        Pattern.compile("abc", Pattern.CASE_INSENSITIVE)));
+        assertEquals("a", ChunkingPatternScanner.getLiteralPrefix(Pattern.compile("a(b|c)")));
+    }
+
+    @Test
+    public void testSinglePassChunking() {
+        final ChunkingPatternScanner scanner =
+                createScanner(TITLE_PATTERN, HELP_PATTERN, LINK_PATTERN);
+        assertTrue(scanner.isSinglePass());
+
+        final List<CharacterEvent> events = new ArrayList<CharacterEvent>();
+        scanner.chunkString(
+                null,
+                "<h2>{up-portlet-title(n1)}</h2>{up-portlet-help(n2)}{up-portlet-link(n3,/x)}{up-",
+                events);
+
+        assertEquals(
+                Arrays.asList(
+                        CharacterDataEventImpl.create("<h2>"),
+                        CharacterDataEventImpl.create("[0:n1]"),
+                        CharacterDataEventImpl.create("</h2>"),
+                        CharacterDataEventImpl.create("[1:n2]"),
+                        CharacterDataEventImpl.create("[2:n3]"),
+                        CharacterDataEventImpl.create("{up-")),
+                events);
+    }
+
+    @Test
+    public void testNoMatch() {
+        final ChunkingPatternScanner scanner = createScanner(TITLE_PATTERN, HELP_PATTERN);
+
+        final List<CharacterEvent> events = new ArrayList<CharacterEvent>();
+        scanner.chunkString(null, "", events);
+        scanner.chunkString(null, "<div>{up-portlet-title}</div>", events);
+
+        assertEquals(
+                Arrays.asList(
+                        CharacterDataEventImpl.EMPTY_CHARACTER_DATA,
+                        CharacterDataEventImpl.create("<div>{up-portlet-title}</div>")),
+                events);
+    }
+
+    @Test
+    public void testNoPatterns() {
+        final ChunkingPatternScanner scanner = createScanner();
+        assertFalse(scanner.isSinglePass());
+
+        final List<CharacterEvent> events = new ArrayList<CharacterEvent>();
+        scanner.chunkString(null, "{up-portlet-title(n1)}", events);
+
+        assertEquals(
+                Arrays.asList(CharacterDataEventImpl.create("{up-portlet-title(n1)}")), events);
+    }
+
+    @Test
+    public void testSinglePassMatchesPerPattern() {
+        final String buffer =
+                "<div>{up-portlet-title(n1)}<a href=\"{up-portlet-link(n2,/a)}\">"
+                        + "{up-portlet-help(n3)}</a> 42 {up-portlet-title(n4)}</div>";
+
+        final ChunkingPatternScanner singlePass =
+                createScanner(TITLE_PATTERN, HELP_PATTERN, LINK_PATTERN);
+        final ChunkingPatternScanner perPattern =
+                createScanner(TITLE_PATTERN, HELP_PATTERN, LINK_PATTERN, "\\d{3}");
+        assertTrue(singlePass.isSinglePass());
+        assertFalse(perPattern.isSinglePass());
+
+        final List<CharacterEvent> singlePassEvents = new ArrayList<CharacterEvent>();
+        singlePass.chunkString(null, buffer, singlePassEvents);
+        final List<CharacterEvent> perPatternEvents = new ArrayList<CharacterEvent>();
+        perPattern.chunkString(null, buffer, perPatternEvents);
+
+        assertEquals(perPatternEvents, singlePassEvents);
+        assertEquals(9, singlePassEvents.size());
+    }
+
+    private static ChunkingPatternScanner createScanner(String... regexes) {
+        final Map<Pattern, CharacterEventSource> eventSources =
+                new LinkedHashMap<Pattern, CharacterEventSource>();
+        for (int i = 0; i < regexes.length; i++) {
+            eventSources.put(Pattern.compile(regexes[i]), new MatchEventSource(i));
+        }
+        return new ChunkingPatternScanner(eventSources);
+    }
+
+    /** Replaces each match with "[patternIndex:group1]" */
+    private static final class MatchEventSource implements CharacterEventSource {
+        private final int patternIndex;
+
+        MatchEventSource(int patternIndex) {
+            this.patternIndex = patternIndex;
+        }
+
+        @Override
+        public void generateCharacterEvents(
+                HttpServletRequest servletRequest,
+                XMLEventReader eventReader,
+                StartElement event,
+                Collection<CharacterEvent> eventBuffer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void generateCharacterEvents(
+                HttpServletRequest servletRequest,
+                MatchResult matchResult,
+                Collection<CharacterEvent> eventBuffer) {
+            eventBuffer.add(
+                    CharacterDataEventImpl.create(
+                            "[" + this.patternIndex + ":" + matchResult.group(1) + "]"));
+        }
+    }
+}
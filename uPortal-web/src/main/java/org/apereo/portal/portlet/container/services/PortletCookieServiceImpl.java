@@ -14,13 +14,17 @@
  */
 package org.apereo.portal.portlet.container.services;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 import javax.servlet.ServletContext;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
@@ -33,22 +37,33 @@ import org.apereo.portal.concurrency.locking.IClusterLockService.LockStatus;
 import org.apereo.portal.concurrency.locking.IClusterLockService.TryLockFunctionResult;
 import org.apereo.portal.concurrency.locking.LockOptions;
 import org.apereo.portal.portlet.dao.IPortletCookieDao;
+import org.apereo.portal.portlet.dao.PortalCookieUpdate;
 import org.apereo.portal.portlet.om.IPortalCookie;
 import org.apereo.portal.portlet.om.IPortletCookie;
 import org.apereo.portal.portlet.om.IPortletWindowId;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.orm.hibernate3.HibernateOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.context.ServletContextAware;
 import org.springframework.web.util.WebUtils;
 
-/** {@link Service} bean to encapsulate business logic regarding portlet cookie persistence. */
+/**
+ * {@link Service} bean to encapsulate business logic regarding portlet cookie persistence.
+ *
+ * <p>When write-behind is enabled portal cookie expiration refreshes and persistent portlet cookie
+ * changes are not written on the request thread. They are coalesced per portal cookie, visible to
+ * {@link #getAllPortletCookies(HttpServletRequest, IPortletWindowId)} right away, and written in
+ * batches by {@link #flushPendingCookieUpdates()}.
+ */
 @Service("portletCookieService")
-public class PortletCookieServiceImpl implements IPortletCookieService, ServletContextAware {
+public class PortletCookieServiceImpl
+        implements IPortletCookieService, ServletContextAware, DisposableBean {
 
     /**
      * Name of the {@link HttpSession} attribute used for storing a concurrent map of portlet
@@ -81,6 +96,12 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
     private int maxAgeUpdateInterval = (int) TimeUnit.MINUTES.toMillis(5);
     private boolean portalCookieAlwaysSecure = false;
     private long purgeExpiredCookiesPeriod = 0;
+    private boolean writeBehindEnabled = false;
+    private int writeBehindBatchSize = 100;
+
+    /** Coalesced updates not yet written to the DB, keyed by portal cookie value */
+    private final ConcurrentMap<String, PendingPortalCookieUpdate> pendingUpdates =
+            new ConcurrentHashMap<String, PendingPortalCookieUpdate>();
 
     @Autowired
     public void setPortletCookieDao(IPortletCookieDao portletCookieDao) {
@@ -98,6 +119,24 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
         this.purgeExpiredCookiesPeriod = purgeExpiredCookiesPeriod;
     }
 
+    /**
+     * @param writeBehindEnabled Set to true to queue portal cookie expiration refreshes and portlet
+     *     cookie changes for {@link #flushPendingCookieUpdates()} instead of writing them to the DB
+     *     on the request thread.
+     */
+    @Value(
+            "${org.apereo.portal.portlet.container.services.PortletCookieServiceImpl.writeBehindEnabled:false}")
+    public void setWriteBehindEnabled(boolean writeBehindEnabled) {
+        this.writeBehindEnabled = writeBehindEnabled;
+    }
+
+    /** @param writeBehindBatchSize Max number of portal cookies updated per flush transaction. */
+    @Value(
+            "${org.apereo.portal.portlet.container.services.PortletCookieServiceImpl.writeBehindBatchSize:100}")
+    public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+        this.writeBehindBatchSize = writeBehindBatchSize;
+    }
+
     @Override
     public void setServletContext(ServletContext servletContext) {
         this.path = servletContext.getContextPath() + "/";
@@ -175,21 +214,22 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
         if (DateTime.now()
                 .minusMillis(this.maxAgeUpdateInterval)
                 .isAfter(expires.minusSeconds(this.maxAge))) {
-            try {
-                this.portletCookieDao.updatePortalCookieExpiration(
-                        portalCookie, cookie.getMaxAge());
-            } catch (HibernateOptimisticLockingFailureException e) {
-                // Especially with ngPortal UI multiple requests for individual portlet content may
-                // come at
-                // the same time.  Sometimes another thread updated the portal cookie between our
-                // dao fetch and
-                // dao update.  If this happens, simply ignore the update since another thread has
-                // already
-                // made the update.
-                logger.debug(
-                        "Attempted to update expired portal cookie but another thread beat me to it."
-                                + " Ignoring update since the other thread handled it.");
-                return;
+            if (this.writeBehindEnabled) {
+                this.queueUpdate(portalCookie, cookie.getMaxAge(), null);
+            } else {
+                try {
+                    this.portletCookieDao.updatePortalCookieExpiration(
+                            portalCookie, cookie.getMaxAge());
+                } catch (HibernateOptimisticLockingFailureException e) {
+                    // Especially with ngPortal UI multiple requests for individual portlet content
+                    // may come at the same time.  Sometimes another thread updated the portal
+                    // cookie between our dao fetch and dao update.  If this happens, simply ignore
+                    // the update since another thread has already made the update.
+                    logger.debug(
+                            "Attempted to update expired portal cookie but another thread beat me to it."
+                                    + " Ignoring update since the other thread handled it.");
+                    return;
+                }
             }
 
             // Update expiration dates of portlet cookies stored in session
@@ -239,11 +279,24 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
         }
 
         // Get cookies that have been set by portlets, suppressing expired
-        Set<IPortletCookie> portletCookies = new HashSet<IPortletCookie>();
+        final Map<String, Cookie> portletCookies = new LinkedHashMap<String, Cookie>();
         if (portalCookie != null) {
             for (IPortletCookie portletCookie : portalCookie.getPortletCookies()) {
                 if (portletCookie.getExpires().isAfterNow()) {
-                    portletCookies.add(portletCookie);
+                    portletCookies.put(portletCookie.getName(), portletCookie.toCookie());
+                }
+            }
+
+            // Overlay changes that are still waiting to be written to the DB
+            final PendingPortalCookieUpdate pendingUpdate =
+                    this.pendingUpdates.get(portalCookie.getValue());
+            if (pendingUpdate != null) {
+                for (final Cookie pendingCookie : pendingUpdate.getPortletCookies()) {
+                    if (pendingCookie.getMaxAge() == 0) {
+                        portletCookies.remove(pendingCookie.getName());
+                    } else {
+                        portletCookies.put(pendingCookie.getName(), pendingCookie);
+                    }
                 }
             }
         }
@@ -261,8 +314,7 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
         System.arraycopy(servletCookies, 0, cookies, 0, servletCookies.length);
 
         int cookieIdx = servletCookies.length;
-        for (final IPortletCookie portletCookie : portletCookies) {
-            final Cookie cookie = portletCookie.toCookie();
+        for (final Cookie cookie : portletCookies.values()) {
             cookies[cookieIdx++] = cookie;
         }
         for (SessionOnlyPortletCookieImpl sessionOnlyCookie : sessionOnlyCookies) {
@@ -292,17 +344,116 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
             if (null == existing) {
                 // returning null from map#remove means cookie wasn't in the session, trigger
                 // portletCookieDao update
-                this.portletCookieDao.addOrUpdatePortletCookie(portalCookie, cookie);
+                this.persistPortletCookie(portalCookie, cookie);
             }
         } else {
             Map<String, SessionOnlyPortletCookieImpl> sessionOnlyPortletCookies =
                     getSessionOnlyPortletCookieMap(request);
             sessionOnlyPortletCookies.remove(cookie.getName());
             // update the portletCookieDao regardless
+            this.persistPortletCookie(portalCookie, cookie);
+        }
+    }
+
+    /** Write the portlet cookie to the DB, or queue it for the next flush. */
+    protected void persistPortletCookie(IPortalCookie portalCookie, Cookie cookie) {
+        if (this.writeBehindEnabled) {
+            this.queueUpdate(portalCookie, -1, (Cookie) cookie.clone());
+        } else {
             this.portletCookieDao.addOrUpdatePortletCookie(portalCookie, cookie);
         }
     }
 
+    /**
+     * Coalesce the change into the pending update for the portal cookie.
+     *
+     * @param maxAge New portal cookie max age in seconds, negative to leave the expiration alone
+     * @param portletCookie Portlet cookie to add, update or delete, may be null
+     */
+    protected void queueUpdate(
+            IPortalCookie portalCookie, final int maxAge, final Cookie portletCookie) {
+        this.pendingUpdates.compute(
+                portalCookie.getValue(),
+                new BiFunction<String, PendingPortalCookieUpdate, PendingPortalCookieUpdate>() {
+                    @Override
+                    public PendingPortalCookieUpdate apply(
+                            String portalCookieValue, PendingPortalCookieUpdate pendingUpdate) {
+                        if (pendingUpdate == null) {
+                            pendingUpdate = new PendingPortalCookieUpdate(portalCookieValue);
+                        }
+                        pendingUpdate.update(maxAge, portletCookie);
+                        return pendingUpdate;
+                    }
+                });
+    }
+
+    /**
+     * Write all queued portal cookie updates to the DB in batches of {@link
+     * #setWriteBehindBatchSize(int)} portal cookies. If a batch fails due to a concurrent
+     * modification its updates are retried one portal cookie at a time, updates that still fail are
+     * dropped since another thread or server has already touched the same portal cookie.
+     *
+     * @return The number of portal cookies updated
+     */
+    public int flushPendingCookieUpdates() {
+        if (this.pendingUpdates.isEmpty()) {
+            return 0;
+        }
+
+        int updated = 0;
+        final List<PortalCookieUpdate> batch =
+                new ArrayList<PortalCookieUpdate>(this.writeBehindBatchSize);
+        for (final String portalCookieValue : this.pendingUpdates.keySet()) {
+            final PendingPortalCookieUpdate pendingUpdate =
+                    this.pendingUpdates.remove(portalCookieValue);
+            if (pendingUpdate == null) {
+                continue;
+            }
+
+            batch.add(pendingUpdate.toPortalCookieUpdate());
+            if (batch.size() >= this.writeBehindBatchSize) {
+                updated += this.applyBatch(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            updated += this.applyBatch(batch);
+        }
+
+        logger.debug("Flushed {} pending portal cookie updates", updated);
+        return updated;
+    }
+
+    private int applyBatch(List<PortalCookieUpdate> batch) {
+        try {
+            return this.portletCookieDao.applyPortalCookieUpdates(batch);
+        } catch (OptimisticLockingFailureException e) {
+            logger.debug(
+                    "Concurrent modification while flushing {} portal cookie updates, retrying individually",
+                    batch.size());
+        }
+
+        int updated = 0;
+        for (final PortalCookieUpdate update : batch) {
+            try {
+                updated +=
+                        this.portletCookieDao.applyPortalCookieUpdates(
+                                Collections.singleton(update));
+            } catch (OptimisticLockingFailureException e) {
+                logger.debug(
+                        "Attempted to apply {} but another thread beat me to it. Ignoring update.",
+                        update);
+            }
+        }
+        return updated;
+    }
+
+    /** Write any queued updates before shutdown so they are not lost. */
+    @Override
+    public void destroy() throws Exception {
+        this.flushPendingCookieUpdates();
+    }
+
     @Override
     public boolean purgeExpiredCookies() {
         try {
@@ -325,6 +476,41 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
         }
     }
 
+    /** Mutable accumulator of changes to a single portal cookie, guarded by its own monitor. */
+    private static final class PendingPortalCookieUpdate {
+        private final String portalCookieValue;
+        private final Map<String, Cookie> portletCookies = new LinkedHashMap<String, Cookie>();
+        private int maxAge = -1;
+
+        PendingPortalCookieUpdate(String portalCookieValue) {
+            this.portalCookieValue = portalCookieValue;
+        }
+
+        synchronized void update(int maxAge, Cookie portletCookie) {
+            if (maxAge >= 0) {
+                this.maxAge = maxAge;
+            }
+            if (portletCookie != null) {
+                this.portletCookies.put(portletCookie.getName(), portletCookie);
+            }
+        }
+
+        synchronized List<Cookie> getPortletCookies() {
+            final List<Cookie> cookies = new ArrayList<Cookie>(this.portletCookies.size());
+            for (final Cookie cookie : this.portletCookies.values()) {
+                cookies.add((Cookie) cookie.clone());
+            }
+            return cookies;
+        }
+
+        synchronized PortalCookieUpdate toPortalCookieUpdate() {
+            return new PortalCookieUpdate(
+                    this.portalCookieValue,
+                    this.maxAge,
+                    new ArrayList<Cookie>(this.portletCookies.values()));
+        }
+    }
+
     /**
      * Get the {@link Map} of {@link SessionOnlyPortletCookieImpl}s stored in the {@link
      * HttpSession} specifically used for storing {@link SessionOnlyPortletCookieImpl}s with a
@@ -14,8 +14,8 @@
  */
 package org.apereo.portal.portlet.dao.jpa;
 
-import com.google.common.base.Function;
 import java.security.SecureRandom;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -23,20 +23,22 @@ import java.util.concurrent.TimeUnit;
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.ParameterExpression;
-import javax.persistence.criteria.Root;
 import javax.servlet.http.Cookie;
 import org.apache.commons.codec.binary.Base64;
 import org.apereo.portal.jpa.BasePortalJpaDao;
 import org.apereo.portal.jpa.OpenEntityManager;
 import org.apereo.portal.portlet.dao.IPortletCookieDao;
+import org.apereo.portal.portlet.dao.PortalCookieUpdate;
 import org.apereo.portal.portlet.om.IPortalCookie;
 import org.apereo.portal.portlet.om.IPortletCookie;
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
 
 /** JPA implementation of {@link IPortletCookieDao}. */
 @Repository("portletCookieDao")
@@ -44,69 +46,99 @@ import org.springframework.stereotype.Repository;
 public class JpaPortletCookieDaoImpl extends BasePortalJpaDao implements IPortletCookieDao {
     private final SecureRandom secureRandom = new SecureRandom();
 
-    private String deletePortalCookieQueryString;
-    private String deleteEmptyPortalCookieQueryString;
-    private String deletePortletCookieQueryString;
-    private CriteriaQuery<PortletCookieImpl> findExpiredByParentPortletCookiesQuery;
+    private static final String ID_PARAMETER_NAME = "ids";
+
+    private String findExpiredPortletCookieIdsQueryString;
+    private String findExpiredByParentPortletCookieIdsQueryString;
+    private String findExpiredPortalCookieIdsQueryString;
+    private String findExpiredEmptyPortalCookieIdsQueryString;
+    private String deletePortletCookiesByIdQueryString;
+    private String deletePortalCookiesByIdQueryString;
     private ParameterExpression<DateTime> nowParameter;
 
+    protected static final int DEFAULT_PURGE_CHUNK_SIZE = 1000;
+    private int purgeChunkSize = DEFAULT_PURGE_CHUNK_SIZE;
+
     protected static final int DEFAULT_EMPTY_MAX_AGE = (int) TimeUnit.DAYS.toSeconds(1);
     private int emptyCookieMaxAge = DEFAULT_EMPTY_MAX_AGE;
 
+    /**
+     * @param purgeChunkSize The maximum number of rows deleted per transaction when purging expired
+     *     cookies. Defaults to {@value #DEFAULT_PURGE_CHUNK_SIZE}.
+     */
+    @Value(
+            "${org.apereo.portal.portlet.dao.jpa.JpaPortletCookieDaoImpl.purgeChunkSize:"
+                    + DEFAULT_PURGE_CHUNK_SIZE
+                    + "}")
+    public void setPurgeChunkSize(int purgeChunkSize) {
+        this.purgeChunkSize = purgeChunkSize;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         this.nowParameter = this.createParameterExpression(DateTime.class, "now");
 
-        this.deletePortalCookieQueryString =
-                "DELETE FROM "
-                        + PortalCookieImpl.class.getName()
+        this.findExpiredPortletCookieIdsQueryString =
+                "SELECT e."
+                        + PortletCookieImpl_.internalPortletCookieId.getName()
+                        + " FROM "
+                        + PortletCookieImpl.class.getName()
+                        + " e "
+                        + "WHERE e."
+                        + PortletCookieImpl_.expires.getName()
+                        + " <= :"
+                        + this.nowParameter.getName();
+
+        this.findExpiredByParentPortletCookieIdsQueryString =
+                "SELECT e."
+                        + PortletCookieImpl_.internalPortletCookieId.getName()
+                        + " FROM "
+                        + PortletCookieImpl.class.getName()
                         + " e "
                         + "WHERE e."
+                        + PortletCookieImpl_.portalCookie.getName()
+                        + "."
                         + PortalCookieImpl_.expires.getName()
                         + " <= :"
                         + this.nowParameter.getName();
 
-        this.deleteEmptyPortalCookieQueryString =
-                "DELETE FROM "
+        this.findExpiredPortalCookieIdsQueryString =
+                "SELECT e."
+                        + PortalCookieImpl_.internalPortalCookieId.getName()
+                        + " FROM "
                         + PortalCookieImpl.class.getName()
                         + " e "
                         + "WHERE e."
                         + PortalCookieImpl_.expires.getName()
                         + " <= :"
-                        + this.nowParameter.getName()
+                        + this.nowParameter.getName();
+
+        this.findExpiredEmptyPortalCookieIdsQueryString =
+                this.findExpiredPortalCookieIdsQueryString
                         + " AND "
                         + "e."
                         + PortalCookieImpl_.portletCookies.getName()
                         + " IS EMPTY";
 
-        this.deletePortletCookieQueryString =
+        this.deletePortletCookiesByIdQueryString =
                 "DELETE FROM "
                         + PortletCookieImpl.class.getName()
                         + " e "
                         + "WHERE e."
-                        + PortletCookieImpl_.expires.getName()
-                        + " <= :"
-                        + this.nowParameter.getName();
+                        + PortletCookieImpl_.internalPortletCookieId.getName()
+                        + " IN (:"
+                        + ID_PARAMETER_NAME
+                        + ")";
 
-        this.findExpiredByParentPortletCookiesQuery =
-                this.createCriteriaQuery(
-                        new Function<CriteriaBuilder, CriteriaQuery<PortletCookieImpl>>() {
-                            @Override
-                            public CriteriaQuery<PortletCookieImpl> apply(CriteriaBuilder cb) {
-                                final CriteriaQuery<PortletCookieImpl> criteriaQuery =
-                                        cb.createQuery(PortletCookieImpl.class);
-                                final Root<PortletCookieImpl> typeRoot =
-                                        criteriaQuery.from(PortletCookieImpl.class);
-                                criteriaQuery.select(typeRoot);
-                                criteriaQuery.where(
-                                        cb.lessThanOrEqualTo(
-                                                typeRoot.get(PortletCookieImpl_.portalCookie)
-                                                        .get(PortalCookieImpl_.expires),
-                                                nowParameter));
-
-                                return criteriaQuery;
-                            }
-                        });
+        this.deletePortalCookiesByIdQueryString =
+                "DELETE FROM "
+                        + PortalCookieImpl.class.getName()
+                        + " e "
+                        + "WHERE e."
+                        + PortalCookieImpl_.internalPortalCookieId.getName()
+                        + " IN (:"
+                        + ID_PARAMETER_NAME
+                        + ")";
     }
 
     /**
@@ -161,60 +193,138 @@ public class JpaPortletCookieDaoImpl extends BasePortalJpaDao implements IPortle
         return portalCookie;
     }
 
+    /**
+     * Purges expired cookies in chunks of {@link #setPurgeChunkSize(int)} rows. Each chunk selects
+     * the ids of expired rows through the EXPIRES indexes and deletes them by primary key in its
+     * own transaction, keeping lock footprint and transaction size bounded no matter how many
+     * cookies expired since the last run.
+     */
     @Override
-    @PortalTransactional
     public void purgeExpiredCookies(int maxAge) {
         final DateTime now = DateTime.now();
 
         logger.debug("begin portlet cookie expiration");
 
-        final EntityManager entityManager = this.getEntityManager();
-        final Query deletePortletCookieQuery =
-                entityManager.createQuery(this.deletePortletCookieQueryString);
-        deletePortletCookieQuery.setParameter(this.nowParameter.getName(), now);
-        final int deletedPortletCookies = deletePortletCookieQuery.executeUpdate();
+        final int deletedPortletCookies =
+                this.purgeInChunks(
+                        this.findExpiredPortletCookieIdsQueryString,
+                        this.deletePortletCookiesByIdQueryString,
+                        now);
         logger.debug(
                 "finished purging {} portlet cookies with expiration before {}",
                 deletedPortletCookies,
                 now);
 
-        final TypedQuery<PortletCookieImpl> expiredByParentCookiesQuery =
-                this.createQuery(findExpiredByParentPortletCookiesQuery);
-        expiredByParentCookiesQuery.setParameter(this.nowParameter.getName(), now);
-        final List<PortletCookieImpl> indirectlyExpiredCookies =
-                expiredByParentCookiesQuery.getResultList();
-        for (final PortletCookieImpl portletCookieImpl : indirectlyExpiredCookies) {
-            entityManager.remove(portletCookieImpl);
-        }
+        final int deletedByParentPortletCookies =
+                this.purgeInChunks(
+                        this.findExpiredByParentPortletCookieIdsQueryString,
+                        this.deletePortletCookiesByIdQueryString,
+                        now);
         logger.debug(
                 "finished purging {} portlet cookies with parent expiration before {}",
-                indirectlyExpiredCookies.size(),
+                deletedByParentPortletCookies,
                 now);
 
         logger.debug("begin portal cookie expiration");
 
-        final Query deletePortalCookieQuery =
-                entityManager.createQuery(this.deletePortalCookieQueryString);
-        deletePortalCookieQuery.setParameter(this.nowParameter.getName(), now);
-        final int deletedPortalCookies = deletePortalCookieQuery.executeUpdate();
+        final int deletedPortalCookies =
+                this.purgeInChunks(
+                        this.findExpiredPortalCookieIdsQueryString,
+                        this.deletePortalCookiesByIdQueryString,
+                        now);
         logger.debug(
                 "finished purging {} portal cookies with expiration before {}",
                 deletedPortalCookies,
                 now);
 
-        final Query deleteEmptyPortalCookieQuery =
-                entityManager.createQuery(this.deleteEmptyPortalCookieQueryString);
         // Add the maxAge to now and then subtract the emptyCookieMaxAge
         // For example (now + 1 year) - 1 day == the empty-cookie expiration date
         final DateTime emptyExpiration = now.plusSeconds(maxAge).minusSeconds(emptyCookieMaxAge);
-        deleteEmptyPortalCookieQuery.setParameter(this.nowParameter.getName(), emptyExpiration);
-        final int deletedEmptyPortalCookies = deleteEmptyPortalCookieQuery.executeUpdate();
+        final int deletedEmptyPortalCookies =
+                this.purgeInChunks(
+                        this.findExpiredEmptyPortalCookieIdsQueryString,
+                        this.deletePortalCookiesByIdQueryString,
+                        emptyExpiration);
         logger.debug(
                 "finished purging {} empty portal cookies with expiration before {}",
                 deletedEmptyPortalCookies,
                 emptyExpiration);
     }
 
+    /**
+     * Repeatedly select up to {@link #purgeChunkSize} ids with the find query and delete them with
+     * the delete query, one transaction per chunk, until no more rows match.
+     *
+     * @return The total number of rows deleted
+     */
+    private int purgeInChunks(
+            final String findIdsQueryString,
+            final String deleteByIdQueryString,
+            final DateTime expiration) {
+        final TransactionOperations transactionOperations = this.getTransactionOperations();
+
+        int totalDeleted = 0;
+        while (true) {
+            final int deleted =
+                    transactionOperations.execute(
+                            new TransactionCallback<Integer>() {
+                                @Override
+                                public Integer doInTransaction(TransactionStatus status) {
+                                    final EntityManager entityManager = getEntityManager();
+
+                                    final TypedQuery<Long> findIdsQuery =
+                                            entityManager.createQuery(
+                                                    findIdsQueryString, Long.class);
+                                    findIdsQuery.setParameter(nowParameter.getName(), expiration);
+                                    findIdsQuery.setMaxResults(purgeChunkSize);
+                                    final List<Long> ids = findIdsQuery.getResultList();
+                                    if (ids.isEmpty()) {
+                                        return 0;
+                                    }
+
+                                    final Query deleteQuery =
+                                            entityManager.createQuery(deleteByIdQueryString);
+                                    deleteQuery.setParameter(ID_PARAMETER_NAME, ids);
+                                    return deleteQuery.executeUpdate();
+                                }
+                            });
+
+            totalDeleted += deleted;
+            if (deleted < this.purgeChunkSize) {
+                return totalDeleted;
+            }
+        }
+    }
+
+    @Override
+    @PortalTransactional
+    public int applyPortalCookieUpdates(Collection<PortalCookieUpdate> updates) {
+        final EntityManager entityManager = this.getEntityManager();
+        final DateTime now = DateTime.now();
+
+        int updated = 0;
+        for (final PortalCookieUpdate update : updates) {
+            final IPortalCookie portalCookie = this.getPortalCookie(update.getPortalCookieValue());
+            if (portalCookie == null) {
+                // Purged since the update was queued, nothing left to update
+                logger.debug("Skipping {}, the portal cookie no longer exists", update);
+                continue;
+            }
+
+            if (update.isExpirationUpdate()) {
+                portalCookie.setExpires(now.plusSeconds(update.getMaxAge()));
+            }
+            for (final Cookie cookie : update.getPortletCookies()) {
+                this.updatePortletCookie(portalCookie, cookie);
+            }
+
+            entityManager.persist(portalCookie);
+            updated++;
+        }
+
+        return updated;
+    }
+
     /*
      * (non-Javadoc)
      * @see org.apereo.portal.portlet.dao.IPortletCookieDao#updatePortletCookie(org.apereo.portal.portlet.om.IPortalCookie, javax.servlet.http.Cookie)
@@ -222,6 +332,18 @@ public class JpaPortletCookieDaoImpl extends BasePortalJpaDao implements IPortle
     @Override
     @PortalTransactional
     public IPortalCookie addOrUpdatePortletCookie(IPortalCookie portalCookie, Cookie cookie) {
+        this.updatePortletCookie(portalCookie, cookie);
+
+        this.getEntityManager().persist(portalCookie);
+
+        return portalCookie;
+    }
+
+    /**
+     * Add, update or (for a max age of 0) delete the portlet cookie with the name of the specified
+     * cookie on the portal cookie.
+     */
+    private void updatePortletCookie(IPortalCookie portalCookie, Cookie cookie) {
         final Set<IPortletCookie> portletCookies = portalCookie.getPortletCookies();
 
         boolean found = false;
@@ -248,9 +370,5 @@ public class JpaPortletCookieDaoImpl extends BasePortalJpaDao implements IPortle
             IPortletCookie newPortletCookie = new PortletCookieImpl(portalCookie, cookie);
             portletCookies.add(newPortletCookie);
         }
-
-        entityManager.persist(portalCookie);
-
-        return portalCookie;
     }
 }
@@ -26,6 +26,7 @@ import net.sf.ehcache.Cache;
 import net.sf.ehcache.Element;
 import org.apache.commons.lang3.Validate;
 import org.apereo.portal.concurrency.caching.RequestCache;
+import org.apereo.portal.events.AsynchronousPortalEventListener;
 import org.apereo.portal.events.LoginEvent;
 import org.apereo.portal.portlet.om.IPortletDefinition;
 import org.apereo.portal.portlet.om.PortletCategory;
@@ -53,7 +54,10 @@ import org.springframework.stereotype.Service;
  * @since 4.1
  */
 @Service
-public class MarketplaceService implements IMarketplaceService, ApplicationListener<LoginEvent> {
+public class MarketplaceService
+        implements IMarketplaceService,
+                ApplicationListener<LoginEvent>,
+                AsynchronousPortalEventListener {
 
     public static String FEATURED_CATEGORY_NAME = "Featured";
     protected final Logger logger = LoggerFactory.getLogger(getClass());
@@ -188,16 +192,27 @@ public class MarketplaceService implements IMarketplaceService, ApplicationListe
 
         final Set<MarketplaceEntry> visiblePortletDefinitions = new HashSet<>();
 
+        // Evaluate BROWSE and SUBSCRIBE for all the portlets at once rather than one at a time
+        final Set<IPortletDefinition> browseablePortletDefinitions =
+                authorizationService.getBrowsablePortlets(
+                        principal, allDisplayablePortletDefinitions);
+        // short-cut for guest user, it will always be false for guest, see mayAddPortlet()
+        final Set<IPortletDefinition> addablePortletDefinitions =
+                user.isGuest()
+                        ? Collections.<IPortletDefinition>emptySet()
+                        : authorizationService.getSubscribablePortlets(
+                                principal, browseablePortletDefinitions);
+
         for (final IPortletDefinition portletDefinition : allDisplayablePortletDefinitions) {
 
-            if (mayBrowsePortlet(principal, portletDefinition)) {
+            if (browseablePortletDefinitions.contains(portletDefinition)) {
                 final MarketplacePortletDefinition marketplacePortletDefinition =
                         getOrCreateMarketplacePortletDefinition(portletDefinition);
                 final MarketplaceEntry entry =
                         new MarketplaceEntry(marketplacePortletDefinition, user);
 
                 // flag whether this use can add the portlet...
-                boolean canAdd = mayAddPortlet(user, portletDefinition);
+                boolean canAdd = addablePortletDefinitions.contains(portletDefinition);
                 entry.setCanAdd(canAdd);
 
                 visiblePortletDefinitions.add(entry);
@@ -19,16 +19,17 @@ import com.google.common.collect.Lists;
 import java.io.Serializable;
 import java.io.StringReader;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import javax.portlet.Event;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
@@ -37,8 +38,6 @@ import javax.xml.namespace.QName;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
-import net.sf.ehcache.Ehcache;
-import net.sf.ehcache.Element;
 import org.apache.commons.lang.StringUtils;
 import org.apache.pluto.container.PortletContainer;
 import org.apache.pluto.container.PortletContainerException;
@@ -69,13 +68,12 @@ import org.apereo.portal.services.AuthorizationServiceFacade;
 import org.apereo.portal.url.IPortalRequestUtils;
 import org.apereo.portal.user.IUserInstance;
 import org.apereo.portal.user.IUserInstanceManager;
-import org.apereo.portal.utils.Tuple;
 import org.apereo.portal.utils.web.PortalWebUtils;
 import org.apereo.portal.xml.XmlUtilities;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
@@ -84,8 +82,10 @@ import org.springframework.stereotype.Service;
  * #processEvents(PortletContainer, PortletWindow, HttpServletRequest, HttpServletResponse, List)}
  * request from the portlet container is to add them to a Queue scoped to the portal's request.
  *
- * <p>It also provides {@link #getPortletEventQueue(PortletEventQueue, List, HttpServletRequest)}
- * which is used to determine which events to send to which portlet windows.
+ * <p>It also provides {@link #resolvePortletEvents(HttpServletRequest, PortletEventQueue)} which is
+ * used to determine which events to send to which portlet windows. Targets are resolved through a
+ * {@link PortletEventRoutingIndex} built from the portlet descriptors and projected onto each
+ * user's layout, so resolving an event is a lookup rather than a scan of the user's subscriptions.
  */
 @Service("eventCoordinationService")
 public class PortletEventCoordinatationService implements IPortletEventCoordinationService {
@@ -95,16 +95,25 @@ public class PortletEventCoordinatationService implements IPortletEventCoordinat
     private static final String PORTLET_EVENT_QUEUE =
             PortletEventCoordinatationService.class.getName() + ".PORTLET_EVENT_QUEUE";
 
+    private static final String SESSION_ATTRIBUTE__USER_PORTLET_EVENT_ROUTES =
+            PortletEventCoordinatationService.class.getName() + ".USER_PORTLET_EVENT_ROUTES";
+
+    /** Minimum age of the routing index before it is rebuilt for an unknown portlet definition */
+    private static final long MIN_ROUTING_INDEX_REBUILD_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
     protected final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     private IPortletWindowRegistry portletWindowRegistry;
     private IPortletEntityRegistry portletEntityRegistry;
     private IPortletDefinitionRegistry portletDefinitionRegistry;
     private IUserInstanceManager userInstanceManager;
-    private Ehcache supportedEventCache;
     private IPortalRequestUtils portalRequestUtils;
     private XmlUtilities xmlUtilities;
     private PortletContextService portletContextService;
+    private long routingIndexMaxAge = TimeUnit.MINUTES.toMillis(5);
+
+    private final Object routingIndexMutex = new Object();
+    private volatile PortletEventRoutingIndex routingIndex;
 
     @Autowired
     public void setPortletContextService(PortletContextService portletContextService) {
@@ -121,11 +130,13 @@ public class PortletEventCoordinatationService implements IPortletEventCoordinat
         this.portalRequestUtils = portalRequestUtils;
     }
 
-    @Autowired
-    public void setSupportedEventCache(
-            @Qualifier("org.apereo.portal.portlet.rendering.SupportedEventCache")
-                    Ehcache supportedEventCache) {
-        this.supportedEventCache = supportedEventCache;
+    /**
+     * @param routingIndexMaxAge The maximum age in milliseconds of the event routing index before
+     *     it is rebuilt from the portlet descriptors. Defaults to 300000 (5 minutes)
+     */
+    @Value("${org.apereo.portal.portlet.eventRoutingIndexMaxAge:300000}")
+    public void setRoutingIndexMaxAge(long routingIndexMaxAge) {
+        this.routingIndexMaxAge = routingIndexMaxAge;
     }
 
     @Autowired
@@ -208,14 +219,13 @@ public class PortletEventCoordinatationService implements IPortletEventCoordinat
             return;
         }
 
-        // Get all the portlets the user is subscribed to
+        // Get the routes for the portlets the user is subscribed to
         final IUserInstance userInstance = this.userInstanceManager.getUserInstance(request);
-        final IUserPreferencesManager preferencesManager = userInstance.getPreferencesManager();
-        final IUserLayoutManager userLayoutManager = preferencesManager.getUserLayoutManager();
-
-        // Make a local copy so we can remove data from it
-        final Set<String> allLayoutNodeIds =
-                new LinkedHashSet<String>(userLayoutManager.getAllSubscribedChannels());
+        PortletEventRoutingIndex routingIndex = this.getRoutingIndex();
+        final UserPortletEventRoutes userRoutes =
+                this.getUserPortletEventRoutes(request, userInstance, routingIndex);
+        // Building the user's routes may have rebuilt the index
+        routingIndex = this.getRoutingIndex();
 
         final Map<String, IPortletEntity> portletEntityCache =
                 new LinkedHashMap<String, IPortletEntity>();
@@ -230,105 +240,72 @@ public class PortletEventCoordinatationService implements IPortletEventCoordinat
             final IPortletWindowId sourceWindowId = queuedEvent.getPortletWindowId();
             final Event event = queuedEvent.getEvent();
 
+            // All portlet definitions that can process the event
+            final Set<IPortletDefinitionId> targetDefinitionIds =
+                    routingIndex.getTargets(event.getQName());
+            if (targetDefinitionIds.isEmpty()) {
+                this.logger.debug("No portlets support event {}", event);
+                continue;
+            }
+
             final boolean globalEvent = isGlobalEvent(request, sourceWindowId, event);
 
-            final Set<IPortletDefinition> portletDefinitions =
-                    new LinkedHashSet<IPortletDefinition>();
+            final Set<IPortletDefinitionId> globalDefinitionIds;
             if (globalEvent) {
-                portletDefinitions.addAll(
-                        this.portletDefinitionRegistry.getAllPortletDefinitions());
+                globalDefinitionIds = new LinkedHashSet<IPortletDefinitionId>(targetDefinitionIds);
+            } else {
+                globalDefinitionIds = Collections.emptySet();
             }
 
-            // Check each subscription to see what events it is registered to see
-            for (final Iterator<String> layoutNodeIdItr = allLayoutNodeIds.iterator();
-                    layoutNodeIdItr.hasNext(); ) {
-                final String layoutNodeId = layoutNodeIdItr.next();
-
-                IPortletEntity portletEntity = portletEntityCache.get(layoutNodeId);
-                if (portletEntity == null) {
-                    portletEntity =
-                            this.portletEntityRegistry.getOrCreatePortletEntity(
-                                    request, userInstance, layoutNodeId);
-
-                    // if portlet entity registry returned null, then portlet has been deleted -
-                    // remove it (see UP-3378)
+            // Target each subscription in the user's layout that supports the event
+            for (final IPortletDefinitionId portletDefinitionId : targetDefinitionIds) {
+                for (final String layoutNodeId : userRoutes.getLayoutNodeIds(portletDefinitionId)) {
+                    IPortletEntity portletEntity = portletEntityCache.get(layoutNodeId);
                     if (portletEntity == null) {
-                        layoutNodeIdItr.remove();
-                        continue;
-                    }
+                        portletEntity =
+                                this.portletEntityRegistry.getOrCreatePortletEntity(
+                                        request, userInstance, layoutNodeId);
+
+                        // if portlet entity registry returned null, then portlet has been deleted
+                        // since the routes were built (see UP-3378)
+                        if (portletEntity == null) {
+                            continue;
+                        }
 
-                    final IPortletDefinitionId portletDefinitionId =
-                            portletEntity.getPortletDefinitionId();
-                    final PortletDefinition portletDescriptor =
-                            this.portletDefinitionRegistry.getParentPortletDescriptor(
-                                    portletDefinitionId);
-                    if (portletDescriptor == null) {
-                        // Missconfigured portlet, remove it from the list so we don't check again
-                        // and ignore it
-                        layoutNodeIdItr.remove();
-                        continue;
+                        portletEntityCache.put(layoutNodeId, portletEntity);
                     }
 
-                    final List<? extends EventDefinitionReference> supportedProcessingEvents =
-                            portletDescriptor.getSupportedProcessingEvents();
-                    // Skip portlets that don't handle any events and remove them from the set so
-                    // they are not checked again
-                    if (supportedProcessingEvents == null
-                            || supportedProcessingEvents.size() == 0) {
-                        layoutNodeIdItr.remove();
-                        continue;
-                    }
-
-                    portletEntityCache.put(layoutNodeId, portletEntity);
-                }
-
-                final IPortletDefinition portletDefinition = portletEntity.getPortletDefinition();
-                final IPortletDefinitionId portletDefinitionId =
-                        portletDefinition.getPortletDefinitionId();
-                if (this.supportsEvent(event, portletDefinitionId)) {
+                    final IPortletDefinition portletDefinition =
+                            portletEntity.getPortletDefinition();
                     this.logger.debug("{} supports event {}", portletDefinition, event);
 
-                    // If this is the default portlet entity remove the definition from the all defs
-                    // set to avoid duplicate processing
-                    final IPortletEntity defaultPortletEntity =
-                            this.portletEntityRegistry.getOrCreateDefaultPortletEntity(
-                                    request, portletDefinitionId);
-                    if (defaultPortletEntity.equals(portletEntity)) {
-                        portletDefinitions.remove(portletDefinition);
+                    // If this is the default portlet entity remove the definition from the global
+                    // targets to avoid duplicate processing
+                    if (globalEvent) {
+                        final IPortletEntity defaultPortletEntity =
+                                this.portletEntityRegistry.getOrCreateDefaultPortletEntity(
+                                        request, portletDefinitionId);
+                        if (defaultPortletEntity.equals(portletEntity)) {
+                            globalDefinitionIds.remove(portletDefinitionId);
+                        }
                     }
 
                     // Is this portlet permitted to receive events?  (Or is it
                     // disablePortletEvents=true?)
-                    IPortletDefinitionParameter disablePortletEvents =
-                            portletDefinition.getParameter(
-                                    PortletExecutionManager.DISABLE_PORTLET_EVENTS_PARAMETER);
-                    if (disablePortletEvents != null
-                            && Boolean.parseBoolean(disablePortletEvents.getValue())) {
-                        logger.info(
-                                "Ignoring portlet events for portlet '{}' because they have been disabled.",
-                                portletDefinition.getFName());
+                    if (this.isPortletEventsDisabled(portletDefinition)) {
                         continue;
                     }
 
-                    final IPortletEntityId portletEntityId = portletEntity.getPortletEntityId();
-                    final Set<IPortletWindow> portletWindows =
-                            this.portletWindowRegistry.getAllPortletWindowsForEntity(
-                                    request, portletEntityId);
-
-                    for (final IPortletWindow portletWindow : portletWindows) {
-                        this.logger.debug("{} resolved target {}", event, portletWindow);
-                        final IPortletWindowId portletWindowId = portletWindow.getPortletWindowId();
-                        final Event unmarshalledEvent = this.unmarshall(portletWindow, event);
-                        portletEventQueue.offerEvent(
-                                portletWindowId,
-                                new QueuedEvent(sourceWindowId, unmarshalledEvent));
-                    }
-                } else {
-                    portletDefinitions.remove(portletDefinition);
+                    this.offerEvent(
+                            request,
+                            portletEventQueue,
+                            portletEntity.getPortletEntityId(),
+                            sourceWindowId,
+                            event);
                 }
             }
 
-            if (!portletDefinitions.isEmpty()) {
+            if (!globalDefinitionIds.isEmpty()) {
                 final IPerson user = userInstance.getPerson();
                 final EntityIdentifier ei = user.getEntityIdentifier();
                 final IAuthorizationPrincipal ap =
@@ -337,52 +314,237 @@ public class PortletEventCoordinatationService implements IPortletEventCoordinat
 
                 // If the event is global there might still be portlet definitions that need
                 // targeting
-                for (final IPortletDefinition portletDefinition : portletDefinitions) {
-
-                    // Is this portlet permitted to receive events?  (Or is it
-                    // disablePortletEvents=true?)
-                    IPortletDefinitionParameter disablePortletEvents =
-                            portletDefinition.getParameter(
-                                    PortletExecutionManager.DISABLE_PORTLET_EVENTS_PARAMETER);
-                    if (disablePortletEvents != null
-                            && Boolean.parseBoolean(disablePortletEvents.getValue())) {
-                        logger.info(
-                                "Ignoring portlet events for portlet '{}' because they have been disabled.",
-                                portletDefinition.getFName());
+                for (final IPortletDefinitionId portletDefinitionId : globalDefinitionIds) {
+                    final IPortletDefinition portletDefinition =
+                            this.portletDefinitionRegistry.getPortletDefinition(
+                                    portletDefinitionId);
+                    if (portletDefinition == null
+                            || this.isPortletEventsDisabled(portletDefinition)) {
                         continue;
                     }
 
-                    final IPortletDefinitionId portletDefinitionId =
-                            portletDefinition.getPortletDefinitionId();
-                    // Check if the user can render the portlet definition before doing event tests
+                    // Check if the user can render the portlet definition before targeting it
                     if (ap.canRender(portletDefinitionId.getStringId())) {
-                        if (this.supportsEvent(event, portletDefinitionId)) {
-                            this.logger.debug("{} supports event {}", portletDefinition, event);
-
-                            final IPortletEntity portletEntity =
-                                    this.portletEntityRegistry.getOrCreateDefaultPortletEntity(
-                                            request, portletDefinitionId);
-                            final IPortletEntityId portletEntityId =
-                                    portletEntity.getPortletEntityId();
-                            final Set<IPortletWindow> portletWindows =
-                                    this.portletWindowRegistry.getAllPortletWindowsForEntity(
-                                            request, portletEntityId);
-
-                            for (final IPortletWindow portletWindow : portletWindows) {
-                                this.logger.debug("{} resolved target {}", event, portletWindow);
-                                final IPortletWindowId portletWindowId =
-                                        portletWindow.getPortletWindowId();
-                                final Event unmarshalledEvent =
-                                        this.unmarshall(portletWindow, event);
-                                portletEventQueue.offerEvent(
-                                        portletWindowId,
-                                        new QueuedEvent(sourceWindowId, unmarshalledEvent));
-                            }
+                        this.logger.debug("{} supports event {}", portletDefinition, event);
+
+                        final IPortletEntity portletEntity =
+                                this.portletEntityRegistry.getOrCreateDefaultPortletEntity(
+                                        request, portletDefinitionId);
+                        this.offerEvent(
+                                request,
+                                portletEventQueue,
+                                portletEntity.getPortletEntityId(),
+                                sourceWindowId,
+                                event);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Queue the event for every window of the target portlet entity */
+    protected void offerEvent(
+            HttpServletRequest request,
+            PortletEventQueue portletEventQueue,
+            IPortletEntityId portletEntityId,
+            IPortletWindowId sourceWindowId,
+            Event event) {
+        final Set<IPortletWindow> portletWindows =
+                this.portletWindowRegistry.getAllPortletWindowsForEntity(request, portletEntityId);
+
+        for (final IPortletWindow portletWindow : portletWindows) {
+            this.logger.debug("{} resolved target {}", event, portletWindow);
+            final IPortletWindowId portletWindowId = portletWindow.getPortletWindowId();
+            final Event unmarshalledEvent = this.unmarshall(portletWindow, event);
+            portletEventQueue.offerEvent(
+                    portletWindowId, new QueuedEvent(sourceWindowId, unmarshalledEvent));
+        }
+    }
+
+    /** @return true if the portlet definition has disablePortletEvents=true */
+    protected boolean isPortletEventsDisabled(IPortletDefinition portletDefinition) {
+        final IPortletDefinitionParameter disablePortletEvents =
+                portletDefinition.getParameter(
+                        PortletExecutionManager.DISABLE_PORTLET_EVENTS_PARAMETER);
+        if (disablePortletEvents != null && Boolean.parseBoolean(disablePortletEvents.getValue())) {
+            logger.info(
+                    "Ignoring portlet events for portlet '{}' because they have been disabled.",
+                    portletDefinition.getFName());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the routes for the portlets in the user's layout. The routes are cached in the session
+     * alongside the user instance and rebuilt when the layout or the routing index changes.
+     */
+    protected UserPortletEventRoutes getUserPortletEventRoutes(
+            HttpServletRequest request,
+            IUserInstance userInstance,
+            PortletEventRoutingIndex routingIndex) {
+        final IUserPreferencesManager preferencesManager = userInstance.getPreferencesManager();
+        final IUserLayoutManager userLayoutManager = preferencesManager.getUserLayoutManager();
+        final String layoutCacheKey = userLayoutManager.getCacheKey();
+
+        final HttpSession session = request.getSession();
+        UserPortletEventRoutes userRoutes =
+                (UserPortletEventRoutes)
+                        session.getAttribute(SESSION_ATTRIBUTE__USER_PORTLET_EVENT_ROUTES);
+        if (userRoutes != null && userRoutes.isValid(layoutCacheKey, routingIndex)) {
+            return userRoutes;
+        }
+
+        final Set<String> layoutNodeIds = userLayoutManager.getAllSubscribedChannels();
+        final Map<String, IPortletDefinitionId> subscribedDefinitionIds =
+                new LinkedHashMap<String, IPortletDefinitionId>();
+        boolean unindexedDefinitions = false;
+        for (final String layoutNodeId : layoutNodeIds) {
+            final IPortletEntity portletEntity =
+                    this.portletEntityRegistry.getOrCreatePortletEntity(
+                            request, userInstance, layoutNodeId);
+
+            // if portlet entity registry returned null, then portlet has been deleted (see UP-3378)
+            if (portletEntity == null) {
+                continue;
+            }
+
+            final IPortletDefinitionId portletDefinitionId = portletEntity.getPortletDefinitionId();
+            subscribedDefinitionIds.put(layoutNodeId, portletDefinitionId);
+            unindexedDefinitions |= !routingIndex.isIndexed(portletDefinitionId);
+        }
+
+        // A portlet application may have been registered since the index was built
+        if (unindexedDefinitions
+                && routingIndex.getCreated() + MIN_ROUTING_INDEX_REBUILD_INTERVAL
+                        < System.currentTimeMillis()) {
+            routingIndex = this.rebuildRoutingIndex(routingIndex);
+        }
+
+        userRoutes = new UserPortletEventRoutes(layoutCacheKey, routingIndex.getCreated());
+        for (final Map.Entry<String, IPortletDefinitionId> subscribedDefinitionIdEntry :
+                subscribedDefinitionIds.entrySet()) {
+            final IPortletDefinitionId portletDefinitionId = subscribedDefinitionIdEntry.getValue();
+            if (routingIndex.isRoutable(portletDefinitionId)) {
+                userRoutes.addLayoutNode(portletDefinitionId, subscribedDefinitionIdEntry.getKey());
+            }
+        }
+
+        session.setAttribute(SESSION_ATTRIBUTE__USER_PORTLET_EVENT_ROUTES, userRoutes);
+        return userRoutes;
+    }
+
+    /** @return The current routing index, rebuilt if it is older than the routingIndexMaxAge */
+    protected PortletEventRoutingIndex getRoutingIndex() {
+        final PortletEventRoutingIndex routingIndex = this.routingIndex;
+        if (routingIndex != null
+                && routingIndex.getCreated() + this.routingIndexMaxAge
+                        > System.currentTimeMillis()) {
+            return routingIndex;
+        }
+
+        return this.rebuildRoutingIndex(routingIndex);
+    }
+
+    /**
+     * Replace the specified routing index with a new one, if another thread has already replaced it
+     * the current index is returned instead.
+     */
+    protected PortletEventRoutingIndex rebuildRoutingIndex(
+            PortletEventRoutingIndex staleRoutingIndex) {
+        synchronized (this.routingIndexMutex) {
+            if (this.routingIndex != staleRoutingIndex) {
+                return this.routingIndex;
+            }
+
+            final PortletEventRoutingIndex routingIndex = this.buildRoutingIndex();
+            this.logger.debug("Built {}", routingIndex);
+            this.routingIndex = routingIndex;
+            return routingIndex;
+        }
+    }
+
+    /**
+     * Build the routing index from the portlet descriptors of all portlet definitions. Each
+     * supported processing event is routed by its qualified name, by its name in the application's
+     * default namespace if it has no namespace, and by the names of the application's event
+     * definitions that declare it as an alias.
+     */
+    protected PortletEventRoutingIndex buildRoutingIndex() {
+        final PortletEventRoutingIndex routingIndex = new PortletEventRoutingIndex();
+
+        for (final IPortletDefinition portletDefinition :
+                this.portletDefinitionRegistry.getAllPortletDefinitions()) {
+            final IPortletDefinitionId portletDefinitionId =
+                    portletDefinition.getPortletDefinitionId();
+
+            final PortletApplicationDefinition portletApplicationDescriptor =
+                    this.portletDefinitionRegistry.getParentPortletApplicationDescriptor(
+                            portletDefinitionId);
+            if (portletApplicationDescriptor == null) {
+                continue;
+            }
+
+            final PortletDefinition portletDescriptor =
+                    this.portletDefinitionRegistry.getParentPortletDescriptor(portletDefinitionId);
+            if (portletDescriptor == null) {
+                continue;
+            }
+
+            routingIndex.addIndexed(portletDefinitionId);
+
+            final List<? extends EventDefinitionReference> supportedProcessingEvents =
+                    portletDescriptor.getSupportedProcessingEvents();
+            // Skip portlets that don't handle any events
+            if (supportedProcessingEvents == null || supportedProcessingEvents.isEmpty()) {
+                continue;
+            }
+
+            final String defaultNamespace = portletApplicationDescriptor.getDefaultNamespace();
+
+            final Set<QName> supportedNames = new LinkedHashSet<QName>();
+            for (final EventDefinitionReference eventDefinitionReference :
+                    supportedProcessingEvents) {
+                final QName qualifiedName =
+                        eventDefinitionReference.getQualifiedName(defaultNamespace);
+                if (qualifiedName == null) {
+                    continue;
+                }
+
+                supportedNames.add(qualifiedName);
+
+                // Events without a namespace are also matched in the default namespace
+                if (StringUtils.isEmpty(qualifiedName.getNamespaceURI())) {
+                    supportedNames.add(new QName(defaultNamespace, qualifiedName.getLocalPart()));
+                }
+            }
+
+            // Route events whose definition declares a supported name as an alias
+            final List<? extends EventDefinition> eventDefinitions =
+                    portletApplicationDescriptor.getEventDefinitions();
+            if (eventDefinitions != null) {
+                for (final EventDefinition eventDefinition : eventDefinitions) {
+                    final QName defQName = eventDefinition.getQualifiedName(defaultNamespace);
+                    final List<QName> aliases = eventDefinition.getAliases();
+                    if (defQName == null || aliases == null) {
+                        continue;
+                    }
+
+                    for (final QName alias : aliases) {
+                        if (supportedNames.contains(alias)) {
+                            routingIndex.addRoute(defQName, portletDefinitionId);
+                            break;
                         }
                     }
                 }
             }
+
+            for (final QName supportedName : supportedNames) {
+                routingIndex.addRoute(supportedName, portletDefinitionId);
+            }
         }
+
+        return routingIndex;
     }
 
     protected boolean isGlobalEvent(
@@ -489,92 +651,7 @@ public class PortletEventCoordinatationService implements IPortletEventCoordinat
         throw new IllegalStateException();
     }
 
-    protected Set<QName> getAllAliases(
-            QName eventName, PortletApplicationDefinition portletApplicationDefinition) {
-        final List<? extends EventDefinition> eventDefinitions =
-                portletApplicationDefinition.getEventDefinitions();
-        if (eventDefinitions == null || eventDefinitions.isEmpty()) {
-            return Collections.emptySet();
-        }
-
-        final String defaultNamespace = portletApplicationDefinition.getDefaultNamespace();
-
-        for (final EventDefinition eventDefinition : eventDefinitions) {
-            final QName defQName = eventDefinition.getQualifiedName(defaultNamespace);
-            if (defQName != null && defQName.equals(eventName)) {
-                final List<QName> aliases = eventDefinition.getAliases();
-                if (aliases == null || aliases.isEmpty()) {
-                    return Collections.emptySet();
-                }
-
-                return new LinkedHashSet<QName>(aliases);
-            }
-        }
-
-        return Collections.emptySet();
-    }
-
     protected boolean supportsEvent(Event event, IPortletDefinitionId portletDefinitionId) {
-        final QName eventName = event.getQName();
-
-        // The cache key to use
-        final Tuple<IPortletDefinitionId, QName> key =
-                new Tuple<IPortletDefinitionId, QName>(portletDefinitionId, eventName);
-
-        // Check in the cache if the portlet definition supports this event
-        final Element element = this.supportedEventCache.get(key);
-        if (element != null) {
-            final Boolean supported = (Boolean) element.getObjectValue();
-            if (supported != null) {
-                return supported;
-            }
-        }
-
-        final PortletApplicationDefinition portletApplicationDescriptor =
-                this.portletDefinitionRegistry.getParentPortletApplicationDescriptor(
-                        portletDefinitionId);
-        if (portletApplicationDescriptor == null) {
-            return false;
-        }
-
-        final Set<QName> aliases = this.getAllAliases(eventName, portletApplicationDescriptor);
-
-        final String defaultNamespace = portletApplicationDescriptor.getDefaultNamespace();
-
-        // No support found so far, do more complex namespace matching
-        final PortletDefinition portletDescriptor =
-                this.portletDefinitionRegistry.getParentPortletDescriptor(portletDefinitionId);
-        if (portletDescriptor == null) {
-            return false;
-        }
-
-        final List<? extends EventDefinitionReference> supportedProcessingEvents =
-                portletDescriptor.getSupportedProcessingEvents();
-        for (final EventDefinitionReference eventDefinitionReference : supportedProcessingEvents) {
-            final QName qualifiedName = eventDefinitionReference.getQualifiedName(defaultNamespace);
-            if (qualifiedName == null) {
-                continue;
-            }
-
-            // See if the supported qname and event qname match explicitly
-            // Look for alias names
-            if (qualifiedName.equals(eventName) || aliases.contains(qualifiedName)) {
-                this.supportedEventCache.put(new Element(key, Boolean.TRUE));
-                return true;
-            }
-
-            // Look for namespaced events
-            if (StringUtils.isEmpty(qualifiedName.getNamespaceURI())) {
-                final QName namespacedName =
-                        new QName(defaultNamespace, qualifiedName.getLocalPart());
-                if (eventName.equals(namespacedName)) {
-                    this.supportedEventCache.put(new Element(key, Boolean.TRUE));
-                    return true;
-                }
-            }
-        }
-
-        this.supportedEventCache.put(new Element(key, Boolean.FALSE));
-        return false;
+        return this.getRoutingIndex().supportsEvent(event.getQName(), portletDefinitionId);
     }
 }
@@ -0,0 +1,162 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.xml.namespace.QName;
+import org.apereo.portal.portlet.om.IPortletDefinitionId;
+
+/**
+ * Routing table from portlet event {@link QName} to the portlet definitions that declare support
+ * for processing that event. Routes are added while the index is built from the portlet
+ * descriptors, after that the index is treated as immutable and can be shared between threads.
+ *
+ * <p>Wildcard routes are declared with a trailing {@value #WILDCARD} on the local part of the
+ * supported event name, for example <code>{urn:example}news.*</code> matches <code>
+ * {urn:example}news.updated</code>. The result of wildcard resolution is memoized per event name.
+ */
+public class PortletEventRoutingIndex {
+    public static final String WILDCARD = "*";
+
+    private final Map<QName, Set<IPortletDefinitionId>> exactRoutes =
+            new LinkedHashMap<QName, Set<IPortletDefinitionId>>();
+    private final List<WildcardRoute> wildcardRoutes = new ArrayList<WildcardRoute>();
+    private final Set<IPortletDefinitionId> indexedDefinitions =
+            new LinkedHashSet<IPortletDefinitionId>();
+    private final Set<IPortletDefinitionId> routableDefinitions =
+            new LinkedHashSet<IPortletDefinitionId>();
+    private final ConcurrentMap<QName, Set<IPortletDefinitionId>> resolvedRoutes =
+            new ConcurrentHashMap<QName, Set<IPortletDefinitionId>>();
+    private final long created = System.currentTimeMillis();
+
+    /** @return The time in milliseconds this index was created */
+    public long getCreated() {
+        return this.created;
+    }
+
+    /** Record that the descriptor of the portlet definition was examined while building */
+    void addIndexed(IPortletDefinitionId portletDefinitionId) {
+        this.indexedDefinitions.add(portletDefinitionId);
+    }
+
+    /** @return true if the descriptor of the portlet definition was examined while building */
+    public boolean isIndexed(IPortletDefinitionId portletDefinitionId) {
+        return this.indexedDefinitions.contains(portletDefinitionId);
+    }
+
+    /** @return true if the portlet definition is the target of at least one route */
+    public boolean isRoutable(IPortletDefinitionId portletDefinitionId) {
+        return this.routableDefinitions.contains(portletDefinitionId);
+    }
+
+    /**
+     * Add a route from the specified supported event name to the portlet definition. If the local
+     * part of the name ends with {@value #WILDCARD} the route is added as a wildcard route.
+     */
+    void addRoute(QName supportedEventName, IPortletDefinitionId portletDefinitionId) {
+        this.indexedDefinitions.add(portletDefinitionId);
+        this.routableDefinitions.add(portletDefinitionId);
+
+        final String localPart = supportedEventName.getLocalPart();
+        if (localPart.endsWith(WILDCARD)) {
+            final String prefix = localPart.substring(0, localPart.length() - WILDCARD.length());
+            this.wildcardRoutes.add(
+                    new WildcardRoute(
+                            supportedEventName.getNamespaceURI(), prefix, portletDefinitionId));
+            return;
+        }
+
+        Set<IPortletDefinitionId> targets = this.exactRoutes.get(supportedEventName);
+        if (targets == null) {
+            targets = new LinkedHashSet<IPortletDefinitionId>();
+            this.exactRoutes.put(supportedEventName, targets);
+        }
+        targets.add(portletDefinitionId);
+    }
+
+    /**
+     * @return The immutable set of portlet definitions that support the specified event, never null
+     */
+    public Set<IPortletDefinitionId> getTargets(QName eventName) {
+        Set<IPortletDefinitionId> targets = this.resolvedRoutes.get(eventName);
+        if (targets != null) {
+            return targets;
+        }
+
+        final Set<IPortletDefinitionId> exactTargets = this.exactRoutes.get(eventName);
+        if (this.wildcardRoutes.isEmpty()) {
+            targets = exactTargets != null ? exactTargets : Collections.emptySet();
+        } else {
+            targets = new LinkedHashSet<IPortletDefinitionId>();
+            if (exactTargets != null) {
+                targets.addAll(exactTargets);
+            }
+            for (final WildcardRoute wildcardRoute : this.wildcardRoutes) {
+                if (wildcardRoute.matches(eventName)) {
+                    targets.add(wildcardRoute.portletDefinitionId);
+                }
+            }
+        }
+
+        targets = Collections.unmodifiableSet(targets);
+        final Set<IPortletDefinitionId> existing =
+                this.resolvedRoutes.putIfAbsent(eventName, targets);
+        return existing != null ? existing : targets;
+    }
+
+    /** @return true if the specified portlet definition supports the event */
+    public boolean supportsEvent(QName eventName, IPortletDefinitionId portletDefinitionId) {
+        return this.getTargets(eventName).contains(portletDefinitionId);
+    }
+
+    @Override
+    public String toString() {
+        return "PortletEventRoutingIndex [exactRoutes="
+                + this.exactRoutes.size()
+                + ", wildcardRoutes="
+                + this.wildcardRoutes.size()
+                + ", created="
+                + this.created
+                + "]";
+    }
+
+    private static final class WildcardRoute {
+        private final String namespaceURI;
+        private final String localPartPrefix;
+        private final IPortletDefinitionId portletDefinitionId;
+
+        public WildcardRoute(
+                String namespaceURI,
+                String localPartPrefix,
+                IPortletDefinitionId portletDefinitionId) {
+            this.namespaceURI = namespaceURI;
+            this.localPartPrefix = localPartPrefix;
+            this.portletDefinitionId = portletDefinitionId;
+        }
+
+        public boolean matches(QName eventName) {
+            return this.namespaceURI.equals(eventName.getNamespaceURI())
+                    && eventName.getLocalPart().startsWith(this.localPartPrefix);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apereo.portal.portlet.om.IPortletDefinitionId;
+
+/**
+ * Projection of the {@link PortletEventRoutingIndex} onto a single user's layout. Maps each portlet
+ * definition that processes events to the layout node ids in the user's layout that subscribe to
+ * it. Only valid for the layout cache key and routing index it was built for.
+ */
+class UserPortletEventRoutes implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String layoutCacheKey;
+    private final long routingIndexCreated;
+    private final Map<IPortletDefinitionId, List<String>> layoutNodeIds =
+            new LinkedHashMap<IPortletDefinitionId, List<String>>();
+
+    UserPortletEventRoutes(String layoutCacheKey, long routingIndexCreated) {
+        this.layoutCacheKey = layoutCacheKey;
+        this.routingIndexCreated = routingIndexCreated;
+    }
+
+    void addLayoutNode(IPortletDefinitionId portletDefinitionId, String layoutNodeId) {
+        List<String> nodeIds = this.layoutNodeIds.get(portletDefinitionId);
+        if (nodeIds == null) {
+            nodeIds = new ArrayList<String>(1);
+            this.layoutNodeIds.put(portletDefinitionId, nodeIds);
+        }
+        nodeIds.add(layoutNodeId);
+    }
+
+    /** @return true if this projection was built for the specified layout and routing index */
+    boolean isValid(String layoutCacheKey, PortletEventRoutingIndex routingIndex) {
+        return this.routingIndexCreated == routingIndex.getCreated()
+                && this.layoutCacheKey != null
+                && this.layoutCacheKey.equals(layoutCacheKey);
+    }
+
+    /** @return The subscribed layout node ids for the portlet definition, never null */
+    List<String> getLayoutNodeIds(IPortletDefinitionId portletDefinitionId) {
+        final List<String> nodeIds = this.layoutNodeIds.get(portletDefinitionId);
+        if (nodeIds == null) {
+            return Collections.emptyList();
+        }
+        return nodeIds;
+    }
+}
@@ -24,6 +24,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.apereo.portal.events.AsynchronousPortalEventListener;
 import org.apereo.portal.events.PortalEvent;
 import org.apereo.portal.events.PortletHungCompleteEvent;
 import org.apereo.portal.events.PortletHungEvent;
@@ -46,6 +47,7 @@ import org.springframework.stereotype.Service;
 @Service("hungWorkerAnalyzer")
 public class HungWorkerAnalyzer
         implements ApplicationListener<PortalEvent>,
+                AsynchronousPortalEventListener,
                 InitializingBean,
                 IPortletExecutionInterceptor,
                 HungWorkerAnalyzerMXBean {
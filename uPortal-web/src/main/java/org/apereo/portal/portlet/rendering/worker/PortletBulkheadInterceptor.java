@@ -0,0 +1,249 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Maps;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apereo.portal.portlet.rendering.worker.IPortletExecutionContext.ExecutionType;
+import org.apereo.portal.utils.ConcurrentMapUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Limits the number of concurrent executions of each portlet fname using an {@link
+ * AdaptiveConcurrencyLimit}. When a portlet's backend slows down its executions start exceeding the
+ * latency threshold and its limit shrinks, new executions beyond the limit are rejected before they
+ * are submitted to the thread pool and fail fast into the normal portlet error rendering. This
+ * keeps a single slow portlet from tying up the shared portlet thread pool.
+ *
+ * <p>An execution counts as slow when it runs longer than {@link #setSlowExecutionRatio(double)} of
+ * its applicable timeout.
+ *
+ * <p>The permit taken in {@link #preSubmit(HttpServletRequest, HttpServletResponse,
+ * IPortletExecutionContext)} is returned in {@link #postExecution(HttpServletRequest,
+ * HttpServletResponse, IPortletExecutionContext, Exception)}. Workers that the thread pool rejects
+ * still run the execution lifecycle, so they reach it too. Workers canceled while still queued
+ * never execute and return it in {@link #executionCanceled(HttpServletRequest, HttpServletResponse,
+ * IPortletExecutionContext)} instead.
+ *
+ * @since 5.3
+ */
+@ManagedResource("uPortal:section=Framework,name=PortletBulkhead")
+@Service("portletBulkheadInterceptor")
+public class PortletBulkheadInterceptor extends PortletExecutionInterceptorAdaptor
+        implements PortletBulkheadMXBean {
+    private static final String LIMIT_ATTRIBUTE =
+            PortletBulkheadInterceptor.class.getName() + ".LIMIT";
+
+    private final ConcurrentMap<String, AdaptiveConcurrencyLimit> limits =
+            new ConcurrentHashMap<String, AdaptiveConcurrencyLimit>();
+
+    private volatile boolean enabled = true;
+    private int initialLimit = 20;
+    private int minLimit = 2;
+    private int maxLimit = 200;
+    private double backoffRatio = .9;
+    private double slowExecutionRatio = .75;
+
+    @Value("${org.apereo.portal.portlet.worker.bulkhead.enabled:true}")
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /** @param initialLimit The concurrency limit a portlet starts with */
+    @Value("${org.apereo.portal.portlet.worker.bulkhead.initialLimit:20}")
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    /** @param minLimit The lowest a portlet's concurrency limit will be reduced to */
+    @Value("${org.apereo.portal.portlet.worker.bulkhead.minLimit:2}")
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    /** @param maxLimit The highest a portlet's concurrency limit will be raised to */
+    @Value("${org.apereo.portal.portlet.worker.bulkhead.maxLimit:200}")
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    /** @param backoffRatio Multiplier applied to a portlet's limit on a slow or failed execution */
+    @Value("${org.apereo.portal.portlet.worker.bulkhead.backoffRatio:.9}")
+    public void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * @param slowExecutionRatio Fraction of the applicable timeout after which an execution is
+     *     considered slow
+     */
+    @Value("${org.apereo.portal.portlet.worker.bulkhead.slowExecutionRatio:.75}")
+    public void setSlowExecutionRatio(double slowExecutionRatio) {
+        this.slowExecutionRatio = slowExecutionRatio;
+    }
+
+    @Override
+    public Map<String, Integer> getLimits() {
+        return Maps.transformValues(
+                this.limits,
+                new Function<AdaptiveConcurrencyLimit, Integer>() {
+                    @Override
+                    public Integer apply(AdaptiveConcurrencyLimit limit) {
+                        return limit.getLimit();
+                    }
+                });
+    }
+
+    @Override
+    public Map<String, Integer> getInFlight() {
+        return Maps.transformValues(
+                this.limits,
+                new Function<AdaptiveConcurrencyLimit, Integer>() {
+                    @Override
+                    public Integer apply(AdaptiveConcurrencyLimit limit) {
+                        return limit.getInFlight();
+                    }
+                });
+    }
+
+    @Override
+    public Map<String, Long> getRejections() {
+        return Maps.transformValues(
+                this.limits,
+                new Function<AdaptiveConcurrencyLimit, Long>() {
+                    @Override
+                    public Long apply(AdaptiveConcurrencyLimit limit) {
+                        return limit.getRejected();
+                    }
+                });
+    }
+
+    @Override
+    public Map<String, Long> getDrops() {
+        return Maps.transformValues(
+                this.limits,
+                new Function<AdaptiveConcurrencyLimit, Long>() {
+                    @Override
+                    public Long apply(AdaptiveConcurrencyLimit limit) {
+                        return limit.getDropped();
+                    }
+                });
+    }
+
+    @Override
+    public long getRejectionTotal() {
+        long total = 0;
+        for (final AdaptiveConcurrencyLimit limit : this.limits.values()) {
+            total += limit.getRejected();
+        }
+        return total;
+    }
+
+    protected AdaptiveConcurrencyLimit getLimit(String portletFname) {
+        AdaptiveConcurrencyLimit limit = this.limits.get(portletFname);
+        if (limit == null) {
+            limit =
+                    ConcurrentMapUtils.putIfAbsent(
+                            this.limits,
+                            portletFname,
+                            new AdaptiveConcurrencyLimit(
+                                    this.initialLimit,
+                                    this.minLimit,
+                                    this.maxLimit,
+                                    this.backoffRatio));
+        }
+        return limit;
+    }
+
+    @Override
+    public void preSubmit(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            IPortletExecutionContext context) {
+        if (!this.enabled || context.getExecutionType() == ExecutionType.FAILURE) {
+            // Never get in the way of rendering the error portlet
+            return;
+        }
+
+        final String portletFname = context.getPortletFname();
+        final AdaptiveConcurrencyLimit limit = this.getLimit(portletFname);
+        if (!limit.tryAcquire()) {
+            final String msg =
+                    "Denying worker execution for "
+                            + portletFname
+                            + " that has "
+                            + limit.getInFlight()
+                            + " executions in flight over its limit of "
+                            + limit.getLimit();
+            logger.info(msg);
+            throw new IllegalStateException(msg);
+        }
+
+        context.setExecutionAttribute(LIMIT_ATTRIBUTE, limit);
+    }
+
+    @Override
+    public void postExecution(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            IPortletExecutionContext context,
+            Exception e) {
+        final AdaptiveConcurrencyLimit limit =
+                (AdaptiveConcurrencyLimit) context.setExecutionAttribute(LIMIT_ATTRIBUTE, null);
+        if (limit == null) {
+            // Execution was never admitted by this interceptor
+            return;
+        }
+
+        final long timeout = context.getApplicableTimeout();
+        final long latency = System.currentTimeMillis() - context.getStartedTime();
+        final boolean slow = timeout > 0 && latency > timeout * this.slowExecutionRatio;
+        limit.release(e != null || slow);
+
+        if (slow) {
+            logger.debug(
+                    "Slow execution of {} took {}ms, reduced limit to {}",
+                    context.getPortletFname(),
+                    latency,
+                    limit.getLimit());
+        }
+    }
+
+    @Override
+    public void executionCanceled(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            IPortletExecutionContext context) {
+        final AdaptiveConcurrencyLimit limit =
+                (AdaptiveConcurrencyLimit) context.setExecutionAttribute(LIMIT_ATTRIBUTE, null);
+        if (limit != null) {
+            // Timed out waiting in the queue, the portlet itself did not get a chance to be slow
+            limit.release(false);
+        }
+    }
+}
@@ -14,14 +14,17 @@
  */
 package org.apereo.portal.portlet.container.services;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import javax.servlet.http.Cookie;
 import org.apereo.portal.portlet.dao.IPortletCookieDao;
+import org.apereo.portal.portlet.dao.PortalCookieUpdate;
 import org.apereo.portal.portlet.om.IPortalCookie;
 import org.apereo.portal.portlet.om.IPortletCookie;
 import org.apereo.portal.portlet.om.IPortletWindowId;
+import org.easymock.Capture;
 import org.easymock.EasyMock;
 import org.joda.time.DateTime;
 import org.junit.Assert;
@@ -256,6 +259,68 @@ public class PortletCookieServiceImplTest {
         EasyMock.verify(portletCookieDao, mockWindowId);
     }
 
+    /**
+     * Test that with write-behind enabled portlet cookie changes are coalesced per portal cookie,
+     * visible to {@link PortletCookieServiceImpl#getAllPortletCookies} before they are flushed and
+     * written in a single batch by {@link PortletCookieServiceImpl#flushPendingCookieUpdates()}.
+     */
+    @Test
+    public void testAddCookieWriteBehind() {
+        IPortletCookieDao portletCookieDao = EasyMock.createMock(IPortletCookieDao.class);
+
+        MockPortalCookie portalCookie = new MockPortalCookie();
+        portalCookie.setValue("ABCDEF");
+
+        EasyMock.expect(
+                        portletCookieDao.createPortalCookie(
+                                PortletCookieServiceImpl.DEFAULT_MAX_AGE))
+                .andReturn(portalCookie);
+        EasyMock.expect(portletCookieDao.getPortalCookie("ABCDEF"))
+                .andReturn(portalCookie)
+                .anyTimes();
+        Capture<Collection<PortalCookieUpdate>> updates = Capture.newInstance();
+        EasyMock.expect(portletCookieDao.applyPortalCookieUpdates(EasyMock.capture(updates)))
+                .andReturn(1);
+
+        PortletCookieServiceImpl cookieService = new PortletCookieServiceImpl();
+        cookieService.setPortletCookieDao(portletCookieDao);
+        cookieService.setWriteBehindEnabled(true);
+
+        IPortletWindowId mockWindowId = EasyMock.createMock(IPortletWindowId.class);
+        EasyMock.replay(portletCookieDao, mockWindowId);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        Cookie first = new Cookie("somePortletCookieName", "first");
+        first.setMaxAge(360);
+        cookieService.addCookie(request, mockWindowId, first);
+        Cookie second = new Cookie("somePortletCookieName", "second");
+        second.setMaxAge(360);
+        cookieService.addCookie(request, mockWindowId, second);
+        Cookie removed = new Cookie("removedPortletCookieName", "removed");
+        removed.setMaxAge(0);
+        cookieService.addCookie(request, mockWindowId, removed);
+
+        // Pending changes are visible before the flush
+        Cookie[] cookies = cookieService.getAllPortletCookies(request, mockWindowId);
+        Assert.assertEquals(1, cookies.length);
+        Assert.assertEquals("somePortletCookieName", cookies[0].getName());
+        Assert.assertEquals("second", cookies[0].getValue());
+
+        Assert.assertEquals(1, cookieService.flushPendingCookieUpdates());
+        Assert.assertEquals(1, updates.getValue().size());
+        PortalCookieUpdate update = updates.getValue().iterator().next();
+        Assert.assertEquals("ABCDEF", update.getPortalCookieValue());
+        Assert.assertFalse(update.isExpirationUpdate());
+        Assert.assertEquals(2, update.getPortletCookies().size());
+        Assert.assertEquals("second", update.getPortletCookies().get(0).getValue());
+        Assert.assertEquals(0, update.getPortletCookies().get(1).getMaxAge());
+
+        // Nothing left to flush
+        Assert.assertEquals(0, cookieService.flushPendingCookieUpdates());
+
+        EasyMock.verify(portletCookieDao, mockWindowId);
+    }
+
     /** Mock {@link IPortalCookie} used in these tests. */
     class MockPortalCookie implements IPortalCookie {
 
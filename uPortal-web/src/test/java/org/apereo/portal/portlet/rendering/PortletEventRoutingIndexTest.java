@@ -0,0 +1,74 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Set;
+import javax.xml.namespace.QName;
+import org.apereo.portal.portlet.om.IPortletDefinitionId;
+import org.junit.Test;
+
+/** Tests for {@link PortletEventRoutingIndex}. */
+public class PortletEventRoutingIndexTest {
+    private static final String NS = "urn:example";
+
+    @Test
+    public void testExactRoutes() {
+        final IPortletDefinitionId first = mock(IPortletDefinitionId.class);
+        final IPortletDefinitionId second = mock(IPortletDefinitionId.class);
+        final IPortletDefinitionId unrelated = mock(IPortletDefinitionId.class);
+
+        final PortletEventRoutingIndex routingIndex = new PortletEventRoutingIndex();
+        routingIndex.addRoute(new QName(NS, "news.updated"), first);
+        routingIndex.addRoute(new QName(NS, "news.updated"), second);
+        routingIndex.addIndexed(unrelated);
+
+        final Set<IPortletDefinitionId> targets =
+                routingIndex.getTargets(new QName(NS, "news.updated"));
+        assertEquals(2, targets.size());
+        assertTrue(targets.contains(first));
+        assertTrue(targets.contains(second));
+
+        assertTrue(routingIndex.getTargets(new QName("urn:other", "news.updated")).isEmpty());
+        assertTrue(routingIndex.isIndexed(unrelated));
+        assertFalse(routingIndex.isRoutable(unrelated));
+        assertTrue(routingIndex.isRoutable(first));
+    }
+
+    @Test
+    public void testWildcardRoutes() {
+        final IPortletDefinitionId exact = mock(IPortletDefinitionId.class);
+        final IPortletDefinitionId wildcard = mock(IPortletDefinitionId.class);
+
+        final PortletEventRoutingIndex routingIndex = new PortletEventRoutingIndex();
+        routingIndex.addRoute(new QName(NS, "news.updated"), exact);
+        routingIndex.addRoute(new QName(NS, "news.*"), wildcard);
+
+        final Set<IPortletDefinitionId> updatedTargets =
+                routingIndex.getTargets(new QName(NS, "news.updated"));
+        assertEquals(2, updatedTargets.size());
+        assertTrue(updatedTargets.contains(exact));
+        assertTrue(updatedTargets.contains(wildcard));
+
+        assertTrue(routingIndex.supportsEvent(new QName(NS, "news.deleted"), wildcard));
+        assertFalse(routingIndex.supportsEvent(new QName(NS, "news.deleted"), exact));
+        assertFalse(routingIndex.supportsEvent(new QName(NS, "weather.updated"), wildcard));
+        assertFalse(routingIndex.supportsEvent(new QName("urn:other", "news.deleted"), wildcard));
+    }
+}
@@ -61,6 +61,7 @@ import org.apereo.portal.rendering.UserLayoutStoreComponent;
 import org.apereo.portal.rendering.WindowStateSettingsStAXComponent;
 import org.apereo.portal.rendering.cache.CachingCharacterPipelineComponent;
 import org.apereo.portal.rendering.cache.CachingStAXPipelineComponent;
+import org.apereo.portal.rendering.cache.SharedPageCachingComponent;
 import org.apereo.portal.rendering.xslt.LocaleTransformerConfigurationSource;
 import org.apereo.portal.rendering.xslt.MergingTransformerConfigurationSource;
 import org.apereo.portal.rendering.xslt.StaticTransformerConfigurationSource;
@@ -149,6 +150,9 @@ public class RenderingPipelineConfiguration {
     @Resource(name = "org.apereo.portal.rendering.THEME_TRANSFORM")
     private Cache themeTransformCache;
 
+    @Resource(name = "org.apereo.portal.rendering.SHARED_PAGE")
+    private Cache sharedPageCache;
+
     @Autowired(required = false)
     private List<RenderingPipelineBranchPoint> branchPoints;
 
@@ -587,10 +591,18 @@ public class RenderingPipelineConfiguration {
         return rslt;
     }
 
+    @Bean(name = "sharedPageCachingComponent")
+    public CharacterPipelineComponent getSharedPageCachingComponent() {
+        final SharedPageCachingComponent rslt = new SharedPageCachingComponent();
+        rslt.setWrappedComponent(getPortletRenderingIncorporationComponent());
+        rslt.setCache(sharedPageCache);
+        return rslt;
+    }
+
     @Bean(name = "analyticsIncorporationComponent")
     public CharacterPipelineComponent getAnalyticsIncorporationComponent() {
         final AnalyticsIncorporationComponent rslt = new AnalyticsIncorporationComponent();
-        rslt.setWrappedComponent(getPortletRenderingIncorporationComponent());
+        rslt.setWrappedComponent(getSharedPageCachingComponent());
         return rslt;
     }
 
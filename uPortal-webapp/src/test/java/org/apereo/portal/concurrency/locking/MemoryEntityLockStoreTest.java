@@ -0,0 +1,101 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.concurrency.locking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Date;
+import org.apereo.portal.concurrency.IEntityLock;
+import org.apereo.portal.concurrency.IEntityLockService;
+import org.apereo.portal.concurrency.LockingException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemoryEntityLockStoreTest {
+    private MemoryEntityLockStore lockStore;
+
+    @Before
+    public void setUp() {
+        lockStore = new MemoryEntityLockStore();
+    }
+
+    @Test
+    public void testLockWithLessThanOneSecondRemainingIsNotStored() throws Exception {
+        final IEntityLock lock = newLock("1", 500);
+        lockStore.add(lock);
+
+        assertNull(lockStore.find(lock));
+        assertEquals(0, lockStore.find(String.class, "1", null, null, null).length);
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        final IEntityLock lock = newLock("1", 60000);
+        lockStore.add(lock);
+        assertSame(lock, lockStore.find(lock));
+
+        final Date newExpiration = new Date(System.currentTimeMillis() + 120000);
+        lockStore.update(lock, newExpiration, IEntityLockService.WRITE_LOCK);
+        ((EntityLockImpl) lock).setExpirationTime(newExpiration);
+        assertSame(lock, lockStore.find(lock));
+        assertEquals(
+                1,
+                lockStore.findUnexpired(
+                                new Date(System.currentTimeMillis() + 90000),
+                                String.class,
+                                "1",
+                                null,
+                                null)
+                        .length);
+
+        final IEntityLock stale = newLock("1", 30000);
+        try {
+            lockStore.update(stale, newExpiration);
+            fail("Expected LockingException");
+        } catch (LockingException e) {
+            // expected, the stored lock has a different expiration
+        }
+    }
+
+    @Test
+    public void testExpiredLocksAreReclaimed() throws Exception {
+        final IEntityLock expiring = newLock("1", 1500);
+        final IEntityLock remaining = newLock("2", 60000);
+        lockStore.add(expiring);
+        lockStore.add(remaining);
+        assertNotNull(lockStore.find(expiring));
+
+        Thread.sleep(2100);
+        lockStore.deleteExpired(new Date());
+
+        assertNull(lockStore.find(expiring));
+        final IEntityLock[] locks = lockStore.find(String.class, null, null, null, null);
+        assertEquals(1, locks.length);
+        assertSame(remaining, locks[0]);
+    }
+
+    private static IEntityLock newLock(String key, long millisToExpiration) {
+        return new EntityLockImpl(
+                String.class,
+                key,
+                IEntityLockService.READ_LOCK,
+                new Date(System.currentTimeMillis() + millisToExpiration),
+                "owner");
+    }
+}
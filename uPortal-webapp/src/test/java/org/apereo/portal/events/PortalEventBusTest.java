@@ -0,0 +1,196 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apereo.portal.events.PortalEventBus.BackpressurePolicy;
+import org.apereo.portal.security.IPerson;
+import org.junit.Test;
+import org.springframework.context.ApplicationListener;
+
+/** Tests for {@link PortalEventBus}. */
+public class PortalEventBusTest {
+
+    @Test
+    public void testDeliversToMatchedListenersInOrder() throws Exception {
+        final RecordingListener first = new RecordingListener();
+        final RecordingListener second = new RecordingListener();
+        final PortalEventBus bus = newBus(64, BackpressurePolicy.CALLER_RUNS);
+
+        final List<PortalEvent> events = new ArrayList<PortalEvent>();
+        for (int i = 0; i < 40; i++) {
+            final PortalEvent event = newEvent();
+            events.add(event);
+            if (i % 2 == 0) {
+                bus.publish(event, Arrays.<ApplicationListener<?>>asList(first, second));
+            } else {
+                bus.publish(event, Collections.<ApplicationListener<?>>singletonList(first));
+            }
+        }
+        bus.shutdown(5000);
+
+        assertEquals(events, first.events);
+        assertEquals(20, second.events.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(events.get(i * 2), second.events.get(i));
+        }
+        assertEquals(Long.valueOf(0), bus.getListenerLag().values().iterator().next());
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        final BlockingListener listener = new BlockingListener();
+        final PortalEventBus bus = newBus(4, BackpressurePolicy.DROP);
+
+        fillBuffer(bus, listener);
+        bus.publish(newEvent(), listener.asList());
+        bus.publish(newEvent(), listener.asList());
+        assertEquals(2, bus.getDropped());
+
+        listener.release.countDown();
+        bus.shutdown(5000);
+        assertEquals(4, listener.events.size());
+        assertEquals(0, bus.getCallerRuns());
+    }
+
+    @Test
+    public void testCallerRunsWhenFull() throws Exception {
+        final BlockingListener listener = new BlockingListener();
+        final PortalEventBus bus = newBus(4, BackpressurePolicy.CALLER_RUNS);
+
+        fillBuffer(bus, listener);
+        final PortalEvent overflow = newEvent();
+        bus.publish(overflow, listener.asList());
+        assertEquals(1, bus.getCallerRuns());
+        assertEquals(Collections.singletonList(overflow), listener.events);
+
+        listener.release.countDown();
+        bus.shutdown(5000);
+        assertEquals(5, listener.events.size());
+        assertEquals(0, bus.getDropped());
+    }
+
+    @Test
+    public void testConcurrentPublishers() throws Exception {
+        final RecordingListener listener = new RecordingListener();
+        final PortalEventBus bus = newBus(32, BackpressurePolicy.BLOCK);
+        final List<ApplicationListener<?>> listeners =
+                Collections.<ApplicationListener<?>>singletonList(listener);
+
+        final int publishers = 4;
+        final int eventsPerPublisher = 500;
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < publishers; t++) {
+            final Thread thread =
+                    new Thread() {
+                        @Override
+                        public void run() {
+                            for (int i = 0; i < eventsPerPublisher; i++) {
+                                bus.publish(newEvent(), listeners);
+                            }
+                        }
+                    };
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        bus.shutdown(5000);
+
+        assertEquals(publishers * eventsPerPublisher, listener.events.size());
+        assertEquals(publishers * eventsPerPublisher, bus.getPublished() + bus.getCallerRuns());
+    }
+
+    /** Parks the consumer on the first event and then fills the rest of a 4 slot buffer */
+    private static void fillBuffer(PortalEventBus bus, BlockingListener listener)
+            throws InterruptedException {
+        bus.publish(newEvent(), listener.asList());
+        assertTrue(listener.started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 3; i++) {
+            bus.publish(newEvent(), listener.asList());
+        }
+    }
+
+    private static PortalEventBus newBus(int capacity, BackpressurePolicy policy) {
+        return new PortalEventBus(
+                capacity,
+                8,
+                policy,
+                1000,
+                new PortalEventBus.ListenerInvoker() {
+                    @SuppressWarnings({"unchecked", "rawtypes"})
+                    @Override
+                    public void invoke(ApplicationListener<?> listener, PortalEvent event) {
+                        ((ApplicationListener) listener).onApplicationEvent(event);
+                    }
+                });
+    }
+
+    private static PortalEvent newEvent() {
+        final IPerson person = mock(IPerson.class);
+        when(person.getUserName()).thenReturn("user");
+        return TestEventFactory.newLoginEvent(
+                PortalEventBusTest.class,
+                "server",
+                "session",
+                person,
+                Collections.<String>emptySet(),
+                Collections.<String, List<String>>emptyMap());
+    }
+
+    private static class RecordingListener implements ApplicationListener<PortalEvent> {
+        protected final List<PortalEvent> events = new CopyOnWriteArrayList<PortalEvent>();
+
+        @Override
+        public void onApplicationEvent(PortalEvent event) {
+            this.events.add(event);
+        }
+    }
+
+    /** Blocks on the first event it handles until released */
+    private static class BlockingListener extends RecordingListener {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        List<ApplicationListener<?>> asList() {
+            return Collections.<ApplicationListener<?>>singletonList(this);
+        }
+
+        @Override
+        public void onApplicationEvent(PortalEvent event) {
+            if (this.started.getCount() > 0) {
+                this.started.countDown();
+                try {
+                    this.release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.onApplicationEvent(event);
+        }
+    }
+}
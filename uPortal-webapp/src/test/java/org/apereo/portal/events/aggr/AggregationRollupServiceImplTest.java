@@ -0,0 +1,190 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import org.apereo.portal.events.aggr.dao.IEventAggregationManagementDao;
+import org.apereo.portal.events.aggr.groups.AggregatedGroupMapping;
+import org.apereo.portal.events.aggr.login.LoginAggregation;
+import org.apereo.portal.events.aggr.login.LoginAggregationKey;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AggregationRollupServiceImplTest {
+    private AggregationRollupServiceImpl rollupService;
+    private BaseAggregationDao<LoginAggregation, LoginAggregationKey> aggregationDao;
+    private Set<LoginAggregationKey> keys;
+    private Cache rollupCache;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        final IEventAggregatorStatus aggregationStatus = mock(IEventAggregatorStatus.class);
+        when(aggregationStatus.getLastEventDate()).thenReturn(new DateTime(2018, 3, 10, 12, 0));
+        final IEventAggregatorStatus cleanUnclosedStatus = mock(IEventAggregatorStatus.class);
+        when(cleanUnclosedStatus.getLastEventDate()).thenReturn(new DateTime(2018, 3, 10, 11, 0));
+
+        final IEventAggregationManagementDao managementDao =
+                mock(IEventAggregationManagementDao.class);
+        when(managementDao.getEventAggregatorStatus(
+                        IEventAggregatorStatus.ProcessingType.AGGREGATION, false))
+                .thenReturn(aggregationStatus);
+        when(managementDao.getEventAggregatorStatus(
+                        IEventAggregatorStatus.ProcessingType.CLEAN_UNCLOSED, false))
+                .thenReturn(cleanUnclosedStatus);
+
+        final AggregationIntervalHelper intervalHelper = mock(AggregationIntervalHelper.class);
+        when(intervalHelper.getIntervalInfo(eq(AggregationInterval.DAY), any(DateTime.class)))
+                .thenAnswer(
+                        invocation -> {
+                            final DateTime date = invocation.getArgument(1);
+                            final DateTime start = date.withTimeAtStartOfDay();
+                            return new AggregationIntervalInfo(
+                                    AggregationInterval.DAY, start, start.plusDays(1), null, null);
+                        });
+
+        rollupCache = new Cache("aggregationRollupCache", 100, false, false, 0, 0);
+        CacheManager.getInstance().addCache(rollupCache);
+
+        rollupService = new AggregationRollupServiceImpl();
+        rollupService.setEventAggregationManagementDao(managementDao);
+        rollupService.setIntervalHelper(intervalHelper);
+        rollupService.setRollupCache(rollupCache);
+
+        final LoginAggregationKey key = mock(LoginAggregationKey.class);
+        when(key.getInterval()).thenReturn(AggregationInterval.DAY);
+        keys = Collections.singleton(key);
+
+        aggregationDao = mock(BaseAggregationDao.class);
+        when(aggregationDao.getAggregations(
+                        any(DateTime.class),
+                        any(DateTime.class),
+                        anySet(),
+                        any(AggregatedGroupMapping[].class)))
+                .thenAnswer(
+                        invocation -> {
+                            final DateTime start = invocation.getArgument(0);
+                            return Collections.singletonList(
+                                    createAggregation(start.plusDays(1).getMillis()));
+                        });
+        when(aggregationDao.getAggregationsById(any(long[].class)))
+                .thenAnswer(
+                        invocation -> {
+                            final long[] ids = invocation.getArgument(0);
+                            final List<LoginAggregation> aggregations =
+                                    new ArrayList<LoginAggregation>();
+                            for (final long id : ids) {
+                                aggregations.add(createAggregation(id));
+                            }
+                            return aggregations;
+                        });
+    }
+
+    /** The id of the aggregations is their date/time */
+    private static LoginAggregation createAggregation(long id) {
+        final LoginAggregation aggregation = mock(LoginAggregation.class);
+        when(aggregation.getId()).thenReturn(id);
+        when(aggregation.getDateTime()).thenReturn(new DateTime(id));
+        return aggregation;
+    }
+
+    @After
+    public void tearDown() {
+        CacheManager.getInstance().removeCache(rollupCache.getName());
+    }
+
+    @Test
+    public void testClosedSegmentsAreRolledUp() {
+        final DateTime start = new DateTime(2018, 1, 1, 0, 0);
+        final DateTime end = new DateTime(2018, 3, 31, 0, 0);
+
+        List<LoginAggregation> aggregations =
+                rollupService.getAggregations(aggregationDao, start, end, keys);
+        assertEquals(3, aggregations.size());
+        aggregations = rollupService.getAggregations(aggregationDao, start, end, keys);
+        assertEquals(3, aggregations.size());
+
+        // January and February are closed and loaded once, March is still open
+        verify(aggregationDao, times(1))
+                .getAggregations(start, new DateTime(2018, 2, 1, 0, 0), keys);
+        verify(aggregationDao, times(1))
+                .getAggregations(
+                        new DateTime(2018, 2, 1, 0, 0), new DateTime(2018, 3, 1, 0, 0), keys);
+        verify(aggregationDao, times(2)).getAggregations(new DateTime(2018, 3, 1, 0, 0), end, keys);
+        assertEquals(2, rollupCache.getSize());
+
+        // The first query builds the rollups, the second loads both cached segments in one call
+        verify(aggregationDao, times(1))
+                .getAggregationsById(
+                        new long[] {
+                            new DateTime(2018, 1, 2, 0, 0).getMillis(),
+                            new DateTime(2018, 2, 2, 0, 0).getMillis()
+                        });
+        verify(aggregationDao, times(1)).getAggregationsById(any(long[].class));
+
+        // Newest first, like the DAO
+        assertEquals(new DateTime(2018, 3, 2, 0, 0), aggregations.get(0).getDateTime());
+        assertEquals(new DateTime(2018, 1, 2, 0, 0), aggregations.get(2).getDateTime());
+    }
+
+    @Test
+    public void testRollupFilteredToRange() {
+        final DateTime start = new DateTime(2018, 1, 5, 0, 0);
+        final DateTime end = new DateTime(2018, 1, 20, 0, 0);
+
+        // The only aggregation in the January rollup is on the 2nd
+        assertEquals(0, rollupService.getAggregations(aggregationDao, start, end, keys).size());
+        verify(aggregationDao, times(1))
+                .getAggregations(
+                        new DateTime(2018, 1, 1, 0, 0), new DateTime(2018, 2, 1, 0, 0), keys);
+        assertEquals(0, rollupService.getAggregations(aggregationDao, start, end, keys).size());
+        verify(aggregationDao, never()).getAggregationsById(any(long[].class));
+    }
+
+    @Test
+    public void testNoKeys() {
+        final DateTime start = new DateTime(2018, 1, 1, 0, 0);
+        final DateTime end = new DateTime(2018, 3, 31, 0, 0);
+
+        assertEquals(
+                0,
+                rollupService
+                        .getAggregations(
+                                aggregationDao,
+                                start,
+                                end,
+                                Collections.<LoginAggregationKey>emptySet())
+                        .size());
+        verifyZeroInteractions(aggregationDao);
+    }
+}
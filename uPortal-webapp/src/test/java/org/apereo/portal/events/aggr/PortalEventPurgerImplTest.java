@@ -0,0 +1,107 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apereo.portal.IPortalInfoProvider;
+import org.apereo.portal.concurrency.locking.IClusterLockService;
+import org.apereo.portal.events.aggr.IEventAggregatorStatus.ProcessingType;
+import org.apereo.portal.events.aggr.dao.IEventAggregationManagementDao;
+import org.apereo.portal.events.handlers.db.IPortalEventDao;
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PortalEventPurgerImplTest {
+    @InjectMocks private PortalEventPurgerImpl portalEventPurger = new PortalEventPurgerImpl();
+
+    @Mock private IClusterLockService clusterLockService;
+    @Mock private IEventAggregationManagementDao eventAggregationManagementDao;
+    @Mock private IPortalInfoProvider portalInfoProvider;
+    @Mock private IPortalEventDao portalEventDao;
+    @Mock private IEventAggregatorStatus purgerStatus;
+    @Mock private IEventAggregatorStatus aggregatorStatus;
+
+    private final DateTime lastAggregated = new DateTime(2013, 1, 10, 12, 0, 0, 0);
+    private final DateTime oldestEvent = lastAggregated.minusDays(1).minusMinutes(30);
+
+    @Before
+    public void setup() {
+        portalEventPurger.setPurgeDelay(Period.days(1));
+        portalEventPurger.setChunkSize(10);
+        portalEventPurger.setChunkDelay(0);
+
+        when(clusterLockService.isLockOwner(PortalEventPurger.PURGE_RAW_EVENTS_LOCK_NAME))
+                .thenReturn(true);
+        when(eventAggregationManagementDao.getEventAggregatorStatus(ProcessingType.PURGING, true))
+                .thenReturn(purgerStatus);
+        when(eventAggregationManagementDao.getEventAggregatorStatus(
+                        ProcessingType.AGGREGATION, false))
+                .thenReturn(aggregatorStatus);
+        when(aggregatorStatus.getLastEventDate()).thenReturn(lastAggregated);
+        when(portalEventDao.getOldestPortalEventTimestamp()).thenReturn(oldestEvent);
+    }
+
+    @Test
+    public void testPurgeInChunks() {
+        final DateTime purgeEnd = lastAggregated.minusDays(1);
+        when(portalEventDao.deletePortalEventsBefore(eq(purgeEnd), eq(10))).thenReturn(10, 10, 3);
+
+        final EventProcessingResult result = portalEventPurger.doPurgeRawEvents();
+
+        assertEquals(23, result.getProcessed());
+        assertTrue(result.isComplete());
+        verify(portalEventDao, times(3)).deletePortalEventsBefore(purgeEnd, 10);
+        verify(purgerStatus).setLastEventDate(purgeEnd.minusMillis(100));
+    }
+
+    @Test
+    public void testStopAfterMaxChunks() {
+        portalEventPurger.setMaxChunksPerRun(2);
+        when(portalEventDao.deletePortalEventsBefore(any(DateTime.class), eq(10))).thenReturn(10);
+
+        final EventProcessingResult result = portalEventPurger.doPurgeRawEvents();
+
+        assertEquals(20, result.getProcessed());
+        assertFalse(result.isComplete());
+        verify(purgerStatus).setLastEventDate(oldestEvent);
+    }
+
+    @Test
+    public void testStopWhenLockLost() {
+        when(clusterLockService.isLockOwner(PortalEventPurger.PURGE_RAW_EVENTS_LOCK_NAME))
+                .thenReturn(true, false);
+        when(portalEventDao.deletePortalEventsBefore(any(DateTime.class), eq(10))).thenReturn(10);
+
+        final EventProcessingResult result = portalEventPurger.doPurgeRawEvents();
+
+        assertEquals(10, result.getProcessed());
+        assertFalse(result.isComplete());
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr.popular;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apereo.portal.events.aggr.AggregationInterval;
+import org.apereo.portal.events.aggr.IEventAggregatorStatus;
+import org.apereo.portal.events.aggr.IEventAggregatorStatus.ProcessingType;
+import org.apereo.portal.events.aggr.action.SearchRequestAggregation;
+import org.apereo.portal.events.aggr.action.SearchRequestAggregationDao;
+import org.apereo.portal.events.aggr.dao.IEventAggregationManagementDao;
+import org.apereo.portal.events.aggr.groups.AggregatedGroupMapping;
+import org.apereo.portal.events.aggr.portletlayout.PortletLayoutAggregation;
+import org.apereo.portal.events.aggr.portletlayout.PortletLayoutAggregationDao;
+import org.apereo.portal.events.aggr.portlets.AggregatedPortletMapping;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class PopularityIndexImplTest {
+    private final List<PortletLayoutAggregation> aggregations =
+            new ArrayList<PortletLayoutAggregation>();
+
+    private PopularityIndexImpl popularityIndex;
+    private PortletLayoutAggregationDao<PortletLayoutAggregation> portletLayoutAggregationDao;
+    private IEventAggregatorStatus aggregatorStatus;
+    private AggregatedGroupMapping group;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() {
+        group = mock(AggregatedGroupMapping.class);
+
+        aggregatorStatus = mock(IEventAggregatorStatus.class);
+        final IEventAggregationManagementDao eventAggregationManagementDao =
+                mock(IEventAggregationManagementDao.class);
+        when(eventAggregationManagementDao.getEventAggregatorStatus(
+                        ProcessingType.AGGREGATION, false))
+                .thenReturn(aggregatorStatus);
+
+        portletLayoutAggregationDao = mock(PortletLayoutAggregationDao.class);
+        when(portletLayoutAggregationDao.getAggregationsForAllPortlets(
+                        any(DateTime.class),
+                        any(DateTime.class),
+                        eq(AggregationInterval.DAY),
+                        eq(group)))
+                .thenAnswer(
+                        new Answer<List<PortletLayoutAggregation>>() {
+                            @Override
+                            public List<PortletLayoutAggregation> answer(
+                                    InvocationOnMock invocation) throws Throwable {
+                                final DateTime start = (DateTime) invocation.getArguments()[0];
+                                final DateTime end = (DateTime) invocation.getArguments()[1];
+                                final List<PortletLayoutAggregation> result =
+                                        new ArrayList<PortletLayoutAggregation>();
+                                for (final PortletLayoutAggregation aggregation : aggregations) {
+                                    final DateTime dateTime = aggregation.getDateTime();
+                                    if (!dateTime.isBefore(start) && dateTime.isBefore(end)) {
+                                        result.add(aggregation);
+                                    }
+                                }
+                                return result;
+                            }
+                        });
+
+        popularityIndex = new PopularityIndexImpl();
+        popularityIndex.setEventAggregationManagementDao(eventAggregationManagementDao);
+        popularityIndex.setPortletLayoutAggregationDao(portletLayoutAggregationDao);
+        popularityIndex.setSearchRequestAggregationDao(
+                (SearchRequestAggregationDao<SearchRequestAggregation>)
+                        mock(SearchRequestAggregationDao.class));
+    }
+
+    private void addAggregation(DateTime day, String fname, int addCount) {
+        final AggregatedPortletMapping portletMapping = mock(AggregatedPortletMapping.class);
+        when(portletMapping.getFname()).thenReturn(fname);
+
+        final PortletLayoutAggregation aggregation = mock(PortletLayoutAggregation.class);
+        when(aggregation.getDateTime()).thenReturn(day);
+        when(aggregation.getAddCount()).thenReturn(addCount);
+        when(aggregation.getPortletMapping()).thenReturn(portletMapping);
+        aggregations.add(aggregation);
+    }
+
+    @Test
+    public void testPopularPortlets() {
+        final DateTime day8 = new DateTime(2020, 1, 8, 0, 0);
+        final DateTime day9 = day8.plusDays(1);
+        final DateTime day10 = day8.plusDays(2);
+        final DateTime day11 = day8.plusDays(3);
+
+        addAggregation(day8, "news", 3);
+        addAggregation(day8, "mail", 1);
+        addAggregation(day9, "mail", 5);
+        // Not closed yet
+        addAggregation(day10, "news", 10);
+        when(aggregatorStatus.getLastEventDate()).thenReturn(day10.plusMinutes(30));
+
+        List<RankedCount<String>> twoDays = popularityIndex.getPopularPortlets(group, 2);
+        assertEquals(2, twoDays.size());
+        assertEquals("mail", twoDays.get(0).getKey());
+        assertEquals(6, twoDays.get(0).getCount());
+        assertEquals("news", twoDays.get(1).getKey());
+        assertEquals(3, twoDays.get(1).getCount());
+
+        List<RankedCount<String>> oneDay = popularityIndex.getPopularPortlets(group, 1);
+        assertEquals(1, oneDay.size());
+        assertEquals("mail", oneDay.get(0).getKey());
+
+        // Day 10 closes, only it is loaded and fed to both windows
+        when(aggregatorStatus.getLastEventDate()).thenReturn(day11.plusMinutes(10));
+        popularityIndex.refresh();
+        verify(portletLayoutAggregationDao, times(1))
+                .getAggregationsForAllPortlets(day10, day11, AggregationInterval.DAY, group);
+
+        twoDays = popularityIndex.getPopularPortlets(group, 2);
+        assertEquals("news", twoDays.get(0).getKey());
+        assertEquals(10, twoDays.get(0).getCount());
+        assertEquals("mail", twoDays.get(1).getKey());
+        assertEquals(5, twoDays.get(1).getCount());
+
+        oneDay = popularityIndex.getPopularPortlets(group, 1);
+        assertEquals(1, oneDay.size());
+        assertEquals("news", oneDay.get(0).getKey());
+    }
+
+    @Test
+    public void testNotServed() {
+        when(aggregatorStatus.getLastEventDate()).thenReturn(null);
+        assertNull(popularityIndex.getPopularPortlets(group, 7));
+
+        when(aggregatorStatus.getLastEventDate()).thenReturn(new DateTime(2020, 1, 8, 0, 0));
+        assertNull(popularityIndex.getPopularPortlets(group, 0));
+        assertNull(
+                popularityIndex.getPopularPortlets(
+                        group, PopularityIndexImpl.MAX_PORTLET_WINDOW_DAYS + 1));
+
+        popularityIndex.setMaxWindowsPerFeed(1);
+        assertEquals(0, popularityIndex.getPopularPortlets(group, 7).size());
+        assertNull(popularityIndex.getPopularPortlets(group, 14));
+
+        popularityIndex.setEnabled(false);
+        assertNull(popularityIndex.getPopularPortlets(group, 7));
+    }
+}
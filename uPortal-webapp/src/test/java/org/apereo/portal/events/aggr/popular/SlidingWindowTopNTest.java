@@ -0,0 +1,97 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr.popular;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Predicate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class SlidingWindowTopNTest {
+
+    private static Map<String, Integer> counts(Object... keysAndCounts) {
+        final Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < keysAndCounts.length; i += 2) {
+            counts.put((String) keysAndCounts[i], (Integer) keysAndCounts[i + 1]);
+        }
+        return counts;
+    }
+
+    @Test
+    public void testRankingSlides() {
+        final SlidingWindowTopN<String> ranking = new SlidingWindowTopN<String>(2);
+        assertTrue(ranking.getTopN().isEmpty());
+
+        ranking.addInterval(0, counts("a", 5, "b", 1));
+        ranking.addInterval(10, counts("b", 3, "c", 2));
+        ranking.advance(0);
+
+        List<RankedCount<String>> topN = ranking.getTopN();
+        assertEquals(2, topN.size());
+        assertEquals("a", topN.get(0).getKey());
+        assertEquals(5, topN.get(0).getCount());
+        assertEquals("b", topN.get(1).getKey());
+        assertEquals(4, topN.get(1).getCount());
+
+        // The first interval slides out of the window
+        ranking.addInterval(20, counts("c", 2));
+        ranking.advance(10);
+
+        topN = ranking.getTopN();
+        assertEquals(2, ranking.getIntervalCount());
+        assertEquals("c", topN.get(0).getKey());
+        assertEquals(4, topN.get(0).getCount());
+        assertEquals("b", topN.get(1).getKey());
+        assertEquals(3, topN.get(1).getCount());
+
+        ranking.advance(100);
+        assertTrue(ranking.getTopN().isEmpty());
+        assertEquals(0, ranking.getIntervalCount());
+    }
+
+    @Test
+    public void testFilterAppliedBeforeTruncating() {
+        final SlidingWindowTopN<String> ranking = new SlidingWindowTopN<String>(2);
+        ranking.addInterval(0, counts("a", 5, "b", 4, "c", 3, "d", 2));
+        ranking.advance(0);
+
+        final List<RankedCount<String>> topN =
+                ranking.getTopN(
+                        new Predicate<String>() {
+                            @Override
+                            public boolean apply(String key) {
+                                return !"a".equals(key) && !"b".equals(key);
+                            }
+                        });
+        assertEquals(2, topN.size());
+        assertEquals("c", topN.get(0).getKey());
+        assertEquals("d", topN.get(1).getKey());
+
+        // The unfiltered ranking is unchanged
+        assertEquals("a", ranking.getTopN().get(0).getKey());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIntervalsMustBeOrdered() {
+        final SlidingWindowTopN<String> ranking = new SlidingWindowTopN<String>(2);
+        ranking.addInterval(10, Collections.singletonMap("a", 1));
+        ranking.addInterval(10, Collections.singletonMap("a", 1));
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.handlers.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.apereo.portal.events.LoginEvent;
+import org.apereo.portal.events.PortalEvent;
+import org.apereo.portal.events.TestEventFactory;
+import org.apereo.portal.events.handlers.UserFilteringPortalEventHandler;
+import org.apereo.portal.security.SystemPerson;
+import org.apereo.portal.spring.beans.factory.ObjectMapperFactoryBean;
+import org.junit.Before;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+public class PortalEventBinaryCodecTest {
+    private ObjectMapper mapper;
+    private PortalEventBinaryCodec codec;
+    private LoginEvent loginEvent;
+
+    @Before
+    public void setup() throws Exception {
+        final ObjectMapperFactoryBean omfb = new ObjectMapperFactoryBean();
+        omfb.afterPropertiesSet();
+        mapper = omfb.getObject();
+        codec = new PortalEventBinaryCodec(mapper);
+
+        loginEvent =
+                TestEventFactory.newLoginEvent(
+                        this,
+                        "example.com",
+                        "1234567890123_system_AAAAAAAAAAA",
+                        SystemPerson.INSTANCE,
+                        ImmutableSet.of("Student", "Employee"),
+                        ImmutableMap.of(
+                                "username",
+                                (List<String>) ImmutableList.of("system"),
+                                "roles",
+                                (List<String>) ImmutableList.of("student", "employee")));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final byte[] data = codec.encode(loginEvent);
+        final String json = mapper.writeValueAsString(loginEvent);
+        assertTrue(data.length < json.getBytes(StandardCharsets.UTF_8).length);
+
+        final EncodedPortalEvent encoded = EncodedPortalEvent.parse(data);
+        final PortalEvent decoded = codec.decode(encoded, LoginEvent.class);
+
+        JSONAssert.assertEquals(json, mapper.writeValueAsString(decoded), false);
+        assertEquals(loginEvent.getTimestamp(), decoded.getTimestamp());
+    }
+
+    @Test
+    public void testHeader() throws Exception {
+        final EncodedPortalEvent encoded = EncodedPortalEvent.parse(codec.encode(loginEvent));
+
+        assertEquals(PortalEventBinaryCodec.VERSION, encoded.getVersion());
+        assertEquals(loginEvent.getTimestamp(), encoded.getTimestamp());
+        assertEquals("1234567890123_system_AAAAAAAAAAA", encoded.getEventSessionId());
+        assertEquals("system", encoded.getUserName());
+        assertTrue(encoded.isEventType(LoginEvent.class));
+    }
+
+    @Test
+    public void testHeaderFilter() throws Exception {
+        final EncodedPortalEvent encoded = EncodedPortalEvent.parse(codec.encode(loginEvent));
+
+        final UserFilteringPortalEventHandler<PortalEvent> filter =
+                new UserFilteringPortalEventHandler<PortalEvent>();
+        assertTrue(filter.supports(encoded));
+
+        filter.setIgnoredUserNames(ImmutableList.of("system"));
+        assertFalse(filter.supports(encoded));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotEncoded() throws Exception {
+        EncodedPortalEvent.parse(
+                mapper.writeValueAsString(loginEvent).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws Exception {
+        final byte[] data = codec.encode(loginEvent);
+        final EncodedPortalEvent encoded =
+                EncodedPortalEvent.parse(Arrays.copyOf(data, data.length - 3));
+        codec.decode(encoded, LoginEvent.class);
+    }
+}
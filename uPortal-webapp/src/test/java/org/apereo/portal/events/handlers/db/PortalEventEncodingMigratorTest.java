@@ -0,0 +1,104 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.handlers.db;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Function;
+import org.apereo.portal.concurrency.locking.ClusterMutex;
+import org.apereo.portal.concurrency.locking.IClusterLockService;
+import org.apereo.portal.concurrency.locking.IClusterLockService.LockStatus;
+import org.apereo.portal.concurrency.locking.IClusterLockService.TryLockFunctionResult;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class PortalEventEncodingMigratorTest {
+    private IPortalEventDao portalEventDao;
+    private PortalEventEncodingMigrator migrator;
+
+    @Before
+    public void setup() throws Exception {
+        portalEventDao = mock(IPortalEventDao.class);
+        final IClusterLockService clusterLockService = mock(IClusterLockService.class);
+        when(clusterLockService.doInTryLock(
+                        eq(PortalEventEncodingMigrator.MIGRATION_LOCK_NAME), any(Function.class)))
+                .thenAnswer(
+                        new Answer<TryLockFunctionResult<Object>>() {
+                            @Override
+                            public TryLockFunctionResult<Object> answer(
+                                    InvocationOnMock invocation) {
+                                final Function<ClusterMutex, Object> function =
+                                        invocation.getArgument(1);
+                                final Object result = function.apply(null);
+                                return new TryLockFunctionResult<Object>() {
+                                    @Override
+                                    public boolean isExecuted() {
+                                        return true;
+                                    }
+
+                                    @Override
+                                    public LockStatus getLockStatus() {
+                                        return LockStatus.EXECUTED;
+                                    }
+
+                                    @Override
+                                    public Object getResult() {
+                                        return result;
+                                    }
+                                };
+                            }
+                        });
+
+        migrator = new PortalEventEncodingMigrator();
+        migrator.setPortalEventDao(portalEventDao);
+        migrator.setClusterLockService(clusterLockService);
+        migrator.setBatchSize(10);
+    }
+
+    @Test
+    public void testCompletesAfterPassFromFirstEvent() {
+        when(portalEventDao.encodePortalEvents(-1, 10)).thenReturn(10L, -1L);
+        when(portalEventDao.encodePortalEvents(10, 10)).thenReturn(15L);
+        when(portalEventDao.encodePortalEvents(15, 10)).thenReturn(-1L);
+
+        migrator.migrate();
+        migrator.migrate();
+        migrator.migrate();
+        assertFalse(migrator.isComplete());
+
+        migrator.migrate();
+        assertTrue(migrator.isComplete());
+
+        // No more queries once complete
+        migrator.migrate();
+
+        final InOrder inOrder = inOrder(portalEventDao);
+        inOrder.verify(portalEventDao).encodePortalEvents(-1, 10);
+        inOrder.verify(portalEventDao).encodePortalEvents(10, 10);
+        inOrder.verify(portalEventDao).encodePortalEvents(15, 10);
+        inOrder.verify(portalEventDao).encodePortalEvents(-1, 10);
+        verifyNoMoreInteractions(portalEventDao);
+    }
+}
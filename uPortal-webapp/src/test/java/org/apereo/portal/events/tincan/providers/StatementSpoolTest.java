@@ -0,0 +1,147 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.tincan.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.apereo.portal.events.tincan.providers.StatementSpool.SpooledStatement;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StatementSpoolTest {
+    private File directory;
+
+    @Before
+    public void setup() throws Exception {
+        this.directory = File.createTempFile("StatementSpoolTest.", ".dir");
+        this.directory.delete();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        FileUtils.deleteDirectory(this.directory);
+    }
+
+    @Test
+    public void testAppendPeekRemove() throws Exception {
+        final StatementSpool spool = new StatementSpool(this.directory, 64, 4);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(spool.append(bytes("statement-" + i)));
+        }
+        assertEquals(5, spool.size());
+        assertTrue(spool.getOldestEnqueuedTime() > 0);
+
+        assertEquals(
+                Arrays.asList("statement-0", "statement-1", "statement-2"),
+                payloads(spool.peek(3)));
+
+        spool.remove(2);
+        assertEquals(3, spool.size());
+        assertEquals(
+                Arrays.asList("statement-2", "statement-3", "statement-4"),
+                payloads(spool.peek(10)));
+
+        spool.remove(3);
+        assertEquals(0, spool.size());
+        assertEquals(0, spool.getOldestEnqueuedTime());
+        assertTrue(spool.peek(10).isEmpty());
+        spool.close();
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        // Two 27 byte records fit in each 64 byte segment
+        final StatementSpool spool = new StatementSpool(this.directory, 64, 2);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(spool.append(bytes("statement-" + i)));
+        }
+        assertFalse(spool.append(bytes("statement-4")));
+        assertFalse(spool.append(new byte[64]));
+
+        // Acknowledging the first segment makes room for another
+        spool.remove(2);
+        assertTrue(spool.append(bytes("statement-4")));
+        assertEquals(
+                Arrays.asList("statement-2", "statement-3", "statement-4"),
+                payloads(spool.peek(10)));
+        spool.close();
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        StatementSpool spool = new StatementSpool(this.directory, 64, 4);
+        for (int i = 0; i < 5; i++) {
+            spool.append(bytes("statement-" + i));
+        }
+        spool.remove(3);
+        spool.close();
+
+        spool = new StatementSpool(this.directory, 64, 4);
+        assertEquals(2, spool.size());
+        assertEquals(Arrays.asList("statement-3", "statement-4"), payloads(spool.peek(10)));
+
+        spool.append(bytes("statement-5"));
+        spool.remove(1);
+        spool.close();
+
+        spool = new StatementSpool(this.directory, 64, 4);
+        assertEquals(Arrays.asList("statement-4", "statement-5"), payloads(spool.peek(10)));
+        spool.close();
+    }
+
+    @Test
+    public void testCorruptRecordIgnored() throws Exception {
+        StatementSpool spool = new StatementSpool(this.directory, 128, 4);
+        spool.append(bytes("statement-0"));
+        spool.append(bytes("statement-1"));
+        spool.close();
+
+        // Flip a payload byte of the second record
+        final File segment = new File(this.directory, "segment-0000000000000000.spool");
+        final RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.seek(StatementSpool.HEADER_SIZE * 2 + 11 + 3);
+            file.write('X');
+        } finally {
+            file.close();
+        }
+
+        spool = new StatementSpool(this.directory, 128, 4);
+        assertEquals(Arrays.asList("statement-0"), payloads(spool.peek(10)));
+        spool.close();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> payloads(List<SpooledStatement> records) {
+        final List<String> payloads = new ArrayList<String>();
+        for (final SpooledStatement record : records) {
+            payloads.add(new String(record.getPayload(), StandardCharsets.UTF_8));
+        }
+        return payloads;
+    }
+}
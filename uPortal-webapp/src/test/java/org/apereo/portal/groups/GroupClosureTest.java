@@ -0,0 +1,189 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+public class GroupClosureTest {
+
+    /*
+     * a
+     * +- b
+     * |  +- d
+     * |     +- e
+     * +- c
+     *    +- d
+     */
+    private static Map<String, Set<String>> diamond() {
+        final Map<String, Set<String>> memberships = new HashMap<>();
+        memberships.put("a", new HashSet<>(Arrays.asList("b", "c")));
+        memberships.put("b", new HashSet<>(Arrays.asList("d")));
+        memberships.put("c", new HashSet<>(Arrays.asList("d")));
+        memberships.put("d", new HashSet<>(Arrays.asList("e")));
+        return memberships;
+    }
+
+    @Test
+    public void testFromMemberships() {
+        final GroupClosure closure = GroupClosure.fromMemberships(diamond());
+
+        assertEquals(5, closure.size());
+        assertTrue(closure.isAncestor("a", "e"));
+        assertTrue(closure.isAncestor("c", "d"));
+        assertFalse(closure.isAncestor("e", "a"));
+        assertFalse(closure.isAncestor("b", "c"));
+        assertFalse(closure.isAncestor("a", "a"));
+        assertFalse(closure.isAncestor("a", "unknown"));
+
+        assertEquals(keys("a", "b", "c", "d"), closure.getAncestorKeys("e"));
+        assertEquals(keys("b", "c", "d", "e"), closure.getDescendantKeys("a"));
+        assertEquals(keys("b", "c"), closure.getChildKeys("a"));
+        assertEquals(keys(), closure.getAncestorKeys("a"));
+        assertEquals(keys(), closure.getDescendantKeys("unknown"));
+    }
+
+    @Test
+    public void testDescendantDepths() {
+        final GroupClosure closure = GroupClosure.fromMemberships(diamond());
+
+        final Map<String, Integer> depths = closure.getDescendantDepths("a");
+        assertEquals(4, depths.size());
+        assertEquals(Integer.valueOf(1), depths.get("b"));
+        assertEquals(Integer.valueOf(1), depths.get("c"));
+        assertEquals(Integer.valueOf(2), depths.get("d"));
+        assertEquals(Integer.valueOf(3), depths.get("e"));
+
+        // A shortcut makes the shortest path shorter
+        final GroupClosure shortcut =
+                closure.withChildren("a", keys("e"), Collections.<String>emptySet());
+        assertEquals(Integer.valueOf(1), shortcut.getDescendantDepths("a").get("e"));
+        assertEquals(Integer.valueOf(3), closure.getDescendantDepths("a").get("e"));
+    }
+
+    @Test
+    public void testWithChildren() {
+        final GroupClosure closure = GroupClosure.fromMemberships(diamond());
+
+        final GroupClosure added = closure.withChildren("e", keys("f"), keys());
+        assertTrue(added.isAncestor("a", "f"));
+        assertEquals(keys("a", "b", "c", "d", "e"), added.getAncestorKeys("f"));
+        assertFalse(closure.isAncestor("a", "f"));
+        assertEquals(5, closure.size());
+
+        // d is still nested in a through c
+        final GroupClosure removed = closure.withChildren("b", keys(), keys("d"));
+        assertTrue(removed.isAncestor("a", "d"));
+        assertFalse(removed.isAncestor("b", "d"));
+        assertFalse(removed.isAncestor("b", "e"));
+        assertEquals(keys("a", "c", "d"), removed.getAncestorKeys("e"));
+        assertTrue(closure.isAncestor("b", "e"));
+    }
+
+    @Test
+    public void testWithoutGroup() {
+        final GroupClosure closure = GroupClosure.fromMemberships(diamond());
+
+        final GroupClosure removed = closure.withoutGroup("d");
+        assertFalse(removed.isAncestor("a", "d"));
+        assertFalse(removed.isAncestor("a", "e"));
+        assertEquals(keys(), removed.getAncestorKeys("e"));
+        assertEquals(keys("b", "c"), removed.getDescendantKeys("a"));
+        assertTrue(closure.isAncestor("a", "e"));
+
+        assertTrue(closure.withoutGroup("unknown") == closure);
+    }
+
+    @Test
+    public void testBuilder() {
+        final GroupClosure closure = GroupClosure.fromMemberships(diamond());
+
+        final GroupClosure.Builder builder = new GroupClosure.Builder();
+        for (String ancestor : keys("a", "b", "c", "d", "e")) {
+            for (Map.Entry<String, Integer> path :
+                    closure.getDescendantDepths(ancestor).entrySet()) {
+                builder.addPath(ancestor, path.getKey(), path.getValue());
+            }
+        }
+        assertSameClosure(closure, builder.build(), keys("a", "b", "c", "d", "e"));
+    }
+
+    @Test
+    public void testIncrementalMatchesRebuild() {
+        final Random random = new Random(42);
+        final Set<String> groups = new HashSet<>();
+        final Map<String, Set<String>> memberships = new HashMap<>();
+        GroupClosure closure = GroupClosure.fromMemberships(memberships);
+
+        for (int i = 0; i < 500; i++) {
+            final String parent = "g" + random.nextInt(40);
+            final String child = "g" + random.nextInt(40);
+            groups.add(parent);
+            groups.add(child);
+
+            Set<String> children = memberships.get(parent);
+            if (children == null) {
+                children = new HashSet<>();
+                memberships.put(parent, children);
+            }
+
+            if (random.nextInt(20) == 0) {
+                // Delete a group along with its memberships
+                memberships.remove(child);
+                for (Set<String> memberKeys : memberships.values()) {
+                    memberKeys.remove(child);
+                }
+                closure = closure.withoutGroup(child);
+            } else if (children.contains(child)) {
+                children.remove(child);
+                closure = closure.withChildren(parent, keys(), keys(child));
+            } else if (!parent.equals(child) && !closure.isAncestor(child, parent)) {
+                // Like EntityGroupImpl, refuse circular references
+                children.add(child);
+                closure = closure.withChildren(parent, keys(child), keys());
+            }
+
+            if (i % 25 == 0) {
+                assertSameClosure(GroupClosure.fromMemberships(memberships), closure, groups);
+            }
+        }
+        assertSameClosure(GroupClosure.fromMemberships(memberships), closure, groups);
+    }
+
+    private static void assertSameClosure(
+            GroupClosure expected, GroupClosure actual, Set<String> groups) {
+        for (String group : groups) {
+            assertEquals(group, expected.getAncestorKeys(group), actual.getAncestorKeys(group));
+            assertEquals(group, expected.getDescendantKeys(group), actual.getDescendantKeys(group));
+            assertEquals(group, expected.getChildKeys(group), actual.getChildKeys(group));
+            assertEquals(
+                    group, expected.getDescendantDepths(group), actual.getDescendantDepths(group));
+        }
+    }
+
+    private static Set<String> keys(String... keys) {
+        return new HashSet<>(Arrays.asList(keys));
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.layout.dlm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apereo.portal.security.IPerson;
+import org.apereo.portal.security.IPersonManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.web.session.HttpSessionDestroyedEvent;
+
+/**
+ * Verifies struct ids handed out from reserved blocks stay unique when several portal servers, each
+ * represented by its own store instance, edit the same user's layout concurrently.
+ */
+public class RDBMDistributedLayoutStoreStructIdTest {
+    private static final int USER_ID = 1;
+    private static final int NULL_COUNTER_USER_ID = 2;
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private IPerson person;
+
+    @Before
+    public void setUp() {
+        dataSource =
+                new DriverManagerDataSource(
+                        "jdbc:hsqldb:mem:structIdTest" + System.nanoTime(), "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE UP_USER (USER_ID INTEGER, NEXT_STRUCT_ID INTEGER)");
+        jdbcTemplate.update("INSERT INTO UP_USER VALUES (?, ?)", USER_ID, 0);
+        jdbcTemplate.update("INSERT INTO UP_USER VALUES (?, NULL)", NULL_COUNTER_USER_ID);
+
+        person = mockPerson(USER_ID);
+    }
+
+    @After
+    public void tearDown() {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    @Test
+    public void testIdsAreReservedInBlocks() {
+        final RDBMDistributedLayoutStore store = newStore(10);
+
+        assertEquals("n1", store.generateNewChannelSubscribeId(person));
+        assertEquals(10, getNextStructId(USER_ID).intValue());
+
+        for (int i = 2; i <= 10; i++) {
+            assertEquals("s" + i, store.generateNewFolderId(person));
+        }
+        assertEquals(10, getNextStructId(USER_ID).intValue());
+
+        assertEquals("d11", store.getNextStructDirectiveId(person));
+        assertEquals(20, getNextStructId(USER_ID).intValue());
+    }
+
+    @Test
+    public void testNullCounterStartsAtOne() {
+        final RDBMDistributedLayoutStore store = newStore(10);
+        assertNull(getNextStructId(NULL_COUNTER_USER_ID));
+
+        assertEquals("n1", store.generateNewChannelSubscribeId(mockPerson(NULL_COUNTER_USER_ID)));
+        assertEquals(10, getNextStructId(NULL_COUNTER_USER_ID).intValue());
+    }
+
+    @Test
+    public void testSessionDestroyedDiscardsBlock() {
+        final RDBMDistributedLayoutStore store = newStore(10);
+        assertEquals("n1", store.generateNewChannelSubscribeId(person));
+
+        final MockHttpSession session = new MockHttpSession();
+        session.setAttribute(IPersonManager.PERSON_SESSION_KEY, person);
+        store.onApplicationEvent(new HttpSessionDestroyedEvent(session));
+
+        assertEquals("n11", store.generateNewChannelSubscribeId(person));
+        assertEquals(20, getNextStructId(USER_ID).intValue());
+    }
+
+    @Test
+    public void testReservationByOtherServerKeepsBlock() {
+        final RDBMDistributedLayoutStore store = newStore(10);
+        assertEquals("n1", store.generateNewChannelSubscribeId(person));
+
+        // Another server reserved the following ids, the local block is still valid
+        jdbcTemplate.update("UPDATE UP_USER SET NEXT_STRUCT_ID=? WHERE USER_ID=?", 50, USER_ID);
+
+        assertEquals("n2", store.generateNewChannelSubscribeId(person));
+        for (int i = 3; i <= 10; i++) {
+            store.generateNewChannelSubscribeId(person);
+        }
+        assertEquals("s51", store.generateNewFolderId(person));
+        assertEquals(60, getNextStructId(USER_ID).intValue());
+    }
+
+    @Test
+    public void testDiscardedBlockIsNotReused() {
+        final DiscardingLayoutStore store = new DiscardingLayoutStore();
+        store.setPlatformTransactionManager(new DataSourceTransactionManager(dataSource));
+        store.setDataSource(dataSource);
+        store.setStructIdBlockSize(10);
+        assertEquals("n1", store.generateNewChannelSubscribeId(person));
+
+        // A layout import sets the counter past the ids of the imported layout
+        jdbcTemplate.update("UPDATE UP_USER SET NEXT_STRUCT_ID=? WHERE USER_ID=?", 5, USER_ID);
+        store.discard(USER_ID);
+
+        assertEquals("n6", store.generateNewChannelSubscribeId(person));
+        assertEquals(15, getNextStructId(USER_ID).intValue());
+    }
+
+    @Test
+    public void testConcurrentServersHandOutUniqueIds() throws Exception {
+        final RDBMDistributedLayoutStore[] servers = {newStore(5), newStore(7), newStore(1)};
+        final int threadsPerServer = 4;
+        final int idsPerThread = 150;
+
+        final Set<Integer> structIds = ConcurrentHashMap.newKeySet();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(servers.length * threadsPerServer);
+        try {
+            final List<Future<Integer>> results = new ArrayList<>();
+            for (final RDBMDistributedLayoutStore server : servers) {
+                for (int t = 0; t < threadsPerServer; t++) {
+                    results.add(
+                            executor.submit(
+                                    new Callable<Integer>() {
+                                        @Override
+                                        public Integer call() throws Exception {
+                                            start.await();
+                                            int duplicates = 0;
+                                            for (int i = 0; i < idsPerThread; i++) {
+                                                final String id =
+                                                        i % 2 == 0
+                                                                ? server.generateNewFolderId(person)
+                                                                : server
+                                                                        .generateNewChannelSubscribeId(
+                                                                                person);
+                                                if (!structIds.add(
+                                                        Integer.valueOf(id.substring(1)))) {
+                                                    duplicates++;
+                                                }
+                                            }
+                                            return duplicates;
+                                        }
+                                    }));
+                }
+            }
+
+            start.countDown();
+            for (final Future<Integer> result : results) {
+                assertEquals("duplicate struct ids", 0, result.get().intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(servers.length * threadsPerServer * idsPerThread, structIds.size());
+        int maxStructId = 0;
+        for (final Integer structId : structIds) {
+            maxStructId = Math.max(maxStructId, structId);
+        }
+        assertTrue(
+                "NEXT_STRUCT_ID must cover every id handed out",
+                getNextStructId(USER_ID) >= maxStructId);
+    }
+
+    private Integer getNextStructId(int userId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT NEXT_STRUCT_ID FROM UP_USER WHERE USER_ID=?", Integer.class, userId);
+    }
+
+    private static IPerson mockPerson(int userId) {
+        final IPerson person = mock(IPerson.class);
+        when(person.getID()).thenReturn(userId);
+        return person;
+    }
+
+    private RDBMDistributedLayoutStore newStore(int structIdBlockSize) {
+        final RDBMDistributedLayoutStore store = new RDBMDistributedLayoutStore();
+        store.setPlatformTransactionManager(new DataSourceTransactionManager(dataSource));
+        store.setDataSource(dataSource);
+        store.setStructIdBlockSize(structIdBlockSize);
+        return store;
+    }
+
+    /** Exposes the discarding of reserved struct ids done by layout imports */
+    private static final class DiscardingLayoutStore extends RDBMDistributedLayoutStore {
+        void discard(int userId) {
+            this.discardStructIdBlock(userId);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.container.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.apereo.portal.portlet.rendering.RenderPortletOutputHandler;
+import org.apereo.portal.portlet.rendering.ResourcePortletOutputHandler;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/** Test replaying {@link CachedPortletData} */
+public class CachedPortletDataTest {
+    private static final String OUTPUT = "<p>Café ☃</p>";
+
+    @Test
+    public void testRenderReplayUsesCachedString() throws Exception {
+        final CachedPortletData<Long> cachedPortletData = createCachedPortletData();
+
+        final RenderPortletOutputHandler handler = new RenderPortletOutputHandler("UTF-8");
+        cachedPortletData.replay(handler);
+
+        assertSame(OUTPUT, handler.getOutput());
+    }
+
+    @Test
+    public void testRenderReplayThenWrite() throws Exception {
+        final CachedPortletData<Long> cachedPortletData = createCachedPortletData();
+
+        final RenderPortletOutputHandler handler = new RenderPortletOutputHandler("UTF-8");
+        cachedPortletData.replay(handler);
+        handler.getPrintWriter().write("<br/>");
+
+        assertEquals(OUTPUT + "<br/>", handler.getOutput());
+    }
+
+    @Test
+    public void testRenderReplayAfterWrite() throws Exception {
+        final CachedPortletData<Long> cachedPortletData = createCachedPortletData();
+
+        final RenderPortletOutputHandler handler = new RenderPortletOutputHandler("UTF-8");
+        handler.getPrintWriter().write("<br/>");
+        cachedPortletData.replay(handler);
+
+        assertEquals("<br/>" + OUTPUT, handler.getOutput());
+    }
+
+    @Test
+    public void testRenderStreamOutputDecodedOnce() throws Exception {
+        final RenderPortletOutputHandler renderHandler = new RenderPortletOutputHandler("UTF-8");
+        final CachingPortletOutputHandler cachingHandler =
+                new CachingPortletOutputHandler(renderHandler, 10000);
+        cachingHandler.getOutputStream().write(OUTPUT.getBytes("UTF-8"));
+
+        final CachedPortletData<Long> cachedPortletData =
+                cachingHandler.getCachedPortletData(1L, new CacheControlImpl());
+        assertEquals(OUTPUT, cachedPortletData.getCachedWriterOutput());
+        assertNull(cachedPortletData.getCachedStreamOutput());
+
+        final RenderPortletOutputHandler handler = new RenderPortletOutputHandler("UTF-8");
+        cachedPortletData.replay(handler);
+        assertEquals(OUTPUT, handler.getOutput());
+    }
+
+    @Test
+    public void testResourceReplayWritesEncodedBytes() throws Exception {
+        final CachedPortletResourceData<Long> cachedPortletResourceData =
+                createCachedPortletResourceData("UTF-8");
+        assertEquals(
+                OUTPUT, cachedPortletResourceData.getCachedPortletData().getCachedWriterOutput());
+
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        cachedPortletResourceData.replay(new ResourcePortletOutputHandler(response));
+
+        assertArrayEquals(OUTPUT.getBytes("UTF-8"), response.getContentAsByteArray());
+        assertEquals("UTF-8", response.getCharacterEncoding());
+    }
+
+    @Test
+    public void testResourceReplayOtherEncoding() throws Exception {
+        final CachedPortletData<Long> cachedPortletData =
+                createCachedPortletData().encodeWriterOutput("UTF-8");
+
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setCharacterEncoding("UTF-16");
+        cachedPortletData.replay(new ResourcePortletOutputHandler(response));
+
+        assertEquals(OUTPUT, response.getContentAsString());
+    }
+
+    @Test
+    public void testUnmappableOutputNotEncoded() {
+        final CachedPortletData<Long> cachedPortletData = createCachedPortletData();
+
+        assertSame(cachedPortletData, cachedPortletData.encodeWriterOutput("ISO-8859-1"));
+    }
+
+    private static CachedPortletData<Long> createCachedPortletData() {
+        return new CachedPortletData<Long>(1L, OUTPUT, null, "text/html", false, null, 300);
+    }
+
+    /** Caches the output the way a resource request does */
+    private static CachedPortletResourceData<Long> createCachedPortletResourceData(
+            String characterEncoding) throws Exception {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final CachingPortletResourceOutputHandler cachingHandler =
+                new CachingPortletResourceOutputHandler(
+                        new ResourcePortletOutputHandler(response), 10000);
+        cachingHandler.setCharacterEncoding(characterEncoding);
+        cachingHandler.getPrintWriter().write(OUTPUT);
+        cachingHandler.getPrintWriter().flush();
+
+        return cachingHandler.getCachedPortletResourceData(1L, new CacheControlImpl());
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.container.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apereo.portal.portlet.rendering.RenderPortletOutputHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapPortletOutputStoreTest {
+    private OffHeapPortletOutputStore store;
+
+    @Before
+    public void setup() {
+        this.store = new OffHeapPortletOutputStore();
+        this.store.setMaxBytes(10000);
+        this.store.setMinBytes(100);
+    }
+
+    @Test
+    public void testWriterOutputReplay() throws IOException {
+        final String output = repeat("<div>Portlet – content ✓</div>", 20);
+        final CachedPortletData<Long> cachedPortletData = writerData(output);
+
+        final CachedPortletData<Long> storedData = cachedPortletData.moveOffHeap(this.store);
+        assertNotSame(cachedPortletData, storedData);
+        assertEquals(cachedPortletData.getTimeStored(), storedData.getTimeStored());
+        assertEquals(output, storedData.getCachedWriterOutput());
+
+        final RenderPortletOutputHandler outputHandler = new RenderPortletOutputHandler("UTF-8");
+        storedData.replay(outputHandler);
+        assertEquals(output, outputHandler.getOutput());
+        assertEquals("text/html", outputHandler.getContentType());
+    }
+
+    @Test
+    public void testCompressedStreamOutputReplay() throws IOException {
+        this.store.setCompress(true);
+        final byte[] output = new byte[1000];
+        Arrays.fill(output, (byte) 7);
+        final CachedPortletData<Long> cachedPortletData =
+                new CachedPortletData<Long>(1L, null, output, "image/png", true, null, -1);
+
+        final CachedPortletData<Long> storedData = cachedPortletData.moveOffHeap(this.store);
+        assertNotSame(cachedPortletData, storedData);
+        assertTrue(this.store.getUsedBytes() < output.length);
+        assertArrayEquals(output, storedData.getCachedStreamOutput());
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final RenderPortletOutputHandler outputHandler =
+                new RenderPortletOutputHandler("UTF-8") {
+                    @Override
+                    public OutputStream getOutputStream() {
+                        return bytes;
+                    }
+                };
+        storedData.replay(outputHandler);
+        assertArrayEquals(output, bytes.toByteArray());
+    }
+
+    @Test
+    public void testSmallOutputStaysOnHeap() {
+        final CachedPortletData<Long> cachedPortletData = writerData("small");
+        assertSame(cachedPortletData, cachedPortletData.moveOffHeap(this.store));
+        assertEquals(0, this.store.getUsedBytes());
+    }
+
+    @Test
+    public void testDisabled() {
+        this.store.setMaxBytes(0);
+        final CachedPortletData<Long> cachedPortletData = writerData(repeat("x", 1000));
+        assertSame(cachedPortletData, cachedPortletData.moveOffHeap(this.store));
+    }
+
+    @Test
+    public void testSizeEviction() {
+        this.store.setMaxBytes(2500);
+
+        final CachedPortletData<Long> first = writerData(repeat("a", 1000)).moveOffHeap(store);
+        final CachedPortletData<Long> second = writerData(repeat("b", 1000)).moveOffHeap(store);
+
+        // Using the first output gives it a second chance, so the second output is released
+        assertNotNull(first.holdOutput());
+        final CachedPortletData<Long> third = writerData(repeat("c", 1000)).moveOffHeap(store);
+
+        assertNotNull(first.holdOutput());
+        assertNull(second.holdOutput());
+        assertNotNull(third.holdOutput());
+        assertEquals(2000, this.store.getUsedBytes());
+    }
+
+    @Test
+    public void testHeldOutputSurvivesRelease() throws IOException {
+        final String output = repeat("h", 1000);
+        final CachedPortletData<Long> storedData = writerData(output).moveOffHeap(this.store);
+        final CachedPortletData<Long> heldData = storedData.holdOutput();
+
+        this.store.remove(storedData.getOffHeapOutput());
+        assertNull(storedData.holdOutput());
+
+        final RenderPortletOutputHandler outputHandler = new RenderPortletOutputHandler("UTF-8");
+        heldData.replay(outputHandler);
+        assertEquals(output, outputHandler.getOutput());
+    }
+
+    @Test
+    public void testRemove() {
+        final CachedPortletData<Long> storedData =
+                writerData(repeat("r", 1000)).moveOffHeap(this.store);
+        assertEquals(1000, this.store.getUsedBytes());
+
+        this.store.remove(storedData.getOffHeapOutput());
+        assertEquals(0, this.store.getUsedBytes());
+
+        // Removing twice doesn't count the output twice
+        this.store.remove(storedData.getOffHeapOutput());
+        assertEquals(0, this.store.getUsedBytes());
+    }
+
+    @Test
+    public void testCacheHeldData() {
+        final String output = repeat("c", 1000);
+        final CachedPortletData<Long> storedData = writerData(output).moveOffHeap(this.store);
+
+        // Caching held data again keeps the stored output
+        final CachedPortletData<Long> recachedData =
+                storedData.holdOutput().moveOffHeap(this.store);
+        assertSame(storedData.getOffHeapOutput(), recachedData.getOffHeapOutput());
+        assertEquals(1000, this.store.getUsedBytes());
+
+        // Unless it was released in the meantime, then the output is stored again
+        final CachedPortletData<Long> heldData = storedData.holdOutput();
+        this.store.remove(storedData.getOffHeapOutput());
+        final CachedPortletData<Long> restoredData = heldData.moveOffHeap(this.store);
+        assertNotSame(storedData.getOffHeapOutput(), restoredData.getOffHeapOutput());
+        assertEquals(output, restoredData.getCachedWriterOutput());
+        assertEquals(1000, this.store.getUsedBytes());
+    }
+
+    @Test
+    public void testResourceData() {
+        final CachedPortletResourceData<Long> resourceData =
+                new CachedPortletResourceData<Long>(
+                        writerData(repeat("r", 1000)),
+                        Collections.<String, List<Serializable>>emptyMap(),
+                        200,
+                        "UTF-8",
+                        null,
+                        null);
+
+        final CachedPortletResourceData<Long> storedData = resourceData.moveOffHeap(this.store);
+        assertNotSame(resourceData, storedData);
+        assertEquals(Integer.valueOf(200), storedData.getStatus());
+        assertEquals(repeat("r", 1000), storedData.getCachedPortletData().getCachedWriterOutput());
+    }
+
+    private static CachedPortletData<Long> writerData(String output) {
+        return new CachedPortletData<Long>(1L, output, null, "text/html", true, null, -1);
+    }
+
+    private static String repeat(String value, int count) {
+        final StringBuilder builder = new StringBuilder(value.length() * count);
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}
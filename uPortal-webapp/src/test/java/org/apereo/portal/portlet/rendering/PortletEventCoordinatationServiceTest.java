@@ -24,7 +24,6 @@ import java.util.Collections;
 import java.util.List;
 import javax.portlet.Event;
 import javax.xml.namespace.QName;
-import net.sf.ehcache.Ehcache;
 import org.apache.pluto.container.om.portlet.EventDefinition;
 import org.apache.pluto.container.om.portlet.EventDefinitionReference;
 import org.apache.pluto.container.om.portlet.PortletApplicationDefinition;
@@ -46,7 +45,6 @@ public class PortletEventCoordinatationServiceTest {
     private PortletEventCoordinatationService portletEventCoordinatationService =
             new PortletEventCoordinatationService();
 
-    @Mock private Ehcache supportedEventCache;
     @Mock private IPortletDefinitionRegistry portletDefinitionRegistry;
 
     @Test
@@ -0,0 +1,237 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.apereo.portal.character.stream.CharacterEventBufferReader;
+import org.apereo.portal.character.stream.CharacterEventReader;
+import org.apereo.portal.character.stream.events.CharacterDataEvent;
+import org.apereo.portal.character.stream.events.CharacterDataEventImpl;
+import org.apereo.portal.character.stream.events.CharacterEvent;
+import org.apereo.portal.character.stream.events.CharacterEventTypes;
+import org.apereo.portal.character.stream.events.PageAnalyticsDataPlaceholderEvent;
+import org.apereo.portal.portlet.container.cache.CacheState;
+import org.apereo.portal.portlet.container.cache.CachedPortletData;
+import org.apereo.portal.portlet.container.cache.IPortletCacheControlService;
+import org.apereo.portal.portlet.container.cache.PublicPortletCacheKey;
+import org.apereo.portal.portlet.om.IPortletEntity;
+import org.apereo.portal.portlet.om.IPortletWindow;
+import org.apereo.portal.portlet.om.IPortletWindowId;
+import org.apereo.portal.portlet.registry.IPortletWindowRegistry;
+import org.apereo.portal.portlet.rendering.PortletRenderResult;
+import org.apereo.portal.rendering.CharacterPipelineComponent;
+import org.apereo.portal.rendering.PipelineEventReader;
+import org.apereo.portal.rendering.PipelineEventReaderImpl;
+import org.apereo.portal.rendering.PortletRenderingIncorporationComponent;
+import org.apereo.portal.security.IPerson;
+import org.apereo.portal.url.IPortalRequestInfo;
+import org.apereo.portal.url.IUrlSyntaxProvider;
+import org.apereo.portal.url.UrlType;
+import org.apereo.portal.user.IUserInstance;
+import org.apereo.portal.user.IUserInstanceManager;
+import org.apereo.portal.utils.cache.CacheKey;
+import org.jasig.resourceserver.aggr.om.Included;
+import org.jasig.resourceserver.utils.aggr.ResourcesElementsProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class SharedPageCachingComponentTest {
+    private static final CacheKey CACHE_KEY = CacheKey.build("testCacheKey");
+
+    @Mock private CharacterPipelineComponent wrappedComponent;
+    @Mock private ResourcesElementsProvider resourcesElementsProvider;
+    @Mock private IUserInstanceManager userInstanceManager;
+    @Mock private IUserInstance userInstance;
+    @Mock private IPerson person;
+    @Mock private IUrlSyntaxProvider urlSyntaxProvider;
+    @Mock private IPortalRequestInfo portalRequestInfo;
+    @Mock private IPortletWindowRegistry portletWindowRegistry;
+    @Mock private IPortletCacheControlService portletCacheControlService;
+    @Mock private IPortletWindowId portletWindowId;
+    @Mock private IPortletWindow portletWindow;
+    @Mock private IPortletEntity portletEntity;
+    @Mock private PublicPortletCacheKey publicCacheKey;
+    @Mock private CachedPortletData<PortletRenderResult> cachedPortletData;
+
+    private CacheManager cacheManager;
+    private Cache cache;
+    private SharedPageCachingComponent component;
+
+    @Before
+    public void setup() {
+        initMocks(this);
+
+        final Configuration configuration = new Configuration();
+        configuration.setName(SharedPageCachingComponentTest.class.getName());
+        configuration.setUpdateCheck(false);
+        this.cacheManager = new CacheManager(configuration);
+        this.cache = new Cache(new CacheConfiguration("sharedPage", 100));
+        this.cacheManager.addCache(this.cache);
+
+        when(resourcesElementsProvider.getDefaultIncludedType()).thenReturn(Included.AGGREGATED);
+        when(userInstanceManager.getUserInstance(any())).thenReturn(userInstance);
+        when(userInstance.getPerson()).thenReturn(person);
+        when(person.isGuest()).thenReturn(true);
+        when(urlSyntaxProvider.getPortalRequestInfo(any())).thenReturn(portalRequestInfo);
+        when(portalRequestInfo.getUrlType()).thenReturn(UrlType.RENDER);
+        when(portalRequestInfo.getPortletRequestInfoMap()).thenReturn((Map) Collections.emptyMap());
+        when(wrappedComponent.getCacheKey(any(), any())).thenReturn(CACHE_KEY);
+
+        when(portletWindowRegistry.getPortletWindow(any(), eq(portletWindowId)))
+                .thenReturn(portletWindow);
+        when(portletWindow.getPortletWindowId()).thenReturn(portletWindowId);
+        when(portletWindow.getPortletEntity()).thenReturn(portletEntity);
+        when(portletEntity.getLayoutNodeId()).thenReturn("n1");
+
+        @SuppressWarnings("unchecked")
+        final CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult> cacheState =
+                mock(CacheState.class);
+        when(cacheState.getCachedPortletData()).thenReturn(cachedPortletData);
+        when(cacheState.getPublicPortletCacheKey()).thenReturn(publicCacheKey);
+        when(portletCacheControlService.getPortletRenderState(any(), eq(portletWindowId)))
+                .thenReturn(cacheState);
+        when(cachedPortletData.isPublicScope()).thenReturn(true);
+        when(cachedPortletData.getTimeStored()).thenReturn(1000L);
+        when(cachedPortletData.getExpirationTime()).thenReturn(-1L);
+
+        this.component = new SharedPageCachingComponent();
+        this.component.setWrappedComponent(wrappedComponent);
+        this.component.setResourcesElementsProvider(resourcesElementsProvider);
+        this.component.setUserInstanceManager(userInstanceManager);
+        this.component.setUrlSyntaxProvider(urlSyntaxProvider);
+        this.component.setPortletWindowRegistry(portletWindowRegistry);
+        this.component.setPortletCacheControlService(portletCacheControlService);
+        this.component.setCache(cache);
+    }
+
+    @After
+    public void tearDown() {
+        this.cacheManager.shutdown();
+    }
+
+    @Test
+    public void testSharedBetweenRequests() {
+        when(wrappedComponent.getEventReader(any(), any())).thenReturn(renderedPage());
+
+        final List<CharacterEvent> first = render();
+        final List<CharacterEvent> second = render();
+
+        assertEquals(4, first.size());
+
+        // Character data is replayed merged, placeholders are left for components further up
+        assertEquals(3, second.size());
+        assertEquals("<html><body>portlet", data(second.get(0)));
+        assertEquals(CharacterEventTypes.PAGE_ANALYTICS_DATA, second.get(1).getEventType());
+        assertEquals("</body></html>", data(second.get(2)));
+        verify(wrappedComponent, times(1)).getEventReader(any(), any());
+    }
+
+    @Test
+    public void testPortletCacheEntryReplaced() {
+        when(wrappedComponent.getEventReader(any(), any()))
+                .thenReturn(renderedPage(), renderedPage());
+
+        render();
+        when(cachedPortletData.getTimeStored()).thenReturn(2000L);
+        render();
+
+        verify(wrappedComponent, times(2)).getEventReader(any(), any());
+    }
+
+    @Test
+    public void testPrivatePortletNotShared() {
+        when(cachedPortletData.isPublicScope()).thenReturn(false);
+        when(wrappedComponent.getEventReader(any(), any())).thenReturn(renderedPage());
+
+        render();
+
+        assertNull(cache.get(CACHE_KEY));
+    }
+
+    @Test
+    public void testAuthenticatedUserNotShared() {
+        when(person.isGuest()).thenReturn(false);
+        when(wrappedComponent.getEventReader(any(), any())).thenReturn(renderedPage());
+
+        render();
+
+        assertNull(cache.get(CACHE_KEY));
+    }
+
+    @Test
+    public void testCompression() {
+        final String data = "<div class=\"portlet\">été</div>";
+        assertEquals(
+                data,
+                SharedPageCachingComponent.decompress(SharedPageCachingComponent.compress(data)));
+    }
+
+    private PipelineEventReader<CharacterEventReader, CharacterEvent> renderedPage() {
+        final List<CharacterEvent> events =
+                Arrays.asList(
+                        CharacterDataEventImpl.create("<html><body>"),
+                        CharacterDataEventImpl.create("portlet"),
+                        PageAnalyticsDataPlaceholderEvent.INSTANCE,
+                        CharacterDataEventImpl.create("</body></html>"));
+        return new PipelineEventReaderImpl<CharacterEventReader, CharacterEvent>(
+                new CharacterEventBufferReader(events.listIterator()));
+    }
+
+    private List<CharacterEvent> render() {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        final PipelineEventReader<CharacterEventReader, CharacterEvent> eventReader =
+                this.component.getEventReader(request, response);
+
+        // Incorporation records the portlets it rendered while the events are read
+        request.setAttribute(
+                PortletRenderingIncorporationComponent.INCORPORATED_PORTLET_WINDOWS,
+                new LinkedHashSet<IPortletWindowId>(Collections.singleton(portletWindowId)));
+
+        final List<CharacterEvent> events = new ArrayList<CharacterEvent>();
+        for (final CharacterEvent event : eventReader) {
+            events.add(event);
+        }
+        return events;
+    }
+
+    private static String data(CharacterEvent event) {
+        return ((CharacterDataEvent) event).getData();
+    }
+}
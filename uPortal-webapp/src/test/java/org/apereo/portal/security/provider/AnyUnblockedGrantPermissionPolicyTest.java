@@ -0,0 +1,261 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.security.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.sf.ehcache.Cache;
+import org.apereo.portal.groups.IEntityGroup;
+import org.apereo.portal.groups.IGroupMember;
+import org.apereo.portal.permission.IPermissionActivity;
+import org.apereo.portal.permission.IPermissionOwner;
+import org.apereo.portal.permission.dao.IPermissionOwnerDao;
+import org.apereo.portal.permission.target.IPermissionTarget;
+import org.apereo.portal.permission.target.IPermissionTarget.TargetType;
+import org.apereo.portal.permission.target.IPermissionTargetProvider;
+import org.apereo.portal.permission.target.IPermissionTargetProviderRegistry;
+import org.apereo.portal.permission.target.PermissionTargetImpl;
+import org.apereo.portal.security.IAuthorizationPrincipal;
+import org.apereo.portal.security.IAuthorizationService;
+import org.apereo.portal.security.IPermission;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class AnyUnblockedGrantPermissionPolicyTest {
+    private static final String OWNER = "UP_PORTLET_SUBSCRIBE";
+    private static final String ACTIVITY = "BROWSE";
+    private static final String TARGET_PROVIDER = "portletTargetProvider";
+
+    @InjectMocks private AnyUnblockedGrantPermissionPolicy policy;
+    @Mock private IPermissionOwnerDao permissionOwnerDao;
+    @Mock private IPermissionTargetProviderRegistry targetProviderRegistry;
+    @Mock private Cache hasUnblockedGrantCache;
+    @Mock private IAuthorizationService service;
+    @Mock private IPermissionTargetProvider targetProvider;
+    @Mock private IPermissionOwner owner;
+    @Mock private IPermissionActivity activity;
+    @Mock private IPermissionOwner allPermissionsOwner;
+    @Mock private IPermissionActivity allPermissionsActivity;
+
+    private final Map<IAuthorizationPrincipal, List<IPermission>> permissions = new HashMap<>();
+    private final List<IPermissionTarget> targets = new ArrayList<>();
+    private IAuthorizationPrincipal user;
+    private IAuthorizationPrincipal sharedGroup;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+
+        when(owner.getFname()).thenReturn(OWNER);
+        when(activity.getFname()).thenReturn(ACTIVITY);
+        when(activity.getTargetProviderKey()).thenReturn(TARGET_PROVIDER);
+        when(allPermissionsOwner.getFname()).thenReturn(IPermission.PORTAL_SYSTEM);
+        when(allPermissionsActivity.getFname()).thenReturn(IPermission.ALL_PERMISSIONS_ACTIVITY);
+        when(allPermissionsActivity.getTargetProviderKey()).thenReturn(TARGET_PROVIDER);
+        when(permissionOwnerDao.getPermissionOwner(IPermission.PORTAL_SYSTEM))
+                .thenReturn(allPermissionsOwner);
+        when(permissionOwnerDao.getPermissionActivity(
+                        IPermission.PORTAL_SYSTEM, IPermission.ALL_PERMISSIONS_ACTIVITY))
+                .thenReturn(allPermissionsActivity);
+        when(targetProviderRegistry.getTargetProvider(TARGET_PROVIDER)).thenReturn(targetProvider);
+        when(targetProvider.getTarget(IPermission.ALL_TARGET))
+                .thenReturn(
+                        new PermissionTargetImpl(
+                                IPermission.ALL_TARGET, "All", TargetType.CATEGORY));
+        when(targetProvider.getTarget(IPermission.ALL_PORTLETS_TARGET))
+                .thenReturn(
+                        new PermissionTargetImpl(
+                                IPermission.ALL_PORTLETS_TARGET,
+                                "All Portlets",
+                                TargetType.PORTLET));
+        when(targetProvider.getTarget(IPermission.ALL_CATEGORIES_TARGET))
+                .thenReturn(
+                        new PermissionTargetImpl(
+                                IPermission.ALL_CATEGORIES_TARGET,
+                                "All Categories",
+                                TargetType.CATEGORY));
+
+        when(service.getPermissionsForPrincipal(
+                        any(IAuthorizationPrincipal.class), anyString(), anyString(), any()))
+                .thenAnswer(
+                        new Answer<IPermission[]>() {
+                            @Override
+                            public IPermission[] answer(InvocationOnMock invocation) {
+                                return selectPermissions(
+                                        invocation.getArgument(0),
+                                        invocation.getArgument(2),
+                                        invocation.getArgument(3));
+                            }
+                        });
+
+        for (int i = 1; i <= 5; i++) {
+            targets.add(new PermissionTargetImpl("PORTLET_ID." + i, "P" + i, TargetType.PORTLET));
+        }
+
+        /*
+         * user (DENY 3)
+         *   +- group1 (GRANT 1, DENY 2)
+         *   |    +- shared (GRANT 4)
+         *   +- group2 (GRANT 2, GRANT 3)
+         *        +- shared
+         */
+        sharedGroup = newGroup("shared");
+        final IAuthorizationPrincipal group1 = newGroup("group1", sharedGroup);
+        final IAuthorizationPrincipal group2 = newGroup("group2", sharedGroup);
+        user = newPrincipal("user", false, group1, group2);
+
+        addPermission(user, "PORTLET_ID.3", IPermission.PERMISSION_TYPE_DENY);
+        addPermission(group1, "PORTLET_ID.1", IPermission.PERMISSION_TYPE_GRANT);
+        addPermission(group1, "PORTLET_ID.2", IPermission.PERMISSION_TYPE_DENY);
+        addPermission(group2, "PORTLET_ID.2", IPermission.PERMISSION_TYPE_GRANT);
+        addPermission(group2, "PORTLET_ID.3", IPermission.PERMISSION_TYPE_GRANT);
+        addPermission(sharedGroup, "PORTLET_ID.4", IPermission.PERMISSION_TYPE_GRANT);
+    }
+
+    @Test
+    public void testPermittedTargetsMatchSingleTargetChecks() {
+        final Set<IPermissionTarget> permitted =
+                policy.getPermittedTargets(service, user, owner, activity, targets);
+
+        assertEquals(
+                new HashSet<>(Arrays.asList(targets.get(0), targets.get(1), targets.get(3))),
+                permitted);
+        for (IPermissionTarget target : targets) {
+            assertEquals(
+                    target.getKey(),
+                    policy.doesPrincipalHavePermission(service, user, owner, activity, target),
+                    permitted.contains(target));
+        }
+    }
+
+    @Test
+    public void testGroupsVisitedOnce() {
+        policy.getPermittedTargets(service, user, owner, activity, targets);
+
+        verify(service, times(1))
+                .getPermissionsForPrincipal(eq(sharedGroup), eq(OWNER), eq(ACTIVITY), isNull());
+    }
+
+    @Test
+    public void testSuperUserPermittedEverything() {
+        addPermission(user, IPermission.ALL_TARGET, IPermission.PERMISSION_TYPE_GRANT);
+
+        assertEquals(
+                new HashSet<>(targets),
+                policy.getPermittedTargets(service, user, owner, activity, targets));
+        verify(service, never()).getPermissionsForPrincipal(any(), eq(OWNER), eq(ACTIVITY), any());
+    }
+
+    @Test
+    public void testCollectiveTargetPermittedEverything() {
+        addPermission(
+                sharedGroup, IPermission.ALL_PORTLETS_TARGET, IPermission.PERMISSION_TYPE_GRANT);
+
+        assertEquals(
+                new HashSet<>(targets),
+                policy.getPermittedTargets(service, user, owner, activity, targets));
+    }
+
+    @Test
+    public void testEmptyTargets() {
+        assertEquals(
+                Collections.emptySet(),
+                policy.getPermittedTargets(
+                        service,
+                        user,
+                        owner,
+                        activity,
+                        Collections.<IPermissionTarget>emptyList()));
+    }
+
+    private IPermission[] selectPermissions(
+            IAuthorizationPrincipal principal, String activity, String target) {
+        final List<IPermission> rslt = new ArrayList<>();
+        final List<IPermission> principalPermissions = this.permissions.get(principal);
+        if (principalPermissions != null) {
+            for (IPermission permission : principalPermissions) {
+                if (activity.equals(permission.getActivity())
+                        && (target == null || target.equals(permission.getTarget()))) {
+                    rslt.add(permission);
+                }
+            }
+        }
+        return rslt.toArray(new IPermission[rslt.size()]);
+    }
+
+    private void addPermission(IAuthorizationPrincipal principal, String target, String type) {
+        final IPermission permission = mock(IPermission.class);
+        when(permission.getTarget()).thenReturn(target);
+        when(permission.getType()).thenReturn(type);
+        when(permission.getActivity())
+                .thenReturn(
+                        IPermission.ALL_TARGET.equals(target)
+                                ? IPermission.ALL_PERMISSIONS_ACTIVITY
+                                : ACTIVITY);
+        List<IPermission> principalPermissions = this.permissions.get(principal);
+        if (principalPermissions == null) {
+            principalPermissions = new ArrayList<>();
+            this.permissions.put(principal, principalPermissions);
+        }
+        principalPermissions.add(permission);
+    }
+
+    private IAuthorizationPrincipal newGroup(String key, IAuthorizationPrincipal... parents) {
+        return newPrincipal(key, true, parents);
+    }
+
+    private IAuthorizationPrincipal newPrincipal(
+            String key, boolean group, IAuthorizationPrincipal... parents) {
+        final IAuthorizationPrincipal principal = mock(IAuthorizationPrincipal.class);
+        when(principal.getKey()).thenReturn(key);
+        when(principal.getPrincipalString()).thenReturn(key);
+        when(principal.isGroup()).thenReturn(group);
+
+        final IGroupMember member = group ? mock(IEntityGroup.class) : mock(IGroupMember.class);
+        final Set<IEntityGroup> parentGroups = new LinkedHashSet<>();
+        for (IAuthorizationPrincipal parent : parents) {
+            parentGroups.add((IEntityGroup) service.getGroupMember(parent));
+        }
+        when(member.getParentGroups()).thenReturn(parentGroups);
+        when(service.getGroupMember(principal)).thenReturn(member);
+        if (group) {
+            when(service.newPrincipal(member)).thenReturn(principal);
+        }
+        return principal;
+    }
+}
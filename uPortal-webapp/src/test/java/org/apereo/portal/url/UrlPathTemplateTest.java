@@ -0,0 +1,97 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.url;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class UrlPathTemplateTest {
+
+    @Test
+    public void testFolderStateType() {
+        final UrlPathTemplate template = UrlPathTemplate.parse("/f/n2/normal/render.uP");
+
+        assertEquals(Arrays.asList("n2"), template.getFolderNames());
+        assertTrue(template.isPortletStepReached());
+        assertFalse(template.isPortletPathPresent());
+        assertNull(template.getPortletFolderName());
+        assertTail(template.getTail(true), UrlState.NORMAL, UrlType.RENDER, null);
+        assertTail(template.getTail(false), null, UrlType.RENDER, null);
+    }
+
+    @Test
+    public void testFolderPortletStateType() {
+        final UrlPathTemplate template =
+                UrlPathTemplate.parse("/f/n2/p/fname.s3/normal/resource.uP");
+
+        assertEquals(Arrays.asList("n2"), template.getFolderNames());
+        assertTrue(template.isPortletPathPresent());
+        assertEquals("fname.s3", template.getPortletFolderName());
+        assertTail(template.getTail(true), UrlState.NORMAL, UrlType.RESOURCE, null);
+        assertTail(template.getTail(false), null, UrlType.RESOURCE, null);
+    }
+
+    @Test
+    public void testPortletInlineResourceId() {
+        final UrlPathTemplate template =
+                UrlPathTemplate.parse("/p/news.u12l1n7/max/logo.png.resource.uP");
+
+        assertEquals(Collections.emptyList(), template.getFolderNames());
+        assertEquals("news.u12l1n7", template.getPortletFolderName());
+        assertTail(template.getTail(true), UrlState.MAX, UrlType.RESOURCE, "logo.png");
+        assertTail(template.getTail(false), null, UrlType.RESOURCE, null);
+    }
+
+    @Test
+    public void testTypeWithoutState() {
+        final UrlPathTemplate template = UrlPathTemplate.parse("/f/tab/action.uP");
+
+        assertEquals(Arrays.asList("tab"), template.getFolderNames());
+        assertTrue(template.isPortletStepReached());
+        // Without a targeted portlet the state step consumes the part
+        assertTail(template.getTail(true), null, UrlType.ACTION, null);
+        assertTail(template.getTail(false), null, null, null);
+    }
+
+    @Test
+    public void testPortletPrefixWithoutName() {
+        final UrlPathTemplate template = UrlPathTemplate.parse("/p");
+
+        assertTrue(template.isPortletPathPresent());
+        assertNull(template.getPortletFolderName());
+    }
+
+    @Test
+    public void testEmptyPath() {
+        final UrlPathTemplate template = UrlPathTemplate.parse("/");
+
+        assertEquals(Collections.emptyList(), template.getFolderNames());
+        assertFalse(template.isPortletStepReached());
+        assertTail(template.getTail(true), null, null, null);
+    }
+
+    private void assertTail(
+            UrlPathTemplate.Tail tail, UrlState urlState, UrlType urlType, String resourceId) {
+        assertEquals(urlState, tail.getUrlState());
+        assertEquals(urlType, tail.getUrlType());
+        assertEquals(resourceId, tail.getResourceId());
+    }
+}
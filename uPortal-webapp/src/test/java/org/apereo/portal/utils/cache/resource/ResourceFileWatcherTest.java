@@ -0,0 +1,113 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.cache.resource;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import net.sf.ehcache.Ehcache;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+public class ResourceFileWatcherTest {
+    private File directory;
+    private File file;
+    private Ehcache cache;
+    private ResourceFileWatcher watcher;
+
+    @Before
+    public void setup() throws Exception {
+        this.directory = File.createTempFile("ResourceFileWatcherTest.", ".dir");
+        this.directory.delete();
+        this.directory.mkdirs();
+        this.file = new File(this.directory, "skin.less");
+        FileUtils.writeStringToFile(this.file, "a { color: red; }", "UTF-8");
+
+        this.cache = createNiceMock(Ehcache.class);
+        expect(this.cache.getName()).andReturn("resourceCache").anyTimes();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (this.watcher != null) {
+            this.watcher.close();
+        }
+        FileUtils.deleteDirectory(this.directory);
+    }
+
+    @Test
+    public void testChangedFileInvalidatesResource() throws Exception {
+        final Resource resource = new FileSystemResource(this.file);
+        expect(this.cache.remove(resource)).andReturn(true);
+        replay(this.cache);
+
+        this.watcher = new ResourceFileWatcher(this.cache);
+        this.watcher.start();
+
+        assertTrue(this.watcher.watch(createCachedResource(resource, afterModification())));
+        assertTrue(this.watcher.isWatched(resource));
+
+        FileUtils.writeStringToFile(this.file, "a { color: blue; }", "UTF-8");
+
+        final long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (this.watcher.isWatched(resource) && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        assertFalse(this.watcher.isWatched(resource));
+        verify(this.cache);
+    }
+
+    @Test
+    public void testNonFileResourceNotWatched() throws Exception {
+        replay(this.cache);
+        this.watcher = new ResourceFileWatcher(this.cache);
+
+        final Resource resource = new ByteArrayResource(new byte[0]);
+        assertFalse(this.watcher.watch(createCachedResource(resource, afterModification())));
+        assertFalse(this.watcher.isWatched(resource));
+    }
+
+    @Test
+    public void testModifiedWhileLoadingNotWatched() throws Exception {
+        replay(this.cache);
+        this.watcher = new ResourceFileWatcher(this.cache);
+
+        final Resource resource = new FileSystemResource(this.file);
+        assertFalse(this.watcher.watch(createCachedResource(resource, 0)));
+        assertFalse(this.watcher.isWatched(resource));
+    }
+
+    /** A load time after the file was last written, lastModified may only have second precision */
+    private long afterModification() {
+        return this.file.lastModified() + TimeUnit.SECONDS.toMillis(1);
+    }
+
+    private static CachedResource<String> createCachedResource(
+            Resource resource, long lastLoadTime) {
+        return new CachedResourceImpl<String>(
+                resource, new LoadedResourceImpl<String>("loaded"), lastLoadTime, lastLoadTime);
+    }
+}